@@ -71,6 +71,22 @@ public abstract class AbstractContainer implements Asn1Container
      * for constructed types */
     private boolean isGathering = false;
 
+    /** A flag telling if the values contained in the skipped TLV are skipped */
+    private boolean isSkippingValues = false;
+
+    /** The id of the TLV whose contained values are skipped */
+    private int skippedTlvId;
+
+    /** The initial size of the TLV stack */
+    private static final int TLV_STACK_SIZE = 16;
+
+    /** The TLVs being decoded, from the root TLV to the current one. The TLVs
+     * stored above the stack depth are free, and will be reused */
+    private TLV[] tlvStack = new TLV[TLV_STACK_SIZE];
+
+    /** The number of TLVs being decoded in the stack */
+    private int tlvStackDepth;
+
 
     /**
      * Creates a new instance of AbstractContainer with a starting state.
@@ -201,6 +217,8 @@ public abstract class AbstractContainer implements Asn1Container
     {
         tlv = null;
         parentTLV = null;
+        tlvStackDepth = 0;
+        isSkippingValues = false;
         transition = ( ( States ) transition ).getStartState();
         state = TLVStateEnum.TAG_STATE_START;
     }
@@ -215,6 +233,56 @@ public abstract class AbstractContainer implements Asn1Container
     }
 
 
+    /**
+     * Gets a TLV for the next element to decode, with a new TLV id. The TLVs
+     * which have been fully decoded may be reused, so a TLV must not be used
+     * once it and all its parents have been decoded.
+     * 
+     * @return A TLV for the next element
+     */
+    public TLV getNewTlv()
+    {
+        // The new TLV's parent is the current parent TLV. All the TLVs stacked
+        // above it have been fully decoded, they can be reused
+        int depth = tlvStackDepth;
+
+        while ( ( depth > 0 ) && ( tlvStack[depth - 1] != parentTLV ) )
+        {
+            depth--;
+        }
+
+        if ( ( depth == 0 ) && ( parentTLV != null ) )
+        {
+            // The parent has not been created by this container : we can't
+            // tell which TLVs are still in use
+            return new TLV( getNewTlvId() );
+        }
+
+        if ( depth == tlvStack.length )
+        {
+            TLV[] newStack = new TLV[depth * 2];
+            System.arraycopy( tlvStack, 0, newStack, 0, depth );
+            tlvStack = newStack;
+        }
+
+        TLV newTlv = tlvStack[depth];
+
+        if ( newTlv == null )
+        {
+            newTlv = new TLV( getNewTlvId() );
+            tlvStack[depth] = newTlv;
+        }
+        else
+        {
+            newTlv.reset( getNewTlvId() );
+        }
+
+        tlvStackDepth = depth + 1;
+
+        return newTlv;
+    }
+
+
     /**
      * {@inheritDoc}
      */
@@ -329,4 +397,47 @@ public abstract class AbstractContainer implements Asn1Container
         this.isGathering = isGathering;
     }
 
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean isSkippingValues()
+    {
+        if ( isSkippingValues )
+        {
+            // The TLVs are recycled, so the skipped TLV is identified by its id
+            for ( TLV parent = tlv.getParent(); parent != null; parent = parent.getParent() )
+            {
+                if ( parent.getId() == skippedTlvId )
+                {
+                    return true;
+                }
+            }
+
+            // We are out of the skipped TLV
+            isSkippingValues = false;
+        }
+
+        return false;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setSkippingValues( boolean isSkippingValues )
+    {
+        TLV parent = tlv.getParent();
+
+        if ( isSkippingValues && ( parent != null ) )
+        {
+            this.isSkippingValues = true;
+            skippedTlvId = parent.getId();
+        }
+        else
+        {
+            this.isSkippingValues = false;
+        }
+    }
+
 }
@@ -210,4 +210,22 @@ public interface Asn1Container
      * into the container. If not set, the default value is 'false'
      */
     void setGathering( boolean isGathering );
+
+
+    /**
+     * @return true if the decoder must skip the value of the current TLV, without
+     * storing it
+     */
+    boolean isSkippingValues();
+
+
+    /**
+     * Set the isSkippingValues flag. When set, the values of the next TLVs contained
+     * in the current TLV's parent are not stored : the decoder just moves past their
+     * bytes, and the actions get empty values. The flag is cleared once a TLV which
+     * is not contained in this parent is decoded.
+     * 
+     * @param isSkippingValues true to ask the Asn1Decoder to skip the values
+     */
+    void setSkippingValues( boolean isSkippingValues );
 }
@@ -63,6 +63,9 @@ public class Asn1Decoder implements TLVBerDecoderMBean
     /** The maximum number of bytes that could be used to encode the Tag */
     private int maxTagLength;
 
+    /** Flag that is used to allow/disallow the values to be views on the decoded buffer */
+    private boolean valueSlicingAllowed;
+
 
     /**
      * A public constructor of an Asn1 Decoder.
@@ -72,6 +75,7 @@ public class Asn1Decoder implements TLVBerDecoderMBean
         indefiniteLengthAllowed = false;
         maxLengthLength = 1;
         maxTagLength = 1;
+        valueSlicingAllowed = false;
     }
 
 
@@ -90,7 +94,18 @@ public class Asn1Decoder implements TLVBerDecoderMBean
         {
             byte octet = stream.get();
 
-            TLV tlv = new TLV( container.getNewTlvId() );
+            TLV tlv;
+
+            // Only the AbstractContainer recycles the decoded TLVs
+            if ( container instanceof AbstractContainer )
+            {
+                tlv = ( ( AbstractContainer ) container ).getNewTlv();
+            }
+            else
+            {
+                tlv = new TLV( container.getNewTlvId() );
+            }
+
             tlv.setTag( octet );
 
             // Store the current TLV in the container.
@@ -170,7 +185,12 @@ public class Asn1Decoder implements TLVBerDecoderMBean
 
         BerValue value = current.getValue();
 
-        if ( ( value != null ) && ( value.getData() != null ) )
+        if ( ( value != null ) && value.isView() )
+        {
+            // Don't copy the value, its length is known
+            return ( current.getExpectedLength() == value.getCurrentLength() );
+        }
+        else if ( ( value != null ) && ( value.getData() != null ) )
         {
             return ( current.getExpectedLength() == value.getData().length );
         }
@@ -519,6 +539,12 @@ public class Asn1Decoder implements TLVBerDecoderMBean
             int length = currentTlv.getLength();
             int nbBytes = stream.remaining();
 
+            if ( container.isSkippingValues() )
+            {
+                // The value is not needed : move past its bytes without storing them
+                return skipValue( stream, container, length );
+            }
+
             if ( nbBytes < length )
             {
                 currentTlv.getValue().init( length );
@@ -529,8 +555,20 @@ public class Asn1Decoder implements TLVBerDecoderMBean
             }
             else
             {
-                currentTlv.getValue().init( length );
-                stream.get( currentTlv.getValue().getData(), 0, length );
+                if ( valueSlicingAllowed && stream.hasArray() )
+                {
+                    // The value is fully contained in the buffer : don't copy it,
+                    // the action will read it from the buffer
+                    int position = stream.position();
+                    currentTlv.getValue().init( stream.array(), stream.arrayOffset() + position, length );
+                    stream.position( position + length );
+                }
+                else
+                {
+                    currentTlv.getValue().init( length );
+                    stream.get( currentTlv.getValue().getData(), 0, length );
+                }
+
                 container.setState( TLVStateEnum.TLV_STATE_DONE );
 
                 return MORE;
@@ -553,6 +591,11 @@ public class Asn1Decoder implements TLVBerDecoderMBean
     {
         TLV currentTlv = container.getCurrentTLV();
 
+        if ( container.isSkippingValues() )
+        {
+            return skipValue( stream, container, currentTlv.getExpectedLength() );
+        }
+
         int length = currentTlv.getLength();
         int currentLength = currentTlv.getValue().getCurrentLength();
         int nbBytes = stream.remaining();
@@ -567,9 +610,44 @@ public class Asn1Decoder implements TLVBerDecoderMBean
         else
         {
             int remaining = length - currentLength;
-            byte[] data = new byte[remaining];
-            stream.get( data, 0, remaining );
-            currentTlv.getValue().addData( data );
+            currentTlv.getValue().addData( stream, remaining );
+            container.setState( TLVStateEnum.TLV_STATE_DONE );
+
+            return MORE;
+        }
+    }
+
+
+    /**
+     * Skip the bytes of a Value which is not stored. The TLV expected length
+     * counts the bytes still to skip, so that a Value spanning many buffers
+     * is never allocated.
+     * 
+     * @param stream The ByteBuffer containing the PDU to decode
+     * @param container The container that stores the current state,
+     * the result and other informations.
+     * @param remaining The number of Value bytes to skip
+     * @return <code>MORE</code> if some bytes remain in the buffer when the
+     * value has been skipped, <code>END</code> if whe still need to get some
+     * more bytes.
+     */
+    private boolean skipValue( ByteBuffer stream, Asn1Container container, int remaining )
+    {
+        TLV currentTlv = container.getCurrentTLV();
+        int nbBytes = stream.remaining();
+
+        if ( nbBytes < remaining )
+        {
+            stream.position( stream.limit() );
+            currentTlv.setExpectedLength( remaining - nbBytes );
+            container.setState( TLVStateEnum.VALUE_STATE_PENDING );
+
+            return END;
+        }
+        else
+        {
+            stream.position( stream.position() + remaining );
+            currentTlv.setExpectedLength( 0 );
             container.setState( TLVStateEnum.TLV_STATE_DONE );
 
             return MORE;
@@ -627,6 +705,15 @@ public class Asn1Decoder implements TLVBerDecoderMBean
             container.setState( TLVStateEnum.TAG_STATE_START );
         }
 
+        // The decoded buffer may be reused as soon as we return, so a value which is
+        // still a view on it must not be kept
+        TLV currentTlv = container.getCurrentTLV();
+
+        if ( ( currentTlv != null ) && currentTlv.getValue().isView() )
+        {
+            currentTlv.getValue().reset();
+        }
+
         return stream.hasRemaining();
     }
 
@@ -832,6 +919,36 @@ public class Asn1Decoder implements TLVBerDecoderMBean
     }
 
 
+    /**
+     * Allow the decoder to expose the primitive values which are fully contained
+     * in the decoded buffer as views on this buffer, instead of copying them. The
+     * copy is only done if the grammar action calls {@link BerValue#getData()}.
+     * Values which span over more than one buffer are always copied.
+     */
+    public void allowValueSlicing()
+    {
+        this.valueSlicingAllowed = true;
+    }
+
+
+    /**
+     * Disallow the values to be views on the decoded buffer : they are always copied.
+     */
+    public void disallowValueSlicing()
+    {
+        this.valueSlicingAllowed = false;
+    }
+
+
+    /**
+     * @return <code>true</code> if the values may be views on the decoded buffer
+     */
+    public boolean isValueSlicingAllowed()
+    {
+        return valueSlicingAllowed;
+    }
+
+
     /**
      * {@inheritDoc}
      */
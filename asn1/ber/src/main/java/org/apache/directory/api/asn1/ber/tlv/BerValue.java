@@ -28,6 +28,7 @@ import org.apache.directory.api.asn1.util.Asn1StringUtils;
 import org.apache.directory.api.asn1.util.BitString;
 import org.apache.directory.api.asn1.util.Oid;
 import org.apache.directory.api.i18n.I18n;
+import org.apache.directory.api.util.Strings;
 
 
 /**
@@ -43,6 +44,15 @@ public class BerValue
     /** The current position of the last byte in the data buffer */
     private int currentPos;
 
+    /** The buffer containing the value, when this value is a view on the decoded buffer */
+    private byte[] source;
+
+    /** The position of the value in the source buffer */
+    private int offset;
+
+    /** The value length, when this value is a view on the decoded buffer */
+    private int length;
+
     /** The encoded byte for a TRUE value */
     public static final byte TRUE_VALUE = ( byte ) 0xFF;
 
@@ -133,6 +143,26 @@ public class BerValue
     {
         data = new byte[size];
         currentPos = 0;
+        source = null;
+    }
+
+
+    /**
+     * Initialize the Value as a view on a part of a byte array, without copying it.
+     * The bytes will only be copied if the {@link #getData()} method is called. The
+     * source array must not be modified as long as the Value is a view on it.
+     *
+     * @param source The array containing the value
+     * @param offset The position of the value in the array
+     * @param length The value length
+     */
+    public void init( byte[] source, int offset, int length )
+    {
+        data = null;
+        currentPos = length;
+        this.source = source;
+        this.offset = offset;
+        this.length = length;
     }
 
 
@@ -143,6 +173,62 @@ public class BerValue
     {
         data = null;
         currentPos = 0;
+        source = null;
+    }
+
+
+    /**
+     * @return <code>true</code> if the Value is a view on the decoded buffer, and hasn't been
+     * copied yet
+     */
+    public boolean isView()
+    {
+        return source != null;
+    }
+
+
+    /**
+     * Gives access to the Value's bytes without copying them : when the Value is a view,
+     * this is the decoded buffer, otherwise it's the Value's data. The bytes start at
+     * {@link #getOffset()}, and their number is the TLV length. The returned array must
+     * not be modified.
+     *
+     * @return The array containing the Value's bytes
+     */
+    @edu.umd.cs.findbugs.annotations.SuppressWarnings(value="EI_EXPOSE_REP",
+            justification="The array is returned to be read without being copied")
+    public byte[] getBuffer()
+    {
+        return ( source != null ) ? source : data;
+    }
+
+
+    /**
+     * @return The position of the Value's bytes in the array returned by {@link #getBuffer()}
+     */
+    public int getOffset()
+    {
+        return ( source != null ) ? offset : 0;
+    }
+
+
+    /**
+     * Convert the Value to a String, assuming it's UTF-8 encoded. When the Value is a view
+     * on the decoded buffer, the String is created directly from this buffer, and the
+     * bytes aren't copied.
+     *
+     * @return The UTF-8 decoded Value
+     */
+    public String getUtf8String()
+    {
+        if ( source != null )
+        {
+            return Strings.utf8ToString( source, offset, length );
+        }
+        else
+        {
+            return Strings.utf8ToString( data );
+        }
     }
 
 
@@ -155,6 +241,14 @@ public class BerValue
             justification="The return of the direct value (without cloning) was intended. Even if we modify the interned value, it won't have any impact")
     public byte[] getData()
     {
+        if ( source != null )
+        {
+            // The value is a view : copy the bytes now
+            data = new byte[length];
+            System.arraycopy( source, offset, data, 0, length );
+            source = null;
+        }
+
         return data;
     }
 
@@ -185,6 +279,20 @@ public class BerValue
     }
 
 
+    /**
+     * Append some bytes to the data buffer, reading them directly from
+     * the given ByteBuffer.
+     *
+     * @param buffer The data to append.
+     * @param length The number of bytes to read from the buffer
+     */
+    public void addData( ByteBuffer buffer, int length )
+    {
+        buffer.get( data, currentPos, length );
+        currentPos += length;
+    }
+
+
     /**
      * Set a block of bytes in the Value
      *
@@ -922,7 +1030,15 @@ public class BerValue
         StringBuilder sb = new StringBuilder();
         sb.append( "DATA" );
 
-        if ( data != null )
+        if ( source != null )
+        {
+            byte[] bytes = new byte[length];
+            System.arraycopy( source, offset, bytes, 0, length );
+            sb.append( '[' );
+            sb.append( Asn1StringUtils.dumpBytes( bytes ) );
+            sb.append( ']' );
+        }
+        else if ( data != null )
         {
             sb.append( '[' );
             sb.append( Asn1StringUtils.dumpBytes( data ) );
@@ -57,7 +57,8 @@ public class TLV
 
     /**
      * The expected length of the TLV's elements, if the current TLV is a
-     * constructed TLV.
+     * constructed TLV. For a primitive TLV whose value is skipped, the number
+     * of value bytes still to skip.
      */
     private int expectedLength;
 
@@ -169,12 +170,27 @@ public class TLV
         tag = 0;
         length = 0;
         lengthNbBytes = 0;
+        lengthBytesRead = 0;
         value.reset();
+        parent = null;
 
         expectedLength = 0;
     }
 
 
+    /**
+     * Reset the TLV and give it a new ID, so it can be reused for another
+     * element of the PDU being decoded.
+     * 
+     * @param id The TLV's new ID
+     */
+    public void reset( int id )
+    {
+        reset();
+        this.id = id;
+    }
+
+
     /**
      * @return Returns the tag.
      */
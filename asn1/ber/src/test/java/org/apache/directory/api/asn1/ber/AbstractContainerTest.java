@@ -0,0 +1,117 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.directory.api.asn1.ber;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.directory.api.asn1.ber.tlv.TLV;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.mycila.junit.concurrent.Concurrency;
+import com.mycila.junit.concurrent.ConcurrentJunitRunner;
+
+
+/**
+ * Test the TLVs reuse in the AbstractContainer class
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@RunWith(ConcurrentJunitRunner.class)
+@Concurrency()
+public class AbstractContainerTest
+{
+    /**
+     * A container with no grammar
+     */
+    private static class TestContainer extends AbstractContainer
+    {
+    }
+
+
+    /**
+     * Test that the TLVs which have been decoded are reused for the next elements
+     */
+    @Test
+    public void testReuseDecodedTlvs()
+    {
+        TestContainer container = new TestContainer();
+
+        // The root TLV : SEQUENCE
+        TLV root = container.getNewTlv();
+        root.setTag( ( byte ) 0x30 );
+        container.setParentTLV( root );
+
+        // A first child
+        TLV child1 = container.getNewTlv();
+        child1.setParent( root );
+        child1.setTag( ( byte ) 0x04 );
+        child1.setLength( 3 );
+        child1.getValue().init( 3 );
+
+        // The second child reuses the first one, which has been decoded
+        TLV child2 = container.getNewTlv();
+        assertSame( child1, child2 );
+        assertTrue( child2.getId() > root.getId() );
+        assertEquals( 0, child2.getTag() );
+        assertEquals( 0, child2.getLength() );
+        assertNull( child2.getValue().getData() );
+        assertNull( child2.getParent() );
+
+        // A constructed child becomes the parent
+        child2.setParent( root );
+        child2.setTag( ( byte ) 0x30 );
+        container.setParentTLV( child2 );
+
+        TLV grandChild = container.getNewTlv();
+        assertFalse( grandChild == child2 );
+        assertFalse( grandChild == root );
+
+        // Back to the root : the constructed child and the grand child are free
+        container.setParentTLV( root );
+        TLV child3 = container.getNewTlv();
+        assertSame( child2, child3 );
+
+        // A new PDU : the root is reused
+        container.setParentTLV( null );
+        assertSame( root, container.getNewTlv() );
+    }
+
+
+    /**
+     * Test that a TLV is not reused when the parent TLV is unknown
+     */
+    @Test
+    public void testUnknownParent()
+    {
+        TestContainer container = new TestContainer();
+
+        TLV root = container.getNewTlv();
+        container.setParentTLV( new TLV( 0 ) );
+
+        TLV tlv = container.getNewTlv();
+        assertFalse( tlv == root );
+    }
+}
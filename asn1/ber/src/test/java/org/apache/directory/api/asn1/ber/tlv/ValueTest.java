@@ -21,6 +21,7 @@ package org.apache.directory.api.asn1.ber.tlv;
 
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -72,6 +73,36 @@ public class ValueTest
     }
 
 
+    /**
+     * Test a Value which is a view on a byte array
+     */
+    @Test
+    public void testValueView()
+    {
+        byte[] source = new byte[]
+            { 'a', 'b', 'c', 'd', 'e' };
+
+        BerValue value = new BerValue();
+        value.init( source, 1, 3 );
+
+        assertTrue( value.isView() );
+        assertEquals( 3, value.getCurrentLength() );
+        assertEquals( "bcd", value.getUtf8String() );
+
+        // Getting the data copies them
+        byte[] data = value.getData();
+        assertTrue( Arrays.equals( new byte[]
+            { 'b', 'c', 'd' }, data ) );
+        assertFalse( value.isView() );
+
+        source[1] = 'z';
+        assertEquals( "bcd", value.getUtf8String() );
+
+        value.reset();
+        assertFalse( value.isView() );
+    }
+
+
     /**
      * Test the getNbBytes method for a long value
      */
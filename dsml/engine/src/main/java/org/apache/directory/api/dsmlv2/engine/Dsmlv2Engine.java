@@ -29,12 +29,14 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.directory.api.asn1.DecoderException;
 import org.apache.directory.api.asn1.EncoderException;
 import org.apache.directory.api.dsmlv2.DsmlDecorator;
 import org.apache.directory.api.dsmlv2.Dsmlv2Parser;
-import org.apache.directory.api.dsmlv2.ParserUtils;
 import org.apache.directory.api.dsmlv2.request.BatchRequestDsml;
 import org.apache.directory.api.dsmlv2.request.BatchRequestDsml.OnError;
 import org.apache.directory.api.dsmlv2.request.BatchRequestDsml.Processing;
@@ -45,6 +47,7 @@ import org.apache.directory.api.dsmlv2.response.BatchResponseDsml;
 import org.apache.directory.api.dsmlv2.response.BindResponseDsml;
 import org.apache.directory.api.dsmlv2.response.CompareResponseDsml;
 import org.apache.directory.api.dsmlv2.response.DelResponseDsml;
+import org.apache.directory.api.dsmlv2.response.Dsmlv2ResponseWriter;
 import org.apache.directory.api.dsmlv2.response.ErrorResponse;
 import org.apache.directory.api.dsmlv2.response.ExtendedResponseDsml;
 import org.apache.directory.api.dsmlv2.response.ModDNResponseDsml;
@@ -55,6 +58,7 @@ import org.apache.directory.api.dsmlv2.response.SearchResultEntryDsml;
 import org.apache.directory.api.dsmlv2.response.SearchResultReferenceDsml;
 import org.apache.directory.api.dsmlv2.response.ErrorResponse.ErrorResponseType;
 import org.apache.directory.api.i18n.I18n;
+import org.apache.directory.api.ldap.codec.api.LdapApiService;
 import org.apache.directory.api.ldap.model.cursor.SearchCursor;
 import org.apache.directory.api.ldap.model.exception.LdapException;
 import org.apache.directory.api.ldap.model.message.AbandonRequest;
@@ -77,14 +81,20 @@ import org.apache.directory.api.ldap.model.message.ModifyResponse;
 import org.apache.directory.api.ldap.model.message.Request;
 import org.apache.directory.api.ldap.model.message.Response;
 import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
+import org.apache.directory.api.ldap.model.message.ResultResponse;
 import org.apache.directory.api.ldap.model.message.SearchRequest;
 import org.apache.directory.api.ldap.model.message.SearchResultDone;
 import org.apache.directory.api.ldap.model.message.SearchResultEntry;
 import org.apache.directory.api.ldap.model.message.SearchResultReference;
 import org.apache.directory.api.util.Strings;
+import org.apache.directory.ldap.client.api.LdapAsyncConnection;
 import org.apache.directory.ldap.client.api.LdapConnection;
+import org.apache.directory.ldap.client.api.LdapConnectionConfig;
 import org.apache.directory.ldap.client.api.LdapNetworkConnection;
-import org.dom4j.Element;
+import org.apache.directory.ldap.client.api.SearchCursorImpl;
+import org.apache.directory.ldap.client.api.future.MultipleResponseFuture;
+import org.apache.directory.ldap.client.api.future.ResponseFuture;
+import org.apache.directory.ldap.client.api.future.SearchFuture;
 import org.dom4j.Namespace;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -128,6 +138,21 @@ public class Dsmlv2Engine
     /** flag to indicate to generate the response in a SOAP envelope */
     protected boolean generateSoapResp = false;
 
+    /** The maximum number of requests of a parallel batch waiting for their response */
+    private int maxOutstandingRequests = DEFAULT_MAX_OUTSTANDING_REQUESTS;
+
+    /** The time to wait for the response of a request sent asynchronously, in milliseconds */
+    private long timeout = LdapConnectionConfig.DEFAULT_TIMEOUT;
+
+    /** The requests of a parallel batch waiting for their response, in the order they were sent */
+    private LinkedList<PendingRequest> pendingRequests = new LinkedList<PendingRequest>();
+
+    /** The default maximum number of requests of a parallel batch waiting for their response */
+    public static final int DEFAULT_MAX_OUTSTANDING_REQUESTS = 64;
+
+    /** The time to wait for the oldest outstanding response before checking the other ones again, in ms */
+    private static final long POLL_INTERVAL = 10L;
+
     /** A logger for this class */
     private static final Logger LOG = LoggerFactory.getLogger( Dsmlv2Engine.class );
 
@@ -352,25 +377,8 @@ public class Dsmlv2Engine
 
         if ( respWriter != null )
         {
-            StringBuilder sb = new StringBuilder();
-
-            sb.append( "<batchResponse " );
-
-            sb.append( ParserUtils.DSML_NAMESPACE.asXML() );
-
-            sb.append( " " ); // a space to separate the namespace declarations
-
-            sb.append( ParserUtils.XSD_NAMESPACE.asXML() );
-
-            sb.append( " " ); // a space to separate the namespace declarations
-
-            sb.append( ParserUtils.XSI_NAMESPACE.asXML() );
-
-            sb.append( " requestID=\"" );
-            sb.append( batchRequest.getRequestID() );
-            sb.append( "\">" );
-
-            respWriter.write( sb.toString() );
+            new Dsmlv2ResponseWriter( connection.getCodecService(), respWriter ).startBatchResponse( batchRequest
+                .getRequestID() );
         }
 
         // Processing each request:
@@ -412,6 +420,10 @@ public class Dsmlv2Engine
             return;
         }
 
+        // The requests of a parallel batch are sent without waiting for the previous responses
+        boolean pipelined = batchRequest.getProcessing().equals( Processing.PARALLEL )
+            && ( connection instanceof LdapAsyncConnection );
+
         while ( request != null ) // (Request == null when there's no more request to process)
         {
             // Checking the request has a requestID attribute if Processing = Parallel and ResponseOrder = Unordered
@@ -419,6 +431,9 @@ public class Dsmlv2Engine
                 && ( batchRequest.getResponseOrder().equals( ResponseOrder.UNORDERED ) )
                 && ( request.getDecorated().getMessageId() <= 0 ) )
             {
+                // The responses of the requests already sent come first
+                writePendingResponses( respWriter, 0 );
+
                 // Then we have to send an errorResponse
                 ErrorResponse errorResponse = new ErrorResponse( 0, ErrorResponseType.MALFORMED_REQUEST, I18n
                     .err( I18n.ERR_03002 ) );
@@ -437,12 +452,22 @@ public class Dsmlv2Engine
 
             try
             {
-                processRequest( request, respWriter );
+                if ( pipelined )
+                {
+                    processRequestAsync( request, respWriter );
+                }
+                else
+                {
+                    processRequest( request, respWriter );
+                }
             }
             catch ( Exception e )
             {
                 LOG.warn( "Failed to process request", e );
 
+                // The responses of the requests already sent come first
+                writePendingResponses( respWriter, 0 );
+
                 // We create a new ErrorResponse and return the XML response.
                 ErrorResponse errorResponse = new ErrorResponse( request.getDecorated().getMessageId(),
                     ErrorResponseType.GATEWAY_INTERNAL_ERROR, I18n.err(
@@ -473,6 +498,9 @@ public class Dsmlv2Engine
             }
             catch ( XmlPullParserException e )
             {
+                // The responses of the requests already sent come first
+                writePendingResponses( respWriter, 0 );
+
                 // We create a new ErrorResponse and return the XML response.
                 ErrorResponse errorResponse = new ErrorResponse( 0, ErrorResponseType.MALFORMED_REQUEST, I18n.err(
                     I18n.ERR_03001, e.getLocalizedMessage(), e.getLineNumber(), e.getColumnNumber() ) );
@@ -490,6 +518,9 @@ public class Dsmlv2Engine
             }
         }
 
+        // The requests already sent are done, whatever happened
+        writePendingResponses( respWriter, 0 );
+
         if ( respWriter != null )
         {
             respWriter.write( "</batchResponse>" );
@@ -505,7 +536,8 @@ public class Dsmlv2Engine
 
 
     /**
-     * Writes the response to the writer of the underlying output stream
+     * Writes the response to the writer of the underlying output stream. The response
+     * is streamed, no dom4j tree is created.
      * 
      * @param respWriter The writer used to write the response
      * @param respDsml The decorator containing the response
@@ -515,8 +547,7 @@ public class Dsmlv2Engine
     {
         if ( respWriter != null )
         {
-            Element xml = respDsml.toDsml( null );
-            xml.write( respWriter );
+            new Dsmlv2ResponseWriter( connection.getCodecService(), respWriter ).write( respDsml );
         }
     }
 
@@ -539,6 +570,51 @@ public class Dsmlv2Engine
     }
 
 
+    /**
+     * @return the maximum number of requests of a parallel batch waiting for their response
+     */
+    public int getMaxOutstandingRequests()
+    {
+        return maxOutstandingRequests;
+    }
+
+
+    /**
+     * Sets the maximum number of requests of a parallel batch sent to the server
+     * without having received their response. Setting it to 1 processes the
+     * requests one after the other.
+     *
+     * @param maxOutstandingRequests the maximum number of outstanding requests
+     */
+    public void setMaxOutstandingRequests( int maxOutstandingRequests )
+    {
+        if ( maxOutstandingRequests < 1 )
+        {
+            throw new IllegalArgumentException( "The maximum number of outstanding requests must be at least 1" );
+        }
+
+        this.maxOutstandingRequests = maxOutstandingRequests;
+    }
+
+
+    /**
+     * @return the time to wait for the response of a request sent asynchronously, in milliseconds
+     */
+    public long getTimeout()
+    {
+        return timeout;
+    }
+
+
+    /**
+     * @param timeout the time to wait for the response of a request sent asynchronously, in milliseconds
+     */
+    public void setTimeout( long timeout )
+    {
+        this.timeout = timeout;
+    }
+
+
     /**
      * @return the batchResponse
      */
@@ -637,108 +713,390 @@ public class Dsmlv2Engine
 
             case SEARCH_REQUEST:
                 SearchCursor searchResponses = connection.search( ( SearchRequest ) request );
+                resultCode = writeSearchResponses( request, searchResponses, respWriter );
 
-                SearchResponseDsml searchResponseDsml = new SearchResponseDsml( connection.getCodecService() );
+                break;
 
-                if ( respWriter != null )
-                {
-                    StringBuilder sb = new StringBuilder();
-                    sb.append( "<searchResponse" );
+            case UNBIND_REQUEST:
+                connection.unBind();
+                break;
 
-                    if ( request.getDecorated().getMessageId() > 0 )
-                    {
-                        sb.append( " requestID=\"" );
-                        sb.append( request.getDecorated().getMessageId() );
-                        sb.append( '"' );
-                    }
+            default:
+                throw new IllegalStateException( "Unexpected request tpye " + request.getDecorated().getType() );
+        }
 
-                    sb.append( '>' );
+        checkResultCode( resultCode );
+    }
 
-                    respWriter.write( sb.toString() );
-                }
 
-                while ( searchResponses.next() )
-                {
-                    Response searchResponse = searchResponses.get();
-
-                    if ( searchResponse.getType() == MessageTypeEnum.SEARCH_RESULT_ENTRY )
-                    {
-                        SearchResultEntry searchResultEntry = ( SearchResultEntry ) searchResponse;
-
-                        SearchResultEntryDsml searchResultEntryDsml = new SearchResultEntryDsml(
-                            connection.getCodecService(), searchResultEntry );
-                        searchResponseDsml = new SearchResponseDsml( connection.getCodecService(),
-                            searchResultEntryDsml );
-
-                        if ( respWriter != null )
-                        {
-                            writeResponse( respWriter, searchResultEntryDsml );
-                        }
-                        else
-                        {
-                            searchResponseDsml.addResponse( searchResultEntryDsml );
-                        }
-                    }
-                    else if ( searchResponse.getType() == MessageTypeEnum.SEARCH_RESULT_REFERENCE )
-                    {
-                        SearchResultReference searchResultReference = ( SearchResultReference ) searchResponse;
-
-                        SearchResultReferenceDsml searchResultReferenceDsml = new SearchResultReferenceDsml(
-                            connection.getCodecService(), searchResultReference );
-                        searchResponseDsml = new SearchResponseDsml( connection.getCodecService(),
-                            searchResultReferenceDsml );
-
-                        if ( respWriter != null )
-                        {
-                            writeResponse( respWriter, searchResultReferenceDsml );
-                        }
-                        else
-                        {
-                            searchResponseDsml.addResponse( searchResultReferenceDsml );
-                        }
-                    }
-                }
+    /**
+     * Turns on the exit flag if the result code is an error and we don't continue on errors
+     *
+     * @param resultCode The result code of a request, null if it has none
+     */
+    private void checkResultCode( ResultCodeEnum resultCode )
+    {
+        if ( ( !continueOnError ) && ( resultCode != null ) && ( resultCode != ResultCodeEnum.SUCCESS )
+            && ( resultCode != ResultCodeEnum.COMPARE_TRUE ) && ( resultCode != ResultCodeEnum.COMPARE_FALSE )
+            && ( resultCode != ResultCodeEnum.REFERRAL ) )
+        {
+            // Turning on Exit flag
+            exit = true;
+        }
+    }
 
-                SearchResultDone srDone = searchResponses.getSearchResultDone();
 
-                if ( srDone != null )
-                {
-                    resultCode = srDone.getLdapResult().getResultCode();
-
-                    SearchResultDoneDsml srdDsml = new SearchResultDoneDsml( connection.getCodecService(), srDone );
-
-                    if ( respWriter != null )
-                    {
-                        writeResponse( respWriter, srdDsml );
-                        respWriter.write( "</searchResponse>" );
-                    }
-                    else
-                    {
-                        searchResponseDsml.addResponse( srdDsml );
-                        batchResponse.addResponse( searchResponseDsml );
-                    }
-                }
+    /**
+     * Sends a request of a parallel batch without waiting for its response. The responses
+     * of the outstanding requests are written once there are more than maxOutstandingRequests
+     * of them : in the requests order if the responses are sequential, otherwise in the order
+     * they are received. The other requests (bind, abandon, extended)
+     * are processed once all the outstanding requests are done.
+     *
+     * @param request the request to process
+     * @param respWriter The writer used to store the DSML response
+     * @exception Exception If we had an error while processing the request
+     */
+    protected void processRequestAsync( DsmlDecorator<? extends Request> request, BufferedWriter respWriter )
+        throws Exception
+    {
+        LdapAsyncConnection asyncConnection = ( LdapAsyncConnection ) connection;
+        ResponseFuture<? extends Response> future;
+
+        switch ( request.getDecorated().getType() )
+        {
+            case ADD_REQUEST:
+                future = asyncConnection.addAsync( ( AddRequest ) request );
+                break;
 
+            case COMPARE_REQUEST:
+                future = asyncConnection.compareAsync( ( CompareRequest ) request );
                 break;
 
-            case UNBIND_REQUEST:
-                connection.unBind();
+            case DEL_REQUEST:
+                future = asyncConnection.deleteAsync( ( DeleteRequest ) request );
+                break;
+
+            case MODIFY_REQUEST:
+                future = asyncConnection.modifyAsync( ( ModifyRequest ) request );
+                break;
+
+            case MODIFYDN_REQUEST:
+                future = asyncConnection.modifyDnAsync( ( ModifyDnRequest ) request );
+                break;
+
+            case SEARCH_REQUEST:
+                future = asyncConnection.searchAsync( ( SearchRequest ) request );
                 break;
 
             default:
-                throw new IllegalStateException( "Unexpected request tpye " + request.getDecorated().getType() );
+                writePendingResponses( respWriter, 0 );
+                processRequest( request, respWriter );
+
+                return;
         }
 
-        if ( ( !continueOnError ) && ( resultCode != null ) && ( resultCode != ResultCodeEnum.SUCCESS )
-            && ( resultCode != ResultCodeEnum.COMPARE_TRUE ) && ( resultCode != ResultCodeEnum.COMPARE_FALSE )
-            && ( resultCode != ResultCodeEnum.REFERRAL ) )
+        pendingRequests.add( new PendingRequest( request, future ) );
+        writePendingResponses( respWriter, maxOutstandingRequests - 1 );
+    }
+
+
+    /**
+     * Writes the responses of the outstanding requests until there are no more than
+     * <code>maxPending</code> of them.
+     *
+     * @param respWriter The writer used to store the DSML response
+     * @param maxPending The number of requests which can stay outstanding
+     * @throws IOException If we had an error while writing a response
+     */
+    protected void writePendingResponses( BufferedWriter respWriter, int maxPending ) throws IOException
+    {
+        if ( batchRequest.getResponseOrder() != ResponseOrder.UNORDERED )
         {
-            // Turning on Exit flag
+            while ( pendingRequests.size() > maxPending )
+            {
+                writePendingResponse( pendingRequests.removeFirst(), respWriter, timeout );
+            }
+
+            return;
+        }
+
+        // First write the responses already received
+        PendingRequest received = removeReceivedRequest();
+
+        while ( received != null )
+        {
+            writePendingResponse( received, respWriter, timeout );
+            received = removeReceivedRequest();
+        }
+
+        // Then write the responses as they are received
+        while ( pendingRequests.size() > maxPending )
+        {
+            PendingRequest pendingRequest = waitForReceivedRequest();
+
+            if ( pendingRequest.future.isDone() || ( pendingRequest.future instanceof MultipleResponseFuture ) )
+            {
+                writePendingResponse( pendingRequest, respWriter, timeout );
+            }
+            else
+            {
+                // We have already waited for it long enough
+                writePendingResponse( pendingRequest, respWriter, 0L );
+            }
+        }
+    }
+
+
+    /**
+     * Removes the oldest outstanding request which response has been received. We can't
+     * tell for the searches, which are never picked.
+     *
+     * @return The removed request, or null if no response has been received
+     */
+    private PendingRequest removeReceivedRequest()
+    {
+        Iterator<PendingRequest> iterator = pendingRequests.iterator();
+
+        while ( iterator.hasNext() )
+        {
+            PendingRequest pendingRequest = iterator.next();
+
+            if ( !( pendingRequest.future instanceof MultipleResponseFuture ) && pendingRequest.future.isDone() )
+            {
+                iterator.remove();
+
+                return pendingRequest;
+            }
+        }
+
+        return null;
+    }
+
+
+    /**
+     * Waits until the response of one of the outstanding requests is received, and removes
+     * this request. The futures have no completion callback, so we wait for the oldest
+     * response a little while, and then check all of them again. A search is only picked
+     * when it's the oldest request, its responses are then read as they are received. If
+     * no response is received before the timeout, the oldest request is picked.
+     *
+     * @return The removed request
+     */
+    private PendingRequest waitForReceivedRequest()
+    {
+        long deadline = System.currentTimeMillis() + timeout;
+
+        while ( true )
+        {
+            PendingRequest received = removeReceivedRequest();
+
+            if ( received != null )
+            {
+                return received;
+            }
+
+            ResponseFuture<? extends Response> oldest = pendingRequests.getFirst().future;
+            long remaining = deadline - System.currentTimeMillis();
+
+            if ( ( oldest instanceof MultipleResponseFuture ) || ( remaining <= 0L ) )
+            {
+                return pendingRequests.removeFirst();
+            }
+
+            try
+            {
+                oldest.get( Math.min( remaining, POLL_INTERVAL ), TimeUnit.MILLISECONDS );
+            }
+            catch ( InterruptedException ie )
+            {
+                Thread.currentThread().interrupt();
+
+                return pendingRequests.removeFirst();
+            }
+            catch ( Exception e )
+            {
+                // The failure will be reported when writing the response
+                return pendingRequests.removeFirst();
+            }
+        }
+    }
+
+
+    /**
+     * Waits for the response(s) of an outstanding request and writes them. If we can't
+     * get them, an error response is written and the processing is stopped.
+     *
+     * @param pendingRequest The outstanding request
+     * @param respWriter The writer used to store the DSML response
+     * @param waitTime The time to wait for the response of a request which is not a search, in ms
+     */
+    private void writePendingResponse( PendingRequest pendingRequest, BufferedWriter respWriter, long waitTime )
+        throws IOException
+    {
+        try
+        {
+            writePendingResponse( pendingRequest.request, pendingRequest.future, respWriter, waitTime );
+        }
+        catch ( IOException ioe )
+        {
+            throw ioe;
+        }
+        catch ( Exception e )
+        {
+            LOG.warn( "Failed to process request", e );
+
+            // We create a new ErrorResponse and return the XML response.
+            ErrorResponse errorResponse = new ErrorResponse( pendingRequest.request.getDecorated().getMessageId(),
+                ErrorResponseType.GATEWAY_INTERNAL_ERROR, I18n.err(
+                    I18n.ERR_03003, e.getMessage() ) );
+
+            if ( respWriter != null )
+            {
+                writeResponse( respWriter, errorResponse );
+            }
+            else
+            {
+                batchResponse.addResponse( errorResponse );
+            }
+
             exit = true;
         }
     }
 
 
+    private void writePendingResponse( DsmlDecorator<? extends Request> request,
+        ResponseFuture<? extends Response> future, BufferedWriter respWriter, long waitTime ) throws Exception
+    {
+        ResultCodeEnum resultCode;
+
+        if ( request.getDecorated().getType() == MessageTypeEnum.SEARCH_REQUEST )
+        {
+            SearchCursor searchResponses = new SearchCursorImpl( ( SearchFuture ) future, timeout,
+                TimeUnit.MILLISECONDS );
+            resultCode = writeSearchResponses( request, searchResponses, respWriter );
+        }
+        else
+        {
+            Response response = future.get( waitTime, TimeUnit.MILLISECONDS );
+
+            if ( response == null )
+            {
+                // We didn't receive anything : this is an error
+                future.cancel( true );
+
+                throw new LdapException( "TimeOut occurred" );
+            }
+
+            resultCode = ( ( ResultResponse ) response ).getLdapResult().getResultCode();
+            writeResponse( respWriter, toDsml( response ) );
+        }
+
+        checkResultCode( resultCode );
+    }
+
+
+    /**
+     * Decorates a response
+     */
+    private DsmlDecorator<?> toDsml( Response response )
+    {
+        LdapApiService codec = connection.getCodecService();
+
+        switch ( response.getType() )
+        {
+            case ADD_RESPONSE:
+                return new AddResponseDsml( codec, ( AddResponse ) response );
+
+            case COMPARE_RESPONSE:
+                return new CompareResponseDsml( codec, ( CompareResponse ) response );
+
+            case DEL_RESPONSE:
+                return new DelResponseDsml( codec, ( DeleteResponse ) response );
+
+            case MODIFY_RESPONSE:
+                return new ModifyResponseDsml( codec, ( ModifyResponse ) response );
+
+            case MODIFYDN_RESPONSE:
+                return new ModDNResponseDsml( codec, ( ModifyDnResponse ) response );
+
+            default:
+                throw new IllegalStateException( "Unexpected response type " + response.getType() );
+        }
+    }
+
+
+    /**
+     * Writes the responses of a search request
+     *
+     * @param request the search request
+     * @param searchResponses The cursor on the search responses
+     * @param respWriter The writer used to store the DSML response
+     * @return The search result code, or null if there is no SearchResultDone
+     * @exception Exception If we had an error while reading or writing the responses
+     */
+    private ResultCodeEnum writeSearchResponses( DsmlDecorator<? extends Request> request,
+        SearchCursor searchResponses, BufferedWriter respWriter ) throws Exception
+    {
+        ResultCodeEnum resultCode = null;
+
+        if ( respWriter != null )
+        {
+            // Each response is written as soon as it's received, and then forgotten
+            Dsmlv2ResponseWriter responseWriter = new Dsmlv2ResponseWriter( connection.getCodecService(),
+                respWriter );
+            responseWriter.startSearchResponse( request.getDecorated().getMessageId() );
+
+            while ( searchResponses.next() )
+            {
+                responseWriter.write( searchResponses.get() );
+            }
+
+            SearchResultDone srDone = searchResponses.getSearchResultDone();
+
+            if ( srDone != null )
+            {
+                resultCode = srDone.getLdapResult().getResultCode();
+
+                responseWriter.write( srDone );
+                responseWriter.endSearchResponse();
+            }
+
+            return resultCode;
+        }
+
+        SearchResponseDsml searchResponseDsml = new SearchResponseDsml( connection.getCodecService() );
+
+        while ( searchResponses.next() )
+        {
+            Response searchResponse = searchResponses.get();
+
+            if ( searchResponse.getType() == MessageTypeEnum.SEARCH_RESULT_ENTRY )
+            {
+                searchResponseDsml.addResponse( new SearchResultEntryDsml( connection.getCodecService(),
+                    ( SearchResultEntry ) searchResponse ) );
+            }
+            else if ( searchResponse.getType() == MessageTypeEnum.SEARCH_RESULT_REFERENCE )
+            {
+                searchResponseDsml.addResponse( new SearchResultReferenceDsml( connection.getCodecService(),
+                    ( SearchResultReference ) searchResponse ) );
+            }
+        }
+
+        SearchResultDone srDone = searchResponses.getSearchResultDone();
+
+        if ( srDone != null )
+        {
+            resultCode = srDone.getLdapResult().getResultCode();
+
+            searchResponseDsml.addResponse( new SearchResultDoneDsml( connection.getCodecService(), srDone ) );
+            batchResponse.addResponse( searchResponseDsml );
+        }
+
+        return resultCode;
+    }
+
+
     /**
      * Processes the BatchRequest
      * <ul>
@@ -806,4 +1164,24 @@ public class Dsmlv2Engine
             LOG.warn( "Error : {}", bindResponse.getLdapResult().getDiagnosticMessage() );
         }
     }
+
+
+    /**
+     * A request sent asynchronously, with the future of its response
+     */
+    private static class PendingRequest
+    {
+        /** The request */
+        private final DsmlDecorator<? extends Request> request;
+
+        /** The future of its response(s) */
+        private final ResponseFuture<? extends Response> future;
+
+
+        private PendingRequest( DsmlDecorator<? extends Request> request, ResponseFuture<? extends Response> future )
+        {
+            this.request = request;
+            this.future = future;
+        }
+    }
 }
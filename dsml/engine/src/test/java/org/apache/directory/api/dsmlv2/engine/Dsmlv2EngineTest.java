@@ -0,0 +1,375 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.directory.api.dsmlv2.engine;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.mycila.junit.concurrent.Concurrency;
+import com.mycila.junit.concurrent.ConcurrentJunitRunner;
+
+import org.apache.directory.api.ldap.codec.api.LdapApiServiceFactory;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.message.AddRequest;
+import org.apache.directory.api.ldap.model.message.AddResponse;
+import org.apache.directory.api.ldap.model.message.AddResponseImpl;
+import org.apache.directory.api.ldap.model.message.Response;
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
+import org.apache.directory.ldap.client.api.LdapAsyncConnection;
+import org.apache.directory.ldap.client.api.future.AddFuture;
+import org.apache.directory.ldap.client.api.future.ResponseFuture;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+
+/**
+ * Tests the pipelined processing of the parallel batches by the Dsmlv2Engine.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@RunWith(ConcurrentJunitRunner.class)
+@Concurrency()
+public class Dsmlv2EngineTest
+{
+    /** The pattern matching the requestID of the add and error responses */
+    private static final Pattern RESPONSE_PATTERN = Pattern
+        .compile( "<(?:addResponse|errorResponse)[^>]*requestID=\"(\\d+)\"" );
+
+
+    /**
+     * The server behaviour for an add request
+     */
+    private interface Server
+    {
+        /**
+         * Completes, now or later, the future of an add request
+         */
+        void process( int requestId, AddFuture future ) throws Exception;
+    }
+
+
+    /**
+     * Creates an authenticated connection which add requests are processed by the given server
+     */
+    private LdapAsyncConnection createConnection( final Server server ) throws Exception
+    {
+        final LdapAsyncConnection connection = mock( LdapAsyncConnection.class );
+
+        when( connection.isAuthenticated() ).thenReturn( true );
+        when( connection.getCodecService() ).thenReturn( LdapApiServiceFactory.getSingleton() );
+        when( connection.addAsync( any( AddRequest.class ) ) ).thenAnswer( new Answer<AddFuture>()
+        {
+            public AddFuture answer( InvocationOnMock invocation ) throws Exception
+            {
+                int requestId = ( ( AddRequest ) invocation.getArguments()[0] ).getMessageId();
+                AddFuture future = new AddFuture( connection, requestId );
+                server.process( requestId, future );
+
+                return future;
+            }
+        } );
+
+        return connection;
+    }
+
+
+    /**
+     * Creates an add response
+     */
+    private static AddResponse addResponse( int requestId, ResultCodeEnum resultCode )
+    {
+        AddResponse response = new AddResponseImpl( requestId );
+        response.getLdapResult().setResultCode( resultCode );
+
+        return response;
+    }
+
+
+    /**
+     * Sets the response of a future after a delay
+     */
+    private static void setLater( final ResponseFuture<AddResponse> future, final AddResponse response,
+        final long delay )
+    {
+        new Thread()
+        {
+            public void run()
+            {
+                try
+                {
+                    Thread.sleep( delay );
+                    future.set( response );
+                }
+                catch ( Exception e )
+                {
+                    // Nothing to do
+                }
+            }
+        }.start();
+    }
+
+
+    /**
+     * Creates a parallel batch of add requests
+     */
+    private static String batch( String options, int nbRequests )
+    {
+        StringBuilder sb = new StringBuilder();
+
+        sb.append( "<batchRequest processing=\"parallel\" " ).append( options ).append( ">" );
+
+        for ( int i = 1; i <= nbRequests; i++ )
+        {
+            sb.append( "<addRequest requestID=\"" ).append( i ).append( "\" dn=\"cn=" ).append( i );
+            sb.append( ",dc=example,dc=com\"><attr name=\"cn\"><value>" ).append( i );
+            sb.append( "</value></attr></addRequest>" );
+        }
+
+        sb.append( "</batchRequest>" );
+
+        return sb.toString();
+    }
+
+
+    /**
+     * Gets the requestIDs of the responses, in the order they have been written
+     */
+    private static List<Integer> getResponseOrder( String dsml )
+    {
+        List<Integer> order = new ArrayList<Integer>();
+        Matcher matcher = RESPONSE_PATTERN.matcher( dsml );
+
+        while ( matcher.find() )
+        {
+            order.add( Integer.valueOf( matcher.group( 1 ) ) );
+        }
+
+        return order;
+    }
+
+
+    /**
+     * A server answering the first request after 500ms, the second one after 50ms and
+     * the other ones at once
+     */
+    private static final Server SLOW_FIRST_SERVER = new Server()
+    {
+        public void process( int requestId, AddFuture future ) throws Exception
+        {
+            AddResponse response = addResponse( requestId, ResultCodeEnum.SUCCESS );
+
+            if ( requestId == 1 )
+            {
+                setLater( future, response, 500L );
+            }
+            else if ( requestId == 2 )
+            {
+                setLater( future, response, 50L );
+            }
+            else
+            {
+                future.set( response );
+            }
+        }
+    };
+
+
+    @Test
+    public void testSequentialResponseOrder() throws Exception
+    {
+        Dsmlv2Engine engine = new Dsmlv2Engine( createConnection( SLOW_FIRST_SERVER ), "", "" );
+        engine.setMaxOutstandingRequests( 2 );
+
+        String response = engine.processDSML( batch( "responseOrder=\"sequential\"", 3 ) );
+
+        assertEquals( "[1, 2, 3]", getResponseOrder( response ).toString() );
+    }
+
+
+    @Test
+    public void testUnorderedResponseOrder() throws Exception
+    {
+        Dsmlv2Engine engine = new Dsmlv2Engine( createConnection( SLOW_FIRST_SERVER ), "", "" );
+        engine.setMaxOutstandingRequests( 2 );
+
+        // The second response is written as soon as it's received, while waiting for the first one
+        String response = engine.processDSML( batch( "responseOrder=\"unordered\"", 3 ) );
+
+        assertEquals( "[2, 3, 1]", getResponseOrder( response ).toString() );
+    }
+
+
+    @Test
+    public void testSequentialResponseOrderOnFailure() throws Exception
+    {
+        Server server = new Server()
+        {
+            public void process( int requestId, AddFuture future ) throws Exception
+            {
+                if ( requestId == 3 )
+                {
+                    throw new LdapException( "Cannot send the request" );
+                }
+
+                SLOW_FIRST_SERVER.process( requestId, future );
+            }
+        };
+
+        Dsmlv2Engine engine = new Dsmlv2Engine( createConnection( server ), "", "" );
+        engine.setMaxOutstandingRequests( 5 );
+
+        // The error response comes after the responses of the requests sent before
+        String response = engine.processDSML( batch( "responseOrder=\"sequential\"", 5 ) );
+
+        assertEquals( "[1, 2, 3]", getResponseOrder( response ).toString() );
+        assertTrue( response.contains( "gatewayInternalError" ) );
+    }
+
+
+    @Test
+    public void testMaxOutstandingRequests() throws Exception
+    {
+        final AtomicInteger sent = new AtomicInteger();
+        final AtomicInteger read = new AtomicInteger();
+        final AtomicInteger maxOutstanding = new AtomicInteger();
+
+        LdapAsyncConnection connection = mock( LdapAsyncConnection.class );
+        final LdapAsyncConnection futureConnection = connection;
+
+        when( connection.isAuthenticated() ).thenReturn( true );
+        when( connection.getCodecService() ).thenReturn( LdapApiServiceFactory.getSingleton() );
+        when( connection.addAsync( any( AddRequest.class ) ) ).thenAnswer( new Answer<AddFuture>()
+        {
+            public AddFuture answer( InvocationOnMock invocation ) throws Exception
+            {
+                int requestId = ( ( AddRequest ) invocation.getArguments()[0] ).getMessageId();
+
+                // A future counting the responses read by the engine
+                AddFuture future = new AddFuture( futureConnection, requestId )
+                {
+                    public AddResponse get( long timeout, TimeUnit unit ) throws InterruptedException,
+                        java.util.concurrent.ExecutionException, java.util.concurrent.TimeoutException
+                    {
+                        read.incrementAndGet();
+
+                        return super.get( timeout, unit );
+                    }
+                };
+
+                future.set( addResponse( requestId, ResultCodeEnum.SUCCESS ) );
+                maxOutstanding.set( Math.max( maxOutstanding.get(), sent.incrementAndGet() - read.get() ) );
+
+                return future;
+            }
+        } );
+
+        Dsmlv2Engine engine = new Dsmlv2Engine( connection, "", "" );
+        engine.setMaxOutstandingRequests( 3 );
+
+        String response = engine.processDSML( batch( "responseOrder=\"sequential\"", 10 ) );
+
+        assertEquals( "[1, 2, 3, 4, 5, 6, 7, 8, 9, 10]", getResponseOrder( response ).toString() );
+        assertEquals( 3, maxOutstanding.get() );
+    }
+
+
+    @Test
+    public void testTimeout() throws Exception
+    {
+        final List<AddFuture> futures = new ArrayList<AddFuture>();
+
+        LdapAsyncConnection connection = createConnection( new Server()
+        {
+            public void process( int requestId, AddFuture future ) throws Exception
+            {
+                futures.add( future );
+
+                // The second request is never answered
+                if ( requestId != 2 )
+                {
+                    future.set( addResponse( requestId, ResultCodeEnum.SUCCESS ) );
+                }
+            }
+        } );
+
+        Dsmlv2Engine engine = new Dsmlv2Engine( connection, "", "" );
+        engine.setMaxOutstandingRequests( 1 );
+        engine.setTimeout( 100L );
+
+        long start = System.currentTimeMillis();
+        String response = engine.processDSML( batch( "responseOrder=\"unordered\" onError=\"exit\"", 3 ) );
+
+        // The batch is stopped after the timeout
+        assertTrue( System.currentTimeMillis() - start < 5000L );
+        assertEquals( "[1, 2]", getResponseOrder( response ).toString() );
+        assertTrue( response.contains( "gatewayInternalError" ) );
+        assertTrue( futures.get( 1 ).isCancelled() );
+        verify( connection, times( 2 ) ).addAsync( any( AddRequest.class ) );
+    }
+
+
+    @Test
+    public void testStopOnError() throws Exception
+    {
+        Server server = new Server()
+        {
+            public void process( int requestId, AddFuture future ) throws Exception
+            {
+                future.set( addResponse( requestId, requestId == 2 ? ResultCodeEnum.NO_SUCH_OBJECT
+                    : ResultCodeEnum.SUCCESS ) );
+            }
+        };
+
+        // The batch stops on the second response
+        LdapAsyncConnection connection = createConnection( server );
+        Dsmlv2Engine engine = new Dsmlv2Engine( connection, "", "" );
+        engine.setMaxOutstandingRequests( 1 );
+
+        String response = engine.processDSML( batch( "responseOrder=\"sequential\" onError=\"exit\"", 3 ) );
+
+        assertEquals( "[1, 2]", getResponseOrder( response ).toString() );
+        verify( connection, times( 2 ) ).addAsync( any( AddRequest.class ) );
+
+        // Unless we resume on errors
+        connection = createConnection( server );
+        engine = new Dsmlv2Engine( connection, "", "" );
+        engine.setMaxOutstandingRequests( 1 );
+
+        response = engine.processDSML( batch( "responseOrder=\"sequential\" onError=\"resume\"", 3 ) );
+
+        assertEquals( "[1, 2, 3]", getResponseOrder( response ).toString() );
+        verify( connection, times( 3 ) ).addAsync( any( AddRequest.class ) );
+    }
+}
@@ -0,0 +1,579 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.directory.api.dsmlv2.response;
+
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collection;
+
+import org.apache.directory.api.dsmlv2.DsmlDecorator;
+import org.apache.directory.api.dsmlv2.ParserUtils;
+import org.apache.directory.api.ldap.codec.api.CodecControl;
+import org.apache.directory.api.ldap.codec.api.LdapApiService;
+import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.Value;
+import org.apache.directory.api.ldap.model.message.Control;
+import org.apache.directory.api.ldap.model.message.ExtendedResponse;
+import org.apache.directory.api.ldap.model.message.LdapResult;
+import org.apache.directory.api.ldap.model.message.Referral;
+import org.apache.directory.api.ldap.model.message.Response;
+import org.apache.directory.api.ldap.model.message.ResultResponse;
+import org.apache.directory.api.ldap.model.message.SearchResultEntry;
+import org.apache.directory.api.ldap.model.message.SearchResultReference;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.util.Strings;
+
+
+/**
+ * Writes DSMLv2 responses directly to a Writer, without building a dom4j tree.
+ * Nothing is kept once a response has been written, so a batch response of
+ * any size can be produced with a constant amount of memory. The output is
+ * the one produced by the toDsml() methods of the decorators.
+ * <br>
+ * The xsd and xsi prefixes used for the binary values are declared on the
+ * batchResponse element.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class Dsmlv2ResponseWriter
+{
+    /** The xsi:type attribute of the base64 encoded values */
+    private static final String BASE64_TYPE = " " + ParserUtils.XSI + ":type=\"" + ParserUtils.XSD + ":"
+        + ParserUtils.BASE64BINARY + "\"";
+
+    /** The writer the responses are written to */
+    private final Writer writer;
+
+    /** The ldap codec service, used to encode the controls */
+    private final LdapApiService codec;
+
+
+    /**
+     * Creates a new instance of Dsmlv2ResponseWriter.
+     *
+     * @param codec The ldap codec service
+     * @param writer The writer the responses are written to
+     */
+    public Dsmlv2ResponseWriter( LdapApiService codec, Writer writer )
+    {
+        this.codec = codec;
+        this.writer = writer;
+    }
+
+
+    /**
+     * Writes the batchResponse start tag, declaring the DSML, xsd and xsi namespaces
+     *
+     * @param requestID The batch request ID, or 0 if the batch request has none
+     * @throws IOException If the response can't be written
+     */
+    public void startBatchResponse( int requestID ) throws IOException
+    {
+        writer.write( "<batchResponse " );
+        writer.write( ParserUtils.DSML_NAMESPACE.asXML() );
+        writer.write( ' ' );
+        writer.write( ParserUtils.XSD_NAMESPACE.asXML() );
+        writer.write( ' ' );
+        writer.write( ParserUtils.XSI_NAMESPACE.asXML() );
+
+        if ( requestID != 0 )
+        {
+            writeAttribute( "requestID", Integer.toString( requestID ) );
+        }
+
+        writer.write( '>' );
+    }
+
+
+    /**
+     * Writes the batchResponse end tag
+     *
+     * @throws IOException If the response can't be written
+     */
+    public void endBatchResponse() throws IOException
+    {
+        writer.write( "</batchResponse>" );
+    }
+
+
+    /**
+     * Writes the searchResponse start tag. The search result entries, references
+     * and done are then written one by one, followed by {@link #endSearchResponse()}.
+     *
+     * @param requestID The search request ID, not written if not above 0
+     * @throws IOException If the response can't be written
+     */
+    public void startSearchResponse( int requestID ) throws IOException
+    {
+        writer.write( "<searchResponse" );
+
+        if ( requestID > 0 )
+        {
+            writeAttribute( "requestID", Integer.toString( requestID ) );
+        }
+
+        writer.write( '>' );
+    }
+
+
+    /**
+     * Writes the searchResponse end tag
+     *
+     * @throws IOException If the response can't be written
+     */
+    public void endSearchResponse() throws IOException
+    {
+        writer.write( "</searchResponse>" );
+    }
+
+
+    /**
+     * Writes a decorated response
+     *
+     * @param response The response to write
+     * @throws IOException If the response can't be written
+     */
+    public void write( DsmlDecorator<?> response ) throws IOException
+    {
+        if ( response instanceof ErrorResponse )
+        {
+            write( ( ErrorResponse ) response );
+        }
+        else if ( response instanceof SearchResponseDsml )
+        {
+            SearchResponseDsml searchResponse = ( SearchResponseDsml ) response;
+            startSearchResponse( searchResponse.getDecorated() == null ? 0 : searchResponse.getDecorated()
+                .getMessageId() );
+
+            for ( DsmlDecorator<? extends Response> searchResultResponse : searchResponse.getResponses() )
+            {
+                write( searchResultResponse );
+            }
+
+            endSearchResponse();
+        }
+        else if ( response instanceof ExtendedResponseDsml )
+        {
+            ExtendedResponseDsml extendedResponse = ( ExtendedResponseDsml ) response;
+            write( extendedResponse.getDecorated(), extendedResponse.getResponseValue() );
+        }
+        else
+        {
+            write( ( Response ) response.getDecorated() );
+        }
+    }
+
+
+    /**
+     * Writes a response
+     *
+     * @param response The response to write
+     * @throws IOException If the response can't be written
+     */
+    public void write( Response response ) throws IOException
+    {
+        switch ( response.getType() )
+        {
+            case ADD_RESPONSE:
+                writeResultResponse( "addResponse", ( ResultResponse ) response );
+                break;
+
+            case BIND_RESPONSE:
+                writeResultResponse( "authResponse", ( ResultResponse ) response );
+                break;
+
+            case COMPARE_RESPONSE:
+                writeResultResponse( "compareResponse", ( ResultResponse ) response );
+                break;
+
+            case DEL_RESPONSE:
+                writeResultResponse( "delResponse", ( ResultResponse ) response );
+                break;
+
+            case EXTENDED_RESPONSE:
+                write( ( ExtendedResponse ) response, null );
+                break;
+
+            case MODIFY_RESPONSE:
+                writeResultResponse( "modifyResponse", ( ResultResponse ) response );
+                break;
+
+            case MODIFYDN_RESPONSE:
+                writeResultResponse( "modDNResponse", ( ResultResponse ) response );
+                break;
+
+            case SEARCH_RESULT_DONE:
+                writeResultResponse( "searchResultDone", ( ResultResponse ) response );
+                break;
+
+            case SEARCH_RESULT_ENTRY:
+                write( ( SearchResultEntry ) response );
+                break;
+
+            case SEARCH_RESULT_REFERENCE:
+                write( ( SearchResultReference ) response );
+                break;
+
+            default:
+                throw new IllegalArgumentException( "Unexpected response type " + response.getType() );
+        }
+    }
+
+
+    /**
+     * Writes a search result entry
+     *
+     * @param searchResultEntry The entry to write
+     * @throws IOException If the response can't be written
+     */
+    public void write( SearchResultEntry searchResultEntry ) throws IOException
+    {
+        writer.write( "<searchResultEntry" );
+        writeAttribute( "dn", searchResultEntry.getObjectName().getName() );
+        writer.write( '>' );
+
+        for ( Attribute attribute : searchResultEntry.getEntry() )
+        {
+            writer.write( "<attr" );
+            writeAttribute( "name", attribute.getUpId() );
+            writer.write( '>' );
+
+            for ( Value<?> value : attribute )
+            {
+                writeValue( "value", value.getValue() );
+            }
+
+            writer.write( "</attr>" );
+        }
+
+        writer.write( "</searchResultEntry>" );
+    }
+
+
+    /**
+     * Writes a search result reference
+     *
+     * @param searchResultReference The reference to write
+     * @throws IOException If the response can't be written
+     */
+    public void write( SearchResultReference searchResultReference ) throws IOException
+    {
+        writer.write( "<searchResultReference>" );
+
+        for ( String url : searchResultReference.getReferral().getLdapUrls() )
+        {
+            writeElement( "ref", url );
+        }
+
+        writer.write( "</searchResultReference>" );
+    }
+
+
+    /**
+     * Writes an error response
+     *
+     * @param errorResponse The error response to write
+     * @throws IOException If the response can't be written
+     */
+    public void write( ErrorResponse errorResponse ) throws IOException
+    {
+        writer.write( "<errorResponse" );
+
+        if ( errorResponse.getRequestID() != 0 )
+        {
+            writeAttribute( "requestID", Integer.toString( errorResponse.getRequestID() ) );
+        }
+
+        writeAttribute( "type", errorResponse.getTypeDescr( errorResponse.getErrorType() ) );
+        writer.write( '>' );
+
+        String message = errorResponse.getMessage();
+
+        if ( !Strings.isEmpty( message ) )
+        {
+            writeElement( "message", message );
+        }
+
+        writer.write( "</errorResponse>" );
+    }
+
+
+    /**
+     * Flushes the underlying writer
+     *
+     * @throws IOException If the writer can't be flushed
+     */
+    public void flush() throws IOException
+    {
+        writer.flush();
+    }
+
+
+    /**
+     * Writes an extended response, with its value if any
+     */
+    private void write( ExtendedResponse extendedResponse, byte[] responseValue ) throws IOException
+    {
+        writeResultStart( "extendedResponse", extendedResponse );
+
+        String responseName = extendedResponse.getResponseName();
+
+        if ( responseName != null )
+        {
+            writeElement( "responseName", responseName );
+        }
+
+        if ( responseValue != null )
+        {
+            writeValue( "response", responseValue );
+        }
+
+        writer.write( "</extendedResponse>" );
+    }
+
+
+    /**
+     * Writes a response which only contains an LdapResult
+     */
+    private void writeResultResponse( String tag, ResultResponse response ) throws IOException
+    {
+        writeResultStart( tag, response );
+        writer.write( "</" );
+        writer.write( tag );
+        writer.write( '>' );
+    }
+
+
+    /**
+     * Writes the start tag of a response and its LdapResult
+     */
+    private void writeResultStart( String tag, ResultResponse response ) throws IOException
+    {
+        LdapResult result = response.getLdapResult();
+
+        writer.write( '<' );
+        writer.write( tag );
+
+        // RequestID
+        int requestID = response.getMessageId();
+
+        if ( requestID > 0 )
+        {
+            writeAttribute( "requestID", Integer.toString( requestID ) );
+        }
+
+        // Matched Dn
+        Dn matchedDn = result.getMatchedDn();
+
+        if ( !Dn.isNullOrEmpty( matchedDn ) )
+        {
+            writeAttribute( "matchedDN", matchedDn.getName() );
+        }
+
+        writer.write( '>' );
+
+        // Controls
+        writeControls( response.getControls().values() );
+
+        // ResultCode
+        writer.write( "<resultCode" );
+        writeAttribute( "code", Integer.toString( result.getResultCode().getResultCode() ) );
+        writeAttribute( "descr", result.getResultCode().getMessage() );
+        writer.write( "/>" );
+
+        // ErrorMessage
+        String errorMessage = result.getDiagnosticMessage();
+
+        if ( !Strings.isEmpty( errorMessage ) )
+        {
+            writeElement( "errorMessage", errorMessage );
+        }
+
+        // Referrals
+        Referral referral = result.getReferral();
+
+        if ( ( referral != null ) && ( referral.getLdapUrls() != null ) )
+        {
+            for ( String ldapUrl : referral.getLdapUrls() )
+            {
+                writeElement( "referral", ldapUrl );
+            }
+        }
+    }
+
+
+    /**
+     * Writes the controls of a response
+     */
+    private void writeControls( Collection<Control> controls ) throws IOException
+    {
+        for ( Control control : controls )
+        {
+            writer.write( "<control" );
+
+            if ( control.getOid() != null )
+            {
+                writeAttribute( "type", control.getOid() );
+            }
+
+            if ( control.isCritical() )
+            {
+                writeAttribute( "criticality", "true" );
+            }
+
+            byte[] value;
+
+            if ( control instanceof CodecControl<?> )
+            {
+                value = ( ( CodecControl<?> ) control ).getValue();
+            }
+            else
+            {
+                value = codec.newControl( control ).getValue();
+            }
+
+            if ( value != null )
+            {
+                writer.write( '>' );
+                writeValue( "controlValue", value );
+                writer.write( "</control>" );
+            }
+            else
+            {
+                writer.write( "/>" );
+            }
+        }
+    }
+
+
+    /**
+     * Writes a value, base64 encoded if needed
+     */
+    private void writeValue( String tag, Object value ) throws IOException
+    {
+        writer.write( '<' );
+        writer.write( tag );
+
+        if ( ParserUtils.needsBase64Encoding( value ) )
+        {
+            writer.write( BASE64_TYPE );
+            writer.write( '>' );
+            writer.write( ParserUtils.base64Encode( value ) );
+        }
+        else
+        {
+            writer.write( '>' );
+            writeEscaped( ( String ) value, false );
+        }
+
+        writer.write( "</" );
+        writer.write( tag );
+        writer.write( '>' );
+    }
+
+
+    /**
+     * Writes an element containing some text
+     */
+    private void writeElement( String tag, String text ) throws IOException
+    {
+        writer.write( '<' );
+        writer.write( tag );
+        writer.write( '>' );
+        writeEscaped( text, false );
+        writer.write( "</" );
+        writer.write( tag );
+        writer.write( '>' );
+    }
+
+
+    /**
+     * Writes an attribute of the current start tag
+     */
+    private void writeAttribute( String name, String value ) throws IOException
+    {
+        writer.write( ' ' );
+        writer.write( name );
+        writer.write( "=\"" );
+        writeEscaped( value, true );
+        writer.write( '"' );
+    }
+
+
+    /**
+     * Writes a text, escaping the XML special characters. The chunks which don't need to be
+     * escaped are written at once.
+     */
+    private void writeEscaped( String text, boolean inAttribute ) throws IOException
+    {
+        int start = 0;
+        int length = text.length();
+
+        for ( int i = 0; i < length; i++ )
+        {
+            String entity;
+
+            switch ( text.charAt( i ) )
+            {
+                case '<':
+                    entity = "&lt;";
+                    break;
+
+                case '>':
+                    entity = "&gt;";
+                    break;
+
+                case '&':
+                    entity = "&amp;";
+                    break;
+
+                case '"':
+                    entity = inAttribute ? "&quot;" : null;
+                    break;
+
+                case '\t':
+                    entity = inAttribute ? "&#9;" : null;
+                    break;
+
+                case '\n':
+                    entity = inAttribute ? "&#10;" : null;
+                    break;
+
+                case '\r':
+                    entity = "&#13;";
+                    break;
+
+                default:
+                    entity = null;
+                    break;
+            }
+
+            if ( entity != null )
+            {
+                writer.write( text, start, i - start );
+                writer.write( entity );
+                start = i + 1;
+            }
+        }
+
+        writer.write( text, start, length - start );
+    }
+}
@@ -87,7 +87,7 @@ public class LdapResultDsml implements DsmlDecorator<LdapResult>, LdapResult
 
         if ( !Dn.isNullOrEmpty( matchedDn ) )
         {
-            root.addAttribute( "matchedDn", matchedDn.getName() );
+            root.addAttribute( "matchedDN", matchedDn.getName() );
         }
 
         // Controls
@@ -115,8 +115,8 @@ public class LdapResultDsml implements DsmlDecorator<LdapResult>, LdapResult
             {
                 for ( String ldapUrl : ldapUrls )
                 {
-                    Element referalElement = root.addElement( "referal" );
-                    referalElement.addText( ldapUrl );
+                    Element referralElement = root.addElement( "referral" );
+                    referralElement.addText( ldapUrl );
                 }
             }
         }
@@ -140,6 +140,17 @@ public class SearchResponseDsml extends AbstractResponseDsml<Response>
     }
 
 
+    /**
+     * Gets the responses, in the order they were added.
+     *
+     * @return the search result entries, references and done of this search response
+     */
+    public List<DsmlDecorator<? extends Response>> getResponses()
+    {
+        return responses;
+    }
+
+
     /**
      * {@inheritDoc}
      */
@@ -28,6 +28,7 @@ import org.apache.directory.api.dsmlv2.authRequest.AuthRequestTest;
 import org.apache.directory.api.dsmlv2.authResponse.AuthResponseTest;
 import org.apache.directory.api.dsmlv2.batchRequest.BatchRequestTest;
 import org.apache.directory.api.dsmlv2.batchResponse.BatchResponseTest;
+import org.apache.directory.api.dsmlv2.batchResponse.Dsmlv2ResponseWriterTest;
 import org.apache.directory.api.dsmlv2.compareRequest.CompareRequestTest;
 import org.apache.directory.api.dsmlv2.compareResponse.CompareResponseTest;
 import org.apache.directory.api.dsmlv2.delRequest.DelRequestTest;
@@ -65,6 +66,7 @@ import com.mycila.junit.concurrent.ConcurrentSuite;
         AuthResponseTest.class,
         BatchRequestTest.class,
         BatchResponseTest.class,
+        Dsmlv2ResponseWriterTest.class,
         CompareRequestTest.class,
         CompareResponseTest.class,
         DelRequestTest.class,
@@ -0,0 +1,244 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ * 
+ */
+package org.apache.directory.api.dsmlv2.batchResponse;
+
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringWriter;
+import java.util.List;
+
+import org.apache.directory.api.dsmlv2.AbstractResponseTest;
+import org.apache.directory.api.dsmlv2.DsmlDecorator;
+import org.apache.directory.api.dsmlv2.Dsmlv2ResponseParser;
+import org.apache.directory.api.dsmlv2.response.AddResponseDsml;
+import org.apache.directory.api.dsmlv2.response.BatchResponseDsml;
+import org.apache.directory.api.dsmlv2.response.Dsmlv2ResponseWriter;
+import org.apache.directory.api.dsmlv2.response.ErrorResponse;
+import org.apache.directory.api.dsmlv2.response.ErrorResponse.ErrorResponseType;
+import org.apache.directory.api.dsmlv2.response.SearchResponse;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.message.AddResponse;
+import org.apache.directory.api.ldap.model.message.AddResponseImpl;
+import org.apache.directory.api.ldap.model.message.Referral;
+import org.apache.directory.api.ldap.model.message.ReferralImpl;
+import org.apache.directory.api.ldap.model.message.Response;
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
+import org.apache.directory.api.ldap.model.message.SearchResultDoneImpl;
+import org.apache.directory.api.ldap.model.message.SearchResultEntry;
+import org.apache.directory.api.ldap.model.message.SearchResultEntryImpl;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.mycila.junit.concurrent.Concurrency;
+import com.mycila.junit.concurrent.ConcurrentJunitRunner;
+
+
+/**
+ * Tests for the streaming DSMLv2 response writer : what is written must be parsed back
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@RunWith(ConcurrentJunitRunner.class)
+@Concurrency()
+public class Dsmlv2ResponseWriterTest extends AbstractResponseTest
+{
+    /**
+     * Writes the given responses in a batch response, and parses it back
+     */
+    private List<DsmlDecorator<? extends Response>> writeAndParse( Response... responses ) throws Exception
+    {
+        StringWriter out = new StringWriter();
+        Dsmlv2ResponseWriter writer = new Dsmlv2ResponseWriter( getCodec(), out );
+
+        writer.startBatchResponse( 1234 );
+
+        for ( Response response : responses )
+        {
+            if ( response instanceof SearchResultEntry )
+            {
+                writer.startSearchResponse( response.getMessageId() );
+                writer.write( response );
+                SearchResultDoneImpl done = new SearchResultDoneImpl( response.getMessageId() );
+                done.getLdapResult().setResultCode( ResultCodeEnum.SUCCESS );
+                writer.write( done );
+                writer.endSearchResponse();
+            }
+            else
+            {
+                writer.write( response );
+            }
+        }
+
+        writer.endBatchResponse();
+        writer.flush();
+
+        Dsmlv2ResponseParser parser = new Dsmlv2ResponseParser( getCodec() );
+        parser.setInput( out.toString() );
+        parser.parse();
+
+        assertEquals( 1234, parser.getBatchResponse().getRequestID() );
+
+        return parser.getBatchResponse().getResponses();
+    }
+
+
+    /**
+     * Test that an LdapResult with characters to escape is written
+     */
+    @Test
+    public void testWriteAddResponse() throws Exception
+    {
+        AddResponseImpl addResponse = new AddResponseImpl( 3 );
+        addResponse.getLdapResult().setResultCode( ResultCodeEnum.REFERRAL );
+        addResponse.getLdapResult().setMatchedDn( new Dn( "ou=a&b,dc=example,dc=com" ) );
+        addResponse.getLdapResult().setDiagnosticMessage( "<\"entry\"> & co" );
+        Referral referral = new ReferralImpl();
+        referral.addLdapUrl( "ldap://localhost:10389/dc=example,dc=com" );
+        addResponse.getLdapResult().setReferral( referral );
+
+        List<DsmlDecorator<? extends Response>> responses = writeAndParse( addResponse );
+
+        assertEquals( 1, responses.size() );
+        AddResponse parsed = ( AddResponse ) responses.get( 0 ).getDecorated();
+        assertEquals( 3, parsed.getMessageId() );
+        assertEquals( ResultCodeEnum.REFERRAL, parsed.getLdapResult().getResultCode() );
+        assertEquals( "ou=a&b,dc=example,dc=com", parsed.getLdapResult().getMatchedDn().getName() );
+        assertEquals( "<\"entry\"> & co", parsed.getLdapResult().getDiagnosticMessage() );
+        assertTrue( parsed.getLdapResult().getReferral().getLdapUrls().contains(
+            "ldap://localhost:10389/dc=example,dc=com" ) );
+    }
+
+
+    /**
+     * Test that a search result entry with text and binary values is written
+     */
+    @Test
+    public void testWriteSearchResultEntry() throws Exception
+    {
+        byte[] password = new byte[]
+            { 0x00, 0x01, ( byte ) 0xFF, 'a' };
+        Entry entry = new DefaultEntry( "cn=test,dc=example,dc=com",
+            "objectClass: top",
+            "objectClass: person",
+            "cn: test",
+            "sn: a <b> & \"c\"" );
+        entry.add( "userPassword", password );
+
+        SearchResultEntryImpl searchResultEntry = new SearchResultEntryImpl( 5 );
+        searchResultEntry.setObjectName( entry.getDn() );
+        searchResultEntry.setEntry( entry );
+
+        List<DsmlDecorator<? extends Response>> responses = writeAndParse( searchResultEntry );
+
+        assertEquals( 1, responses.size() );
+        SearchResponse searchResponse = ( SearchResponse ) responses.get( 0 ).getDecorated();
+        assertEquals( 5, searchResponse.getMessageId() );
+        assertEquals( 1, searchResponse.getSearchResultEntryList().size() );
+        assertEquals( ResultCodeEnum.SUCCESS, searchResponse.getSearchResultDone().getLdapResult().getResultCode() );
+
+        Entry parsed = searchResponse.getSearchResultEntryList().get( 0 ).getEntry();
+        assertEquals( "cn=test,dc=example,dc=com", parsed.getDn().getName() );
+        assertEquals( 2, parsed.get( "objectClass" ).size() );
+        assertTrue( parsed.contains( "sn", "a <b> & \"c\"" ) );
+        assertArrayEquals( password, parsed.get( "userPassword" ).getBytes() );
+    }
+
+
+    /**
+     * Test that an error response is written
+     */
+    @Test
+    public void testWriteErrorResponse() throws Exception
+    {
+        StringWriter out = new StringWriter();
+        Dsmlv2ResponseWriter writer = new Dsmlv2ResponseWriter( getCodec(), out );
+
+        writer.startBatchResponse( 0 );
+        writer.write( new ErrorResponse( 7, ErrorResponseType.GATEWAY_INTERNAL_ERROR, "Failed & stopped" ) );
+        writer.endBatchResponse();
+
+        Dsmlv2ResponseParser parser = new Dsmlv2ResponseParser( getCodec() );
+        parser.setInput( out.toString() );
+        parser.parse();
+
+        ErrorResponse errorResponse = ( ErrorResponse ) parser.getBatchResponse().getCurrentResponse();
+        assertEquals( 7, errorResponse.getMessageId() );
+        assertEquals( ErrorResponseType.GATEWAY_INTERNAL_ERROR, errorResponse.getErrorType() );
+        assertEquals( "Failed & stopped", errorResponse.getMessage() );
+    }
+
+
+    /**
+     * Test that the writer and the toDsml() methods produce the same requestID, matchedDN
+     * and referral
+     */
+    @Test
+    public void testWriteAsToDsml() throws Exception
+    {
+        AddResponseImpl addResponse = new AddResponseImpl( 3 );
+        addResponse.getLdapResult().setResultCode( ResultCodeEnum.REFERRAL );
+        addResponse.getLdapResult().setMatchedDn( new Dn( "ou=people,dc=example,dc=com" ) );
+        Referral referral = new ReferralImpl();
+        referral.addLdapUrl( "ldap://localhost:10389/dc=example,dc=com" );
+        addResponse.getLdapResult().setReferral( referral );
+
+        StringWriter out = new StringWriter();
+        Dsmlv2ResponseWriter writer = new Dsmlv2ResponseWriter( getCodec(), out );
+        writer.startBatchResponse( 0 );
+        writer.write( addResponse );
+        writer.endBatchResponse();
+
+        BatchResponseDsml batchResponse = new BatchResponseDsml();
+        batchResponse.addResponse( new AddResponseDsml( getCodec(), addResponse ) );
+
+        for ( String dsml : new String[]
+            { out.toString(), batchResponse.toDsml( false ) } )
+        {
+            // The batch has no requestID
+            assertFalse( dsml.matches( "(?s).*<batchResponse[^>]*requestID.*" ) );
+
+            Dsmlv2ResponseParser parser = new Dsmlv2ResponseParser( getCodec() );
+            parser.setInput( dsml );
+            parser.parse();
+
+            AddResponse parsed = ( AddResponse ) parser.getBatchResponse().getCurrentResponse().getDecorated();
+            assertEquals( 3, parsed.getMessageId() );
+            assertEquals( "ou=people,dc=example,dc=com", parsed.getLdapResult().getMatchedDn().getName() );
+            assertTrue( parsed.getLdapResult().getReferral().getLdapUrls().contains(
+                "ldap://localhost:10389/dc=example,dc=com" ) );
+        }
+
+        // Unless it has been given one
+        out = new StringWriter();
+        writer = new Dsmlv2ResponseWriter( getCodec(), out );
+        writer.startBatchResponse( 12 );
+        writer.endBatchResponse();
+        batchResponse.setRequestID( 12 );
+
+        assertTrue( out.toString().contains( "requestID=\"12\"" ) );
+        assertTrue( batchResponse.toDsml( false ).contains( "requestID=\"12\"" ) );
+    }
+}
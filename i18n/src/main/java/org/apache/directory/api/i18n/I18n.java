@@ -625,6 +625,8 @@ public enum I18n
     ERR_04485_COLLECTIVE_NOT_ALLOWED_IN_MAY("ERR_04485_COLLECTIVE_NOT_ALLOWED_IN_MAY"),
     ERR_04486_VALUE_ALREADY_EXISTS("ERR_04486_VALUE_ALREADY_EXISTS"),
     ERR_04487_ATTRIBUTE_IS_SINGLE_VALUED("ERR_04487_ATTRIBUTE_IS_SINGLE_VALUED"),
+    ERR_04488_INVALID_ESCAPED_CHAR("ERR_04488_INVALID_ESCAPED_CHAR"),
+    ERR_04489_UNEXPECTED_VALUE_CHAR("ERR_04489_UNEXPECTED_VALUE_CHAR"),
 
     // ldap-constants
     ERR_05001_UNKNOWN_AUTHENT_LEVEL("ERR_05001_UNKNOWN_AUTHENT_LEVEL"),
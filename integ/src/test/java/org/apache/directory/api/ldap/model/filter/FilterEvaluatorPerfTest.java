@@ -0,0 +1,163 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ * 
+ */
+package org.apache.directory.api.ldap.model.filter;
+
+
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.ldap.schema.manager.impl.DefaultSchemaManager;
+import org.junit.BeforeClass;
+import org.junit.Ignore;
+import org.junit.Test;
+
+
+/**
+ * Measures the throughput of the FilterEvaluator, on schema aware and on raw
+ * entries, and the cost of compiling the filter for each evaluation.
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@Ignore("Ignore performance tests: should not be with integration tests")
+public class FilterEvaluatorPerfTest
+{
+    /** The number of evaluations per run */
+    private static final int NB_ITERATIONS = 1000000;
+
+    /** The number of warmup runs */
+    private static final int NB_WARMUP = 3;
+
+    /** The measured filters */
+    private static final String[] FILTERS = new String[]
+        {
+            "(cn=john doe)",
+            "(cn=*doe*)",
+            "(&(objectClass=person)(|(sn=smith)(sn=doe))(!(uid=admin)))",
+            "(&(description=*entry*)(cn:caseExactMatch:=Johnny)(mail=*))",
+            "(createTimestamp>=20120101000000Z)"
+        };
+
+    private static SchemaManager schemaManager;
+
+    private static Entry[] entries;
+
+    private static Entry[] rawEntries;
+
+
+    @BeforeClass
+    public static void setup() throws Exception
+    {
+        schemaManager = new DefaultSchemaManager();
+        entries = new Entry[100];
+        rawEntries = new Entry[entries.length];
+
+        for ( int i = 0; i < entries.length; i++ )
+        {
+            String[] ldif = new String[]
+                {
+                    "objectClass: top",
+                    "objectClass: person",
+                    "objectClass: inetOrgPerson",
+                    "cn: John  Doe " + i,
+                    "cn: Johnny",
+                    "sn: " + ( ( i % 2 == 0 ) ? "Doe" : "Smith" ),
+                    "uid: jdoe" + i,
+                    "description: A test entry",
+                    "createTimestamp: 201203151200" + ( 10 + i % 50 ) + "Z"
+            };
+
+            String dn = "uid=jdoe" + i + ",ou=People,dc=example,dc=com";
+            entries[i] = new DefaultEntry( schemaManager, dn, ( Object[] ) ldif );
+            rawEntries[i] = new DefaultEntry( dn, ( Object[] ) ldif );
+        }
+    }
+
+
+    /**
+     * Evaluates the filter NB_ITERATIONS times, and returns the number of evaluations per second
+     */
+    private long run( String filter, Entry[] entries, boolean compileOnce ) throws LdapException
+    {
+        FilterEvaluator evaluator = new FilterEvaluator( schemaManager, filter );
+        int nbIterations = compileOnce ? NB_ITERATIONS : NB_ITERATIONS / 10;
+        int matches = 0;
+        long t0 = System.nanoTime();
+
+        for ( int i = 0; i < nbIterations; i++ )
+        {
+            if ( !compileOnce )
+            {
+                evaluator = new FilterEvaluator( schemaManager, filter );
+            }
+
+            if ( evaluator.evaluate( entries[i % entries.length] ) )
+            {
+                matches++;
+            }
+        }
+
+        long t1 = System.nanoTime();
+
+        if ( matches < 0 )
+        {
+            // Never happens, makes sure the evaluations are not optimized away
+            System.out.println( matches );
+        }
+
+        return nbIterations * 1000000000L / ( t1 - t0 );
+    }
+
+
+    private void measure( String name, Entry[] entries, boolean compileOnce ) throws LdapException
+    {
+        for ( String filter : FILTERS )
+        {
+            for ( int i = 0; i < NB_WARMUP; i++ )
+            {
+                run( filter, entries, compileOnce );
+            }
+
+            System.out.println( name + ", " + filter + " : " + run( filter, entries, compileOnce )
+                + " evaluations/s" );
+        }
+    }
+
+
+    @Test
+    public void testSchemaAwareEntries() throws LdapException
+    {
+        measure( "Schema aware entries", entries, true );
+    }
+
+
+    @Test
+    public void testRawEntries() throws LdapException
+    {
+        measure( "Raw entries", rawEntries, true );
+    }
+
+
+    @Test
+    public void testCompilePerEvaluation() throws LdapException
+    {
+        measure( "Compiled per evaluation", entries, false );
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ * 
+ */
+package org.apache.directory.api.ldap.model.filter;
+
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.exception.LdapInvalidSearchFilterException;
+import org.apache.directory.api.ldap.model.message.AliasDerefMode;
+import org.apache.directory.api.ldap.model.message.SearchScope;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.ldap.schema.manager.impl.DefaultSchemaManager;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.mycila.junit.concurrent.Concurrency;
+import com.mycila.junit.concurrent.ConcurrentJunitRunner;
+
+
+/**
+ * Test the FilterEvaluator class
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@RunWith(ConcurrentJunitRunner.class)
+@Concurrency()
+public class FilterEvaluatorTest
+{
+    private static SchemaManager schemaManager;
+
+    /** A schema aware entry */
+    private static Entry entry;
+
+    /** The same entry, without schema */
+    private static Entry rawEntry;
+
+
+    @BeforeClass
+    public static void setup() throws Exception
+    {
+        schemaManager = new DefaultSchemaManager();
+
+        // uidNumber is defined in the nis schema
+        schemaManager.enable( "nis" );
+
+        String[] ldif = new String[]
+            {
+                "objectClass: top",
+                "objectClass: person",
+                "objectClass: inetOrgPerson",
+                "cn: John  Doe",
+                "cn: Johnny",
+                "sn: Doe",
+                "uid: jdoe",
+                "uidNumber: 1000",
+                "description: A test entry",
+                "telephoneNumber: +1 408 555 1212",
+                "createTimestamp: 20120315120000Z"
+        };
+
+        entry = new DefaultEntry( schemaManager, "uid=jdoe,ou=People,dc=Example,dc=com", ( Object[] ) ldif );
+        rawEntry = new DefaultEntry( "uid=jdoe,ou=People,dc=Example,dc=com", ( Object[] ) ldif );
+    }
+
+
+    private static boolean matches( String filter ) throws LdapException
+    {
+        FilterEvaluator evaluator = new FilterEvaluator( schemaManager, filter );
+        boolean result = evaluator.evaluate( entry );
+
+        // The result must not depend on the entry being schema aware
+        if ( result != evaluator.evaluate( rawEntry ) )
+        {
+            throw new AssertionError( "Schema aware and raw entries evaluate differently for " + filter );
+        }
+
+        return result;
+    }
+
+
+    @Test
+    public void testPresence() throws LdapException
+    {
+        assertTrue( matches( "(cn=*)" ) );
+        assertTrue( matches( "(CommonName=*)" ) );
+        assertFalse( matches( "(mail=*)" ) );
+        assertTrue( matches( "(objectClass=*)" ) );
+    }
+
+
+    @Test
+    public void testEquality() throws LdapException
+    {
+        assertTrue( matches( "(cn=john doe)" ) );
+        assertTrue( matches( "(cn=JOHNNY)" ) );
+        assertFalse( matches( "(cn=john)" ) );
+        assertTrue( matches( "(uidNumber=1000)" ) );
+        assertTrue( matches( "(telephoneNumber=+14085551212)" ) );
+        assertTrue( matches( "(objectClass=Person)" ) );
+        assertTrue( matches( "(objectClass=2.5.6.6)" ) );
+        assertFalse( matches( "(objectClass=organizationalUnit)" ) );
+        assertTrue( matches( "(cn~=johnny)" ) );
+    }
+
+
+    @Test
+    public void testSubtypes() throws LdapException
+    {
+        // cn and sn are subtypes of name
+        assertTrue( matches( "(name=doe)" ) );
+        assertTrue( matches( "(name=johnny)" ) );
+        assertFalse( matches( "(name=jdoe)" ) );
+    }
+
+
+    @Test
+    public void testOrdering() throws LdapException
+    {
+        assertTrue( matches( "(createTimestamp>=20120101000000Z)" ) );
+        assertTrue( matches( "(createTimestamp>=20120315120000Z)" ) );
+        assertFalse( matches( "(createTimestamp>=20120316000000Z)" ) );
+        assertTrue( matches( "(createTimestamp<=20120315120000Z)" ) );
+        assertFalse( matches( "(createTimestamp<=20110101000000Z)" ) );
+    }
+
+
+    @Test
+    public void testSubstring() throws LdapException
+    {
+        assertTrue( matches( "(cn=jo*)" ) );
+        assertTrue( matches( "(cn=*DOE)" ) );
+        assertTrue( matches( "(cn=j*n*d*e)" ) );
+        assertFalse( matches( "(cn=j*x*)" ) );
+        assertFalse( matches( "(cn=johnny*ny)" ) );
+        assertTrue( matches( "(description=*test*)" ) );
+    }
+
+
+    @Test
+    public void testExtensible() throws LdapException
+    {
+        assertTrue( matches( "(cn:caseExactMatch:=Johnny)" ) );
+        assertFalse( matches( "(cn:caseExactMatch:=johnny)" ) );
+        assertTrue( matches( "(cn:=JOHNNY)" ) );
+        assertTrue( matches( "(:caseIgnoreMatch:=doe)" ) );
+        assertFalse( matches( "(ou:=people)" ) );
+        assertTrue( matches( "(ou:dn:=people)" ) );
+        assertTrue( matches( "(:dn:2.5.13.2:=people)" ) );
+
+        // dc is an IA5String, caseIgnoreMatch does not apply to it
+        assertFalse( matches( "(:dn:2.5.13.2:=example)" ) );
+        assertTrue( matches( "(uidNumber:integerOrderingMatch:=1001)" ) );
+        assertFalse( matches( "(uidNumber:integerOrderingMatch:=1000)" ) );
+    }
+
+
+    @Test
+    public void testBranches() throws LdapException
+    {
+        assertTrue( matches( "(&(cn=johnny)(sn=doe)(objectClass=person))" ) );
+        assertFalse( matches( "(&(cn=johnny)(sn=smith))" ) );
+        assertTrue( matches( "(|(cn=smith)(sn=doe))" ) );
+        assertFalse( matches( "(|(cn=smith)(sn=smith))" ) );
+        assertTrue( matches( "(!(sn=smith))" ) );
+        assertFalse( matches( "(!(sn=doe))" ) );
+        assertTrue( matches( "(&(|(uid=jdoe)(uid=other))(!(cn=x*)))" ) );
+    }
+
+
+    /**
+     * An unknown attribute is Undefined, and the negation of Undefined is Undefined
+     */
+    @Test
+    public void testUndefined() throws LdapException
+    {
+        assertFalse( matches( "(unknownAttribute=foo)" ) );
+        assertFalse( matches( "(!(unknownAttribute=foo))" ) );
+        assertFalse( matches( "(!(&(unknownAttribute=foo)(sn=doe)))" ) );
+        assertTrue( matches( "(!(&(unknownAttribute=foo)(sn=smith)))" ) );
+        assertTrue( matches( "(|(unknownAttribute=foo)(sn=doe))" ) );
+        assertFalse( matches( "(!(|(unknownAttribute=foo)(sn=smith)))" ) );
+
+        // uidNumber has no ordering rule
+        assertFalse( matches( "(uidNumber>=1)" ) );
+        assertFalse( matches( "(!(uidNumber>=1))" ) );
+    }
+
+
+    @Test
+    public void testScope() throws LdapException
+    {
+        Dn base = new Dn( schemaManager, "ou=People,dc=example,dc=com" );
+        ExprNode presence = new PresenceNode( schemaManager.getAttributeType( "cn" ) );
+
+        ExprNode oneLevel = new AndNode( new ScopeNode( AliasDerefMode.NEVER_DEREF_ALIASES, base, null,
+            SearchScope.ONELEVEL ), presence );
+        assertTrue( new FilterEvaluator( schemaManager, oneLevel ).evaluate( entry ) );
+
+        ExprNode object = new AndNode( new ScopeNode( AliasDerefMode.NEVER_DEREF_ALIASES, base, null,
+            SearchScope.OBJECT ), presence );
+        assertFalse( new FilterEvaluator( schemaManager, object ).evaluate( entry ) );
+    }
+
+
+    @Test
+    public void testEvaluatorReused() throws LdapException
+    {
+        FilterEvaluator evaluator = new FilterEvaluator( schemaManager, "(&(objectClass=person)(cn=john*))" );
+        Entry other = new DefaultEntry( schemaManager, "cn=Jane,dc=example,dc=com",
+            "objectClass: person",
+            "cn: Jane",
+            "sn: Smith" );
+
+        for ( int i = 0; i < 10; i++ )
+        {
+            assertTrue( evaluator.evaluate( entry ) );
+            assertFalse( evaluator.evaluate( other ) );
+        }
+    }
+
+
+    @Test(expected = LdapInvalidSearchFilterException.class)
+    public void testInvalidFilter() throws LdapException
+    {
+        new FilterEvaluator( schemaManager, "(cn=" );
+    }
+}
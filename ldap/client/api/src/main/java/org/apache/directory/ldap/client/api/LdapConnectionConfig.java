@@ -108,6 +108,18 @@ public class LdapConnectionConfig
     /** The Service to use internally when creating connections */
     private LdapApiService ldapApiService;
 
+    /** The number of search responses waiting to be read above which the network reads are suspended */
+    private int searchBufferHighWatermark;
+
+    /** The number of search responses waiting to be read below which the network reads are resumed */
+    private int searchBufferLowWatermark;
+
+    /** Tells if the attributes of the search result entries are decoded when they are accessed */
+    private boolean lazySearchResultEntries;
+
+    /** Tells if the attributes the searches haven't requested are skipped by the decoder */
+    private boolean filterSearchResultAttributes;
+
 
     /**
      * Creates a default LdapConnectionConfig instance
@@ -507,4 +519,100 @@ public class LdapConnectionConfig
     {
         this.ldapApiService = ldapApiService;
     }
+
+
+    /**
+     * @return the number of search responses waiting to be read above which the connection
+     * stops reading from the network. 0 means there is no limit.
+     */
+    public int getSearchBufferHighWatermark()
+    {
+        return searchBufferHighWatermark;
+    }
+
+
+    /**
+     * @return the number of search responses waiting to be read below which the connection
+     * resumes reading from the network
+     */
+    public int getSearchBufferLowWatermark()
+    {
+        return searchBufferLowWatermark;
+    }
+
+
+    /**
+     * Bounds the number of responses a search can buffer when the application reads them
+     * slower than the server sends them. When a search has buffered <code>highWatermark</code>
+     * responses, the connection stops reading from the network, until the application has
+     * read enough responses to bring the buffer down to <code>lowWatermark</code>. Note that
+     * no response at all is read while the reads are suspended, whatever the operation :
+     * an application which waits for the result of another operation sent on the same
+     * connection before reading the remaining search responses deadlocks.
+     * 
+     * @param highWatermark the number of buffered responses above which the reads are suspended,
+     * 0 to disable the limit
+     * @param lowWatermark the number of buffered responses below which the reads are resumed
+     */
+    public void setSearchBufferWatermarks( int highWatermark, int lowWatermark )
+    {
+        if ( ( highWatermark < 0 ) || ( lowWatermark < 0 )
+            || ( ( highWatermark > 0 ) && ( lowWatermark >= highWatermark ) ) )
+        {
+            throw new IllegalArgumentException( "Invalid search buffer watermarks : high = " + highWatermark + ", low = "
+                + lowWatermark );
+        }
+
+        this.searchBufferHighWatermark = highWatermark;
+        this.searchBufferLowWatermark = lowWatermark;
+    }
+
+
+    /**
+     * @return true if the attributes of the search result entries are only decoded when
+     * the application accesses them
+     */
+    public boolean isLazySearchResultEntries()
+    {
+        return lazySearchResultEntries;
+    }
+
+
+    /**
+     * When set, the search result entries are LazyEntry instances : their attributes are
+     * kept as they have been received, and an attribute values are only decoded when this
+     * attribute is accessed. This saves the decoding of the attributes the application
+     * doesn't read. It must be set before the connection is established.
+     *
+     * @param lazySearchResultEntries true to decode the attributes lazily
+     */
+    public void setLazySearchResultEntries( boolean lazySearchResultEntries )
+    {
+        this.lazySearchResultEntries = lazySearchResultEntries;
+    }
+
+
+    /**
+     * @return true if the attributes of the returned entries which have not been requested
+     * by the search are skipped
+     */
+    public boolean isFilterSearchResultAttributes()
+    {
+        return filterSearchResultAttributes;
+    }
+
+
+    /**
+     * When set, the attributes of the search result entries which are not part of the
+     * search request attributes are skipped by the decoder : their values are neither
+     * decoded nor stored. It has no effect on the searches requesting all the user
+     * or operational attributes. Without a SchemaManager, the requested attributes must
+     * be named the way the server names them in its responses.
+     *
+     * @param filterSearchResultAttributes true to skip the attributes which have not been requested
+     */
+    public void setFilterSearchResultAttributes( boolean filterSearchResultAttributes )
+    {
+        this.filterSearchResultAttributes = filterSearchResultAttributes;
+    }
 }
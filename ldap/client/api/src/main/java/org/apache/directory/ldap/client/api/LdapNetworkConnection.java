@@ -32,9 +32,11 @@ import java.nio.channels.UnresolvedAddressException;
 import java.security.PrivilegedExceptionAction;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
@@ -291,12 +293,88 @@ public class LdapNetworkConnection extends AbstractLdapConnection implements Lda
         if ( future != null )
         {
             LOG.debug( "Removing <" + messageId + ", " + future.getClass().getName() + ">" );
+
+            if ( ( future instanceof SearchFuture ) && config.isFilterSearchResultAttributes() )
+            {
+                LdapMessageContainer<?> container = getMessageContainer();
+
+                if ( container != null )
+                {
+                    container.removeSearchResultAttributesFilter( messageId );
+                }
+            }
         }
 
         return future;
     }
 
 
+    /**
+     * @return the container used to decode the messages received on the session, if any
+     */
+    private LdapMessageContainer<?> getMessageContainer()
+    {
+        IoSession session = ldapSession;
+
+        if ( session == null )
+        {
+            return null;
+        }
+
+        return ( LdapMessageContainer<?> ) session.getAttribute( LdapDecoder.MESSAGE_CONTAINER_ATTR );
+    }
+
+
+    /**
+     * Tells the decoder to skip the attributes the search has not requested, unless it requests
+     * all the user or operational attributes. With a SchemaManager, the requested attributes are
+     * expanded to all their names and OID.
+     */
+    private void addSearchResultAttributesFilter( SearchRequest searchRequest )
+    {
+        List<String> attributes = searchRequest.getAttributes();
+        LdapMessageContainer<?> container = getMessageContainer();
+
+        if ( ( attributes == null ) || attributes.isEmpty() || ( container == null ) )
+        {
+            return;
+        }
+
+        Set<String> ids = new HashSet<String>();
+
+        for ( String attribute : attributes )
+        {
+            if ( SchemaConstants.ALL_USER_ATTRIBUTES.equals( attribute )
+                || SchemaConstants.ALL_OPERATIONAL_ATTRIBUTES.equals( attribute ) )
+            {
+                return;
+            }
+
+            if ( SchemaConstants.NO_ATTRIBUTE.equals( attribute ) )
+            {
+                continue;
+            }
+
+            ids.add( attribute );
+
+            if ( schemaManager != null )
+            {
+                int pos = attribute.indexOf( ';' );
+                AttributeType attributeType = schemaManager.getAttributeType( pos < 0 ? attribute : attribute
+                    .substring( 0, pos ) );
+
+                if ( attributeType != null )
+                {
+                    ids.add( attributeType.getOid() );
+                    ids.addAll( attributeType.getNames() );
+                }
+            }
+        }
+
+        container.addSearchResultAttributesFilter( searchRequest.getMessageId(), ids );
+    }
+
+
     private ResponseFuture<? extends Response> peekFromFutureMap( int messageId )
     {
         ResponseFuture<? extends Response> future = futureMap.get( messageId );
@@ -756,8 +834,10 @@ public class LdapNetworkConnection extends AbstractLdapConnection implements Lda
                 atDetector = new SchemaBinaryAttributeDetector( schemaManager );
             }
 
-            ldapSession.setAttribute( LdapDecoder.MESSAGE_CONTAINER_ATTR,
-                new LdapMessageContainer<MessageDecorator<? extends Message>>( codec, atDetector ) );
+            LdapMessageContainer<MessageDecorator<? extends Message>> newContainer =
+                new LdapMessageContainer<MessageDecorator<? extends Message>>( codec, atDetector );
+            newContainer.setLazySearchResultEntries( config.isLazySearchResultEntries() );
+            ldapSession.setAttribute( LdapDecoder.MESSAGE_CONTAINER_ATTR, newContainer );
         }
 
         // Initialize the MessageId
@@ -1745,9 +1825,15 @@ public class LdapNetworkConnection extends AbstractLdapConnection implements Lda
 
         LOG.debug( "Sending request \n{}", searchRequest );
 
-        SearchFuture searchFuture = new SearchFuture( this, searchRequest.getMessageId() );
+        SearchFuture searchFuture = new SearchFuture( this, searchRequest.getMessageId(), ldapSession,
+            config.getSearchBufferHighWatermark(), config.getSearchBufferLowWatermark() );
         addToFutureMap( searchRequest.getMessageId(), searchFuture );
 
+        if ( config.isFilterSearchResultAttributes() )
+        {
+            addSearchResultAttributesFilter( searchRequest );
+        }
+
         // Send the request to the server
         writeRequest( searchRequest );
 
@@ -3520,9 +3606,11 @@ public class LdapNetworkConnection extends AbstractLdapConnection implements Lda
             this.schemaManager = schemaManager;
 
             // Change the container's BinaryDetector
-            ldapSession.setAttribute( LdapDecoder.MESSAGE_CONTAINER_ATTR,
+            LdapMessageContainer<MessageDecorator<? extends Message>> container =
                 new LdapMessageContainer<MessageDecorator<? extends Message>>( codec,
-                    new SchemaBinaryAttributeDetector( schemaManager ) ) );
+                    new SchemaBinaryAttributeDetector( schemaManager ) );
+            container.setLazySearchResultEntries( config.isLazySearchResultEntries() );
+            ldapSession.setAttribute( LdapDecoder.MESSAGE_CONTAINER_ATTR, container );
 
         }
         catch ( LdapException le )
@@ -3745,6 +3833,7 @@ public class LdapNetworkConnection extends AbstractLdapConnection implements Lda
         LdapMessageContainer<? extends MessageDecorator<Message>> ldapMessageContainer =
             new LdapMessageContainer<MessageDecorator<Message>>(
                 codec, config.getBinaryAttributeDetector() );
+        ldapMessageContainer.setLazySearchResultEntries( config.isLazySearchResultEntries() );
 
         session.setAttribute( LdapDecoder.MESSAGE_CONTAINER_ATTR, ldapMessageContainer );
     }
@@ -4026,6 +4115,8 @@ public class LdapNetworkConnection extends AbstractLdapConnection implements Lda
                     bindRequest.setMessageId( newId );
                     bindRequest.setCredentials( response );
 
+                    // A BindFuture only holds one response : use a new one for each step
+                    bindFuture = new BindFuture( this, newId );
                     addToFutureMap( newId, bindFuture );
 
                     writeRequest( bindRequest );
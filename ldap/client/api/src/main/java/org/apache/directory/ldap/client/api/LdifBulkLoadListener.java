@@ -0,0 +1,55 @@
+/*
+ *   Licensed to the Apache Software Foundation (ASF) under one
+ *   or more contributor license agreements.  See the NOTICE file
+ *   distributed with this work for additional information
+ *   regarding copyright ownership.  The ASF licenses this file
+ *   to you under the Apache License, Version 2.0 (the
+ *   "License"); you may not use this file except in compliance
+ *   with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ *
+ */
+package org.apache.directory.ldap.client.api;
+
+
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.ldif.LdifEntry;
+import org.apache.directory.api.ldap.model.message.ResultResponse;
+
+
+/**
+ * A listener notified by a {@link LdifBulkLoader} of the result of each LDIF entry.
+ * The notifications are done in the LDIF entries order, in the thread calling the
+ * load() method.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public interface LdifBulkLoadListener
+{
+    /**
+     * Called when an entry has been successfully processed by the server
+     *
+     * @param entry The LDIF entry
+     * @param response The server response
+     */
+    void entryLoaded( LdifEntry entry, ResultResponse response );
+
+
+    /**
+     * Called when an entry has not been processed, either because the server has
+     * returned an error, or because the request could not be sent or has timed out
+     *
+     * @param entry The LDIF entry
+     * @param response The server response, or null if no response has been received
+     * @param cause The exception associated with the failure
+     */
+    void entryFailed( LdifEntry entry, ResultResponse response, LdapException cause );
+}
@@ -0,0 +1,618 @@
+/*
+ *   Licensed to the Apache Software Foundation (ASF) under one
+ *   or more contributor license agreements.  See the NOTICE file
+ *   distributed with this work for additional information
+ *   regarding copyright ownership.  The ASF licenses this file
+ *   to you under the Apache License, Version 2.0 (the
+ *   "License"); you may not use this file except in compliance
+ *   with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ *
+ */
+package org.apache.directory.ldap.client.api;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.directory.api.ldap.model.entry.Modification;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.ldif.LdapLdifException;
+import org.apache.directory.api.ldap.model.ldif.LdifControl;
+import org.apache.directory.api.ldap.model.ldif.LdifEntry;
+import org.apache.directory.api.ldap.model.ldif.LdifReader;
+import org.apache.directory.api.ldap.model.message.AddRequest;
+import org.apache.directory.api.ldap.model.message.AddRequestImpl;
+import org.apache.directory.api.ldap.model.message.DeleteRequest;
+import org.apache.directory.api.ldap.model.message.DeleteRequestImpl;
+import org.apache.directory.api.ldap.model.message.ModifyDnRequest;
+import org.apache.directory.api.ldap.model.message.ModifyDnRequestImpl;
+import org.apache.directory.api.ldap.model.message.ModifyRequest;
+import org.apache.directory.api.ldap.model.message.ModifyRequestImpl;
+import org.apache.directory.api.ldap.model.message.Request;
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
+import org.apache.directory.api.ldap.model.message.ResultResponse;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.name.Rdn;
+import org.apache.directory.api.util.Strings;
+import org.apache.directory.ldap.client.api.future.ResponseFuture;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Loads LDIF entries into a server, using the asynchronous operations of a
+ * {@link LdapAsyncConnection}. Up to windowSize requests are sent without waiting
+ * for their responses, so that loading an entry does not cost a full round trip.
+ * <p>
+ * The LDIF entries can be content entries, which are added, or changes of any type.
+ * The order of the operations on related entries is preserved :
+ * <ul>
+ * <li>an entry is not added or modified before the pending operations on itself
+ * and on its ancestors have completed</li>
+ * <li>an entry is not deleted before the pending operations on itself, on its
+ * ancestors and on its descendants have completed</li>
+ * <li>a moddn or a modrdn is sent once all the pending operations have completed,
+ * and its response is waited for before sending anything else</li>
+ * </ul>
+ * The responses are processed in the LDIF entries order. A failed entry is reported to the
+ * {@link LdifBulkLoadListener}, if any, and the load goes on with the next entries.
+ * The load is only stopped when the connection is lost.
+ * <p>
+ * The Dns are compared case insensitively, as the LDIF entries are not schema aware :
+ * two entries whose names only differ by the case of a value are considered as related.
+ * This may only delay some requests, while a case sensitive comparison would allow an
+ * entry to be sent before a pending add of its parent.
+ * <p>
+ * This class is not thread safe.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class LdifBulkLoader
+{
+    /** The logger */
+    private static final Logger LOG = LoggerFactory.getLogger( LdifBulkLoader.class );
+
+    /** The default maximum number of pending requests */
+    public static final int DEFAULT_WINDOW_SIZE = 64;
+
+    /** The delay between two checks of the connection while waiting for a response, in milliseconds */
+    private static final long CONNECTION_CHECK_INTERVAL = 100L;
+
+    /** The connection */
+    private final LdapAsyncConnection connection;
+
+    /** The maximum number of pending requests */
+    private int windowSize = DEFAULT_WINDOW_SIZE;
+
+    /** The time to wait for a response, in milliseconds */
+    private long timeout = LdapConnectionConfig.DEFAULT_TIMEOUT;
+
+    /** The listener notified of each entry result, if any */
+    private LdifBulkLoadListener listener;
+
+    /** The number of entries successfully loaded by the last load */
+    private long loadedCount;
+
+    /** The number of entries which have failed in the last load */
+    private long failedCount;
+
+    /** The pending requests, in the order they have been sent */
+    private final LinkedList<PendingRequest> pendingRequests = new LinkedList<PendingRequest>();
+
+    /** The last pending request for each lower cased normalized Dn */
+    private final Map<String, PendingRequest> pendingDns = new HashMap<String, PendingRequest>();
+
+    /**
+     * A request which has been sent, and its associated LDIF entry
+     */
+    private static final class PendingRequest
+    {
+        /** The LDIF entry */
+        private final LdifEntry entry;
+
+        /** The lower cased normalized Dn of the entry */
+        private final String normName;
+
+        /** The future used to get the response */
+        private final ResponseFuture<? extends ResultResponse> future;
+
+        /** The request message ID, used to abandon it */
+        private final int messageId;
+
+
+        private PendingRequest( LdifEntry entry, ResponseFuture<? extends ResultResponse> future, int messageId )
+        {
+            this.entry = entry;
+            this.normName = getDependencyName( entry.getDn() );
+            this.future = future;
+            this.messageId = messageId;
+        }
+    }
+
+
+    /**
+     * Creates a new instance of LdifBulkLoader.
+     *
+     * @param connection The connection used to send the requests, which must be bound
+     */
+    public LdifBulkLoader( LdapAsyncConnection connection )
+    {
+        this.connection = connection;
+    }
+
+
+    /**
+     * @return The maximum number of pending requests
+     */
+    public int getWindowSize()
+    {
+        return windowSize;
+    }
+
+
+    /**
+     * Sets the maximum number of requests sent without waiting for their response.
+     * A window size of 1 is equivalent to loading the entries with synchronous operations.
+     *
+     * @param windowSize The maximum number of pending requests
+     */
+    public void setWindowSize( int windowSize )
+    {
+        if ( windowSize < 1 )
+        {
+            throw new IllegalArgumentException( "The window size must be positive" );
+        }
+
+        this.windowSize = windowSize;
+    }
+
+
+    /**
+     * @return The time to wait for a response, in milliseconds
+     */
+    public long getTimeout()
+    {
+        return timeout;
+    }
+
+
+    /**
+     * Sets the time to wait for a response. A request which has no response after
+     * this delay is abandoned, and its entry is reported as failed.
+     *
+     * @param timeout The timeout, in milliseconds
+     */
+    public void setTimeout( long timeout )
+    {
+        this.timeout = timeout;
+    }
+
+
+    /**
+     * @param listener The listener notified of the result of each entry
+     */
+    public void setListener( LdifBulkLoadListener listener )
+    {
+        this.listener = listener;
+    }
+
+
+    /**
+     * @return The number of entries successfully loaded by the last load
+     */
+    public long getLoadedCount()
+    {
+        return loadedCount;
+    }
+
+
+    /**
+     * @return The number of entries which have failed in the last load
+     */
+    public long getFailedCount()
+    {
+        return failedCount;
+    }
+
+
+    /**
+     * Loads the entries of a LDIF file.
+     *
+     * @param ldif The LDIF file
+     * @throws LdapException If the LDIF file can't be parsed, or if the connection is lost
+     */
+    public void load( File ldif ) throws LdapException
+    {
+        LdifReader reader = new LdifReader( ldif );
+
+        try
+        {
+            load( reader );
+
+            if ( reader.hasError() )
+            {
+                throw new LdapLdifException( reader.getError().getMessage(), reader.getError() );
+            }
+        }
+        finally
+        {
+            try
+            {
+                reader.close();
+            }
+            catch ( IOException ioe )
+            {
+                LOG.warn( "Cannot close the LDIF file {}", ldif, ioe );
+            }
+        }
+    }
+
+
+    /**
+     * Loads some LDIF entries. This method returns once all the entries have been
+     * processed.
+     *
+     * @param entries The LDIF entries, which can be a {@link LdifReader}
+     * @throws LdapException If the connection is lost
+     */
+    public void load( Iterable<LdifEntry> entries ) throws LdapException
+    {
+        loadedCount = 0;
+        failedCount = 0;
+
+        try
+        {
+            for ( LdifEntry entry : entries )
+            {
+                load( entry );
+            }
+        }
+        finally
+        {
+            waitFor( pendingRequests.size() );
+        }
+    }
+
+
+    /**
+     * Sends the request associated with a LDIF entry, once the pending requests it
+     * depends on have completed.
+     */
+    private void load( LdifEntry entry ) throws LdapException
+    {
+        Dn dn = entry.getDn();
+
+        switch ( entry.getChangeType() )
+        {
+            case ModDn:
+            case ModRdn:
+                waitFor( pendingRequests.size() );
+                break;
+
+            case Delete:
+                waitForDescendants( dn );
+                waitForAncestors( dn );
+                break;
+
+            default:
+                waitForAncestors( dn );
+                break;
+        }
+
+        if ( pendingRequests.size() >= windowSize )
+        {
+            waitFor( pendingRequests.size() - windowSize + 1 );
+        }
+
+        PendingRequest pendingRequest;
+
+        try
+        {
+            pendingRequest = send( entry );
+        }
+        catch ( LdapException le )
+        {
+            failed( entry, null, le );
+
+            if ( !connection.isConnected() )
+            {
+                throw le;
+            }
+
+            return;
+        }
+
+        pendingRequests.add( pendingRequest );
+        pendingDns.put( pendingRequest.normName, pendingRequest );
+
+        if ( entry.isChangeModDn() || entry.isChangeModRdn() )
+        {
+            waitFor( 1 );
+        }
+    }
+
+
+    /**
+     * Creates the request associated with a LDIF entry, and sends it
+     */
+    private PendingRequest send( LdifEntry entry ) throws LdapException
+    {
+        Request request;
+        ResponseFuture<? extends ResultResponse> future;
+
+        switch ( entry.getChangeType() )
+        {
+            case Delete:
+                DeleteRequest deleteRequest = new DeleteRequestImpl();
+                deleteRequest.setName( entry.getDn() );
+                addControls( entry, deleteRequest );
+                request = deleteRequest;
+                future = connection.deleteAsync( deleteRequest );
+                break;
+
+            case Modify:
+                ModifyRequest modifyRequest = new ModifyRequestImpl();
+                modifyRequest.setName( entry.getDn() );
+
+                for ( Modification modification : entry.getModifications() )
+                {
+                    modifyRequest.addModification( modification );
+                }
+
+                addControls( entry, modifyRequest );
+                request = modifyRequest;
+                future = connection.modifyAsync( modifyRequest );
+                break;
+
+            case ModDn:
+            case ModRdn:
+                ModifyDnRequest modifyDnRequest = new ModifyDnRequestImpl();
+                modifyDnRequest.setName( entry.getDn() );
+                modifyDnRequest.setNewRdn( new Rdn( entry.getNewRdn() ) );
+                modifyDnRequest.setDeleteOldRdn( entry.isDeleteOldRdn() );
+
+                if ( !Strings.isEmpty( entry.getNewSuperior() ) )
+                {
+                    modifyDnRequest.setNewSuperior( new Dn( entry.getNewSuperior() ) );
+                }
+
+                addControls( entry, modifyDnRequest );
+                request = modifyDnRequest;
+                future = connection.modifyDnAsync( modifyDnRequest );
+                break;
+
+            default:
+                // A content entry or an added entry
+                AddRequest addRequest = new AddRequestImpl();
+                addRequest.setEntry( entry.getEntry() );
+                addControls( entry, addRequest );
+                request = addRequest;
+                future = connection.addAsync( addRequest );
+                break;
+        }
+
+        return new PendingRequest( entry, future, request.getMessageId() );
+    }
+
+
+    /**
+     * Adds the LDIF entry controls to a request
+     */
+    private static void addControls( LdifEntry entry, Request request )
+    {
+        if ( entry.hasControls() )
+        {
+            for ( LdifControl control : entry.getControls().values() )
+            {
+                request.addControl( control );
+            }
+        }
+    }
+
+
+    /**
+     * Waits for the pending requests on a Dn and on its ancestors
+     */
+    private void waitForAncestors( Dn dn )
+    {
+        Dn current = dn;
+
+        while ( ( current != null ) && !current.isEmpty() && !pendingDns.isEmpty() )
+        {
+            PendingRequest pendingRequest = pendingDns.get( getDependencyName( current ) );
+
+            if ( pendingRequest != null )
+            {
+                waitFor( pendingRequest );
+            }
+
+            current = current.getParent();
+        }
+    }
+
+
+    /**
+     * Waits for the pending requests on the descendants of a Dn
+     */
+    private void waitForDescendants( Dn dn )
+    {
+        // The normalized name of a descendant ends with the normalized name of its ancestor.
+        // An escaped comma may give a false positive, which only delays the request
+        String suffix = "," + getDependencyName( dn );
+        PendingRequest last = null;
+
+        for ( PendingRequest pendingRequest : pendingRequests )
+        {
+            if ( pendingRequest.normName.endsWith( suffix ) )
+            {
+                last = pendingRequest;
+            }
+        }
+
+        if ( last != null )
+        {
+            waitFor( last );
+        }
+    }
+
+
+    /**
+     * @return The name used to find the pending requests on a Dn, which is not case sensitive
+     */
+    private static String getDependencyName( Dn dn )
+    {
+        return Strings.lowerCase( dn.getNormName() );
+    }
+
+
+    /**
+     * Waits for all the pending requests up to the given one
+     */
+    private void waitFor( PendingRequest pendingRequest )
+    {
+        int count = pendingRequests.indexOf( pendingRequest ) + 1;
+
+        waitFor( count );
+    }
+
+
+    /**
+     * Waits for the responses of the given number of oldest pending requests
+     */
+    private void waitFor( int count )
+    {
+        for ( int i = 0; i < count; i++ )
+        {
+            PendingRequest pendingRequest = pendingRequests.removeFirst();
+
+            if ( pendingDns.get( pendingRequest.normName ) == pendingRequest )
+            {
+                pendingDns.remove( pendingRequest.normName );
+            }
+
+            complete( pendingRequest );
+        }
+    }
+
+
+    /**
+     * Gets the response of a pending request, and notifies the listener
+     */
+    private void complete( PendingRequest pendingRequest )
+    {
+        ResultResponse response = null;
+
+        try
+        {
+            response = getResponse( pendingRequest.future );
+        }
+        catch ( LdapException le )
+        {
+            failed( pendingRequest.entry, null, le );
+
+            return;
+        }
+        catch ( Exception e )
+        {
+            failed( pendingRequest.entry, null, new LdapException( e.getMessage(), e ) );
+
+            return;
+        }
+
+        if ( response == null )
+        {
+            if ( !pendingRequest.future.isCancelled() )
+            {
+                connection.abandon( pendingRequest.messageId );
+            }
+
+            failed( pendingRequest.entry, null, new LdapException( "TimeOut occurred for entry "
+                + pendingRequest.entry.getDn() ) );
+
+            return;
+        }
+
+        try
+        {
+            ResultCodeEnum.processResponse( response );
+        }
+        catch ( LdapException le )
+        {
+            failed( pendingRequest.entry, response, le );
+
+            return;
+        }
+
+        loadedCount++;
+
+        if ( listener != null )
+        {
+            listener.entryLoaded( pendingRequest.entry, response );
+        }
+    }
+
+
+    /**
+     * Waits for a response until the timeout expires. The connection is checked while waiting,
+     * so that the remaining requests don't wait for the timeout once the connection is lost.
+     *
+     * @return The response, or null if the timeout has expired
+     * @throws LdapException If the connection is lost before the response is received
+     */
+    private ResultResponse getResponse( ResponseFuture<? extends ResultResponse> future ) throws Exception
+    {
+        long deadline = System.currentTimeMillis() + timeout;
+
+        while ( true )
+        {
+            long remaining = deadline - System.currentTimeMillis();
+            boolean connected = connection.isConnected();
+            long delay = connected ? Math.max( 0L, Math.min( remaining, CONNECTION_CHECK_INTERVAL ) ) : 0L;
+            ResultResponse response = future.get( delay, TimeUnit.MILLISECONDS );
+
+            if ( response != null )
+            {
+                return response;
+            }
+
+            if ( !connected )
+            {
+                throw new LdapException( "The connection has been lost" );
+            }
+
+            if ( ( remaining <= CONNECTION_CHECK_INTERVAL ) || future.isCancelled() )
+            {
+                return null;
+            }
+        }
+    }
+
+
+    /**
+     * Counts a failed entry, and notifies the listener
+     */
+    private void failed( LdifEntry entry, ResultResponse response, LdapException cause )
+    {
+        failedCount++;
+
+        LOG.debug( "Failed to load the entry {} : {}", entry.getDn(), cause.getMessage() );
+
+        if ( listener != null )
+        {
+            listener.entryFailed( entry, response, cause );
+        }
+    }
+}
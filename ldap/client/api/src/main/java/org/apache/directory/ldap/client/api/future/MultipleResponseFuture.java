@@ -0,0 +1,136 @@
+/*
+ *   Licensed to the Apache Software Foundation (ASF) under one
+ *   or more contributor license agreements.  See the NOTICE file
+ *   distributed with this work for additional information
+ *   regarding copyright ownership.  The ASF licenses this file
+ *   to you under the Apache License, Version 2.0 (the
+ *   "License"); you may not use this file except in compliance
+ *   with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ *
+ */
+package org.apache.directory.ldap.client.api.future;
+
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.directory.api.ldap.model.message.Response;
+import org.apache.directory.ldap.client.api.LdapConnection;
+
+
+/**
+ * A Future implementation used in LdapConnection operations which may receive
+ * more than one response, like the Search or the Extended operations. The
+ * responses are stored in a queue until they are read.
+ *
+ * @param <R> The result type returned by this Future's <tt>get</tt> method
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class MultipleResponseFuture<R extends Response> extends ResponseFuture<R>
+{
+    /** the blocking queue holding LDAP responses */
+    protected BlockingQueue<R> queue;
+
+
+    /**
+     * Creates a new instance of MultipleResponseFuture.
+     *
+     * @param connection The LdapConnection used by the request
+     * @param messageId The associated message ID
+     */
+    public MultipleResponseFuture( LdapConnection connection, int messageId )
+    {
+        super( connection, messageId );
+        queue = new LinkedBlockingQueue<R>();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean cancel( boolean mayInterruptIfRunning )
+    {
+        if ( cancelled )
+        {
+            return cancelled;
+        }
+
+        super.cancel( mayInterruptIfRunning );
+
+        // then clear the queue, cause the might be some incoming messages before this abandon request
+        // hits the server
+        queue.clear();
+
+        return cancelled;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * @throws InterruptedException if the operation has been cancelled by client
+     */
+    public R get() throws InterruptedException, ExecutionException
+    {
+        return queue.take();
+    }
+
+
+    /**
+     * Add a response to the queue
+     * 
+     * @param response The received response
+     * @throws InterruptedException if the operation has been cancelled by client
+     */
+    public void set( R response ) throws InterruptedException, ExecutionException
+    {
+        queue.add( response );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * @throws InterruptedException if the operation has been cancelled by client
+     */
+    public R get( long timeout, TimeUnit unit ) throws InterruptedException, ExecutionException, TimeoutException
+    {
+        return queue.poll( timeout, unit );
+    }
+
+
+    /**
+     * This operation is not supported in this implementation of Future.
+     * 
+     * {@inheritDoc}
+     */
+    public boolean isDone()
+    {
+        throw new UnsupportedOperationException( "Operation not supported" );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder();
+
+        sb.append( "[msgId : " ).append( messageId ).append( ", " );
+        sb.append( "size : " ).append( queue.size() ).append( ", " );
+        sb.append( "Canceled :" ).append( cancelled ).append( "]" );
+
+        return sb.toString();
+    }
+}
@@ -21,10 +21,8 @@
 package org.apache.directory.ldap.client.api.future;
 
 
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
@@ -33,18 +31,20 @@ import org.apache.directory.ldap.client.api.LdapConnection;
 
 
 /**
- * A Future implementation used in LdapConnection operations.
+ * A Future implementation used in LdapConnection operations which receive
+ * a single response. The response is handed over through a volatile field,
+ * the waiting threads being blocked on the Future itself until it's set.
  *
  * @param <R> The result type returned by this Future's <tt>get</tt> method
  * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
  */
 public class ResponseFuture<R extends Response> implements Future<Response>
 {
-    /** the blocking queue holding LDAP responses */
-    protected BlockingQueue<R> queue;
+    /** The received response, null until it has been set */
+    private volatile R response;
 
     /** flag to determine if this future is cancelled */
-    protected boolean cancelled = false;
+    protected volatile boolean cancelled = false;
 
     /** If the request has been cancelled because of an exception  it will be stored here */
     protected Throwable cause;
@@ -64,7 +64,6 @@ public class ResponseFuture<R extends Response> implements Future<Response>
      */
     public ResponseFuture( LdapConnection connection, int messageId )
     {
-        queue = new LinkedBlockingQueue<R>();
         this.messageId = messageId;
         this.connection = connection;
     }
@@ -89,9 +88,9 @@ public class ResponseFuture<R extends Response> implements Future<Response>
             connection.abandon( messageId );
         }
 
-        // then clear the queue, cause the might be some incoming messages before this abandon request
+        // then forget the response, as it might have been received before this abandon request
         // hits the server
-        queue.clear();
+        response = null;
 
         return cancelled;
     }
@@ -103,21 +102,42 @@ public class ResponseFuture<R extends Response> implements Future<Response>
      */
     public R get() throws InterruptedException, ExecutionException
     {
-        R response = null;
+        R result = response;
 
-        response = queue.take();
+        if ( result != null )
+        {
+            return result;
+        }
 
-        return response;
+        synchronized ( this )
+        {
+            while ( response == null )
+            {
+                wait();
+            }
+
+            return response;
+        }
     }
 
 
     /**
-     * {@inheritDoc}
+     * Set the response, and wake up the threads waiting for it. Only the
+     * first response is kept, the following ones are ignored.
+     * 
+     * @param response The received response
      * @throws InterruptedException if the operation has been cancelled by client
      */
     public void set( R response ) throws InterruptedException, ExecutionException
     {
-        queue.add( response );
+        synchronized ( this )
+        {
+            if ( this.response == null )
+            {
+                this.response = response;
+                notifyAll();
+            }
+        }
     }
 
 
@@ -127,9 +147,26 @@ public class ResponseFuture<R extends Response> implements Future<Response>
      */
     public R get( long timeout, TimeUnit unit ) throws InterruptedException, ExecutionException, TimeoutException
     {
-        R response = queue.poll( timeout, unit );
+        R result = response;
 
-        return response;
+        if ( result != null )
+        {
+            return result;
+        }
+
+        long remaining = unit.toNanos( timeout );
+        long deadline = System.nanoTime() + remaining;
+
+        synchronized ( this )
+        {
+            while ( ( response == null ) && ( remaining > 0L ) )
+            {
+                TimeUnit.NANOSECONDS.timedWait( this, remaining );
+                remaining = deadline - System.nanoTime();
+            }
+
+            return response;
+        }
     }
 
 
@@ -143,13 +180,11 @@ public class ResponseFuture<R extends Response> implements Future<Response>
 
 
     /**
-     * This operation is not supported in this implementation of Future.
-     * 
      * {@inheritDoc}
      */
     public boolean isDone()
     {
-        throw new UnsupportedOperationException( "Operation not supported" );
+        return ( response != null ) || cancelled;
     }
 
 
@@ -191,7 +226,7 @@ public class ResponseFuture<R extends Response> implements Future<Response>
         StringBuilder sb = new StringBuilder();
 
         sb.append( "[msgId : " ).append( messageId ).append( ", " );
-        sb.append( "size : " ).append( queue.size() ).append( ", " );
+        sb.append( "done : " ).append( response != null ).append( ", " );
         sb.append( "Canceled :" ).append( cancelled ).append( "]" );
 
         return sb.toString();
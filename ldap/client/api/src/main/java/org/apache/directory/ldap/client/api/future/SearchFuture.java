@@ -26,15 +26,41 @@ import java.util.concurrent.TimeoutException;
 
 import org.apache.directory.api.ldap.model.message.Response;
 import org.apache.directory.ldap.client.api.LdapConnection;
+import org.apache.mina.core.session.AttributeKey;
+import org.apache.mina.core.session.IoSession;
 
 
 /**
  * A Future to manage SerachRequest.
+ * <p>
+ * When a high watermark is set, the future suspends the session reads once that many
+ * responses are waiting to be read. The reads are suspended for the whole connection,
+ * so the responses to the other operations sent on the same connection are not read
+ * either until the search consumer has caught up. A consumer which waits for such an
+ * operation before reading the remaining search responses deadlocks. The suspensions
+ * are counted per session : the reads are resumed once every search which suspended
+ * them has drained its buffer.
  *
  * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
  */
-public class SearchFuture extends ResponseFuture<Response>
+public class SearchFuture extends MultipleResponseFuture<Response>
 {
+    /** The session attribute counting the searches which have suspended the reads */
+    private static final AttributeKey SUSPENSIONS_KEY = new AttributeKey( SearchFuture.class, "suspensions" );
+
+    /** The session which reads are suspended when too many responses are buffered */
+    private IoSession session;
+
+    /** The number of buffered responses above which the reads are suspended. 0 if unbounded */
+    private int highWatermark;
+
+    /** The number of buffered responses below which the reads are resumed */
+    private int lowWatermark;
+
+    /** Tells if this future has suspended the session reads */
+    private boolean readSuspended = false;
+
+
     /**
      * Creates a new instance of SearchFuture.
      *
@@ -47,6 +73,66 @@ public class SearchFuture extends ResponseFuture<Response>
     }
 
 
+    /**
+     * Creates a new instance of SearchFuture which bounds the number of buffered responses :
+     * the session reads are suspended when <code>highWatermark</code> responses are waiting
+     * to be read, and resumed when the buffer gets down to <code>lowWatermark</code>.
+     *
+     * @param connection the LDAP connection
+     * @param messageId The associated messageId
+     * @param session The session to suspend
+     * @param highWatermark The number of buffered responses above which the reads are suspended,
+     * 0 for an unbounded buffer
+     * @param lowWatermark The number of buffered responses below which the reads are resumed
+     */
+    public SearchFuture( LdapConnection connection, int messageId, IoSession session, int highWatermark,
+        int lowWatermark )
+    {
+        super( connection, messageId );
+        this.session = session;
+        this.highWatermark = highWatermark;
+        this.lowWatermark = lowWatermark;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void set( Response response ) throws InterruptedException, ExecutionException
+    {
+        if ( highWatermark == 0 )
+        {
+            super.set( response );
+
+            return;
+        }
+
+        synchronized ( this )
+        {
+            super.set( response );
+
+            if ( !readSuspended && ( queue.size() >= highWatermark ) )
+            {
+                readSuspended = true;
+                suspendRead( session );
+            }
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public Response get() throws InterruptedException, ExecutionException
+    {
+        Response response = super.get();
+
+        checkResumeRead();
+
+        return response;
+    }
+
+
     /**
      * Get the SearchResponse, blocking until one is received, or until the
      * given timeout is reached. It can be either a SearchResultEntry, 
@@ -66,7 +152,112 @@ public class SearchFuture extends ResponseFuture<Response>
     public Response get( long timeout, TimeUnit unit ) throws InterruptedException, ExecutionException,
         TimeoutException
     {
-        return super.get( timeout, unit );
+        Response response = super.get( timeout, unit );
+
+        checkResumeRead();
+
+        return response;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean cancel( boolean mayInterruptIfRunning )
+    {
+        boolean result = super.cancel( mayInterruptIfRunning );
+
+        checkResumeRead();
+
+        return result;
+    }
+
+
+    /**
+     * Resume the session reads if they have been suspended by this future, and if
+     * enough responses have been read.
+     */
+    private void checkResumeRead()
+    {
+        if ( highWatermark == 0 )
+        {
+            return;
+        }
+
+        synchronized ( this )
+        {
+            if ( readSuspended && ( queue.size() <= lowWatermark ) )
+            {
+                readSuspended = false;
+                resumeRead( session );
+            }
+        }
+    }
+
+
+    /**
+     * Suspends the session reads, unless another search has already suspended them.
+     */
+    private static void suspendRead( IoSession session )
+    {
+        Suspensions suspensions = getSuspensions( session );
+
+        synchronized ( suspensions )
+        {
+            if ( suspensions.count++ == 0 )
+            {
+                session.suspendRead();
+            }
+        }
+    }
+
+
+    /**
+     * Resumes the session reads, unless another search still keeps them suspended.
+     */
+    private static void resumeRead( IoSession session )
+    {
+        Suspensions suspensions = getSuspensions( session );
+
+        synchronized ( suspensions )
+        {
+            if ( --suspensions.count == 0 )
+            {
+                session.resumeRead();
+            }
+        }
+    }
+
+
+    /**
+     * Gets the read suspensions counter stored in the session, creating it if needed.
+     */
+    private static Suspensions getSuspensions( IoSession session )
+    {
+        Suspensions suspensions = ( Suspensions ) session.getAttribute( SUSPENSIONS_KEY );
+
+        if ( suspensions == null )
+        {
+            suspensions = new Suspensions();
+            Suspensions existing = ( Suspensions ) session.setAttributeIfAbsent( SUSPENSIONS_KEY, suspensions );
+
+            if ( existing != null )
+            {
+                suspensions = existing;
+            }
+        }
+
+        return suspensions;
+    }
+
+
+    /**
+     * The number of searches which have suspended the reads of a session.
+     */
+    private static final class Suspensions
+    {
+        /** The number of searches keeping the reads suspended */
+        private int count;
     }
 
 
@@ -0,0 +1,578 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.directory.ldap.client.api;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.directory.api.ldap.model.entry.DefaultAttribute;
+import org.apache.directory.api.ldap.model.entry.ModificationOperation;
+import org.apache.directory.api.ldap.model.exception.LdapEntryAlreadyExistsException;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.ldif.ChangeType;
+import org.apache.directory.api.ldap.model.ldif.LdifEntry;
+import org.apache.directory.api.ldap.model.message.AddRequest;
+import org.apache.directory.api.ldap.model.message.AddResponse;
+import org.apache.directory.api.ldap.model.message.AddResponseImpl;
+import org.apache.directory.api.ldap.model.message.DeleteRequest;
+import org.apache.directory.api.ldap.model.message.DeleteResponse;
+import org.apache.directory.api.ldap.model.message.DeleteResponseImpl;
+import org.apache.directory.api.ldap.model.message.ModifyDnRequest;
+import org.apache.directory.api.ldap.model.message.ModifyDnResponse;
+import org.apache.directory.api.ldap.model.message.ModifyDnResponseImpl;
+import org.apache.directory.api.ldap.model.message.ModifyRequest;
+import org.apache.directory.api.ldap.model.message.ModifyResponse;
+import org.apache.directory.api.ldap.model.message.ModifyResponseImpl;
+import org.apache.directory.api.ldap.model.message.Request;
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
+import org.apache.directory.api.ldap.model.message.ResultResponse;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.ldap.client.api.future.AddFuture;
+import org.apache.directory.ldap.client.api.future.DeleteFuture;
+import org.apache.directory.ldap.client.api.future.ModifyDnFuture;
+import org.apache.directory.ldap.client.api.future.ModifyFuture;
+import org.apache.directory.ldap.client.api.future.ResponseFuture;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+
+/**
+ * Tests the LdifBulkLoader class, using a mocked connection. The requests are processed
+ * by a fake server, in the order they have been sent, when the loader waits for a response.
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class LdifBulkLoaderTest
+{
+    private LdapAsyncConnection connection;
+
+    /** The sent requests */
+    private List<Request> requests;
+
+    /** The futures of the sent requests */
+    private List<ResponseFuture<? extends ResultResponse>> futures;
+
+    /** The number of sent requests which have been processed */
+    private int processed;
+
+    /** The highest number of pending requests when a request is sent */
+    private int maxPending;
+
+    /** The Dns of the processed requests */
+    private Set<Dn> processedDns;
+
+    /** The Dns of the requests for which an error is returned */
+    private Set<Dn> errorDns;
+
+    /** The Dns of the requests which never get a response */
+    private Set<Dn> droppedDns;
+
+    /** The number of processed requests when each request has been sent */
+    private List<Integer> processedAtSend;
+
+    /** The requests sent while a request on a related entry was pending */
+    private List<Request> misordered;
+
+    private static Dn getDn( Request request )
+    {
+        if ( request instanceof AddRequest )
+        {
+            return ( ( AddRequest ) request ).getEntryDn();
+        }
+        else if ( request instanceof ModifyRequest )
+        {
+            return ( ( ModifyRequest ) request ).getName();
+        }
+        else if ( request instanceof DeleteRequest )
+        {
+            return ( ( DeleteRequest ) request ).getName();
+        }
+        else
+        {
+            return ( ( ModifyDnRequest ) request ).getName();
+        }
+    }
+
+
+    /**
+     * A fake server processing the requests
+     */
+    private void processUpTo( ResponseFuture<?> future ) throws Exception
+    {
+        int last = futures.indexOf( future );
+
+        while ( processed <= last )
+        {
+            Request request = requests.get( processed );
+            Dn dn = getDn( request );
+            ResultCodeEnum resultCode = errorDns.contains( dn ) ? ResultCodeEnum.ENTRY_ALREADY_EXISTS
+                : ResultCodeEnum.SUCCESS;
+            ResponseFuture<?> processedFuture = futures.get( processed );
+            processed++;
+            processedDns.add( dn );
+
+            if ( droppedDns.contains( dn ) )
+            {
+                continue;
+            }
+
+            int messageId = request.getMessageId();
+
+            if ( processedFuture instanceof AddFuture )
+            {
+                AddResponse response = new AddResponseImpl( messageId );
+                response.getLdapResult().setResultCode( resultCode );
+                ( ( AddFuture ) processedFuture ).set( response );
+            }
+            else if ( processedFuture instanceof ModifyFuture )
+            {
+                ModifyResponse response = new ModifyResponseImpl( messageId );
+                response.getLdapResult().setResultCode( resultCode );
+                ( ( ModifyFuture ) processedFuture ).set( response );
+            }
+            else if ( processedFuture instanceof DeleteFuture )
+            {
+                DeleteResponse response = new DeleteResponseImpl( messageId );
+                response.getLdapResult().setResultCode( resultCode );
+                ( ( DeleteFuture ) processedFuture ).set( response );
+            }
+            else
+            {
+                ModifyDnResponse response = new ModifyDnResponseImpl( messageId );
+                response.getLdapResult().setResultCode( resultCode );
+                ( ( ModifyDnFuture ) processedFuture ).set( response );
+            }
+        }
+    }
+
+
+    /**
+     * Records a sent request, and checks that no request on its ancestors, or on its
+     * descendants for a delete request, is pending
+     */
+    private void send( Request request, ResponseFuture<? extends ResultResponse> future )
+    {
+        Dn dn = getDn( request );
+
+        for ( int i = processed; i < requests.size(); i++ )
+        {
+            Dn pendingDn = getDn( requests.get( i ) );
+
+            if ( dn.isDescendantOf( pendingDn )
+                || ( ( request instanceof DeleteRequest ) && pendingDn.isDescendantOf( dn ) ) )
+            {
+                misordered.add( request );
+            }
+        }
+
+        processedAtSend.add( processed );
+        request.setMessageId( requests.size() + 1 );
+        requests.add( request );
+        futures.add( future );
+        maxPending = Math.max( maxPending, requests.size() - processed );
+    }
+
+
+    @Before
+    public void setup() throws Exception
+    {
+        requests = new ArrayList<Request>();
+        futures = new ArrayList<ResponseFuture<? extends ResultResponse>>();
+        processed = 0;
+        maxPending = 0;
+        processedDns = new HashSet<Dn>();
+        errorDns = new HashSet<Dn>();
+        droppedDns = new HashSet<Dn>();
+        processedAtSend = new ArrayList<Integer>();
+        misordered = new ArrayList<Request>();
+
+        connection = mock( LdapAsyncConnection.class );
+        when( connection.isConnected() ).thenReturn( true );
+
+        when( connection.addAsync( any( AddRequest.class ) ) ).thenAnswer( new Answer<AddFuture>()
+        {
+            public AddFuture answer( InvocationOnMock invocation ) throws Throwable
+            {
+                AddRequest request = ( AddRequest ) invocation.getArguments()[0];
+                AddFuture future = new AddFuture( connection, requests.size() + 1 )
+                {
+                    public AddResponse get( long timeout, TimeUnit unit ) throws InterruptedException,
+                        ExecutionException, TimeoutException
+                    {
+                        try
+                        {
+                            processUpTo( this );
+                        }
+                        catch ( Exception e )
+                        {
+                            throw new ExecutionException( e );
+                        }
+
+                        return super.get( timeout, unit );
+                    }
+                };
+
+                send( request, future );
+
+                return future;
+            }
+        } );
+
+        when( connection.modifyAsync( any( ModifyRequest.class ) ) ).thenAnswer( new Answer<ModifyFuture>()
+        {
+            public ModifyFuture answer( InvocationOnMock invocation ) throws Throwable
+            {
+                ModifyRequest request = ( ModifyRequest ) invocation.getArguments()[0];
+                ModifyFuture future = new ModifyFuture( connection, requests.size() + 1 )
+                {
+                    public ModifyResponse get( long timeout, TimeUnit unit ) throws InterruptedException,
+                        ExecutionException, TimeoutException
+                    {
+                        try
+                        {
+                            processUpTo( this );
+                        }
+                        catch ( Exception e )
+                        {
+                            throw new ExecutionException( e );
+                        }
+
+                        return super.get( timeout, unit );
+                    }
+                };
+
+                send( request, future );
+
+                return future;
+            }
+        } );
+
+        when( connection.deleteAsync( any( DeleteRequest.class ) ) ).thenAnswer( new Answer<DeleteFuture>()
+        {
+            public DeleteFuture answer( InvocationOnMock invocation ) throws Throwable
+            {
+                DeleteRequest request = ( DeleteRequest ) invocation.getArguments()[0];
+                DeleteFuture future = new DeleteFuture( connection, requests.size() + 1 )
+                {
+                    public DeleteResponse get( long timeout, TimeUnit unit ) throws InterruptedException,
+                        ExecutionException, TimeoutException
+                    {
+                        try
+                        {
+                            processUpTo( this );
+                        }
+                        catch ( Exception e )
+                        {
+                            throw new ExecutionException( e );
+                        }
+
+                        return super.get( timeout, unit );
+                    }
+                };
+
+                send( request, future );
+
+                return future;
+            }
+        } );
+
+        when( connection.modifyDnAsync( any( ModifyDnRequest.class ) ) ).thenAnswer( new Answer<ModifyDnFuture>()
+        {
+            public ModifyDnFuture answer( InvocationOnMock invocation ) throws Throwable
+            {
+                ModifyDnRequest request = ( ModifyDnRequest ) invocation.getArguments()[0];
+                ModifyDnFuture future = new ModifyDnFuture( connection, requests.size() + 1 )
+                {
+                    public ModifyDnResponse get( long timeout, TimeUnit unit ) throws InterruptedException,
+                        ExecutionException, TimeoutException
+                    {
+                        try
+                        {
+                            processUpTo( this );
+                        }
+                        catch ( Exception e )
+                        {
+                            throw new ExecutionException( e );
+                        }
+
+                        return super.get( timeout, unit );
+                    }
+                };
+
+                send( request, future );
+
+                return future;
+            }
+        } );
+    }
+
+
+    /**
+     * Creates a tree of entries : ou=people, and for each user, an entry and two children
+     */
+    private static List<LdifEntry> createEntries( int nbUsers ) throws Exception
+    {
+        List<LdifEntry> entries = new ArrayList<LdifEntry>();
+
+        entries.add( new LdifEntry( "ou=people,dc=example,dc=com",
+            "objectClass: organizationalUnit",
+            "ou: people" ) );
+
+        for ( int i = 0; i < nbUsers; i++ )
+        {
+            String userDn = "uid=user" + i + ",ou=people,dc=example,dc=com";
+
+            entries.add( new LdifEntry( userDn,
+                "objectClass: person",
+                "uid: user" + i,
+                "cn: User " + i,
+                "sn: " + i ) );
+
+            for ( int j = 0; j < 2; j++ )
+            {
+                entries.add( new LdifEntry( "cn=device" + j + "," + userDn,
+                    "objectClass: device",
+                    "cn: device" + j ) );
+            }
+        }
+
+        return entries;
+    }
+
+
+    @Test
+    public void testLoadPipelined() throws Exception
+    {
+        List<LdifEntry> entries = createEntries( 100 );
+        LdifBulkLoader loader = new LdifBulkLoader( connection );
+        loader.setWindowSize( 16 );
+        loader.load( entries );
+
+        assertEquals( entries.size(), requests.size() );
+        assertEquals( entries.size(), processed );
+        assertEquals( entries.size(), loader.getLoadedCount() );
+        assertEquals( 0, loader.getFailedCount() );
+
+        // The requests are pipelined, up to the window size
+        assertTrue( maxPending > 1 );
+        assertTrue( maxPending <= 16 );
+
+        // but never before their parent has been added
+        assertTrue( misordered.isEmpty() );
+    }
+
+
+    @Test
+    public void testLoadFailures() throws Exception
+    {
+        List<LdifEntry> entries = createEntries( 10 );
+        errorDns.add( new Dn( "uid=user3,ou=people,dc=example,dc=com" ) );
+        droppedDns.add( new Dn( "cn=device1,uid=user7,ou=people,dc=example,dc=com" ) );
+
+        final List<LdifEntry> loaded = new ArrayList<LdifEntry>();
+        final List<LdifEntry> failed = new ArrayList<LdifEntry>();
+        final List<ResultResponse> failedResponses = new ArrayList<ResultResponse>();
+        final List<LdapException> failedCauses = new ArrayList<LdapException>();
+
+        LdifBulkLoader loader = new LdifBulkLoader( connection );
+        loader.setTimeout( 10 );
+        loader.setListener( new LdifBulkLoadListener()
+        {
+            public void entryLoaded( LdifEntry entry, ResultResponse response )
+            {
+                loaded.add( entry );
+            }
+
+
+            public void entryFailed( LdifEntry entry, ResultResponse response, LdapException cause )
+            {
+                failed.add( entry );
+                failedResponses.add( response );
+                failedCauses.add( cause );
+            }
+        } );
+
+        loader.load( entries );
+
+        // All the entries have been sent, the failures did not stop the load
+        assertEquals( entries.size(), requests.size() );
+        assertEquals( entries.size() - 2, loader.getLoadedCount() );
+        assertEquals( 2, loader.getFailedCount() );
+        assertEquals( entries.size() - 2, loaded.size() );
+
+        assertEquals( 2, failed.size() );
+        assertEquals( "uid=user3,ou=people,dc=example,dc=com", failed.get( 0 ).getDn().getName() );
+        assertEquals( ResultCodeEnum.ENTRY_ALREADY_EXISTS, failedResponses.get( 0 ).getLdapResult().getResultCode() );
+        assertTrue( failedCauses.get( 0 ) instanceof LdapEntryAlreadyExistsException );
+
+        // The dropped request has timed out, and has been abandoned
+        assertEquals( "cn=device1,uid=user7,ou=people,dc=example,dc=com", failed.get( 1 ).getDn().getName() );
+        assertNull( failedResponses.get( 1 ) );
+        verify( connection ).abandon( anyInt() );
+    }
+
+
+    @Test
+    public void testLoadChanges() throws Exception
+    {
+        List<LdifEntry> entries = createEntries( 3 );
+
+        LdifEntry modify = new LdifEntry();
+        modify.setDn( "uid=user1,ou=people,dc=example,dc=com" );
+        modify.setChangeType( ChangeType.Modify );
+        modify.addModification( ModificationOperation.REPLACE_ATTRIBUTE, new DefaultAttribute( "sn", "Doe" ) );
+        entries.add( modify );
+
+        // The children are deleted before their parent
+        entries.add( new LdifEntry( "cn=device0,uid=user2,ou=people,dc=example,dc=com", "changetype: delete" ) );
+        entries.add( new LdifEntry( "cn=device1,uid=user2,ou=people,dc=example,dc=com", "changetype: delete" ) );
+        entries.add( new LdifEntry( "uid=user2,ou=people,dc=example,dc=com", "changetype: delete" ) );
+
+        entries.add( new LdifEntry( "uid=user0,ou=people,dc=example,dc=com",
+            "changetype: moddn",
+            "newrdn: uid=user4",
+            "deleteoldrdn: 1" ) );
+
+        entries.add( new LdifEntry( "cn=device2,uid=user4,ou=people,dc=example,dc=com",
+            "objectClass: device",
+            "cn: device2" ) );
+
+        LdifBulkLoader loader = new LdifBulkLoader( connection );
+        loader.load( entries );
+
+        assertEquals( entries.size(), requests.size() );
+        assertEquals( entries.size(), loader.getLoadedCount() );
+
+        int nb = requests.size();
+        assertTrue( requests.get( nb - 6 ) instanceof ModifyRequest );
+        assertSame( modify.getModifications().get( 0 ),
+            ( ( ModifyRequest ) requests.get( nb - 6 ) ).getModifications().iterator().next() );
+        assertTrue( requests.get( nb - 5 ) instanceof DeleteRequest );
+        assertTrue( requests.get( nb - 3 ) instanceof DeleteRequest );
+
+        // The parent is deleted once its children have been
+        assertTrue( processedDns.contains( new Dn( "cn=device0,uid=user2,ou=people,dc=example,dc=com" ) ) );
+        assertTrue( misordered.isEmpty() );
+
+        ModifyDnRequest modifyDnRequest = ( ModifyDnRequest ) requests.get( nb - 2 );
+        assertEquals( "uid=user4", modifyDnRequest.getNewRdn().getName() );
+        assertTrue( modifyDnRequest.getDeleteOldRdn() );
+        assertNull( modifyDnRequest.getNewSuperior() );
+
+        // The entry added under the renamed entry has been sent after the moddn response
+        assertTrue( requests.get( nb - 1 ) instanceof AddRequest );
+        assertEquals( Integer.valueOf( nb - 1 ), processedAtSend.get( nb - 1 ) );
+    }
+
+
+    @Test
+    public void testLoadCaseInsensitiveDns() throws Exception
+    {
+        List<LdifEntry> entries = new ArrayList<LdifEntry>();
+
+        entries.add( new LdifEntry( "ou=people,dc=example,dc=com",
+            "objectClass: organizationalUnit",
+            "ou: people" ) );
+        entries.add( new LdifEntry( "uid=user0,ou=People,dc=Example,dc=com",
+            "objectClass: person",
+            "uid: user0",
+            "cn: User 0",
+            "sn: 0" ) );
+        entries.add( new LdifEntry( "ou=PEOPLE,dc=example,dc=com", "changetype: delete" ) );
+
+        LdifBulkLoader loader = new LdifBulkLoader( connection );
+        loader.load( entries );
+
+        assertEquals( entries.size(), loader.getLoadedCount() );
+
+        // The child has been sent once its parent has been added, and the parent
+        // has been deleted once the child has been added, whatever the case of the values
+        assertEquals( Integer.valueOf( 1 ), processedAtSend.get( 1 ) );
+        assertEquals( Integer.valueOf( 2 ), processedAtSend.get( 2 ) );
+    }
+
+
+    @Test
+    public void testLoadConnectionLost() throws Exception
+    {
+        List<LdifEntry> entries = createEntries( 3 );
+        droppedDns.add( new Dn( "cn=device1,uid=user2,ou=people,dc=example,dc=com" ) );
+
+        // The connection is lost once the server has processed all the requests
+        when( connection.isConnected() ).thenAnswer( new Answer<Boolean>()
+        {
+            public Boolean answer( InvocationOnMock invocation ) throws Throwable
+            {
+                return processed < requests.size();
+            }
+        } );
+
+        final List<LdapException> failedCauses = new ArrayList<LdapException>();
+
+        LdifBulkLoader loader = new LdifBulkLoader( connection );
+        loader.setTimeout( 60000L );
+        loader.setListener( new LdifBulkLoadListener()
+        {
+            public void entryLoaded( LdifEntry entry, ResultResponse response )
+            {
+            }
+
+
+            public void entryFailed( LdifEntry entry, ResultResponse response, LdapException cause )
+            {
+                failedCauses.add( cause );
+            }
+        } );
+
+        long start = System.currentTimeMillis();
+        loader.load( entries );
+
+        // The dropped request has failed without waiting for the timeout
+        assertTrue( System.currentTimeMillis() - start < 30000L );
+        assertEquals( entries.size() - 1, loader.getLoadedCount() );
+        assertEquals( 1, loader.getFailedCount() );
+        assertEquals( "The connection has been lost", failedCauses.get( 0 ).getMessage() );
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidWindowSize()
+    {
+        new LdifBulkLoader( connection ).setWindowSize( 0 );
+    }
+}
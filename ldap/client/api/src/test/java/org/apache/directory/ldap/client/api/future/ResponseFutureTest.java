@@ -0,0 +1,226 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.directory.ldap.client.api.future;
+
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.directory.api.ldap.model.message.AddResponse;
+import org.apache.directory.api.ldap.model.message.AddResponseImpl;
+import org.apache.directory.api.ldap.model.message.Response;
+import org.apache.directory.api.ldap.model.message.SearchResultDoneImpl;
+import org.apache.directory.api.ldap.model.message.SearchResultEntryImpl;
+import org.apache.mina.core.session.IoSession;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+
+/**
+ * Tests the ResponseFuture and MultipleResponseFuture classes.
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class ResponseFutureTest
+{
+    @Test
+    public void testSingleResponseTimeout() throws Exception
+    {
+        AddFuture future = new AddFuture( null, 1 );
+
+        assertFalse( future.isDone() );
+        assertNull( future.get( 10, TimeUnit.MILLISECONDS ) );
+        assertNull( future.get( 0, TimeUnit.MILLISECONDS ) );
+    }
+
+
+    @Test
+    public void testSingleResponse() throws Exception
+    {
+        AddFuture future = new AddFuture( null, 1 );
+        AddResponse response = new AddResponseImpl( 1 );
+
+        future.set( response );
+
+        assertTrue( future.isDone() );
+        assertSame( response, future.get() );
+        assertSame( response, future.get( Long.MAX_VALUE, TimeUnit.MILLISECONDS ) );
+
+        // The first response is kept
+        future.set( new AddResponseImpl( 1 ) );
+        assertSame( response, future.get() );
+    }
+
+
+    @Test
+    public void testSingleResponseFromAnotherThread() throws Exception
+    {
+        final AddFuture future = new AddFuture( null, 1 );
+        final AddResponse response = new AddResponseImpl( 1 );
+
+        Thread thread = new Thread()
+        {
+            public void run()
+            {
+                try
+                {
+                    Thread.sleep( 50 );
+                    future.set( response );
+                }
+                catch ( Exception e )
+                {
+                    // Nothing to do
+                }
+            }
+        };
+
+        thread.start();
+
+        assertSame( response, future.get( 10, TimeUnit.SECONDS ) );
+        thread.join();
+    }
+
+
+    @Test
+    public void testMultipleResponses() throws Exception
+    {
+        SearchFuture future = new SearchFuture( null, 1 );
+        Response entry = new SearchResultEntryImpl( 1 );
+        Response done = new SearchResultDoneImpl( 1 );
+
+        assertNull( future.get( 10, TimeUnit.MILLISECONDS ) );
+
+        future.set( entry );
+        future.set( done );
+
+        assertSame( entry, future.get() );
+        assertSame( done, future.get( 10, TimeUnit.MILLISECONDS ) );
+        assertNull( future.get( 10, TimeUnit.MILLISECONDS ) );
+    }
+
+
+    /**
+     * Creates a mock session, with working attributes
+     */
+    private IoSession mockSession()
+    {
+        IoSession session = mock( IoSession.class );
+        final Map<Object, Object> attributes = new HashMap<Object, Object>();
+
+        when( session.getAttribute( any() ) ).thenAnswer( new Answer<Object>()
+        {
+            public Object answer( InvocationOnMock invocation )
+            {
+                return attributes.get( invocation.getArguments()[0] );
+            }
+        } );
+
+        when( session.setAttributeIfAbsent( any(), any() ) ).thenAnswer( new Answer<Object>()
+        {
+            public Object answer( InvocationOnMock invocation )
+            {
+                Object key = invocation.getArguments()[0];
+
+                if ( attributes.containsKey( key ) )
+                {
+                    return attributes.get( key );
+                }
+
+                attributes.put( key, invocation.getArguments()[1] );
+
+                return null;
+            }
+        } );
+
+        return session;
+    }
+
+
+    @Test
+    public void testSearchBufferWatermarks() throws Exception
+    {
+        IoSession session = mockSession();
+        SearchFuture future = new SearchFuture( null, 1, session, 3, 1 );
+
+        future.set( new SearchResultEntryImpl( 1 ) );
+        future.set( new SearchResultEntryImpl( 1 ) );
+        verify( session, never() ).suspendRead();
+
+        // The high watermark is reached : the reads are suspended once
+        future.set( new SearchResultEntryImpl( 1 ) );
+        future.set( new SearchResultDoneImpl( 1 ) );
+        verify( session, times( 1 ) ).suspendRead();
+
+        // Still above the low watermark
+        future.get();
+        future.get();
+        verify( session, never() ).resumeRead();
+
+        // The low watermark is reached : the reads are resumed
+        future.get( 10, TimeUnit.MILLISECONDS );
+        verify( session, times( 1 ) ).resumeRead();
+
+        future.get();
+        verify( session, times( 1 ) ).resumeRead();
+    }
+
+
+    @Test
+    public void testSearchBufferWatermarksConcurrentSearches() throws Exception
+    {
+        IoSession session = mockSession();
+        SearchFuture future1 = new SearchFuture( null, 1, session, 2, 0 );
+        SearchFuture future2 = new SearchFuture( null, 2, session, 2, 0 );
+
+        // Both searches reach their high watermark : the reads are suspended once
+        future1.set( new SearchResultEntryImpl( 1 ) );
+        future1.set( new SearchResultEntryImpl( 1 ) );
+        future2.set( new SearchResultEntryImpl( 2 ) );
+        future2.set( new SearchResultEntryImpl( 2 ) );
+        verify( session, times( 1 ) ).suspendRead();
+
+        // The first search is drained, the second one still keeps the reads suspended
+        future1.get();
+        future1.get();
+        verify( session, never() ).resumeRead();
+
+        // The second search can't suspend the reads again while it has not resumed them
+        future2.set( new SearchResultDoneImpl( 2 ) );
+        verify( session, times( 1 ) ).suspendRead();
+
+        future2.get();
+        future2.get();
+        future2.get();
+        verify( session, times( 1 ) ).resumeRead();
+    }
+}
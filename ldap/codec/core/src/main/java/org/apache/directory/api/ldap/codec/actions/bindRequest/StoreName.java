@@ -22,6 +22,7 @@ package org.apache.directory.api.ldap.codec.actions.bindRequest;
 
 import org.apache.directory.api.asn1.DecoderException;
 import org.apache.directory.api.asn1.ber.grammar.GrammarAction;
+import org.apache.directory.api.asn1.ber.tlv.BerValue;
 import org.apache.directory.api.asn1.ber.tlv.TLV;
 import org.apache.directory.api.ldap.codec.api.LdapMessageContainer;
 import org.apache.directory.api.ldap.codec.api.ResponseCarryingException;
@@ -81,18 +82,19 @@ public class StoreName extends GrammarAction<LdapMessageContainer<BindRequestDec
         }
         else
         {
-            byte[] nameBytes = tlv.getValue().getData();
-            String nameStr = Strings.utf8ToString( nameBytes );
+            BerValue nameValue = tlv.getValue();
 
             try
             {
                 // Testing the name as a DN
-                new Dn( nameStr );
-                bindRequestMessage.setName( nameStr );
+                Dn name = Dn.fromUtf8( nameValue.getBuffer(), nameValue.getOffset(), tlv.getLength() );
+                bindRequestMessage.setName( name.getName() );
             }
             catch ( LdapInvalidDnException ine )
             {
-                String msg = "Incorrect DN given : " + nameStr + " (" + Strings.dumpBytes( nameBytes )
+                byte[] nameBytes = nameValue.getData();
+                String msg = "Incorrect DN given : " + Strings.utf8ToString( nameBytes ) + " ("
+                    + Strings.dumpBytes( nameBytes )
                     + ") is invalid";
                 LOG.error( "{} : {}", msg, ine.getMessage() );
 
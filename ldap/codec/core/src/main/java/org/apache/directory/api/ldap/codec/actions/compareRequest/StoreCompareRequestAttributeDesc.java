@@ -30,7 +30,6 @@ import org.apache.directory.api.ldap.codec.decorators.CompareRequestDecorator;
 import org.apache.directory.api.ldap.model.message.CompareRequest;
 import org.apache.directory.api.ldap.model.message.CompareResponseImpl;
 import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
-import org.apache.directory.api.util.Strings;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -89,7 +88,7 @@ public class StoreCompareRequestAttributeDesc extends GrammarAction<LdapMessageC
                 compareRequest.getName(), null );
         }
 
-        String type = Strings.utf8ToString( tlv.getValue().getData() );
+        String type = tlv.getValue().getUtf8String();
         compareRequest.setAttributeId( type );
 
         if ( IS_DEBUG )
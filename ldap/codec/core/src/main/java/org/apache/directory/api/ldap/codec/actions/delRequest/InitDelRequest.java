@@ -22,6 +22,7 @@ package org.apache.directory.api.ldap.codec.actions.delRequest;
 
 import org.apache.directory.api.asn1.DecoderException;
 import org.apache.directory.api.asn1.ber.grammar.GrammarAction;
+import org.apache.directory.api.asn1.ber.tlv.BerValue;
 import org.apache.directory.api.asn1.ber.tlv.TLV;
 import org.apache.directory.api.i18n.I18n;
 import org.apache.directory.api.ldap.codec.api.LdapMessageContainer;
@@ -93,17 +94,17 @@ public class InitDelRequest extends GrammarAction<LdapMessageContainer<DeleteReq
         }
         else
         {
-            byte[] dnBytes = tlv.getValue().getData();
-            String dnStr = Strings.utf8ToString( dnBytes );
+            BerValue dnValue = tlv.getValue();
 
             try
             {
-                entry = new Dn( dnStr );
+                entry = Dn.fromUtf8( dnValue.getBuffer(), dnValue.getOffset(), tlv.getLength() );
             }
             catch ( LdapInvalidDnException ine )
             {
-                String msg = I18n.err( I18n.ERR_04074, dnStr, Strings.dumpBytes( dnBytes ), ine
-                    .getLocalizedMessage() );
+                byte[] dnBytes = dnValue.getData();
+                String msg = I18n.err( I18n.ERR_04074, Strings.utf8ToString( dnBytes ),
+                    Strings.dumpBytes( dnBytes ), ine.getLocalizedMessage() );
                 LOG.error( msg );
 
                 DeleteResponseImpl response = new DeleteResponseImpl( delRequest.getMessageId() );
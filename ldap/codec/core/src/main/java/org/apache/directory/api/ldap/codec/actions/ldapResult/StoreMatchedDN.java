@@ -22,6 +22,7 @@ package org.apache.directory.api.ldap.codec.actions.ldapResult;
 
 import org.apache.directory.api.asn1.DecoderException;
 import org.apache.directory.api.asn1.ber.grammar.GrammarAction;
+import org.apache.directory.api.asn1.ber.tlv.BerValue;
 import org.apache.directory.api.asn1.ber.tlv.TLV;
 import org.apache.directory.api.i18n.I18n;
 import org.apache.directory.api.ldap.codec.api.LdapMessageContainer;
@@ -98,18 +99,18 @@ public class StoreMatchedDN extends GrammarAction<LdapMessageContainer<MessageDe
                 case ALIAS_PROBLEM:
                 case INVALID_DN_SYNTAX:
                 case ALIAS_DEREFERENCING_PROBLEM:
-                    byte[] dnBytes = tlv.getValue().getData();
-                    String dnStr = Strings.utf8ToString( dnBytes );
+                    BerValue dnValue = tlv.getValue();
 
                     try
                     {
-                        matchedDn = new Dn( dnStr );
+                        matchedDn = Dn.fromUtf8( dnValue.getBuffer(), dnValue.getOffset(), tlv.getLength() );
                     }
                     catch ( LdapInvalidDnException ine )
                     {
+                        byte[] dnBytes = dnValue.getData();
                         // This is for the client side. We will never decode LdapResult on the server
-                        String msg = I18n.err( I18n.ERR_04013, dnStr, Strings.dumpBytes( dnBytes ), ine
-                            .getLocalizedMessage() );
+                        String msg = I18n.err( I18n.ERR_04013, Strings.utf8ToString( dnBytes ),
+                            Strings.dumpBytes( dnBytes ), ine.getLocalizedMessage() );
                         LOG.error( msg );
 
                         throw new DecoderException( I18n.err( I18n.ERR_04014, ine.getLocalizedMessage() ) );
@@ -22,6 +22,7 @@ package org.apache.directory.api.ldap.codec.actions.modifyDnRequest;
 
 import org.apache.directory.api.asn1.DecoderException;
 import org.apache.directory.api.asn1.ber.grammar.GrammarAction;
+import org.apache.directory.api.asn1.ber.tlv.BerValue;
 import org.apache.directory.api.asn1.ber.tlv.TLV;
 import org.apache.directory.api.i18n.I18n;
 import org.apache.directory.api.ldap.codec.api.LdapMessageContainer;
@@ -93,17 +94,18 @@ public class StoreModifyDnRequestNewRdn extends GrammarAction<LdapMessageContain
         }
         else
         {
-            byte[] dnBytes = tlv.getValue().getData();
-            String dnStr = Strings.utf8ToString( dnBytes );
+            BerValue dnValue = tlv.getValue();
 
             try
             {
-                Dn dn = new Dn( dnStr );
+                Dn dn = Dn.fromUtf8( dnValue.getBuffer(), dnValue.getOffset(), tlv.getLength() );
                 newRdn = dn.getRdn( dn.size() - 1 );
             }
             catch ( LdapInvalidDnException ine )
             {
-                String msg = "Invalid new Rdn given : " + dnStr + " (" + Strings.dumpBytes( dnBytes )
+                byte[] dnBytes = dnValue.getData();
+                String msg = "Invalid new Rdn given : " + Strings.utf8ToString( dnBytes ) + " ("
+                    + Strings.dumpBytes( dnBytes )
                     + ") is invalid";
                 LOG.error( "{} : {}", msg, ine.getMessage() );
 
@@ -22,6 +22,7 @@ package org.apache.directory.api.ldap.codec.actions.modifyDnRequest;
 
 import org.apache.directory.api.asn1.DecoderException;
 import org.apache.directory.api.asn1.ber.grammar.GrammarAction;
+import org.apache.directory.api.asn1.ber.tlv.BerValue;
 import org.apache.directory.api.asn1.ber.tlv.TLV;
 import org.apache.directory.api.i18n.I18n;
 import org.apache.directory.api.ldap.codec.api.LdapMessageContainer;
@@ -95,16 +96,16 @@ public class StoreModifyDnRequestNewSuperior extends GrammarAction<LdapMessageCo
         }
         else
         {
-            byte[] dnBytes = tlv.getValue().getData();
-            String dnStr = Strings.utf8ToString( dnBytes );
+            BerValue dnValue = tlv.getValue();
 
             try
             {
-                newSuperior = new Dn( dnStr );
+                newSuperior = Dn.fromUtf8( dnValue.getBuffer(), dnValue.getOffset(), tlv.getLength() );
             }
             catch ( LdapInvalidDnException ine )
             {
-                String msg = "Invalid new superior Dn given : " + dnStr + " ("
+                byte[] dnBytes = dnValue.getData();
+                String msg = "Invalid new superior Dn given : " + Strings.utf8ToString( dnBytes ) + " ("
                     + Strings.dumpBytes( dnBytes ) + ") is invalid";
                 LOG.error( "{} : {}", msg, ine.getMessage() );
 
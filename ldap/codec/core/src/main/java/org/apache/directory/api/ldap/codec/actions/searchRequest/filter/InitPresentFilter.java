@@ -71,7 +71,7 @@ public class InitPresentFilter extends GrammarAction<LdapMessageContainer<Search
         searchRequestDecorator.addCurrentFilter( presentFilter );
         searchRequestDecorator.setTerminalFilter( presentFilter );
 
-        String value = Strings.utf8ToString( tlv.getValue().getData() );
+        String value = tlv.getValue().getUtf8String();
 
         if ( Strings.isEmpty( value ) )
         {
@@ -80,7 +80,7 @@ public class InitPresentFilter extends GrammarAction<LdapMessageContainer<Search
         else
         {
             // Store the value.
-            String type = Strings.utf8ToString( tlv.getValue().getData() );
+            String type = tlv.getValue().getUtf8String();
             presentFilter.setAttributeDescription( type );
         }
 
@@ -22,12 +22,13 @@ package org.apache.directory.api.ldap.codec.actions.searchResultEntry;
 
 import org.apache.directory.api.asn1.DecoderException;
 import org.apache.directory.api.asn1.ber.grammar.GrammarAction;
+import org.apache.directory.api.asn1.ber.tlv.BerValue;
 import org.apache.directory.api.asn1.ber.tlv.TLV;
 import org.apache.directory.api.i18n.I18n;
+import org.apache.directory.api.ldap.codec.api.AttributeDictionary;
 import org.apache.directory.api.ldap.codec.api.LdapMessageContainer;
 import org.apache.directory.api.ldap.codec.decorators.SearchResultEntryDecorator;
 import org.apache.directory.api.ldap.model.exception.LdapException;
-import org.apache.directory.api.util.Strings;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -82,15 +83,33 @@ public class AddAttributeType extends GrammarAction<LdapMessageContainer<SearchR
         }
         else
         {
+            // Resolve the type once per connection, from the received bytes
+            BerValue value = tlv.getValue();
+            AttributeDictionary.Descriptor descriptor = container.getAttributeDictionary().get( value.getBuffer(),
+                value.getOffset(), tlv.getLength() );
+
             try
             {
-                searchResultEntry.addAttribute( tlv.getValue().getData() );
+                if ( container.hasSearchResultAttributesFilter()
+                    && container.isSearchResultAttributeSkipped( descriptor.getId() ) )
+                {
+                    // The attribute hasn't been requested, its values won't be read
+                    searchResultEntry.skipAttribute();
+                    container.setSkippingValues( true );
+                }
+                else if ( container.isLazySearchResultEntries() )
+                {
+                    searchResultEntry.addRawAttribute( descriptor.getId(), descriptor.isBinary() );
+                }
+                else
+                {
+                    searchResultEntry.addAttribute( descriptor );
+                }
             }
             catch ( LdapException ine )
             {
-                String type = Strings.utf8ToString( tlv.getValue().getData() );
                 // This is for the client side. We will never decode LdapResult on the server
-                String msg = "The Attribute type " + type + "is invalid : " + ine.getMessage();
+                String msg = "The Attribute type " + descriptor.getId() + "is invalid : " + ine.getMessage();
                 LOG.error( "{} : {}", msg, ine.getMessage() );
                 throw new DecoderException( msg, ine );
             }
@@ -98,8 +117,7 @@ public class AddAttributeType extends GrammarAction<LdapMessageContainer<SearchR
 
         if ( IS_DEBUG )
         {
-            String type = Strings.utf8ToString( tlv.getValue().getData() );
-            LOG.debug( "Attribute type : {}", type );
+            LOG.debug( "Attribute type : {}", tlv.getValue().getUtf8String() );
         }
     }
 }
@@ -23,6 +23,7 @@ package org.apache.directory.api.ldap.codec.actions.searchResultEntry;
 import org.apache.directory.api.asn1.ber.grammar.GrammarAction;
 import org.apache.directory.api.ldap.codec.api.LdapMessageContainer;
 import org.apache.directory.api.ldap.codec.decorators.SearchResultEntryDecorator;
+import org.apache.directory.api.ldap.model.entry.LazyEntry;
 import org.apache.directory.api.ldap.model.message.SearchResultEntryImpl;
 
 
@@ -51,8 +52,16 @@ public class InitSearchResultEntry extends GrammarAction<LdapMessageContainer<Se
     public void action( LdapMessageContainer<SearchResultEntryDecorator> container )
     {
         // Now, we can allocate the SearchResultEntry Object
+        SearchResultEntryImpl searchResultEntryImpl = new SearchResultEntryImpl( container.getMessageId() );
+
+        if ( container.isLazySearchResultEntries() )
+        {
+            // All the values will be stored in one buffer, which can't be bigger than the entry
+            searchResultEntryImpl.setEntry( new LazyEntry( container.getCurrentTLV().getLength() ) );
+        }
+
         SearchResultEntryDecorator searchResultEntry = new SearchResultEntryDecorator(
-            container.getLdapCodecService(), new SearchResultEntryImpl( container.getMessageId() ) );
+            container.getLdapCodecService(), searchResultEntryImpl );
         container.setMessage( searchResultEntry );
     }
 }
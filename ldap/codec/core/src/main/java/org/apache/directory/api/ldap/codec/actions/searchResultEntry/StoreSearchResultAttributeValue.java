@@ -21,6 +21,7 @@ package org.apache.directory.api.ldap.codec.actions.searchResultEntry;
 
 
 import org.apache.directory.api.asn1.ber.grammar.GrammarAction;
+import org.apache.directory.api.asn1.ber.tlv.BerValue;
 import org.apache.directory.api.asn1.ber.tlv.TLV;
 import org.apache.directory.api.ldap.codec.api.LdapMessageContainer;
 import org.apache.directory.api.ldap.codec.decorators.SearchResultEntryDecorator;
@@ -68,6 +69,27 @@ public class StoreSearchResultAttributeValue extends GrammarAction<LdapMessageCo
 
         TLV tlv = container.getCurrentTLV();
 
+        if ( searchResultEntry.isCurrentAttributeSkipped() )
+        {
+            // The value is not read at all
+            container.setGrammarEndAllowed( true );
+
+            return;
+        }
+
+        if ( container.isLazySearchResultEntries() )
+        {
+            // The value will be decoded when the attribute is accessed. It's copied
+            // from the decoded buffer into the entry's values buffer
+            BerValue value = tlv.getValue();
+            searchResultEntry.addRawAttributeValue( value.getBuffer(), value.getOffset(), tlv.getLength() );
+
+            // We can have an END transition
+            container.setGrammarEndAllowed( true );
+
+            return;
+        }
+
         // Store the value
         Object value = null;
 
@@ -81,7 +103,7 @@ public class StoreSearchResultAttributeValue extends GrammarAction<LdapMessageCo
             }
             else
             {
-                if ( container.isBinary( searchResultEntry.getCurrentAttribute().getId() ) )
+                if ( searchResultEntry.isCurrentAttributeBinary() )
                 {
                     value = tlv.getValue().getData();
 
@@ -92,7 +114,7 @@ public class StoreSearchResultAttributeValue extends GrammarAction<LdapMessageCo
                 }
                 else
                 {
-                    value = Strings.utf8ToString( tlv.getValue().getData() );
+                    value = tlv.getValue().getUtf8String();
 
                     LOG.debug( "Attribute value {}", value );
                 }
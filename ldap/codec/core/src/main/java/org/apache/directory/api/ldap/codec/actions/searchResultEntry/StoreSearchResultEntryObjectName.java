@@ -22,6 +22,7 @@ package org.apache.directory.api.ldap.codec.actions.searchResultEntry;
 
 import org.apache.directory.api.asn1.DecoderException;
 import org.apache.directory.api.asn1.ber.grammar.GrammarAction;
+import org.apache.directory.api.asn1.ber.tlv.BerValue;
 import org.apache.directory.api.asn1.ber.tlv.TLV;
 import org.apache.directory.api.ldap.codec.api.LdapMessageContainer;
 import org.apache.directory.api.ldap.codec.decorators.SearchResultEntryDecorator;
@@ -79,15 +80,16 @@ public class StoreSearchResultEntryObjectName extends GrammarAction<LdapMessageC
         }
         else
         {
-            byte[] dnBytes = tlv.getValue().getData();
-            String dnStr = Strings.utf8ToString( dnBytes );
+            BerValue dnValue = tlv.getValue();
 
             try
             {
-                objectName = new Dn( dnStr );
+                objectName = Dn.fromUtf8( dnValue.getBuffer(), dnValue.getOffset(), tlv.getLength() );
             }
             catch ( LdapInvalidDnException ine )
             {
+                byte[] dnBytes = dnValue.getData();
+
                 // This is for the client side. We will never decode LdapResult on the server
                 String msg = "The Dn " + Strings.dumpBytes( dnBytes ) + "is invalid : "
                     + ine.getMessage();
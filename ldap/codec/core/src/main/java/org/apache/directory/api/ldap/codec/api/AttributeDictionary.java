@@ -0,0 +1,308 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ * 
+ */
+package org.apache.directory.api.ldap.codec.api;
+
+
+import org.apache.directory.api.util.Strings;
+
+
+/**
+ * A dictionary of the attribute descriptions received on a connection. It maps the
+ * UTF-8 bytes of an attribute description, as they have been read from the PDU, to a
+ * {@link Descriptor} holding the attribute ID and the binary flag given by the
+ * BinaryAttributeDetector. As the same
+ * attributes are returned over and over, the decoder does a single lookup in this
+ * dictionary per attribute, without creating any String, instead of lower casing the
+ * attribute ID and asking the BinaryAttributeDetector for each value.
+ * <p>
+ * The dictionary stops growing when it contains {@link #MAX_SIZE} descriptions : the
+ * other descriptions are resolved each time they are read. The descriptors are only
+ * kept when the BinaryAttributeDetector is a {@link SchemaBinaryAttributeDetector}, and
+ * they are all dropped as soon as its configuration version changes. With any other
+ * detector, which can't tell when its configuration changes, the descriptions are
+ * resolved each time they are read.
+ * <p>
+ * This class is not thread safe : it's used by a single decoder.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class AttributeDictionary
+{
+    /** The maximum number of attribute descriptions stored in the dictionary */
+    public static final int MAX_SIZE = 1024;
+
+    /** The initial table size. Must be a power of 2 */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /** The detector used to know if an attribute is binary */
+    private final BinaryAttributeDetector binaryAttributeDetector;
+
+    /** The detector, if its configuration changes can be tracked */
+    private final SchemaBinaryAttributeDetector versionedDetector;
+
+    /** The detector configuration version the descriptors have been created with */
+    private int detectorVersion;
+
+    /** The hash table, using open addressing */
+    private Descriptor[] table = new Descriptor[INITIAL_CAPACITY];
+
+    /** The number of descriptors in the table */
+    private int size;
+
+    /**
+     * An attribute description, as it's been received, and what we know about it.
+     */
+    public static final class Descriptor
+    {
+        /** The attribute description bytes */
+        private final byte[] bytes;
+
+        /** The bytes hash code */
+        private final int hash;
+
+        /** The attribute description */
+        private final String id;
+
+        /** Tells if the values are binary */
+        private final boolean binary;
+
+
+        private Descriptor( byte[] bytes, int hash, String id, boolean binary )
+        {
+            this.bytes = bytes;
+            this.hash = hash;
+            this.id = id;
+            this.binary = binary;
+        }
+
+
+        /**
+         * @return The attribute description, as it's been received
+         */
+        public String getId()
+        {
+            return id;
+        }
+
+
+        /**
+         * @return true if the attribute values are binary
+         */
+        public boolean isBinary()
+        {
+            return binary;
+        }
+
+
+        /**
+         * Tells if the descriptor has been created for the given bytes
+         */
+        private boolean matches( byte[] buffer, int offset, int length )
+        {
+            if ( bytes.length != length )
+            {
+                return false;
+            }
+
+            for ( int i = 0; i < length; i++ )
+            {
+                if ( bytes[i] != buffer[offset + i] )
+                {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+
+        /**
+         * @see Object#toString()
+         */
+        public String toString()
+        {
+            return id + ( binary ? " (binary)" : "" );
+        }
+    }
+
+
+    /**
+     * Creates a new instance of AttributeDictionary.
+     *
+     * @param binaryAttributeDetector The detector used to know if an attribute is binary
+     */
+    public AttributeDictionary( BinaryAttributeDetector binaryAttributeDetector )
+    {
+        this.binaryAttributeDetector = binaryAttributeDetector;
+
+        if ( binaryAttributeDetector instanceof SchemaBinaryAttributeDetector )
+        {
+            versionedDetector = ( SchemaBinaryAttributeDetector ) binaryAttributeDetector;
+            detectorVersion = versionedDetector.getVersion();
+        }
+        else
+        {
+            versionedDetector = null;
+        }
+    }
+
+
+    /**
+     * Gets the descriptor of an attribute description, creating it the first time
+     * the description is seen.
+     *
+     * @param buffer The array containing the attribute description UTF-8 bytes
+     * @param offset The position of the attribute description in the array
+     * @param length The attribute description length
+     * @return The attribute descriptor
+     */
+    public Descriptor get( byte[] buffer, int offset, int length )
+    {
+        if ( versionedDetector == null )
+        {
+            // We can't know when the detector's answers change : don't keep them
+            byte[] bytes = new byte[length];
+            System.arraycopy( buffer, offset, bytes, 0, length );
+
+            return createDescriptor( bytes, 0 );
+        }
+
+        if ( versionedDetector.getVersion() != detectorVersion )
+        {
+            // The binary attributes have changed
+            clear();
+        }
+
+        int hash = 1;
+
+        for ( int i = offset; i < offset + length; i++ )
+        {
+            hash = 31 * hash + buffer[i];
+        }
+
+        int mask = table.length - 1;
+        int index = hash & mask;
+
+        while ( table[index] != null )
+        {
+            Descriptor descriptor = table[index];
+
+            if ( ( descriptor.hash == hash ) && descriptor.matches( buffer, offset, length ) )
+            {
+                return descriptor;
+            }
+
+            index = ( index + 1 ) & mask;
+        }
+
+        byte[] bytes = new byte[length];
+        System.arraycopy( buffer, offset, bytes, 0, length );
+        Descriptor descriptor = createDescriptor( bytes, hash );
+
+        if ( size < MAX_SIZE )
+        {
+            table[index] = descriptor;
+            size++;
+
+            if ( size * 4 > table.length * 3 )
+            {
+                resize();
+            }
+        }
+
+        return descriptor;
+    }
+
+
+    /**
+     * Gets the descriptor of an attribute description, creating it the first time
+     * the description is seen.
+     *
+     * @param bytes The attribute description UTF-8 bytes
+     * @return The attribute descriptor
+     */
+    public Descriptor get( byte[] bytes )
+    {
+        return get( bytes, 0, bytes.length );
+    }
+
+
+    /**
+     * Resolves an attribute description
+     */
+    private Descriptor createDescriptor( byte[] bytes, int hash )
+    {
+        String id = Strings.utf8ToString( bytes );
+
+        return new Descriptor( bytes, hash, id, binaryAttributeDetector.isBinary( id ) );
+    }
+
+
+    /**
+     * Doubles the table size
+     */
+    private void resize()
+    {
+        Descriptor[] oldTable = table;
+        table = new Descriptor[oldTable.length * 2];
+        int mask = table.length - 1;
+
+        for ( Descriptor descriptor : oldTable )
+        {
+            if ( descriptor != null )
+            {
+                int index = descriptor.hash & mask;
+
+                while ( table[index] != null )
+                {
+                    index = ( index + 1 ) & mask;
+                }
+
+                table[index] = descriptor;
+            }
+        }
+    }
+
+
+    /**
+     * Removes all the descriptors from the dictionary
+     */
+    public void clear()
+    {
+        if ( versionedDetector != null )
+        {
+            // Read the version first : a change made while the new descriptors
+            // are created will clear them again
+            detectorVersion = versionedDetector.getVersion();
+        }
+
+        table = new Descriptor[INITIAL_CAPACITY];
+        size = 0;
+    }
+
+
+    /**
+     * @return The number of attribute descriptions in the dictionary
+     */
+    public int size()
+    {
+        return size;
+    }
+}
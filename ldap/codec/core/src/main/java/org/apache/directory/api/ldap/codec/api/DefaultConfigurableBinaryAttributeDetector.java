@@ -145,6 +145,8 @@ public class DefaultConfigurableBinaryAttributeDetector extends SchemaBinaryAttr
                 String attrId = Strings.toLowerCase( binaryAttribute );
                 this.binaryAttributes.add( attrId );
             }
+
+            configurationChanged();
         }
     }
 
@@ -161,6 +163,8 @@ public class DefaultConfigurableBinaryAttributeDetector extends SchemaBinaryAttr
                 String attrId = Strings.toLowerCase( binaryAttribute );
                 this.binaryAttributes.remove( attrId );
             }
+
+            configurationChanged();
         }
     }
 
@@ -67,15 +67,10 @@ public class LdapEncoder
     /**
      * Compute the control's encoded length
      */
-    private int computeControlLength( Control control )
+    private int computeControlLength( Control control, byte[] oidBytes, int controlValueLength )
     {
-        // First, compute the control's value length
-        int controlValueLength = ( ( CodecControl<?> ) control ).computeLength();
-
-        // Now, compute the envelop length
         // The OID
-        int oidLengh = Strings.getBytesUtf8( control.getOid() ).length;
-        int controlLength = 1 + TLV.getNbBytes( oidLengh ) + oidLengh;
+        int controlLength = 1 + TLV.getNbBytes( oidBytes.length ) + oidBytes.length;
 
         // The criticality, only if true
         if ( control.isCritical() )
@@ -95,7 +90,8 @@ public class LdapEncoder
     /**
      * Encode a control to a byte[]
      */
-    private ByteBuffer encodeControl( ByteBuffer buffer, Control control ) throws EncoderException
+    private ByteBuffer encodeControl( ByteBuffer buffer, Control control, byte[] oidBytes, int controlLength,
+        int controlValueLength ) throws EncoderException
     {
         if ( buffer == null )
         {
@@ -108,7 +104,6 @@ public class LdapEncoder
             buffer.put( UniversalTag.SEQUENCE.getValue() );
 
             // The length has been calculated by the computeLength method
-            int controlLength = computeControlLength( control );
             buffer.put( TLV.getBytes( controlLength ) );
         }
         catch ( BufferOverflowException boe )
@@ -117,7 +112,7 @@ public class LdapEncoder
         }
 
         // The control type
-        BerValue.encode( buffer, control.getOid().getBytes() );
+        BerValue.encode( buffer, oidBytes );
 
         // The control criticality, if true
         if ( control.isCritical() )
@@ -125,6 +120,16 @@ public class LdapEncoder
             BerValue.encode( buffer, control.isCritical() );
         }
 
+        // The OctetString tag if the value is not null
+        if ( controlValueLength > 0 )
+        {
+            buffer.put( UniversalTag.OCTET_STRING.getValue() );
+            buffer.put( TLV.getBytes( controlValueLength ) );
+
+            // And now, the value
+            ( ( CodecControl<?> ) control ).encode( buffer );
+        }
+
         return buffer;
     }
 
@@ -154,10 +159,53 @@ public class LdapEncoder
      * @throws EncoderException If anything goes wrong.
      */
     public ByteBuffer encodeMessage( Message message ) throws EncoderException
+    {
+        return encodeMessage( null, message );
+    }
+
+
+    /**
+     * Generate the PDU which contains the encoded object into a caller supplied
+     * buffer, so that the same buffer can be reused from one message to the other.
+     * The buffer is cleared before being written. If it is null or too small to
+     * contain the PDU, a new buffer is allocated using the {@link #allocate(int, boolean)}
+     * method : it will be a direct buffer if the given buffer was a direct one.
+     * <br/>
+     * The produced PDU is exactly the same as the one produced by {@link #encodeMessage(Message)}.
+     * 
+     * @param buffer The buffer to reuse, if it's big enough. May be null
+     * @param message The message to encode
+     * @return The given buffer, or a new one if it was too small, flipped and ready to be read
+     * @throws EncoderException If anything goes wrong.
+     */
+    public ByteBuffer encodeMessage( ByteBuffer buffer, Message message ) throws EncoderException
     {
         MessageDecorator<? extends Message> decorator = MessageDecorator.getDecorator( codec, message );
-        int length = computeMessageLength( decorator );
-        ByteBuffer buffer = ByteBuffer.allocate( length );
+        Map<String, Control> controls = decorator.getControls();
+
+        // The controls' OID and lengths, computed once and reused by the encoding phase
+        int nbControls = ( controls == null ) ? 0 : controls.size();
+        byte[][] controlOids = null;
+        int[] controlLengths = null;
+        int[] controlValueLengths = null;
+
+        if ( nbControls > 0 )
+        {
+            controlOids = new byte[nbControls][];
+            controlLengths = new int[nbControls];
+            controlValueLengths = new int[nbControls];
+        }
+
+        int length = computeMessageLength( decorator, controlOids, controlLengths, controlValueLengths );
+
+        if ( ( buffer == null ) || ( buffer.capacity() < length ) )
+        {
+            buffer = allocate( length, ( buffer != null ) && buffer.isDirect() );
+        }
+        else
+        {
+            buffer.clear();
+        }
 
         try
         {
@@ -181,30 +229,19 @@ public class LdapEncoder
             decorator.encode( buffer );
 
             // Do the same thing for Controls, if any.
-            Map<String, Control> controls = decorator.getControls();
-
-            if ( ( controls != null ) && ( controls.size() > 0 ) )
+            if ( nbControls > 0 )
             {
                 // Encode the controls
                 buffer.put( ( byte ) LdapCodecConstants.CONTROLS_TAG );
                 buffer.put( TLV.getBytes( decorator.getControlsLength() ) );
 
                 // Encode each control
+                int i = 0;
+
                 for ( Control control : controls.values() )
                 {
-                    encodeControl( buffer, control );
-
-                    // The OctetString tag if the value is not null
-                    int controlValueLength = ( ( CodecControl<?> ) control ).computeLength();
-
-                    if ( controlValueLength > 0 )
-                    {
-                        buffer.put( UniversalTag.OCTET_STRING.getValue() );
-                        buffer.put( TLV.getBytes( controlValueLength ) );
-
-                        // And now, the value
-                        ( ( org.apache.directory.api.ldap.codec.api.CodecControl<?> ) control ).encode( buffer );
-                    }
+                    encodeControl( buffer, control, controlOids[i], controlLengths[i], controlValueLengths[i] );
+                    i++;
                 }
             }
         }
@@ -221,6 +258,27 @@ public class LdapEncoder
     }
 
 
+    /**
+     * Allocates the buffer the PDU will be written into, when the caller hasn't provided
+     * a big enough one. This method can be overloaded to get the buffers from a pool.
+     * 
+     * @param length The PDU length
+     * @param direct Tells if the buffer should be a direct buffer
+     * @return A ByteBuffer which capacity is at least the given length
+     */
+    protected ByteBuffer allocate( int length, boolean direct )
+    {
+        if ( direct )
+        {
+            return ByteBuffer.allocateDirect( length );
+        }
+        else
+        {
+            return ByteBuffer.allocate( length );
+        }
+    }
+
+
     /**
      * Compute the LdapMessage length LdapMessage : 
      * 0x30 L1 
@@ -234,8 +292,12 @@ public class LdapEncoder
      * LdapMessage length = Length(0x30) + Length(L1) + MessageId length + L1
      *
      * @param messageDecorator the decorated Message who's length is to be encoded
+     * @param controlOids The array where the controls' OID bytes will be stored
+     * @param controlLengths The array where the controls' lengths will be stored
+     * @param controlValueLengths The array where the controls' value lengths will be stored
      */
-    private int computeMessageLength( MessageDecorator<? extends Message> messageDecorator )
+    private int computeMessageLength( MessageDecorator<? extends Message> messageDecorator, byte[][] controlOids,
+        int[] controlLengths, int[] controlValueLengths )
     {
         // The length of the MessageId. It's the sum of
         // - the tag (0x02), 1 byte
@@ -249,7 +311,7 @@ public class LdapEncoder
         Map<String, Control> controls = messageDecorator.getControls();
 
         // Do the same thing for Controls, if any.
-        if ( controls.size() > 0 )
+        if ( ( controls != null ) && ( controls.size() > 0 ) )
         {
             // Controls :
             // 0xA0 L3
@@ -271,11 +333,19 @@ public class LdapEncoder
             // LdapMessageLength = LdapMessageLength + Length(0x90)
             // + Length(L3) + L3
             int controlsSequenceLength = 0;
+            int i = 0;
 
             // We may have more than one control. ControlsLength is L4.
             for ( Control control : controls.values() )
             {
-                int controlLength = computeControlLength( control );
+                byte[] oidBytes = Strings.getBytesUtf8( control.getOid() );
+                int controlValueLength = ( ( CodecControl<?> ) control ).computeLength();
+                int controlLength = computeControlLength( control, oidBytes, controlValueLength );
+
+                controlOids[i] = oidBytes;
+                controlLengths[i] = controlLength;
+                controlValueLengths[i] = controlValueLength;
+                i++;
 
                 controlsSequenceLength += 1 + TLV.getNbBytes( controlLength ) + controlLength;
             }
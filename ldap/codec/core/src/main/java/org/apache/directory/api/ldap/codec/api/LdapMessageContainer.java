@@ -20,11 +20,17 @@
 package org.apache.directory.api.ldap.codec.api;
 
 
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
 import org.apache.directory.api.asn1.ber.AbstractContainer;
 import org.apache.directory.api.ldap.codec.LdapMessageGrammar;
 import org.apache.directory.api.ldap.codec.LdapStatesEnum;
 import org.apache.directory.api.ldap.model.message.Control;
 import org.apache.directory.api.ldap.model.message.Message;
+import org.apache.directory.api.util.Strings;
 
 
 /**
@@ -42,6 +48,9 @@ public class LdapMessageContainer<E extends MessageDecorator<? extends Message>>
     /** checks if attribute is binary */
     private BinaryAttributeDetector binaryAttributeDetector;
 
+    /** The attribute descriptions received on this connection */
+    private AttributeDictionary attributeDictionary;
+
     /** The message ID */
     private int messageId;
 
@@ -51,6 +60,12 @@ public class LdapMessageContainer<E extends MessageDecorator<? extends Message>>
     /** The codec service */
     private final LdapApiService codec;
 
+    /** Tells if the values of the search result entries are decoded when they are accessed */
+    private boolean lazySearchResultEntries;
+
+    /** The attributes to keep in the search result entries, per search request message ID */
+    private final Map<Integer, Set<String>> searchResultAttributesFilters = new ConcurrentHashMap<Integer, Set<String>>();
+
 
     /**
      * Creates a new LdapMessageContainer object. We will store ten grammars,
@@ -181,6 +196,7 @@ public class LdapMessageContainer<E extends MessageDecorator<? extends Message>>
     public void setBinaryAttributeDetector( BinaryAttributeDetector binaryAttributeDetector )
     {
         this.binaryAttributeDetector = binaryAttributeDetector;
+        attributeDictionary = null;
     }
 
 
@@ -191,4 +207,114 @@ public class LdapMessageContainer<E extends MessageDecorator<? extends Message>>
     {
         return binaryAttributeDetector;
     }
+
+
+    /**
+     * @return The dictionary of the attribute descriptions decoded by this container. It's
+     * reset when the binary attribute detector is changed.
+     */
+    public AttributeDictionary getAttributeDictionary()
+    {
+        if ( attributeDictionary == null )
+        {
+            attributeDictionary = new AttributeDictionary( binaryAttributeDetector );
+        }
+
+        return attributeDictionary;
+    }
+
+
+    /**
+     * @return true if the attributes of the decoded search result entries are kept
+     * undecoded until they are accessed
+     */
+    public boolean isLazySearchResultEntries()
+    {
+        return lazySearchResultEntries;
+    }
+
+
+    /**
+     * Tells the decoder to store the attributes of the search result entries as they
+     * have been received, in a LazyEntry. An attribute values are then only decoded if
+     * the application reads this attribute.
+     *
+     * @param lazySearchResultEntries true to decode the search result entries attributes lazily
+     */
+    public void setLazySearchResultEntries( boolean lazySearchResultEntries )
+    {
+        this.lazySearchResultEntries = lazySearchResultEntries;
+    }
+
+
+    /**
+     * Restricts the attributes decoded in the entries returned by a search. The values of
+     * the other attributes are skipped without being decoded. The attributes are compared
+     * without their options, ignoring the case : the IDs must be the ones the server uses
+     * in its responses, either names or OIDs.
+     *
+     * @param messageId The search request message ID
+     * @param attributes The IDs of the attributes to keep
+     */
+    public void addSearchResultAttributesFilter( int messageId, Set<String> attributes )
+    {
+        Set<String> ids = new HashSet<String>();
+
+        for ( String attribute : attributes )
+        {
+            ids.add( getAttributeId( attribute ) );
+        }
+
+        searchResultAttributesFilters.put( messageId, ids );
+    }
+
+
+    /**
+     * Removes the attributes filter of a search, if any
+     *
+     * @param messageId The search request message ID
+     */
+    public void removeSearchResultAttributesFilter( int messageId )
+    {
+        searchResultAttributesFilters.remove( messageId );
+    }
+
+
+    /**
+     * @return true if the entries returned by the current message's search are filtered
+     */
+    public boolean hasSearchResultAttributesFilter()
+    {
+        return !searchResultAttributesFilters.isEmpty() && searchResultAttributesFilters.containsKey( messageId );
+    }
+
+
+    /**
+     * Tells if an attribute of an entry returned by the current message's search must be skipped
+     *
+     * @param type The attribute description
+     * @return true if the attribute isn't part of the attributes to keep
+     */
+    public boolean isSearchResultAttributeSkipped( String type )
+    {
+        Set<String> ids = searchResultAttributesFilters.get( messageId );
+
+        return ( ids != null ) && !ids.contains( getAttributeId( type ) );
+    }
+
+
+    /**
+     * Removes the options of an attribute description, and lower case it
+     */
+    private static String getAttributeId( String attributeDescription )
+    {
+        int pos = attributeDescription.indexOf( ';' );
+
+        if ( pos >= 0 )
+        {
+            attributeDescription = attributeDescription.substring( 0, pos );
+        }
+
+        return Strings.toLowerCase( Strings.trim( attributeDescription ) );
+    }
 }
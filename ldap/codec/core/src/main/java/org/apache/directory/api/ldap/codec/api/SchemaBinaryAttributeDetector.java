@@ -19,6 +19,8 @@
  */
 package org.apache.directory.api.ldap.codec.api;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.apache.directory.api.ldap.model.schema.AttributeType;
 import org.apache.directory.api.ldap.model.schema.LdapSyntax;
 import org.apache.directory.api.ldap.model.schema.SchemaManager;
@@ -34,6 +36,9 @@ public class SchemaBinaryAttributeDetector implements BinaryAttributeDetector
 {
     /** The schemaManager to use */
     private SchemaManager schemaManager;
+
+    /** Incremented each time the configuration changes */
+    private final AtomicInteger version = new AtomicInteger();
     
     
     protected SchemaBinaryAttributeDetector()
@@ -46,12 +51,42 @@ public class SchemaBinaryAttributeDetector implements BinaryAttributeDetector
         this.schemaManager = schemaManager;
     }
 
+    /**
+     * @return the schemaManager, if any
+     */
+    public SchemaManager getSchemaManager()
+    {
+        return schemaManager;
+    }
+
+
     /**
      * @param schemaManager the schemaManager to set
      */
     public void setSchemaManager( SchemaManager schemaManager )
     {
         this.schemaManager = schemaManager;
+        configurationChanged();
+    }
+
+
+    /**
+     * @return The version of the configuration, which changes each time an attribute
+     * may have become binary or not. It's used to invalidate the caches of the
+     * isBinary() results.
+     */
+    public int getVersion()
+    {
+        return version.get();
+    }
+
+
+    /**
+     * Must be called each time the configuration changes, after the change
+     */
+    protected void configurationChanged()
+    {
+        version.incrementAndGet();
     }
 
 
@@ -36,7 +36,6 @@ import org.apache.directory.api.ldap.model.message.controls.ChangeType;
 import org.apache.directory.api.ldap.model.message.controls.EntryChange;
 import org.apache.directory.api.ldap.model.message.controls.EntryChangeImpl;
 import org.apache.directory.api.ldap.model.name.Dn;
-import org.apache.directory.api.util.Strings;
 
 
 /**
@@ -112,7 +111,7 @@ public class EntryChangeDecorator extends ControlDecorator<EntryChange> implemen
 
         if ( getPreviousDn() != null )
         {
-            previousDnBytes = Strings.getBytesUtf8( getPreviousDn().getName() );
+            previousDnBytes = Dn.getUpBytes( getPreviousDn() );
             previousDnLength = 1 + TLV.getNbBytes( previousDnBytes.length ) + previousDnBytes.length;
         }
 
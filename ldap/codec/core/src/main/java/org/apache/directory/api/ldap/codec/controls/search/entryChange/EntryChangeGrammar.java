@@ -173,7 +173,8 @@ public final class EntryChangeGrammar extends AbstractGrammar<EntryChangeContain
 
                             try
                             {
-                                previousDn = new Dn( Strings.utf8ToString( value.getData() ) );
+                                previousDn = Dn.fromUtf8( value.getBuffer(), value.getOffset(), container.getCurrentTLV()
+                                    .getLength() );
                             }
                             catch ( LdapInvalidDnException ine )
                             {
@@ -69,8 +69,11 @@ public final class AddRequestDecorator extends SingleReplyRequestDecorator<AddRe
     /** The current attribute being decoded */
     private Attribute currentAttribute;
 
-    /** The bytes containing the Dn */
-    private byte[] dnBytes;
+    /** The Dn to encode */
+    private Dn encodedDn;
+
+    /** The number of bytes of the encoded Dn */
+    private int encodedDnLength;
 
 
     /**
@@ -356,8 +359,9 @@ public final class AddRequestDecorator extends SingleReplyRequestDecorator<AddRe
             throw new IllegalArgumentException( I18n.err( I18n.ERR_04481_ENTRY_NULL_VALUE ) );
         }
 
-        dnBytes = Strings.getBytesUtf8( entry.getDn().getName() );
-        int dnLen = dnBytes.length;
+        encodedDn = entry.getDn();
+        encodedDnLength = Dn.getNbUpBytes( encodedDn );
+        int dnLen = encodedDnLength;
 
         // The entry Dn
         int addRequestLength = 1 + TLV.getNbBytes( dnLen ) + dnLen;
@@ -464,7 +468,9 @@ public final class AddRequestDecorator extends SingleReplyRequestDecorator<AddRe
             buffer.put( TLV.getBytes( getAddRequestLength() ) );
 
             // The entry
-            BerValue.encode( buffer, dnBytes );
+            buffer.put( UniversalTag.OCTET_STRING.getValue() );
+            buffer.put( TLV.getBytes( encodedDnLength ) );
+            Dn.writeUpBytes( encodedDn, buffer );
 
             // The attributes sequence
             buffer.put( UniversalTag.SEQUENCE.getValue() );
@@ -26,6 +26,7 @@ import java.nio.ByteBuffer;
 import org.apache.directory.api.asn1.EncoderException;
 import org.apache.directory.api.asn1.ber.tlv.BerValue;
 import org.apache.directory.api.asn1.ber.tlv.TLV;
+import org.apache.directory.api.asn1.ber.tlv.UniversalTag;
 import org.apache.directory.api.i18n.I18n;
 import org.apache.directory.api.ldap.codec.api.LdapApiService;
 import org.apache.directory.api.ldap.codec.api.LdapCodecConstants;
@@ -51,8 +52,11 @@ public class BindRequestDecorator extends SingleReplyRequestDecorator<BindReques
     /** The SASL credentials length */
     private int saslCredentialsLength;
 
-    /** The bytes containing the Dn */
-    private byte[] dnBytes;
+    /** The Dn to encode */
+    private Dn encodedDn;
+
+    /** The number of bytes of the encoded Dn */
+    private int encodedDnLength;
 
     /** The bytes containing the Name */
     private byte[] nameBytes;
@@ -349,8 +353,9 @@ public class BindRequestDecorator extends SingleReplyRequestDecorator<BindReques
         if ( !Dn.isNullOrEmpty( dn ) )
         {
             // A DN has been provided
-            dnBytes = Strings.getBytesUtf8( dn.getName() );
-            int dnLength = dnBytes.length;
+            encodedDn = dn;
+            encodedDnLength = Dn.getNbUpBytes( dn );
+            int dnLength = encodedDnLength;
 
             bindRequestLength += 1 + TLV.getNbBytes( dnLength ) + dnLength;
         }
@@ -445,7 +450,9 @@ public class BindRequestDecorator extends SingleReplyRequestDecorator<BindReques
         if ( !Dn.isNullOrEmpty( dn ) )
         {
             // A DN has been provided
-            BerValue.encode( buffer, dnBytes );
+            buffer.put( UniversalTag.OCTET_STRING.getValue() );
+            buffer.put( TLV.getBytes( encodedDnLength ) );
+            Dn.writeUpBytes( encodedDn, buffer );
         }
         else
         {
@@ -31,7 +31,6 @@ import org.apache.directory.api.ldap.codec.api.LdapCodecConstants;
 import org.apache.directory.api.ldap.model.message.Control;
 import org.apache.directory.api.ldap.model.message.DeleteRequest;
 import org.apache.directory.api.ldap.model.name.Dn;
-import org.apache.directory.api.util.Strings;
 
 
 /**
@@ -43,8 +42,11 @@ public class DeleteRequestDecorator extends SingleReplyRequestDecorator<DeleteRe
     implements DeleteRequest
 {
 
-    /** The bytes containing the Dn */
-    private byte[] dnBytes;
+    /** The Dn to encode */
+    private Dn encodedDn;
+
+    /** The number of bytes of the encoded Dn */
+    private int encodedDnLength;
 
 
     /**
@@ -134,11 +136,11 @@ public class DeleteRequestDecorator extends SingleReplyRequestDecorator<DeleteRe
      */
     public int computeLength()
     {
-        dnBytes = Strings.getBytesUtf8( getName().getName() );
-        int dnLength = dnBytes.length;
+        encodedDn = getName();
+        encodedDnLength = Dn.getNbUpBytes( encodedDn );
 
         // The entry
-        return 1 + TLV.getNbBytes( dnLength ) + dnLength;
+        return 1 + TLV.getNbBytes( encodedDnLength ) + encodedDnLength;
     }
 
 
@@ -158,8 +160,8 @@ public class DeleteRequestDecorator extends SingleReplyRequestDecorator<DeleteRe
             buffer.put( LdapCodecConstants.DEL_REQUEST_TAG );
 
             // The entry
-            buffer.put( TLV.getBytes( dnBytes.length ) );
-            buffer.put( dnBytes );
+            buffer.put( TLV.getBytes( encodedDnLength ) );
+            Dn.writeUpBytes( encodedDn, buffer );
         }
         catch ( BufferOverflowException boe )
         {
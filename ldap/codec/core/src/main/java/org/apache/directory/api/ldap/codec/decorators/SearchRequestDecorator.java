@@ -100,8 +100,11 @@ public class SearchRequestDecorator extends MessageDecorator<SearchRequest> impl
     /** The SearchRequest TLV id */
     private int tlvId;
 
-    /** The bytes containing the Dn */
-    private byte[] dnBytes;
+    /** The Dn to encode */
+    private Dn encodedDn;
+
+    /** The number of bytes of the encoded Dn */
+    private int encodedDnLength;
 
 
     /**
@@ -942,8 +945,9 @@ public class SearchRequestDecorator extends MessageDecorator<SearchRequest> impl
         int searchRequestLength = 0;
 
         // The baseObject
-        dnBytes = Strings.getBytesUtf8( getBase().getName() );
-        searchRequestLength += 1 + TLV.getNbBytes( dnBytes.length ) + dnBytes.length;
+        encodedDn = getBase();
+        encodedDnLength = Dn.getNbUpBytes( encodedDn );
+        searchRequestLength += 1 + TLV.getNbBytes( encodedDnLength ) + encodedDnLength;
 
         // The scope
         searchRequestLength += 1 + 1 + 1;
@@ -1019,7 +1023,9 @@ public class SearchRequestDecorator extends MessageDecorator<SearchRequest> impl
             buffer.put( TLV.getBytes( getSearchRequestLength() ) );
 
             // The baseObject
-            BerValue.encode( buffer, dnBytes );
+            buffer.put( UniversalTag.OCTET_STRING.getValue() );
+            buffer.put( TLV.getBytes( encodedDnLength ) );
+            Dn.writeUpBytes( encodedDn, buffer );
 
             // The scope
             BerValue.encodeEnumerated( buffer, getScope().getScope() );
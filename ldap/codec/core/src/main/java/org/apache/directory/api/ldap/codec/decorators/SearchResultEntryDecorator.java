@@ -30,12 +30,14 @@ import org.apache.directory.api.asn1.ber.tlv.BerValue;
 import org.apache.directory.api.asn1.ber.tlv.TLV;
 import org.apache.directory.api.asn1.ber.tlv.UniversalTag;
 import org.apache.directory.api.i18n.I18n;
+import org.apache.directory.api.ldap.codec.api.AttributeDictionary;
 import org.apache.directory.api.ldap.codec.api.LdapApiService;
 import org.apache.directory.api.ldap.codec.api.LdapCodecConstants;
 import org.apache.directory.api.ldap.codec.api.MessageDecorator;
 import org.apache.directory.api.ldap.model.entry.Attribute;
 import org.apache.directory.api.ldap.model.entry.DefaultAttribute;
 import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.LazyEntry;
 import org.apache.directory.api.ldap.model.entry.Value;
 import org.apache.directory.api.ldap.model.exception.LdapException;
 import org.apache.directory.api.ldap.model.message.SearchResultEntry;
@@ -71,6 +73,12 @@ public class SearchResultEntryDecorator extends MessageDecorator<SearchResultEnt
     /** The current attribute being processed */
     private Attribute currentAttribute;
 
+    /** Tells if the values of the current attribute are skipped */
+    private boolean currentAttributeSkipped;
+
+    /** Tells if the values of the attribute being decoded are binary */
+    private boolean currentAttributeBinary;
+
 
     /**
      * Makes a SearchResultEntry encodable.
@@ -193,6 +201,7 @@ public class SearchResultEntryDecorator extends MessageDecorator<SearchResultEnt
      */
     public void addAttribute( String type ) throws LdapException
     {
+        currentAttributeSkipped = false;
         currentAttribute = new DefaultAttribute( type );
 
         getDecorated().getEntry().put( currentAttribute );
@@ -206,12 +215,37 @@ public class SearchResultEntryDecorator extends MessageDecorator<SearchResultEnt
      */
     public void addAttribute( byte[] type ) throws LdapException
     {
+        currentAttributeSkipped = false;
         currentAttribute = new DefaultAttribute( type );
 
         getDecorated().getEntry().put( currentAttribute );
     }
 
 
+    /**
+     * Create a new attribute from its descriptor
+     * 
+     * @param descriptor The attribute's description
+     */
+    public void addAttribute( AttributeDictionary.Descriptor descriptor ) throws LdapException
+    {
+        currentAttributeSkipped = false;
+        currentAttributeBinary = descriptor.isBinary();
+        currentAttribute = new DefaultAttribute( descriptor.getId() );
+
+        getDecorated().getEntry().put( currentAttribute );
+    }
+
+
+    /**
+     * @return true if the values of the attribute being decoded are binary
+     */
+    public boolean isCurrentAttributeBinary()
+    {
+        return currentAttributeBinary;
+    }
+
+
     /**
      * Add a new value to the current attribute
      * 
@@ -230,6 +264,53 @@ public class SearchResultEntryDecorator extends MessageDecorator<SearchResultEnt
     }
 
 
+    /**
+     * Create a new attribute which values won't be decoded until it's accessed. The
+     * entry must be a LazyEntry.
+     * 
+     * @param type The attribute's type
+     * @param binary If the values are binary
+     */
+    public void addRawAttribute( String type, boolean binary )
+    {
+        currentAttributeSkipped = false;
+        currentAttribute = null;
+        ( ( LazyEntry ) getDecorated().getEntry() ).addRawAttribute( type, binary );
+    }
+
+
+    /**
+     * Skips the attribute being decoded : its values won't be stored in the entry
+     */
+    public void skipAttribute()
+    {
+        currentAttributeSkipped = true;
+        currentAttribute = null;
+    }
+
+
+    /**
+     * @return true if the values of the attribute being decoded must be skipped
+     */
+    public boolean isCurrentAttributeSkipped()
+    {
+        return currentAttributeSkipped;
+    }
+
+
+    /**
+     * Add a new undecoded value to the current raw attribute. The bytes are copied.
+     * 
+     * @param source The array containing the added value
+     * @param offset The position of the value in the array
+     * @param length The value length
+     */
+    public void addRawAttributeValue( byte[] source, int offset, int length )
+    {
+        ( ( LazyEntry ) getDecorated().getEntry() ).addRawValue( source, offset, length );
+    }
+
+
     //-------------------------------------------------------------------------
     // The IntermediateResponse methods
     //-------------------------------------------------------------------------
@@ -318,7 +399,7 @@ public class SearchResultEntryDecorator extends MessageDecorator<SearchResultEnt
     {
         Dn dn = getObjectName();
 
-        byte[] dnBytes = Strings.getBytesUtf8Ascii( dn.getName() );
+        byte[] dnBytes = Dn.getUpBytes( dn );
 
         // The entry
         int searchResultEntryLength = 1 + TLV.getNbBytes( dnBytes.length ) + dnBytes.length;
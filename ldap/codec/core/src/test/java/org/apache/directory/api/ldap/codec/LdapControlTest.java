@@ -262,6 +262,110 @@ public class LdapControlTest extends AbstractCodecServiceTest
     }
 
 
+    /**
+     * Test the encoding of a Request with controls into caller supplied buffers
+     */
+    @Test
+    public void testEncodeRequestWithControlsReusedBuffer() throws Exception
+    {
+        Asn1Decoder ldapDecoder = new Asn1Decoder();
+
+        ByteBuffer stream = ByteBuffer.allocate( 0x2C );
+        stream.put( new byte[]
+            { 0x30, 0x2A, // LDAPMessage ::=SEQUENCE {
+                0x02,
+                0x01,
+                0x03, // messageID MessageID
+                0x50,
+                0x01,
+                0x02, // CHOICE { ..., abandonRequest
+                // AbandonRequest,...
+                ( byte ) 0xA0,
+                0x22, // controls [0] Controls OPTIONAL }
+                0x30,
+                0x20, // Control ::= SEQUENCE {
+                // controlType LDAPOID,
+                0x04,
+                0x0D,
+                '1',
+                '.',
+                '3',
+                '.',
+                '6',
+                '.',
+                '1',
+                '.',
+                '5',
+                '.',
+                '5',
+                '.',
+                '1',
+                // criticality BOOLEAN DEFAULT FALSE,
+                0x01,
+                0x01,
+                ( byte ) 0xFF,
+                // controlValue OCTET STRING OPTIONAL }
+                0x04,
+                0x0C,
+                'a',
+                'b',
+                'c',
+                'd',
+                'e',
+                'f',
+                'g',
+                'h',
+                'i',
+                'j',
+                'k',
+                'l' } );
+
+        stream.flip();
+
+        // Allocate a LdapMessageContainer Container
+        LdapMessageContainer<AbandonRequestDecorator> ldapMessageContainer =
+            new LdapMessageContainer<AbandonRequestDecorator>( codec );
+
+        ldapDecoder.decode( stream, ldapMessageContainer );
+
+        AbandonRequestDecorator abandonRequest = ldapMessageContainer.getMessage();
+
+        String expected = Strings.dumpBytes( stream.array() );
+
+        // The default encoding
+        ByteBuffer bb = encoder.encodeMessage( abandonRequest );
+        assertEquals( expected, Strings.dumpBytes( bb.array() ) );
+
+        // A too small buffer : a new one must be allocated
+        ByteBuffer small = ByteBuffer.allocate( 0x10 );
+        bb = encoder.encodeMessage( small, abandonRequest );
+        assertFalse( bb == small );
+        assertEquals( 0x2C, bb.limit() );
+        assertEquals( expected, Strings.dumpBytes( bb.array() ) );
+
+        // A big enough buffer, with some previous content : it must be reused
+        ByteBuffer big = ByteBuffer.allocate( 0x100 );
+        big.put( new byte[0x50] );
+        bb = encoder.encodeMessage( big, abandonRequest );
+        assertTrue( bb == big );
+        assertEquals( 0, bb.position() );
+        assertEquals( 0x2C, bb.limit() );
+
+        byte[] result = new byte[bb.limit()];
+        bb.get( result );
+        assertEquals( expected, Strings.dumpBytes( result ) );
+
+        // A direct buffer
+        ByteBuffer direct = ByteBuffer.allocateDirect( 0x10 );
+        bb = encoder.encodeMessage( direct, abandonRequest );
+        assertTrue( bb.isDirect() );
+
+        result = new byte[bb.limit()];
+        bb.get( result );
+        assertEquals( expected, Strings.dumpBytes( result ) );
+    }
+
+
     /**
      * Test the decoding of a Request with null OID controls
      */
@@ -20,11 +20,16 @@
 package org.apache.directory.api.ldap.codec.search;
 
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Map;
 
 import javax.naming.NamingException;
@@ -32,14 +37,21 @@ import javax.naming.NamingException;
 import org.apache.directory.api.asn1.DecoderException;
 import org.apache.directory.api.asn1.EncoderException;
 import org.apache.directory.api.asn1.ber.Asn1Decoder;
+import org.apache.directory.api.asn1.ber.tlv.TLVStateEnum;
+import org.apache.directory.api.ldap.codec.api.AttributeDictionary;
+import org.apache.directory.api.ldap.codec.api.BinaryAttributeDetector;
 import org.apache.directory.api.ldap.codec.api.CodecControl;
+import org.apache.directory.api.ldap.codec.api.DefaultConfigurableBinaryAttributeDetector;
 import org.apache.directory.api.ldap.codec.api.LdapMessageContainer;
 import org.apache.directory.api.ldap.codec.decorators.SearchResultEntryDecorator;
 import org.apache.directory.api.ldap.codec.osgi.AbstractCodecServiceTest;
 import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
 import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.LazyEntry;
 import org.apache.directory.api.ldap.model.message.Control;
 import org.apache.directory.api.ldap.model.message.SearchResultEntry;
+import org.apache.directory.api.ldap.model.message.SearchResultEntryImpl;
 import org.apache.directory.api.util.Strings;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -216,6 +228,361 @@ public class SearchResultEntryTest extends AbstractCodecServiceTest
     }
 
 
+    /**
+     * Test the decoding of a SearchResultEntry when the values are views on the
+     * decoded buffer, the PDU being received in two parts
+     */
+    @Test
+    public void testDecodeSearchResultEntryValueSlicing() throws Exception
+    {
+        Asn1Decoder ldapDecoder = new Asn1Decoder();
+        ldapDecoder.allowValueSlicing();
+
+        byte[] pdu = new byte[]
+            {
+                0x30, 0x4e,                     // LDAPMessage ::=SEQUENCE {
+                  0x02, 0x01, 0x01,             // messageID MessageID
+                  0x64, 0x49,                   // CHOICE { ..., searchResEntry SearchResultEntry,
+                    0x04, 0x1b,                 // objectName LDAPDN,
+                      'o', 'u', '=', 'c', 'o', 'n', 't', 'a', 'c', 't', 's', ',',
+                      'd', 'c', '=', 'i', 'k', 't', 'e', 'k', ',', 'd', 'c', '=', 'c', 'o', 'm',
+                    0x30, 0x2a,                 // attributes PartialAttributeList }
+                      0x30, 0x28,
+                        0x04, 0x0b,             // type AttributeDescription,
+                          'o', 'b', 'j', 'e', 'c', 't', 'c', 'l', 'a', 's', 's',
+                        0x31, 0x19,             // vals SET OF AttributeValue }
+                          0x04, 0x03,           // AttributeValue ::= OCTET STRING
+                            't', 'o', 'p',
+                          0x04, 0x12,           // AttributeValue ::= OCTET STRING
+                            'o', 'r', 'g', 'a', 'n', 'i', 'z', 'a', 't', 'i', 'o', 'n', 'a', 'l',
+                            'U', 'n', 'i', 't'
+            };
+
+        // The last value is split over the two buffers
+        ByteBuffer stream = ByteBuffer.allocate( 0x48 );
+        stream.put( pdu, 0, 0x48 );
+        stream.flip();
+
+        LdapMessageContainer<SearchResultEntryDecorator> ldapMessageContainer =
+            new LdapMessageContainer<SearchResultEntryDecorator>( codec );
+
+        ldapDecoder.decode( stream, ldapMessageContainer );
+
+        // Reuse the first buffer, as a network layer would do
+        stream.clear();
+        stream.put( new byte[0x48] );
+        stream.clear();
+        stream.put( pdu, 0x48, pdu.length - 0x48 );
+        stream.flip();
+
+        ldapDecoder.decode( stream, ldapMessageContainer );
+
+        SearchResultEntry searchResultEntry = ldapMessageContainer.getMessage();
+
+        assertEquals( 1, searchResultEntry.getMessageId() );
+        assertEquals( "ou=contacts,dc=iktek,dc=com", searchResultEntry.getObjectName().toString() );
+
+        Entry entry = searchResultEntry.getEntry();
+
+        assertEquals( 1, entry.size() );
+
+        Attribute attribute = entry.get( "objectclass" );
+
+        assertEquals( "objectclass", Strings.toLowerCase( attribute.getUpId() ) );
+        assertTrue( attribute.contains( "top" ) );
+        assertTrue( attribute.contains( "organizationalUnit" ) );
+
+        // Check the encoding
+        ByteBuffer bb = encoder.encodeMessage( searchResultEntry );
+
+        assertEquals( Strings.dumpBytes( pdu ), Strings.dumpBytes( bb.array() ) );
+
+        // Now, decode the full PDU at once : all the values are views
+        ldapMessageContainer = new LdapMessageContainer<SearchResultEntryDecorator>( codec );
+
+        ldapDecoder.decode( ByteBuffer.wrap( pdu ), ldapMessageContainer );
+
+        assertEquals( TLVStateEnum.PDU_DECODED, ldapMessageContainer.getState() );
+
+        searchResultEntry = ldapMessageContainer.getMessage();
+        attribute = searchResultEntry.getEntry().get( "objectclass" );
+
+        assertEquals( "ou=contacts,dc=iktek,dc=com", searchResultEntry.getObjectName().toString() );
+        assertTrue( attribute.contains( "top" ) );
+        assertTrue( attribute.contains( "organizationalUnit" ) );
+    }
+
+
+    /**
+     * Test the lazy decoding of a SearchResultEntry : the attributes are only
+     * decoded when they are accessed
+     */
+    @Test
+    public void testDecodeSearchResultEntryLazy() throws Exception
+    {
+        byte[] password = new byte[]
+            { 0x00, 0x01, ( byte ) 0xFF };
+        Entry original = new DefaultEntry( "ou=contacts,dc=iktek,dc=com",
+            "objectClass: top",
+            "objectClass: organizationalUnit",
+            "ou: contacts",
+            "description: \u00e9t\u00e9" );
+        original.add( "userPassword", password );
+        original.add( "seeAlso", "" );
+
+        SearchResultEntryImpl response = new SearchResultEntryImpl( 3 );
+        response.setEntry( original );
+        ByteBuffer bb = encoder.encodeMessage( response );
+
+        LdapMessageContainer<SearchResultEntryDecorator> ldapMessageContainer =
+            new LdapMessageContainer<SearchResultEntryDecorator>( codec );
+        ldapMessageContainer.setLazySearchResultEntries( true );
+
+        new Asn1Decoder().decode( bb, ldapMessageContainer );
+
+        SearchResultEntry searchResultEntry = ldapMessageContainer.getMessage();
+        assertEquals( 3, searchResultEntry.getMessageId() );
+        assertEquals( "ou=contacts,dc=iktek,dc=com", searchResultEntry.getObjectName().getName() );
+
+        LazyEntry entry = ( LazyEntry ) searchResultEntry.getEntry();
+        assertEquals( 5, entry.size() );
+        assertEquals( 5, entry.getRawAttributesCount() );
+        assertTrue( entry.containsAttribute( "OU", "objectClass" ) );
+        assertEquals( 5, entry.getRawAttributesCount() );
+
+        // Only the accessed attribute is decoded
+        assertTrue( entry.contains( "description", "\u00e9t\u00e9" ) );
+        assertEquals( 4, entry.getRawAttributesCount() );
+
+        Attribute userPassword = entry.get( "userPassword" );
+        assertFalse( userPassword.isHumanReadable() );
+        assertArrayEquals( password, userPassword.getBytes() );
+        assertEquals( 3, entry.getRawAttributesCount() );
+        assertEquals( "", entry.get( "seeAlso" ).getString() );
+        assertEquals( 5, entry.size() );
+
+        // Comparing the entries decodes all the attributes
+        assertEquals( original, entry );
+        assertEquals( 0, entry.getRawAttributesCount() );
+    }
+
+
+    /**
+     * Test the lazy decoding of a SearchResultEntry received in two buffers which are
+     * reused once decoded : the raw values must have been copied
+     */
+    @Test
+    public void testDecodeSearchResultEntryLazyReusedBuffers() throws Exception
+    {
+        Entry original = new DefaultEntry( "ou=contacts,dc=iktek,dc=com",
+            "objectClass: top",
+            "objectClass: organizationalUnit",
+            "ou: contacts",
+            "description: first",
+            "description: second" );
+        original.add( "userPassword", new byte[]
+            { 0x00, 0x01, ( byte ) 0xFF } );
+
+        SearchResultEntryImpl response = new SearchResultEntryImpl( 3 );
+        response.setEntry( original );
+        ByteBuffer bb = encoder.encodeMessage( response );
+        byte[] pdu = new byte[bb.remaining()];
+        bb.get( pdu );
+
+        LdapMessageContainer<SearchResultEntryDecorator> ldapMessageContainer =
+            new LdapMessageContainer<SearchResultEntryDecorator>( codec );
+        ldapMessageContainer.setLazySearchResultEntries( true );
+        Asn1Decoder ldapDecoder = new Asn1Decoder();
+        ldapDecoder.allowValueSlicing();
+
+        int half = pdu.length / 2;
+        byte[] first = Arrays.copyOfRange( pdu, 0, half );
+        byte[] second = Arrays.copyOfRange( pdu, half, pdu.length );
+        ldapDecoder.decode( ByteBuffer.wrap( first ), ldapMessageContainer );
+        Arrays.fill( first, ( byte ) 0 );
+        ldapDecoder.decode( ByteBuffer.wrap( second ), ldapMessageContainer );
+        Arrays.fill( second, ( byte ) 0 );
+
+        assertEquals( TLVStateEnum.PDU_DECODED, ldapMessageContainer.getState() );
+
+        LazyEntry entry = ( LazyEntry ) ldapMessageContainer.getMessage().getEntry();
+        assertEquals( 4, entry.getRawAttributesCount() );
+        assertTrue( entry.contains( "description", "first", "second" ) );
+        assertEquals( original, entry );
+    }
+
+
+    /**
+     * Test that the attribute descriptions are resolved once per container, and that the
+     * binary values are still detected
+     */
+    @Test
+    public void testDecodeSearchResultEntriesAttributeDictionary() throws Exception
+    {
+        byte[] certificate = new byte[]
+            { 0x30, 0x00 };
+        Entry original = new DefaultEntry( "ou=contacts,dc=iktek,dc=com",
+            "objectClass: top",
+            "objectClass: organizationalUnit",
+            "ou: contacts" );
+        original.add( "userCertificate;binary", certificate );
+
+        LdapMessageContainer<SearchResultEntryDecorator> ldapMessageContainer =
+            new LdapMessageContainer<SearchResultEntryDecorator>( codec );
+        Asn1Decoder ldapDecoder = new Asn1Decoder();
+        ldapDecoder.allowValueSlicing();
+
+        for ( int i = 1; i <= 3; i++ )
+        {
+            SearchResultEntryImpl response = new SearchResultEntryImpl( i );
+            response.setEntry( original );
+            ByteBuffer bb = encoder.encodeMessage( response );
+
+            ldapMessageContainer.clean();
+            ldapDecoder.decode( bb, ldapMessageContainer );
+
+            assertEquals( TLVStateEnum.PDU_DECODED, ldapMessageContainer.getState() );
+
+            Entry entry = ldapMessageContainer.getMessage().getEntry();
+            assertEquals( 3, entry.size() );
+            assertTrue( entry.contains( "objectClass", "top", "organizationalUnit" ) );
+            assertFalse( entry.get( "userCertificate;binary" ).isHumanReadable() );
+            assertArrayEquals( certificate, entry.get( "userCertificate;binary" ).getBytes() );
+            assertEquals( 3, ldapMessageContainer.getAttributeDictionary().size() );
+        }
+
+        byte[] ou = Strings.getBytesUtf8( "xxou" );
+        AttributeDictionary.Descriptor descriptor = ldapMessageContainer.getAttributeDictionary().get( ou, 2, 2 );
+        assertEquals( "ou", descriptor.getId() );
+        assertFalse( descriptor.isBinary() );
+        assertTrue( descriptor == ldapMessageContainer.getAttributeDictionary().get( Strings.getBytesUtf8( "ou" ) ) );
+
+        // Changing the detector configuration resets the dictionary
+        ( ( DefaultConfigurableBinaryAttributeDetector ) ldapMessageContainer.getBinaryAttributeDetector() )
+            .addBinaryAttribute( "ou" );
+        descriptor = ldapMessageContainer.getAttributeDictionary().get( Strings.getBytesUtf8( "ou" ) );
+        assertTrue( descriptor.isBinary() );
+        assertEquals( 1, ldapMessageContainer.getAttributeDictionary().size() );
+
+        // Changing the detector resets the dictionary
+        ldapMessageContainer.setBinaryAttributeDetector( new DefaultConfigurableBinaryAttributeDetector() );
+        assertEquals( 0, ldapMessageContainer.getAttributeDictionary().size() );
+
+        // The answers of a detector which can't tell when it changes are not kept
+        ldapMessageContainer.setBinaryAttributeDetector( new BinaryAttributeDetector()
+        {
+            public boolean isBinary( String attributeId )
+            {
+                return false;
+            }
+        } );
+        assertEquals( "ou", ldapMessageContainer.getAttributeDictionary().get( Strings.getBytesUtf8( "ou" ) ).getId() );
+        assertEquals( 0, ldapMessageContainer.getAttributeDictionary().size() );
+    }
+
+
+    /**
+     * Test the decoding of a SearchResultEntry when only some attributes are kept
+     */
+    @Test
+    public void testDecodeSearchResultEntryFiltered() throws Exception
+    {
+        Entry original = new DefaultEntry( "ou=contacts,dc=iktek,dc=com",
+            "objectClass: top",
+            "objectClass: organizationalUnit",
+            "ou: contacts",
+            "description: skipped" );
+        original.add( "userCertificate;binary", new byte[]
+            { 0x30, 0x00 } );
+
+        SearchResultEntryImpl response = new SearchResultEntryImpl( 5 );
+        response.setEntry( original );
+        ByteBuffer bb = encoder.encodeMessage( response );
+
+        LdapMessageContainer<SearchResultEntryDecorator> ldapMessageContainer =
+            new LdapMessageContainer<SearchResultEntryDecorator>( codec );
+        ldapMessageContainer.addSearchResultAttributesFilter( 5, new HashSet<String>( Arrays.asList( "OU",
+            "objectClass;x-option" ) ) );
+
+        Asn1Decoder ldapDecoder = new Asn1Decoder();
+        ldapDecoder.allowValueSlicing();
+        ldapDecoder.decode( bb, ldapMessageContainer );
+
+        assertEquals( TLVStateEnum.PDU_DECODED, ldapMessageContainer.getState() );
+
+        Entry entry = ldapMessageContainer.getMessage().getEntry();
+        assertEquals( 2, entry.size() );
+        assertTrue( entry.contains( "objectClass", "top", "organizationalUnit" ) );
+        assertTrue( entry.contains( "ou", "contacts" ) );
+        assertFalse( entry.containsAttribute( "description" ) );
+        assertFalse( entry.containsAttribute( "userCertificate" ) );
+
+        // Another search is not filtered
+        response.setMessageId( 6 );
+        bb = encoder.encodeMessage( response );
+        ldapMessageContainer.clean();
+        ldapDecoder.decode( bb, ldapMessageContainer );
+
+        assertEquals( 4, ldapMessageContainer.getMessage().getEntry().size() );
+    }
+
+
+    /**
+     * Test that a skipped value received in many buffers is never stored
+     */
+    @Test
+    public void testDecodeSearchResultEntryFilteredSplitValue() throws Exception
+    {
+        byte[] certificate = new byte[1000];
+        Arrays.fill( certificate, ( byte ) 0x5A );
+
+        Entry original = new DefaultEntry( "ou=contacts,dc=iktek,dc=com",
+            "objectClass: top",
+            "objectClass: organizationalUnit",
+            "ou: contacts" );
+        original.add( "userCertificate;binary", certificate );
+
+        SearchResultEntryImpl response = new SearchResultEntryImpl( 5 );
+        response.setEntry( original );
+        ByteBuffer bb = encoder.encodeMessage( response );
+
+        LdapMessageContainer<SearchResultEntryDecorator> ldapMessageContainer =
+            new LdapMessageContainer<SearchResultEntryDecorator>( codec );
+        ldapMessageContainer.addSearchResultAttributesFilter( 5, new HashSet<String>( Arrays.asList( "ou",
+            "objectClass" ) ) );
+
+        Asn1Decoder ldapDecoder = new Asn1Decoder();
+        ldapDecoder.allowValueSlicing();
+        int nbSkippedReads = 0;
+
+        // Feed the PDU in small buffers, as if it was read from the network
+        while ( bb.hasRemaining() )
+        {
+            byte[] read = new byte[Math.min( 100, bb.remaining() )];
+            bb.get( read );
+            ldapDecoder.decode( ByteBuffer.wrap( read ), ldapMessageContainer );
+
+            if ( ( ldapMessageContainer.getState() == TLVStateEnum.VALUE_STATE_PENDING )
+                && ldapMessageContainer.getMessage().isCurrentAttributeSkipped() )
+            {
+                // No buffer has been allocated for the skipped value
+                assertNull( ldapMessageContainer.getCurrentTLV().getValue().getData() );
+                assertEquals( 0, ldapMessageContainer.getCurrentTLV().getValue().getCurrentLength() );
+                nbSkippedReads++;
+            }
+        }
+
+        assertEquals( TLVStateEnum.PDU_DECODED, ldapMessageContainer.getState() );
+        assertTrue( nbSkippedReads > 5 );
+
+        Entry entry = ldapMessageContainer.getMessage().getEntry();
+        assertEquals( 2, entry.size() );
+        assertTrue( entry.contains( "objectClass", "top", "organizationalUnit" ) );
+        assertTrue( entry.contains( "ou", "contacts" ) );
+        assertFalse( entry.containsAttribute( "userCertificate" ) );
+    }
+
+
     /**
      * Test the decoding of a SearchResultEntry
      */
@@ -145,7 +145,7 @@ public class WhoAmIResponseGrammar extends AbstractGrammar<WhoAmIResponseContain
                                                     
                                                     try
                                                     {
-                                                        whoAmIResponse.setDn( new Dn( Strings.utf8ToString( data, 3, data.length - 3 ) ) );
+                                                        whoAmIResponse.setDn( Dn.fromUtf8( data, 3, data.length - 3 ) );
                                                     }
                                                     catch ( LdapInvalidDnException e )
                                                     {
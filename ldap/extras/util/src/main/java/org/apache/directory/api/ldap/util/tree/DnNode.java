@@ -21,6 +21,7 @@ package org.apache.directory.api.ldap.util.tree;
 
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -43,6 +44,13 @@ import org.slf4j.LoggerFactory;
  * nodes of the tree from the root. <br/>
  * A node may also have no attached element.<br/>
  * Each child node is referenced by a Rdn, and holds the full Dn corresponding to its position<br/>
+ * <br/>
+ * The tree can be read concurrently without any lock : the children of a node are stored
+ * in a map which is never modified once published, but replaced by a modified copy
+ * (copy-on-write). The modifications of the tree (add, remove, rename and move) are
+ * serialized on the tree's root node. A reader sees an add or a remove either entirely
+ * or not at all. A rename or a move updates the node and its descendants in place, so
+ * a concurrent reader may see some of the descendants with their old Dn.<br/>
  *
  * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
  * @param <N> The type of node we store
@@ -53,22 +61,22 @@ public class DnNode<N> implements Cloneable
     private static final Logger LOG = LoggerFactory.getLogger( DnNode.class );
 
     /** The stored element */
-    private N nodeElement;
+    private volatile N nodeElement;
 
     /** The node's key */
-    private Rdn nodeRdn;
+    private volatile Rdn nodeRdn;
 
     /** The node's Dn */
-    private Dn nodeDn;
+    private volatile Dn nodeDn;
 
     /** The node's depth in the tree */
     private int depth;
 
     /** The parent, if any */
-    private DnNode<N> parent;
+    private volatile DnNode<N> parent;
 
-    /** Stores the list of all the descendant */
-    private Map<Rdn, DnNode<N>> children;
+    /** Stores the list of all the descendant. This map is never modified, but replaced */
+    private volatile Map<Rdn, DnNode<N>> children;
 
 
     //-------------------------------------------------------------------------
@@ -122,7 +130,7 @@ public class DnNode<N> implements Cloneable
                 node.nodeDn = rootNode.nodeDn.getParent();
                 node.depth = node.nodeDn.size() + depth;
                 rootNode.parent = node;
-                node.children.put( rootNode.nodeRdn, rootNode );
+                node.putChild( rootNode );
                 rootNode = node;
             }
 
@@ -136,12 +144,62 @@ public class DnNode<N> implements Cloneable
     /**
      * Store the given element into the node
      */
-    private synchronized void setElement( N element )
+    private void setElement( N element )
     {
         this.nodeElement = element;
     }
 
 
+    /**
+     * Adds a child to this node, replacing the children map by a modified copy
+     */
+    private void putChild( DnNode<N> child )
+    {
+        Map<Rdn, DnNode<N>> newChildren = new HashMap<Rdn, DnNode<N>>( children );
+        newChildren.put( child.nodeRdn, child );
+        children = newChildren;
+    }
+
+
+    /**
+     * Removes a child from this node, replacing the children map by a modified copy
+     */
+    private void removeChild( Rdn rdn )
+    {
+        Map<Rdn, DnNode<N>> newChildren = new HashMap<Rdn, DnNode<N>>( children );
+        newChildren.remove( rdn );
+        children = newChildren;
+    }
+
+
+    /**
+     * Replaces a child of this node by a renamed child, in a single modification
+     */
+    private void replaceChild( Rdn oldRdn, DnNode<N> child )
+    {
+        Map<Rdn, DnNode<N>> newChildren = new HashMap<Rdn, DnNode<N>>( children );
+        newChildren.remove( oldRdn );
+        newChildren.put( child.nodeRdn, child );
+        children = newChildren;
+    }
+
+
+    /**
+     * @return The root of the tree this node belongs to, which is used to serialize the modifications
+     */
+    private DnNode<N> getRoot()
+    {
+        DnNode<N> root = this;
+
+        while ( root.parent != null )
+        {
+            root = root.parent;
+        }
+
+        return root;
+    }
+
+
     //-------------------------------------------------------------------------
     // Constructors
     //-------------------------------------------------------------------------
@@ -195,6 +253,11 @@ public class DnNode<N> implements Cloneable
             this.nodeElement = rootNode.nodeElement;
             this.nodeRdn = rootNode.nodeRdn;
             this.parent = null;
+
+            for ( DnNode<N> child : children.values() )
+            {
+                child.parent = this;
+            }
         }
         catch ( LdapException le )
         {
@@ -210,7 +273,7 @@ public class DnNode<N> implements Cloneable
      *
      * @return <code>true</code> if the class is a leaf node, false otherwise.
      */
-    public synchronized boolean isLeaf()
+    public boolean isLeaf()
     {
         return !hasChildren();
     }
@@ -223,7 +286,7 @@ public class DnNode<N> implements Cloneable
      * @param dn The Dn we want to check
      * @return <code>true</code> if this is a leaf node, false otherwise.
      */
-    public synchronized boolean isLeaf( Dn dn )
+    public boolean isLeaf( Dn dn )
     {
         DnNode<N> node = getNode( dn );
 
@@ -242,7 +305,7 @@ public class DnNode<N> implements Cloneable
      *
      * @return The number of descendents
      */
-    public synchronized int size()
+    public int size()
     {
         // The node itself
         int size = 1;
@@ -263,7 +326,7 @@ public class DnNode<N> implements Cloneable
     /**
      * @return Return the stored element, if any
      */
-    public synchronized N getElement()
+    public N getElement()
     {
         return nodeElement;
     }
@@ -273,7 +336,7 @@ public class DnNode<N> implements Cloneable
      * @return Return the stored element, if any
      * @param dn The Dn we want to get the element for
      */
-    public synchronized N getElement( Dn dn )
+    public N getElement( Dn dn )
     {
         DnNode<N> node = getNode( dn );
 
@@ -290,7 +353,7 @@ public class DnNode<N> implements Cloneable
      * @return True if the Node stores an element. BranchNode may not hold any
      * element.
      */
-    public synchronized boolean hasElement()
+    public boolean hasElement()
     {
         return nodeElement != null;
     }
@@ -301,7 +364,7 @@ public class DnNode<N> implements Cloneable
      * element.
      * @param dn The Dn we want to get the element for
      */
-    public synchronized boolean hasElement( Dn dn )
+    public boolean hasElement( Dn dn )
     {
         DnNode<N> node = getNode( dn );
 
@@ -317,7 +380,7 @@ public class DnNode<N> implements Cloneable
     /**
      * recursively check if the node has a descendant having an element
      */
-    private synchronized boolean hasDescendantElement( DnNode<N> node )
+    private boolean hasDescendantElement( DnNode<N> node )
     {
         if ( node == null )
         {
@@ -347,7 +410,7 @@ public class DnNode<N> implements Cloneable
      * False otherwise
      * @param dn The Dn we want to get the element for
      */
-    public synchronized boolean hasDescendantElement( Dn dn )
+    public boolean hasDescendantElement( Dn dn )
     {
         DnNode<N> node = getNode( dn );
 
@@ -380,7 +443,7 @@ public class DnNode<N> implements Cloneable
     /**
      * recursively get all the elements from nodes having an element
      */
-    private synchronized void getDescendantElements( DnNode<N> node, List<N> descendants )
+    private void getDescendantElements( DnNode<N> node, List<N> descendants )
     {
         if ( node == null )
         {
@@ -407,7 +470,7 @@ public class DnNode<N> implements Cloneable
      * False otherwise
      * @param dn The Dn we want to get the element for
      */
-    public synchronized List<N> getDescendantElements( Dn dn )
+    public List<N> getDescendantElements( Dn dn )
     {
         List<N> descendants = new ArrayList<N>();
 
@@ -441,7 +504,7 @@ public class DnNode<N> implements Cloneable
      *
      * @return <code>true</code> if the node has some children
      */
-    public synchronized boolean hasChildren()
+    public boolean hasChildren()
     {
         return ( children != null ) && children.size() != 0;
     }
@@ -454,7 +517,7 @@ public class DnNode<N> implements Cloneable
      * @return <code>true</code> if the node has some children
      * @throws LdapException if the Dn is null or empty
      */
-    public synchronized boolean hasChildren( Dn dn ) throws LdapException
+    public boolean hasChildren( Dn dn ) throws LdapException
     {
         checkDn( dn );
 
@@ -467,16 +530,16 @@ public class DnNode<N> implements Cloneable
     /**
      * @return The list of DnNode
      */
-    public synchronized Map<Rdn, DnNode<N>> getChildren()
+    public Map<Rdn, DnNode<N>> getChildren()
     {
-        return children;
+        return Collections.unmodifiableMap( children );
     }
 
 
     /**
      * @return The parent DnNode, if any
      */
-    public synchronized DnNode<N> getParent()
+    public DnNode<N> getParent()
     {
         return parent;
     }
@@ -485,7 +548,7 @@ public class DnNode<N> implements Cloneable
     /**
      * @return True if the current DnNode has a parent
      */
-    public synchronized boolean hasParent()
+    public boolean hasParent()
     {
         return parent != null;
     }
@@ -501,7 +564,7 @@ public class DnNode<N> implements Cloneable
      * @param dn the normalized distinguished name to resolve to a parent
      * @return true if there is a parent associated with the normalized dn
      */
-    public synchronized boolean hasParent( Dn dn )
+    public boolean hasParent( Dn dn )
     {
         List<Rdn> rdns = dn.getRdns();
 
@@ -545,7 +608,7 @@ public class DnNode<N> implements Cloneable
      * @return the corresponding node
      * @throws LdapException if the Dn is null or empty
      */
-    public synchronized DnNode<N> add( Dn dn ) throws LdapException
+    public DnNode<N> add( Dn dn ) throws LdapException
     {
         return add( dn, null );
     }
@@ -560,60 +623,63 @@ public class DnNode<N> implements Cloneable
      * @return the corresponding node
      * @throws LdapException if the Dn is null or empty
      */
-    public synchronized DnNode<N> add( Dn dn, N element ) throws LdapException
+    public DnNode<N> add( Dn dn, N element ) throws LdapException
     {
         checkDn( dn );
 
-        // We first have to find the Node which will be the parent
-        DnNode<N> parentNode = getNode( dn );
-
-        if ( parentNode == null )
+        synchronized ( getRoot() )
         {
-            // No parent : add a new node to the root
-            DnNode<N> childNode = createNode( dn, element, dn.size() );
-            childNode.parent = this;
-            children.put( childNode.nodeRdn, childNode );
-            
-            return childNode;
-        }
-        else
-        {
-            // We have a parent. Add the new node to the found parent
-            int nbRdns = dn.size() - parentNode.depth;
+            // We first have to find the Node which will be the parent
+            DnNode<N> parentNode = getNode( dn );
 
-            if ( nbRdns == 0 )
+            if ( parentNode == null )
             {
-                // That means the added Dn is already present. Check if it already has an element
-                if ( parentNode.hasElement() )
-                {
-                    String message = "Cannot add a node to a node already having an element";
-                    LOG.error( message );
-                    throw new LdapUnwillingToPerformException( ResultCodeEnum.UNWILLING_TO_PERFORM, message );
-                }
-                // We may try to add twice the same Dn, without any element
-                else if ( element == null )
+                // No parent : add a new node to the root
+                DnNode<N> childNode = createNode( dn, element, dn.size() );
+                childNode.parent = this;
+                putChild( childNode );
+
+                return childNode;
+            }
+            else
+            {
+                // We have a parent. Add the new node to the found parent
+                int nbRdns = dn.size() - parentNode.depth;
+
+                if ( nbRdns == 0 )
                 {
-                    String message = "Cannot add a node with no element if it already exists";
-                    LOG.error( message );
-                    throw new LdapUnwillingToPerformException( ResultCodeEnum.UNWILLING_TO_PERFORM, message );
+                    // That means the added Dn is already present. Check if it already has an element
+                    if ( parentNode.hasElement() )
+                    {
+                        String message = "Cannot add a node to a node already having an element";
+                        LOG.error( message );
+                        throw new LdapUnwillingToPerformException( ResultCodeEnum.UNWILLING_TO_PERFORM, message );
+                    }
+                    // We may try to add twice the same Dn, without any element
+                    else if ( element == null )
+                    {
+                        String message = "Cannot add a node with no element if it already exists";
+                        LOG.error( message );
+                        throw new LdapUnwillingToPerformException( ResultCodeEnum.UNWILLING_TO_PERFORM, message );
+                    }
+                    // All is fine : we are just injecting some data into an existing node
+                    else
+                    {
+                        parentNode.setElement( element );
+
+                        return parentNode;
+                    }
                 }
-                // All is fine : we are just injecting some data into an existing node
                 else
                 {
-                    parentNode.setElement( element );
-                    
-                    return parentNode;
-                }
-            }
-            else
-            {
-                DnNode<N> childNode = createNode( dn, element, nbRdns );
+                    DnNode<N> childNode = createNode( dn, element, nbRdns );
 
-                // done. now, add the newly created tree to the parent node
-                childNode.parent = parentNode;
-                parentNode.children.put( childNode.nodeRdn, childNode );
+                    // done. now, add the newly created tree to the parent node
+                    childNode.parent = parentNode;
+                    parentNode.putChild( childNode );
 
-                return childNode;
+                    return childNode;
+                }
             }
         }
     }
@@ -625,40 +691,44 @@ public class DnNode<N> implements Cloneable
      * @param dn the node's Dn
      * @throws LdapException if the Dn is null or empty
      */
-    public synchronized void remove( Dn dn ) throws LdapException
+    public void remove( Dn dn ) throws LdapException
     {
         checkDn( dn );
 
-        // Find the parent first : we won't be able to remove
-        // a node if it's not present in the tree !
-        DnNode<N> parentNode = getNode( dn );
-
-        if ( parentNode == null )
+        synchronized ( getRoot() )
         {
-            return;
-        }
+            // Find the parent first : we won't be able to remove
+            // a node if it's not present in the tree !
+            DnNode<N> parentNode = getNode( dn );
 
-        // Now, check that this parent has the same Dn than the one
-        // we gave and that there is no children
-        if ( ( dn.size() != parentNode.depth ) || parentNode.hasChildren() )
-        {
-            return;
-        }
-
-        // Ok, no children, same Dn, let's remove what we can.
-        parentNode = parentNode.getParent();
-
-        for ( Rdn rdn : dn.getRdns() )
-        {
-            parentNode.children.remove( rdn );
+            if ( parentNode == null )
+            {
+                return;
+            }
 
-            if ( parentNode.children.size() > 0 )
+            // Now, check that this parent has the same Dn than the one
+            // we gave and that there is no children
+            if ( ( dn.size() != parentNode.depth ) || parentNode.hasChildren() )
             {
-                // We have to stop here, because the parent's node is shared with other Node.
-                break;
+                return;
             }
 
+            // Ok, no children, same Dn, let's remove what we can.
             parentNode = parentNode.getParent();
+
+            for ( Rdn rdn : dn.getRdns() )
+            {
+                parentNode.removeChild( rdn );
+
+                if ( ( parentNode.children.size() > 0 ) || parentNode.hasElement() || !parentNode.hasParent() )
+                {
+                    // We have to stop here, because the parent's node is shared with other Node,
+                    // or holds an element
+                    break;
+                }
+
+                parentNode = parentNode.getParent();
+            }
         }
     }
 
@@ -670,7 +740,7 @@ public class DnNode<N> implements Cloneable
      * @param rdn The name we are looking for
      * @return <code>true</code> if the tree instance contains this name
      */
-    public synchronized boolean contains( Rdn rdn )
+    public boolean contains( Rdn rdn )
     {
         return children.containsKey( rdn );
     }
@@ -682,21 +752,16 @@ public class DnNode<N> implements Cloneable
      * @param rdn the rdn to use as the node key
      * @return the child node corresponding to the rdn.
      */
-    public synchronized DnNode<N> getChild( Rdn rdn )
+    public DnNode<N> getChild( Rdn rdn )
     {
-        if ( children.containsKey( rdn ) )
-        {
-            return children.get( rdn );
-        }
-
-        return null;
+        return children.get( rdn );
     }
 
 
     /**
      * @return The Node's Rdn
      */
-    public synchronized Rdn getRdn()
+    public Rdn getRdn()
     {
         return nodeRdn;
     }
@@ -712,7 +777,7 @@ public class DnNode<N> implements Cloneable
      * @param dn the normalized distinguished name to resolve to a parent
      * @return the Node associated with the normalized dn
      */
-    public synchronized DnNode<N> getNode( Dn dn )
+    public DnNode<N> getNode( Dn dn )
     {
         List<Rdn> rdns = dn.getRdns();
 
@@ -755,7 +820,7 @@ public class DnNode<N> implements Cloneable
      * @param dn the normalized distinguished name to resolve to a parent
      * @return the Node associated with the normalized dn
      */
-    public synchronized boolean hasParentElement( Dn dn )
+    public boolean hasParentElement( Dn dn )
     {
         List<Rdn> rdns = dn.getRdns();
 
@@ -780,8 +845,6 @@ public class DnNode<N> implements Cloneable
                 {
                     hasElement = true;
                 }
-
-                parent = currentNode;
             }
             else
             {
@@ -803,7 +866,7 @@ public class DnNode<N> implements Cloneable
      * @param dn the normalized distinguished name to resolve to a parent
      * @return the Node associated with the normalized dn
      */
-    public synchronized DnNode<N> getParentWithElement( Dn dn )
+    public DnNode<N> getParentWithElement( Dn dn )
     {
         List<Rdn> rdns = dn.getRdns();
 
@@ -828,8 +891,6 @@ public class DnNode<N> implements Cloneable
                 {
                     element = currentNode;
                 }
-
-                parent = currentNode;
             }
             else
             {
@@ -851,7 +912,7 @@ public class DnNode<N> implements Cloneable
      * @param dn the normalized distinguished name to resolve to a parent
      * @return the Node associated with the normalized dn
      */
-    public synchronized DnNode<N> getParentWithElement()
+    public DnNode<N> getParentWithElement()
     {
         DnNode<N> currentNode = parent;
 
@@ -870,85 +931,93 @@ public class DnNode<N> implements Cloneable
 
 
     /**
-     * rename the DnNode's Dn
+     * rename the DnNode's Dn. The node and the Dn of its descendants are modified in
+     * place : this is not atomic for the concurrent readers.
      * 
      * @param newRdn the new Rdn of this node
      * @throws LdapException
      */
-    public synchronized void rename( Rdn newRdn ) throws LdapException
+    public void rename( Rdn newRdn ) throws LdapException
     {
-        Dn temp = nodeDn.getParent();
-        temp = temp.add( newRdn );
+        synchronized ( getRoot() )
+        {
+            Dn temp = nodeDn.getParent();
+            temp = temp.add( newRdn );
 
-        Rdn oldRdn = nodeRdn;
+            Rdn oldRdn = nodeRdn;
 
-        nodeRdn = temp.getRdn();
-        nodeDn = temp;
+            nodeRdn = temp.getRdn();
+            nodeDn = temp;
 
-        if ( parent != null )
-        {
-            parent.children.remove( oldRdn );
-            parent.children.put( nodeRdn, this );
-        }
+            if ( parent != null )
+            {
+                parent.replaceChild( oldRdn, this );
+            }
 
-        updateAfterModDn( nodeDn );
+            updateAfterModDn( nodeDn );
+        }
     }
 
 
     /**
-     * move the DnNode's Dn
+     * move the DnNode's Dn. The node and the Dn of its descendants are modified in
+     * place, and the node is removed from its old parent before being added to the new
+     * one : this is not atomic for the concurrent readers.
      *
      * @param newParent the new parent Dn
      * @throws LdapException
      */
-    public synchronized void move( Dn newParent ) throws LdapException
+    public void move( Dn newParent ) throws LdapException
     {
-        DnNode<N> tmp = null;
-
-        Dn tmpDn = null;
-
-        // check if the new parent Dn is child of the parent
-        if ( newParent.isDescendantOf( parent.nodeDn ) )
+        synchronized ( getRoot() )
         {
-            tmp = parent;
-            tmpDn = parent.nodeDn;
-        }
+            DnNode<N> tmp = null;
 
-        // if yes, then drill for the new parent node
-        if ( tmpDn != null )
-        {
-            int parentNodeSize = tmpDn.size();
-            int count = newParent.size() - parentNodeSize;
+            Dn tmpDn = null;
 
-            while ( count-- > 0 )
+            // check if the new parent Dn is child of the parent
+            if ( newParent.isDescendantOf( parent.nodeDn ) )
             {
-                tmp = tmp.getChild( newParent.getRdn( parentNodeSize++ ) );
+                tmp = parent;
+                tmpDn = parent.nodeDn;
             }
-        }
 
-        // if not, we have to traverse all the way up to the 
-        // root node and then find the new parent node
-        if ( tmp == null )
-        {
-            tmp = this;
-            while ( tmp.parent != null )
+            // if yes, then drill for the new parent node
+            if ( tmpDn != null )
             {
-                tmp = tmp.parent;
+                int parentNodeSize = tmpDn.size();
+                int count = newParent.size() - parentNodeSize;
+
+                while ( count-- > 0 )
+                {
+                    tmp = tmp.getChild( newParent.getRdn( parentNodeSize++ ) );
+                }
             }
 
-            tmp = tmp.getNode( newParent );
-        }
+            // if not, we have to traverse all the way up to the 
+            // root node and then find the new parent node
+            if ( tmp == null )
+            {
+                tmp = this;
+                while ( tmp.parent != null )
+                {
+                    tmp = tmp.parent;
+                }
+
+                tmp = tmp.getNode( newParent );
+            }
 
-        nodeDn = newParent.add( nodeRdn );
-        updateAfterModDn( nodeDn );
+            nodeDn = newParent.add( nodeRdn );
+            updateAfterModDn( nodeDn );
 
-        if ( parent != null )
-        {
-            parent.children.remove( nodeRdn );
-        }
+            if ( parent != null )
+            {
+                parent.removeChild( nodeRdn );
+            }
 
-        parent = tmp;
-        parent.children.put( nodeRdn, this );
+            parent = tmp;
+            parent.putChild( this );
+        }
     }
 
 
@@ -958,7 +1027,7 @@ public class DnNode<N> implements Cloneable
      * 
      * @param newParentDn
      */
-    private synchronized void updateAfterModDn( Dn newParentDn ) throws LdapInvalidDnException
+    private void updateAfterModDn( Dn newParentDn ) throws LdapInvalidDnException
     {
         if ( children != null )
         {
@@ -974,7 +1043,7 @@ public class DnNode<N> implements Cloneable
     /**
      * {@inheritDoc}
      */
-    public synchronized DnNode<N> clone()
+    public DnNode<N> clone()
     {
         DnNode<N> clonedDnNode = new DnNode<N>();
 
@@ -986,7 +1055,7 @@ public class DnNode<N> implements Cloneable
 
         for ( DnNode<N> node : children.values() )
         {
-            clonedDnNode.children.put( node.getRdn(), node.clone() );
+            clonedDnNode.putChild( node.clone() );
         }
 
         return clonedDnNode;
@@ -1059,7 +1128,7 @@ public class DnNode<N> implements Cloneable
     /**
      * @return the dn
      */
-    public synchronized Dn getDn()
+    public Dn getDn()
     {
         return nodeDn;
     }
@@ -28,6 +28,11 @@ import static org.junit.Assert.assertTrue;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import com.mycila.junit.concurrent.Concurrency;
 import com.mycila.junit.concurrent.ConcurrentJunitRunner;
@@ -939,4 +944,108 @@ public class TestDnNode
         assertEquals( new Dn( "dc=vysper,dc=mina,dc=directory,dc=kayyagari,dc=apache,dc=org" ),
             directoryNode.getChild( new Rdn( "dc=mina" ) ).getChild( new Rdn( "dc=vysper" ) ).getDn() );
     }
+
+
+    //---------------------------------------------------------------------------
+    // Test the concurrent accesses
+    //---------------------------------------------------------------------------
+    /**
+     * Test that the lookup methods don't modify the tree
+     */
+    @Test
+    public void testLookupsDontModifyTheTree() throws LdapException
+    {
+        DnNode<Dn> rootNode = new DnNode<Dn>();
+        Dn dn = new Dn( "dc=apache,dc=org" );
+        rootNode.add( dn, dn );
+
+        assertTrue( rootNode.hasParentElement( new Dn( "ou=users,dc=apache,dc=org" ) ) );
+        assertNotNull( rootNode.getParentWithElement( new Dn( "ou=users,dc=apache,dc=org" ) ) );
+
+        assertFalse( rootNode.hasParent() );
+        assertNull( rootNode.getParent() );
+    }
+
+
+    /**
+     * Test that the children map can't be modified
+     */
+    @Test(expected = UnsupportedOperationException.class)
+    public void testGetChildrenUnmodifiable() throws LdapException
+    {
+        DnNode<Dn> rootNode = new DnNode<Dn>();
+        rootNode.add( new Dn( "dc=apache,dc=org" ) );
+
+        rootNode.getChildren().clear();
+    }
+
+
+    /**
+     * Test that lookups see a consistent tree while other threads add and remove nodes
+     */
+    @Test
+    public void testConcurrentLookupsAndUpdates() throws Exception
+    {
+        final DnNode<Dn> rootNode = new DnNode<Dn>();
+        final Dn contextDn = new Dn( "dc=apache,dc=org" );
+        rootNode.add( contextDn, contextDn );
+
+        final AtomicBoolean done = new AtomicBoolean( false );
+        ExecutorService executor = Executors.newFixedThreadPool( 3 );
+
+        try
+        {
+            Future<?> writer = executor.submit( new Callable<Void>()
+            {
+                public Void call() throws Exception
+                {
+                    try
+                    {
+                        for ( int i = 0; i < 1000; i++ )
+                        {
+                            Dn dn = new Dn( "ou=branch" + i + ",dc=apache,dc=org" );
+                            rootNode.add( dn, dn );
+                            rootNode.remove( dn );
+                        }
+                    }
+                    finally
+                    {
+                        done.set( true );
+                    }
+
+                    return null;
+                }
+            } );
+
+            Callable<Void> reader = new Callable<Void>()
+            {
+                public Void call() throws Exception
+                {
+                    Dn dn = new Dn( "cn=test,ou=people,dc=apache,dc=org" );
+
+                    while ( !done.get() )
+                    {
+                        // The context entry is always present
+                        assertEquals( contextDn, rootNode.getParentWithElement( dn ).getElement() );
+                        assertEquals( contextDn, rootNode.getElement( contextDn ) );
+                    }
+
+                    return null;
+                }
+            };
+
+            Future<?> reader1 = executor.submit( reader );
+            Future<?> reader2 = executor.submit( reader );
+
+            writer.get();
+            reader1.get();
+            reader2.get();
+
+            assertEquals( 3, rootNode.size() );
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
 }
@@ -0,0 +1,1001 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.directory.api.ldap.model.entry;
+
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.directory.api.ldap.model.constants.SchemaConstants;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.exception.LdapInvalidDnException;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.api.util.Strings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * An Entry which stores its attributes as they have been received, as raw
+ * UTF-8 or binary values, and creates the Attribute and Values of an
+ * attribute only when it is accessed. The raw values of all the attributes
+ * are stored one after the other in a single byte[], each value being
+ * known by its offset and length in this array. The methods using an attribute ID only
+ * decode this attribute, the other methods (iteration, methods using an
+ * AttributeType, comparison, serialization...) decode all the remaining
+ * attributes first.
+ * <br/>
+ * This entry is not schema aware. As the DefaultEntry, it's not thread safe,
+ * and reading it may modify its internal state.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class LazyEntry implements Entry
+{
+    /** Used for serialization */
+    private static final long serialVersionUID = 2L;
+
+    /** The logger for this class */
+    private static final Logger LOG = LoggerFactory.getLogger( LazyEntry.class );
+
+    /** The entry containing the already decoded attributes */
+    private Entry entry;
+
+    /** The attributes not yet decoded, stored by ID */
+    private Map<String, RawAttribute> rawAttributes = new LinkedHashMap<String, RawAttribute>();
+
+    /** The last raw attribute added */
+    private RawAttribute currentRawAttribute;
+
+    /** The raw values of all the attributes not yet decoded */
+    private byte[] rawValues = Strings.EMPTY_BYTES;
+
+    /** The number of bytes used in rawValues */
+    private int rawValuesLength;
+
+
+    /**
+     * Creates a new instance of an empty LazyEntry.
+     */
+    public LazyEntry()
+    {
+        entry = new DefaultEntry();
+    }
+
+
+    /**
+     * Creates a new instance of an empty LazyEntry, with a Dn.
+     *
+     * @param dn The entry's Dn
+     */
+    public LazyEntry( Dn dn )
+    {
+        entry = new DefaultEntry( dn );
+    }
+
+
+    /**
+     * Creates a new instance of an empty LazyEntry, which raw values are expected to
+     * fit in the given number of bytes. The values buffer grows if they don't.
+     *
+     * @param rawValuesSize The expected size of all the raw values
+     */
+    public LazyEntry( int rawValuesSize )
+    {
+        entry = new DefaultEntry();
+        rawValues = new byte[rawValuesSize];
+    }
+
+
+    /**
+     * Adds an attribute which values will be decoded when the attribute is first accessed.
+     * The values are added with {@link #addRawValue(byte[], int, int)}.
+     *
+     * @param upId The user provided attribute ID
+     * @param binary If the values must be kept as byte[]. Otherwise, they are decoded as UTF-8 Strings
+     */
+    public void addRawAttribute( String upId, boolean binary )
+    {
+        String id = getId( upId );
+        currentRawAttribute = rawAttributes.get( id );
+
+        if ( currentRawAttribute == null )
+        {
+            currentRawAttribute = new RawAttribute( upId, binary );
+            rawAttributes.put( id, currentRawAttribute );
+        }
+    }
+
+
+    /**
+     * Adds a value to the last raw attribute added. An empty value is stored as an empty String.
+     *
+     * @param value The value, as it has been received
+     */
+    public void addRawValue( byte[] value )
+    {
+        addRawValue( value, 0, value.length );
+    }
+
+
+    /**
+     * Adds a value to the last raw attribute added. The bytes are copied into the
+     * entry's values buffer, so the source array can be reused as soon as this
+     * method returns. An empty value is stored as an empty String.
+     *
+     * @param source The array containing the value, as it has been received
+     * @param offset The position of the value in the array
+     * @param length The value length
+     */
+    public void addRawValue( byte[] source, int offset, int length )
+    {
+        currentRawAttribute.addValue( rawValuesLength, length );
+
+        if ( length == 0 )
+        {
+            return;
+        }
+
+        if ( rawValuesLength + length > rawValues.length )
+        {
+            rawValues = Arrays.copyOf( rawValues, Math.max( rawValuesLength + length, rawValues.length * 2 ) );
+        }
+
+        System.arraycopy( source, offset, rawValues, rawValuesLength, length );
+        rawValuesLength += length;
+    }
+
+
+    /**
+     * @return The number of attributes which have not yet been decoded
+     */
+    public int getRawAttributesCount()
+    {
+        return rawAttributes.size();
+    }
+
+
+    /**
+     * Transforms an attribute ID the way DefaultEntry does
+     */
+    private static String getId( String upId )
+    {
+        return Strings.trim( Strings.toLowerCase( upId ) );
+    }
+
+
+    /**
+     * Decodes the given attribute, if it has not already been decoded
+     */
+    private void materialize( String upId )
+    {
+        if ( ( upId == null ) || rawAttributes.isEmpty() )
+        {
+            return;
+        }
+
+        RawAttribute rawAttribute = rawAttributes.remove( getId( upId ) );
+
+        if ( rawAttribute != null )
+        {
+            materialize( rawAttribute );
+        }
+
+        if ( rawAttributes.isEmpty() )
+        {
+            clearRawAttributes();
+        }
+    }
+
+
+    /**
+     * Removes a raw attribute, releasing the values buffer once no raw attribute remains
+     */
+    private void removeRawAttribute( String upId )
+    {
+        rawAttributes.remove( getId( upId ) );
+
+        if ( rawAttributes.isEmpty() )
+        {
+            clearRawAttributes();
+        }
+    }
+
+
+    /**
+     * Removes all the raw attributes and their values
+     */
+    private void clearRawAttributes()
+    {
+        rawAttributes.clear();
+        currentRawAttribute = null;
+        rawValues = Strings.EMPTY_BYTES;
+        rawValuesLength = 0;
+    }
+
+
+    /**
+     * Decodes all the attributes which have not already been decoded
+     */
+    private void materializeAll()
+    {
+        if ( rawAttributes.isEmpty() )
+        {
+            return;
+        }
+
+        for ( RawAttribute rawAttribute : rawAttributes.values() )
+        {
+            materialize( rawAttribute );
+        }
+
+        clearRawAttributes();
+    }
+
+
+    /**
+     * Creates the Attribute and its Values, and stores it into the wrapped entry
+     */
+    private void materialize( RawAttribute rawAttribute )
+    {
+        Attribute attribute = new DefaultAttribute( rawAttribute.upId );
+
+        try
+        {
+            for ( int i = 0; i < rawAttribute.nbValues; i++ )
+            {
+                int offset = rawAttribute.positions[i * 2];
+                int length = rawAttribute.positions[i * 2 + 1];
+
+                if ( length == 0 )
+                {
+                    attribute.add( "" );
+                }
+                else if ( rawAttribute.binary )
+                {
+                    attribute.add( Arrays.copyOfRange( rawValues, offset, offset + length ) );
+                }
+                else
+                {
+                    attribute.add( Strings.utf8ToString( rawValues, offset, length ) );
+                }
+            }
+
+            entry.put( attribute );
+        }
+        catch ( LdapException le )
+        {
+            // Can't happen, the attribute is not schema aware
+            LOG.error( "Cannot decode the attribute {} : {}", rawAttribute.upId, le.getMessage() );
+        }
+    }
+
+
+    //-------------------------------------------------------------------------
+    // Entry methods
+    //-------------------------------------------------------------------------
+    /**
+     * {@inheritDoc}
+     */
+    public Entry add( Attribute... attributes ) throws LdapException
+    {
+        materializeAll();
+
+        return entry.add( attributes );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public Entry add( AttributeType attributeType, byte[]... values ) throws LdapException
+    {
+        materializeAll();
+
+        return entry.add( attributeType, values );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public Entry add( AttributeType attributeType, String... values ) throws LdapException
+    {
+        materializeAll();
+
+        return entry.add( attributeType, values );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public Entry add( AttributeType attributeType, Value<?>... values ) throws LdapException
+    {
+        materializeAll();
+
+        return entry.add( attributeType, values );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public Entry add( String upId, AttributeType attributeType, byte[]... values ) throws LdapException
+    {
+        materializeAll();
+
+        return entry.add( upId, attributeType, values );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public Entry add( String upId, AttributeType attributeType, String... values ) throws LdapException
+    {
+        materializeAll();
+
+        return entry.add( upId, attributeType, values );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public Entry add( String upId, AttributeType attributeType, Value<?>... values ) throws LdapException
+    {
+        materializeAll();
+
+        return entry.add( upId, attributeType, values );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public List<Attribute> put( Attribute... attributes ) throws LdapException
+    {
+        materializeAll();
+
+        return entry.put( attributes );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public Attribute put( AttributeType attributeType, byte[]... values ) throws LdapException
+    {
+        materializeAll();
+
+        return entry.put( attributeType, values );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public Attribute put( AttributeType attributeType, String... values ) throws LdapException
+    {
+        materializeAll();
+
+        return entry.put( attributeType, values );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public Attribute put( AttributeType attributeType, Value<?>... values ) throws LdapException
+    {
+        materializeAll();
+
+        return entry.put( attributeType, values );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public Attribute put( String upId, AttributeType attributeType, byte[]... values ) throws LdapException
+    {
+        materializeAll();
+
+        return entry.put( upId, attributeType, values );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public Attribute put( String upId, AttributeType attributeType, String... values ) throws LdapException
+    {
+        materializeAll();
+
+        return entry.put( upId, attributeType, values );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public Attribute put( String upId, AttributeType attributeType, Value<?>... values ) throws LdapException
+    {
+        materializeAll();
+
+        return entry.put( upId, attributeType, values );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean remove( AttributeType attributeType, byte[]... values ) throws LdapException
+    {
+        materializeAll();
+
+        return entry.remove( attributeType, values );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean remove( AttributeType attributeType, String... values ) throws LdapException
+    {
+        materializeAll();
+
+        return entry.remove( attributeType, values );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean remove( AttributeType attributeType, Value<?>... values ) throws LdapException
+    {
+        materializeAll();
+
+        return entry.remove( attributeType, values );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public List<Attribute> remove( Attribute... attributes ) throws LdapException
+    {
+        materializeAll();
+
+        return entry.remove( attributes );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void removeAttributes( AttributeType... attributes )
+    {
+        materializeAll();
+
+        entry.removeAttributes( attributes );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean contains( AttributeType attributeType, byte[]... values )
+    {
+        materializeAll();
+
+        return entry.contains( attributeType, values );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean contains( AttributeType attributeType, String... values )
+    {
+        materializeAll();
+
+        return entry.contains( attributeType, values );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean contains( AttributeType attributeType, Value<?>... values )
+    {
+        materializeAll();
+
+        return entry.contains( attributeType, values );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean containsAttribute( AttributeType attributeType )
+    {
+        materializeAll();
+
+        return entry.containsAttribute( attributeType );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean contains( Attribute... attributes )
+    {
+        materializeAll();
+
+        return entry.contains( attributes );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public Attribute get( AttributeType attributeType )
+    {
+        materializeAll();
+
+        return entry.get( attributeType );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public Collection<Attribute> getAttributes()
+    {
+        materializeAll();
+
+        return entry.getAttributes();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public Iterator<Attribute> iterator()
+    {
+        materializeAll();
+
+        return entry.iterator();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean hasObjectClass( Attribute... objectClasses )
+    {
+        materializeAll();
+
+        return entry.hasObjectClass( objectClasses );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public Entry add( String upId, String... values ) throws LdapException
+    {
+        materialize( upId );
+
+        return entry.add( upId, values );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public Entry add( String upId, byte[]... values ) throws LdapException
+    {
+        materialize( upId );
+
+        return entry.add( upId, values );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public Entry add( String upId, Value<?>... values ) throws LdapException
+    {
+        materialize( upId );
+
+        return entry.add( upId, values );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean remove( String upId, byte[]... values ) throws LdapException
+    {
+        materialize( upId );
+
+        return entry.remove( upId, values );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean remove( String upId, String... values ) throws LdapException
+    {
+        materialize( upId );
+
+        return entry.remove( upId, values );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean remove( String upId, Value<?>... values ) throws LdapException
+    {
+        materialize( upId );
+
+        return entry.remove( upId, values );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean contains( String upId, byte[]... values )
+    {
+        materialize( upId );
+
+        return entry.contains( upId, values );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean contains( String upId, String... values )
+    {
+        materialize( upId );
+
+        return entry.contains( upId, values );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean contains( String upId, Value<?>... values )
+    {
+        materialize( upId );
+
+        return entry.contains( upId, values );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public Attribute put( String upId, byte[]... values )
+    {
+        // The raw attribute, if any, is replaced
+        removeRawAttribute( upId );
+
+        return entry.put( upId, values );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public Attribute put( String upId, String... values )
+    {
+        // The raw attribute, if any, is replaced
+        removeRawAttribute( upId );
+
+        return entry.put( upId, values );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public Attribute put( String upId, Value<?>... values )
+    {
+        // The raw attribute, if any, is replaced
+        removeRawAttribute( upId );
+
+        return entry.put( upId, values );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean containsAttribute( String... attributes )
+    {
+        if ( attributes == null )
+        {
+            return entry.containsAttribute( attributes );
+        }
+
+        for ( String attribute : attributes )
+        {
+            if ( ( attribute == null ) || !rawAttributes.containsKey( getId( attribute ) ) )
+            {
+                if ( !entry.containsAttribute( attribute ) )
+                {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public Attribute get( String alias )
+    {
+        materialize( alias );
+
+        return entry.get( alias );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean hasObjectClass( String... objectClasses )
+    {
+        materialize( SchemaConstants.OBJECT_CLASS_AT );
+
+        return entry.hasObjectClass( objectClasses );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void removeAttributes( String... attributes )
+    {
+        if ( attributes != null )
+        {
+            for ( String attribute : attributes )
+            {
+                if ( attribute != null )
+                {
+                    removeRawAttribute( attribute );
+                }
+            }
+        }
+
+        entry.removeAttributes( attributes );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void clear()
+    {
+        clearRawAttributes();
+        entry.clear();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public int size()
+    {
+        return entry.size() + rawAttributes.size();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public Dn getDn()
+    {
+        return entry.getDn();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setDn( Dn dn )
+    {
+        entry.setDn( dn );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setDn( String dn ) throws LdapInvalidDnException
+    {
+        entry.setDn( dn );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean isSchemaAware()
+    {
+        return false;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <br/>
+     * The clone is a DefaultEntry.
+     */
+    public Entry clone()
+    {
+        materializeAll();
+
+        return entry.clone();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <br/>
+     * The clone is a DefaultEntry.
+     */
+    public Entry shallowClone()
+    {
+        materializeAll();
+
+        return entry.shallowClone();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void writeExternal( ObjectOutput out ) throws IOException
+    {
+        materializeAll();
+
+        entry.writeExternal( out );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void readExternal( ObjectInput in ) throws IOException, ClassNotFoundException
+    {
+        clearRawAttributes();
+
+        entry.readExternal( in );
+    }
+
+
+    /**
+     * @see Object#hashCode()
+     */
+    public int hashCode()
+    {
+        materializeAll();
+
+        return entry.hashCode();
+    }
+
+
+    /**
+     * @see Object#equals(Object)
+     */
+    public boolean equals( Object o )
+    {
+        if ( this == o )
+        {
+            return true;
+        }
+
+        materializeAll();
+
+        return entry.equals( o );
+    }
+
+
+    /**
+     * @see Object#toString()
+     */
+    public String toString()
+    {
+        materializeAll();
+
+        return entry.toString();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public String toString( String tabs )
+    {
+        materializeAll();
+
+        return entry.toString( tabs );
+    }
+
+
+    /**
+     * The values of an attribute, as they have been received : the offset and length
+     * of each value in the entry's values buffer
+     */
+    private static class RawAttribute
+    {
+        /** The user provided ID */
+        private final String upId;
+
+        /** Tells if the values are binary */
+        private final boolean binary;
+
+        /** The offset and length of each value */
+        private int[] positions = new int[2];
+
+        /** The number of values */
+        private int nbValues;
+
+
+        private RawAttribute( String upId, boolean binary )
+        {
+            this.upId = upId;
+            this.binary = binary;
+        }
+
+
+        private void addValue( int offset, int length )
+        {
+            if ( nbValues * 2 == positions.length )
+            {
+                positions = Arrays.copyOf( positions, positions.length * 2 );
+            }
+
+            positions[nbValues * 2] = offset;
+            positions[nbValues * 2 + 1] = length;
+            nbValues++;
+        }
+    }
+}
@@ -0,0 +1,1176 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.api.ldap.model.filter;
+
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.naming.NamingException;
+
+import org.apache.directory.api.ldap.model.constants.SchemaConstants;
+import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.BinaryValue;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.Value;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.exception.LdapInvalidSearchFilterException;
+import org.apache.directory.api.ldap.model.name.Ava;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.name.Rdn;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.api.ldap.model.schema.LdapComparator;
+import org.apache.directory.api.ldap.model.schema.MatchingRule;
+import org.apache.directory.api.ldap.model.schema.Normalizer;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+
+
+/**
+ * Evaluates a filter against entries, in memory, using the SchemaManager's
+ * MatchingRules. The filter is compiled once : the AttributeTypes and the
+ * MatchingRules are resolved, and the assertion values are normalized, so
+ * that the same instance can then be used to evaluate any number of entries.
+ * <p>
+ * The evaluation follows RFC 4511, section 4.5.1.7 : a filter item is
+ * Undefined when its attribute is unknown, or when it has no MatchingRule for
+ * the requested match. Undefined is not TRUE, and the negation of Undefined is
+ * Undefined. The children of the AND and OR filters are evaluated by increasing
+ * estimated cost, and the evaluation stops as soon as the result is known.
+ * <p>
+ * An instance of this class is immutable and can be shared by many threads.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class FilterEvaluator
+{
+    /** The result of the evaluation of a filter */
+    private enum Result
+    {
+        TRUE,
+        FALSE,
+        UNDEFINED
+    }
+
+    /** The estimated cost of a presence filter */
+    private static final int PRESENCE_COST = 1;
+
+    /** The estimated cost of an equality or approximate filter */
+    private static final int EQUALITY_COST = 2;
+
+    /** The estimated cost of an ordering filter */
+    private static final int ORDERING_COST = 3;
+
+    /** The estimated cost of a substring filter */
+    private static final int SUBSTRING_COST = 4;
+
+    /** The estimated cost of an extensible filter */
+    private static final int EXTENSIBLE_COST = 5;
+
+    /** The estimated cost of an extensible filter with no attribute, or applied to the Dn attributes */
+    private static final int EXTENSIBLE_ALL_COST = 10;
+
+    /** The estimated cost of an assertion, which can do anything */
+    private static final int ASSERTION_COST = 20;
+
+    /** Sorts the evaluators by increasing cost */
+    private static final Comparator<Evaluator> COST_COMPARATOR = new Comparator<Evaluator>()
+    {
+        public int compare( Evaluator evaluator1, Evaluator evaluator2 )
+        {
+            return evaluator1.cost - evaluator2.cost;
+        }
+    };
+
+    /** The SchemaManager */
+    private final SchemaManager schemaManager;
+
+    /** The evaluated filter */
+    private final ExprNode filter;
+
+    /** The compiled filter */
+    private final Evaluator evaluator;
+
+
+    /**
+     * Creates a new instance of FilterEvaluator, compiling the given filter.
+     *
+     * @param schemaManager The SchemaManager
+     * @param filter The filter to compile
+     * @throws LdapException If the filter can't be compiled
+     */
+    public FilterEvaluator( SchemaManager schemaManager, ExprNode filter ) throws LdapException
+    {
+        if ( schemaManager == null )
+        {
+            throw new IllegalArgumentException( "The SchemaManager must not be null" );
+        }
+
+        this.schemaManager = schemaManager;
+        this.filter = filter;
+        evaluator = compile( filter );
+    }
+
+
+    /**
+     * Creates a new instance of FilterEvaluator, parsing and compiling the given filter.
+     * The filter is parsed without the SchemaManager, so that the filter items using an
+     * unknown attribute are kept, and evaluated as Undefined.
+     *
+     * @param schemaManager The SchemaManager
+     * @param filter The filter to compile
+     * @throws LdapException If the filter is invalid
+     */
+    public FilterEvaluator( SchemaManager schemaManager, String filter ) throws LdapException
+    {
+        this( schemaManager, parse( filter ) );
+    }
+
+
+    /**
+     * Parses a filter, throwing a LdapException if it's invalid
+     */
+    private static ExprNode parse( String filter ) throws LdapException
+    {
+        try
+        {
+            return FilterParser.parse( filter );
+        }
+        catch ( ParseException pe )
+        {
+            LdapInvalidSearchFilterException lisfe = new LdapInvalidSearchFilterException( pe.getMessage() );
+            lisfe.initCause( pe );
+
+            throw lisfe;
+        }
+    }
+
+
+    /**
+     * Evaluates the filter against an entry.
+     *
+     * @param entry The entry to evaluate
+     * @return <code>true</code> if the entry matches the filter, <code>false</code>
+     * if it does not match or if the filter is Undefined for this entry.
+     * @throws LdapException If the evaluation failed
+     */
+    public boolean evaluate( Entry entry ) throws LdapException
+    {
+        return evaluator.evaluate( entry ) == Result.TRUE;
+    }
+
+
+    /**
+     * @return The evaluated filter
+     */
+    public ExprNode getFilter()
+    {
+        return filter;
+    }
+
+
+    /**
+     * @see Object#toString()
+     */
+    public String toString()
+    {
+        return "FilterEvaluator : " + filter;
+    }
+
+
+    //-------------------------------------------------------------------------
+    // The compiler
+    //-------------------------------------------------------------------------
+    /**
+     * Compiles a filter node
+     */
+    private Evaluator compile( ExprNode node ) throws LdapException
+    {
+        if ( node == null )
+        {
+            // The parser may return null for a filter item it can't handle
+            return UNDEFINED_EVALUATOR;
+        }
+
+        switch ( node.getAssertionType() )
+        {
+            case AND:
+            case OR:
+                return compileBranch( ( BranchNode ) node );
+
+            case NOT:
+                return new NotEvaluator( compile( ( ( NotNode ) node ).getFirstChild() ) );
+
+            case PRESENCE:
+                AttributeType[] types = getAttributeTypes( ( LeafNode ) node );
+
+                return ( types == null ) ? UNDEFINED_EVALUATOR : new PresenceEvaluator( types );
+
+            case EQUALITY:
+            case APPROXIMATE:
+                return compileEquality( ( SimpleNode<?> ) node );
+
+            case GREATEREQ:
+            case LESSEQ:
+                return compileOrdering( ( SimpleNode<?> ) node );
+
+            case SUBSTRING:
+                return compileSubstring( ( SubstringNode ) node );
+
+            case EXTENSIBLE:
+                return compileExtensible( ( ExtensibleNode ) node );
+
+            case SCOPE:
+                return new ScopeEvaluator( ( ScopeNode ) node );
+
+            case ASSERTION:
+                return new AssertionEvaluator( ( ( AssertionNode ) node ).getAssertion() );
+
+            case OBJECTCLASS:
+                // (objectClass=*) : all the entries match
+                return TRUE_EVALUATOR;
+
+            default:
+                return UNDEFINED_EVALUATOR;
+        }
+    }
+
+
+    /**
+     * Compiles an AND or an OR node. The children are sorted by increasing cost.
+     */
+    private Evaluator compileBranch( BranchNode node ) throws LdapException
+    {
+        List<Evaluator> children = new ArrayList<Evaluator>( node.getChildren().size() );
+        int cost = 0;
+
+        for ( ExprNode child : node.getChildren() )
+        {
+            Evaluator evaluator = compile( child );
+            children.add( evaluator );
+            cost += evaluator.cost;
+        }
+
+        Collections.sort( children, COST_COMPARATOR );
+        Evaluator[] childrenArray = children.toArray( new Evaluator[children.size()] );
+
+        if ( node.getAssertionType() == AssertionType.AND )
+        {
+            return new AndEvaluator( childrenArray, cost );
+        }
+        else
+        {
+            return new OrEvaluator( childrenArray, cost );
+        }
+    }
+
+
+    /**
+     * Compiles an equality or an approximate node. We don't have any approximate
+     * MatchingRule, so the equality MatchingRule is used for both.
+     */
+    private Evaluator compileEquality( SimpleNode<?> node ) throws LdapException
+    {
+        AttributeType[] types = getAttributeTypes( node );
+
+        if ( ( types == null ) || ( types[0].getEquality() == null ) )
+        {
+            return UNDEFINED_EVALUATOR;
+        }
+
+        MatchingRule equality = types[0].getEquality();
+
+        return new EqualityEvaluator( types, equality, normalizeAssertion( types[0], equality, node.getValue() ),
+            EQUALITY_COST );
+    }
+
+
+    /**
+     * Compiles a greater or equal or a less or equal node
+     */
+    private Evaluator compileOrdering( SimpleNode<?> node ) throws LdapException
+    {
+        AttributeType[] types = getAttributeTypes( node );
+
+        if ( ( types == null ) || ( types[0].getOrdering() == null ) )
+        {
+            return UNDEFINED_EVALUATOR;
+        }
+
+        MatchingRule ordering = types[0].getOrdering();
+        Object assertion = normalizeAssertion( types[0], ordering, node.getValue() );
+
+        return new OrderingEvaluator( types, ordering, assertion, node.getAssertionType() == AssertionType.GREATEREQ );
+    }
+
+
+    /**
+     * Compiles a substring node. The substring MatchingRule is used if any, otherwise
+     * we use the equality MatchingRule.
+     */
+    private Evaluator compileSubstring( SubstringNode node ) throws LdapException
+    {
+        AttributeType[] types = getAttributeTypes( node );
+
+        if ( types == null )
+        {
+            return UNDEFINED_EVALUATOR;
+        }
+
+        MatchingRule substring = types[0].getSubstring();
+
+        if ( substring == null )
+        {
+            substring = types[0].getEquality();
+        }
+
+        if ( ( substring == null ) || !isHumanReadable( types[0] ) )
+        {
+            return UNDEFINED_EVALUATOR;
+        }
+
+        Normalizer normalizer = substring.getNormalizer();
+        String initial = ( node.getInitial() == null ) ? null : normalizer.normalize( node.getInitial() );
+        String[] any = null;
+
+        if ( node.getAny() != null )
+        {
+            any = new String[node.getAny().size()];
+
+            for ( int i = 0; i < any.length; i++ )
+            {
+                any[i] = normalizer.normalize( node.getAny().get( i ) );
+            }
+        }
+
+        String end = ( node.getFinal() == null ) ? null : normalizer.normalize( node.getFinal() );
+
+        return new SubstringEvaluator( types, substring, initial, any, end );
+    }
+
+
+    /**
+     * Compiles an extensible node. The way the values are matched depends on the MatchingRule's
+     * usage : an equality rule matches equal values, an ordering rule matches the values which
+     * are lower than the assertion value. Substring rules are not supported.
+     */
+    private Evaluator compileExtensible( ExtensibleNode node ) throws LdapException
+    {
+        AttributeType[] types = null;
+
+        if ( node.getAttribute() != null )
+        {
+            types = getAttributeTypes( node );
+
+            if ( types == null )
+            {
+                return UNDEFINED_EVALUATOR;
+            }
+        }
+
+        MatchingRule matchingRule = null;
+
+        if ( node.getMatchingRuleId() != null )
+        {
+            try
+            {
+                matchingRule = schemaManager.lookupMatchingRuleRegistry( node.getMatchingRuleId() );
+            }
+            catch ( LdapException le )
+            {
+                // Unknown MatchingRule
+                return UNDEFINED_EVALUATOR;
+            }
+        }
+        else if ( types != null )
+        {
+            matchingRule = types[0].getEquality();
+        }
+
+        if ( matchingRule == null )
+        {
+            return UNDEFINED_EVALUATOR;
+        }
+
+        boolean isOrdering = false;
+
+        for ( AttributeType attributeType : schemaManager.getAttributeTypeRegistry() )
+        {
+            if ( attributeType.getSubstring() == matchingRule )
+            {
+                return UNDEFINED_EVALUATOR;
+            }
+
+            if ( attributeType.getOrdering() == matchingRule )
+            {
+                isOrdering = true;
+            }
+        }
+
+        AttributeType assertionType = ( types != null ) ? types[0] : null;
+        Object assertion = normalizeAssertion( assertionType, matchingRule, node.getValue() );
+
+        return new ExtensibleEvaluator( types, matchingRule, assertion, isOrdering, node.hasDnAttributes() );
+    }
+
+
+    /**
+     * Gets the AttributeType of a leaf node, and all its descendants, as the values
+     * of an attribute's subtypes are also matched by a filter on this attribute.
+     * Returns null if the AttributeType is unknown.
+     */
+    private AttributeType[] getAttributeTypes( LeafNode node ) throws LdapException
+    {
+        AttributeType attributeType = node.getAttributeType();
+
+        if ( attributeType == null )
+        {
+            attributeType = schemaManager.getAttributeType( node.getAttribute() );
+
+            if ( attributeType == null )
+            {
+                return null;
+            }
+        }
+
+        List<AttributeType> types = new ArrayList<AttributeType>();
+        types.add( attributeType );
+
+        Iterator<AttributeType> descendants = schemaManager.getAttributeTypeRegistry().descendants( attributeType );
+
+        while ( descendants.hasNext() )
+        {
+            types.add( descendants.next() );
+        }
+
+        return types.toArray( new AttributeType[types.size()] );
+    }
+
+
+    /**
+     * Normalizes an assertion value using the given MatchingRule
+     */
+    private Object normalizeAssertion( AttributeType attributeType, MatchingRule matchingRule, Value<?> value )
+        throws LdapException
+    {
+        Normalizer normalizer = matchingRule.getNormalizer();
+        boolean isHR;
+
+        if ( attributeType != null )
+        {
+            isHR = isHumanReadable( attributeType );
+        }
+        else if ( matchingRule.getSyntax() != null )
+        {
+            isHR = matchingRule.getSyntax().isHumanReadable();
+        }
+        else
+        {
+            isHR = value.isHumanReadable();
+        }
+
+        if ( isHR )
+        {
+            return resolveOid( matchingRule, normalizer.normalize( value.getString() ) );
+        }
+        else
+        {
+            return normalizer.normalize( new BinaryValue( value.getBytes() ) ).getBytes();
+        }
+    }
+
+
+    //-------------------------------------------------------------------------
+    // Helper methods
+    //-------------------------------------------------------------------------
+    /**
+     * Tells if an AttributeType is human readable
+     */
+    private static boolean isHumanReadable( AttributeType attributeType )
+    {
+        return ( attributeType.getSyntax() == null ) || attributeType.getSyntax().isHumanReadable();
+    }
+
+
+    /**
+     * Gets an attribute from an entry. If the entry is not schema aware, we have to
+     * lookup the attribute by OID and by each of its names.
+     */
+    private static Attribute getAttribute( Entry entry, AttributeType attributeType )
+    {
+        if ( entry.isSchemaAware() )
+        {
+            return entry.get( attributeType );
+        }
+
+        Attribute attribute = entry.get( attributeType.getOid() );
+
+        if ( attribute == null )
+        {
+            for ( String name : attributeType.getNames() )
+            {
+                attribute = entry.get( name );
+
+                if ( attribute != null )
+                {
+                    break;
+                }
+            }
+        }
+
+        return attribute;
+    }
+
+
+    /**
+     * Normalizes the value of an entry using the given MatchingRule. The normalized
+     * value of a schema aware value is used when it's been normalized with the same
+     * MatchingRule.
+     */
+    private Object normalize( MatchingRule matchingRule, Value<?> value ) throws LdapException
+    {
+        if ( value.isHumanReadable() )
+        {
+            String normalized;
+
+            if ( value.isSchemaAware() && ( value.getAttributeType().getEquality() == matchingRule ) )
+            {
+                normalized = ( String ) value.getNormValue();
+            }
+            else
+            {
+                normalized = matchingRule.getNormalizer().normalize( value.getString() );
+            }
+
+            return resolveOid( matchingRule, normalized );
+        }
+        else
+        {
+            if ( value.isSchemaAware() && ( value.getAttributeType().getEquality() == matchingRule ) )
+            {
+                return value.getNormValue();
+            }
+
+            return matchingRule.getNormalizer().normalize( value ).getBytes();
+        }
+    }
+
+
+    /**
+     * The objectIdentifierMatch MatchingRule compares OIDs, but the values are
+     * generally names of ObjectClasses or AttributeTypes : we replace them by their OID.
+     */
+    private String resolveOid( MatchingRule matchingRule, String normalized ) throws LdapException
+    {
+        if ( ( normalized.length() == 0 ) || Character.isDigit( normalized.charAt( 0 ) )
+            || !SchemaConstants.OBJECT_IDENTIFIER_MATCH_MR_OID.equals( matchingRule.getOid() ) )
+        {
+            return normalized;
+        }
+
+        if ( schemaManager.getObjectClassRegistry().contains( normalized ) )
+        {
+            return schemaManager.getObjectClassRegistry().getOidByName( normalized );
+        }
+
+        if ( schemaManager.getAttributeTypeRegistry().contains( normalized ) )
+        {
+            return schemaManager.getAttributeTypeRegistry().getOidByName( normalized );
+        }
+
+        return normalized;
+    }
+
+
+    /**
+     * Compares two normalized values, which are either Strings or byte[]
+     */
+    private static boolean equalsNormalized( Object value1, Object value2 )
+    {
+        if ( value1 instanceof byte[] )
+        {
+            return ( value2 instanceof byte[] ) && Arrays.equals( ( byte[] ) value1, ( byte[] ) value2 );
+        }
+
+        return value1.equals( value2 );
+    }
+
+
+    //-------------------------------------------------------------------------
+    // The evaluators
+    //-------------------------------------------------------------------------
+    /**
+     * A compiled filter node
+     */
+    private abstract static class Evaluator
+    {
+        /** The estimated cost of the evaluation */
+        protected final int cost;
+
+
+        protected Evaluator( int cost )
+        {
+            this.cost = cost;
+        }
+
+
+        /**
+         * Evaluates the node against an entry
+         */
+        abstract Result evaluate( Entry entry ) throws LdapException;
+    }
+
+    /** An evaluator always returning TRUE */
+    private static final Evaluator TRUE_EVALUATOR = new Evaluator( 0 )
+    {
+        Result evaluate( Entry entry )
+        {
+            return Result.TRUE;
+        }
+    };
+
+    /** An evaluator always returning UNDEFINED */
+    private static final Evaluator UNDEFINED_EVALUATOR = new Evaluator( 0 )
+    {
+        Result evaluate( Entry entry )
+        {
+            return Result.UNDEFINED;
+        }
+    };
+
+    /**
+     * The AND evaluator : FALSE if any child is FALSE, TRUE if all the children are TRUE,
+     * UNDEFINED otherwise.
+     */
+    private static final class AndEvaluator extends Evaluator
+    {
+        private final Evaluator[] children;
+
+
+        private AndEvaluator( Evaluator[] children, int cost )
+        {
+            super( cost );
+            this.children = children;
+        }
+
+
+        Result evaluate( Entry entry ) throws LdapException
+        {
+            Result result = Result.TRUE;
+
+            for ( Evaluator child : children )
+            {
+                switch ( child.evaluate( entry ) )
+                {
+                    case FALSE:
+                        return Result.FALSE;
+
+                    case UNDEFINED:
+                        result = Result.UNDEFINED;
+                        break;
+
+                    default:
+                        break;
+                }
+            }
+
+            return result;
+        }
+    }
+
+    /**
+     * The OR evaluator : TRUE if any child is TRUE, FALSE if all the children are FALSE,
+     * UNDEFINED otherwise.
+     */
+    private static final class OrEvaluator extends Evaluator
+    {
+        private final Evaluator[] children;
+
+
+        private OrEvaluator( Evaluator[] children, int cost )
+        {
+            super( cost );
+            this.children = children;
+        }
+
+
+        Result evaluate( Entry entry ) throws LdapException
+        {
+            Result result = Result.FALSE;
+
+            for ( Evaluator child : children )
+            {
+                switch ( child.evaluate( entry ) )
+                {
+                    case TRUE:
+                        return Result.TRUE;
+
+                    case UNDEFINED:
+                        result = Result.UNDEFINED;
+                        break;
+
+                    default:
+                        break;
+                }
+            }
+
+            return result;
+        }
+    }
+
+    /**
+     * The NOT evaluator. The negation of UNDEFINED is UNDEFINED.
+     */
+    private static final class NotEvaluator extends Evaluator
+    {
+        private final Evaluator child;
+
+
+        private NotEvaluator( Evaluator child )
+        {
+            super( child.cost );
+            this.child = child;
+        }
+
+
+        Result evaluate( Entry entry ) throws LdapException
+        {
+            switch ( child.evaluate( entry ) )
+            {
+                case TRUE:
+                    return Result.FALSE;
+
+                case FALSE:
+                    return Result.TRUE;
+
+                default:
+                    return Result.UNDEFINED;
+            }
+        }
+    }
+
+    /**
+     * The presence evaluator
+     */
+    private static final class PresenceEvaluator extends Evaluator
+    {
+        private final AttributeType[] types;
+
+
+        private PresenceEvaluator( AttributeType[] types )
+        {
+            super( PRESENCE_COST );
+            this.types = types;
+        }
+
+
+        Result evaluate( Entry entry )
+        {
+            for ( AttributeType type : types )
+            {
+                if ( getAttribute( entry, type ) != null )
+                {
+                    return Result.TRUE;
+                }
+            }
+
+            return Result.FALSE;
+        }
+    }
+
+    /**
+     * The base class for the evaluators matching the values of an attribute
+     */
+    private abstract class ValueEvaluator extends Evaluator
+    {
+        /** The attribute type and its descendants */
+        protected final AttributeType[] types;
+
+        /** The MatchingRule used to normalize the values */
+        protected final MatchingRule matchingRule;
+
+
+        protected ValueEvaluator( AttributeType[] types, MatchingRule matchingRule, int cost )
+        {
+            super( cost );
+            this.types = types;
+            this.matchingRule = matchingRule;
+        }
+
+
+        Result evaluate( Entry entry ) throws LdapException
+        {
+            for ( AttributeType type : types )
+            {
+                Attribute attribute = getAttribute( entry, type );
+
+                if ( attribute == null )
+                {
+                    continue;
+                }
+
+                for ( Value<?> value : attribute )
+                {
+                    if ( matches( value ) )
+                    {
+                        return Result.TRUE;
+                    }
+                }
+            }
+
+            return Result.FALSE;
+        }
+
+
+        /**
+         * Tells if a value matches. A value which can't be normalized does not match.
+         */
+        protected boolean matches( Value<?> value )
+        {
+            try
+            {
+                return matchesNormalized( normalize( matchingRule, value ) );
+            }
+            catch ( LdapException le )
+            {
+                return false;
+            }
+            catch ( IllegalArgumentException iae )
+            {
+                // Thrown by some comparators when a value is not valid
+                return false;
+            }
+        }
+
+
+        /**
+         * Tells if a normalized value matches
+         */
+        protected abstract boolean matchesNormalized( Object normalized );
+    }
+
+    /**
+     * The equality and approximate evaluator
+     */
+    private final class EqualityEvaluator extends ValueEvaluator
+    {
+        private final Object assertion;
+
+
+        private EqualityEvaluator( AttributeType[] types, MatchingRule matchingRule, Object assertion, int cost )
+        {
+            super( types, matchingRule, cost );
+            this.assertion = assertion;
+        }
+
+
+        protected boolean matchesNormalized( Object normalized )
+        {
+            return equalsNormalized( assertion, normalized );
+        }
+    }
+
+    /**
+     * The greater or equal and less or equal evaluator
+     */
+    private final class OrderingEvaluator extends ValueEvaluator
+    {
+        private final Object assertion;
+
+        private final LdapComparator<? super Object> comparator;
+
+        private final boolean greaterOrEqual;
+
+
+        private OrderingEvaluator( AttributeType[] types, MatchingRule matchingRule, Object assertion,
+            boolean greaterOrEqual )
+        {
+            super( types, matchingRule, ORDERING_COST );
+            this.assertion = assertion;
+            this.comparator = matchingRule.getLdapComparator();
+            this.greaterOrEqual = greaterOrEqual;
+        }
+
+
+        protected boolean matchesNormalized( Object normalized )
+        {
+            int comparison = comparator.compare( normalized, assertion );
+
+            return greaterOrEqual ? comparison >= 0 : comparison <= 0;
+        }
+    }
+
+    /**
+     * The substring evaluator
+     */
+    private final class SubstringEvaluator extends ValueEvaluator
+    {
+        private final String initial;
+
+        private final String[] any;
+
+        private final String end;
+
+
+        private SubstringEvaluator( AttributeType[] types, MatchingRule matchingRule, String initial, String[] any,
+            String end )
+        {
+            super( types, matchingRule, SUBSTRING_COST );
+            this.initial = initial;
+            this.any = any;
+            this.end = end;
+        }
+
+
+        protected boolean matchesNormalized( Object normalized )
+        {
+            if ( !( normalized instanceof String ) )
+            {
+                return false;
+            }
+
+            String value = ( String ) normalized;
+            int pos = 0;
+
+            if ( initial != null )
+            {
+                if ( !value.startsWith( initial ) )
+                {
+                    return false;
+                }
+
+                pos = initial.length();
+            }
+
+            if ( any != null )
+            {
+                for ( String substring : any )
+                {
+                    int index = value.indexOf( substring, pos );
+
+                    if ( index < 0 )
+                    {
+                        return false;
+                    }
+
+                    pos = index + substring.length();
+                }
+            }
+
+            if ( end != null )
+            {
+                return ( value.length() - end.length() >= pos ) && value.endsWith( end );
+            }
+
+            return true;
+        }
+    }
+
+    /**
+     * The extensible evaluator. When no attribute is given, all the attributes which
+     * syntax is the MatchingRule's syntax are matched.
+     */
+    private final class ExtensibleEvaluator extends ValueEvaluator
+    {
+        private final Object assertion;
+
+        private final LdapComparator<? super Object> comparator;
+
+        private final boolean isOrdering;
+
+        private final boolean dnAttributes;
+
+
+        private ExtensibleEvaluator( AttributeType[] types, MatchingRule matchingRule, Object assertion,
+            boolean isOrdering, boolean dnAttributes )
+        {
+            super( types, matchingRule, ( ( types == null ) || dnAttributes ) ? EXTENSIBLE_ALL_COST
+                : EXTENSIBLE_COST );
+            this.assertion = assertion;
+            this.comparator = matchingRule.getLdapComparator();
+            this.isOrdering = isOrdering;
+            this.dnAttributes = dnAttributes;
+        }
+
+
+        Result evaluate( Entry entry ) throws LdapException
+        {
+            if ( types != null )
+            {
+                if ( super.evaluate( entry ) == Result.TRUE )
+                {
+                    return Result.TRUE;
+                }
+            }
+            else
+            {
+                for ( Attribute attribute : entry )
+                {
+                    if ( isApplicable( getAttributeType( attribute.getId() ) ) )
+                    {
+                        for ( Value<?> value : attribute )
+                        {
+                            if ( matches( value ) )
+                            {
+                                return Result.TRUE;
+                            }
+                        }
+                    }
+                }
+            }
+
+            if ( dnAttributes && ( entry.getDn() != null ) )
+            {
+                for ( Rdn rdn : entry.getDn() )
+                {
+                    for ( Ava ava : rdn )
+                    {
+                        if ( isApplicable( getAttributeType( ava.getNormType() ) ) && matches( ava.getValue() ) )
+                        {
+                            return Result.TRUE;
+                        }
+                    }
+                }
+            }
+
+            return Result.FALSE;
+        }
+
+
+        /**
+         * Gets the AttributeType of an attribute or of an Ava
+         */
+        private AttributeType getAttributeType( String id )
+        {
+            return schemaManager.getAttributeType( id );
+        }
+
+
+        /**
+         * Tells if the MatchingRule applies to an attribute type
+         */
+        private boolean isApplicable( AttributeType attributeType )
+        {
+            if ( attributeType == null )
+            {
+                return false;
+            }
+
+            if ( types != null )
+            {
+                for ( AttributeType type : types )
+                {
+                    if ( type == attributeType )
+                    {
+                        return true;
+                    }
+                }
+
+                return false;
+            }
+
+            return matchingRule.getSyntaxOid().equals( attributeType.getSyntaxOid() );
+        }
+
+
+        protected boolean matchesNormalized( Object normalized )
+        {
+            if ( isOrdering )
+            {
+                // An ordering rule is TRUE when the value is lower than the assertion
+                return comparator.compare( normalized, assertion ) < 0;
+            }
+
+            return equalsNormalized( assertion, normalized );
+        }
+    }
+
+    /**
+     * The scope evaluator, checking the position of the entry relatively to a base Dn
+     */
+    private static final class ScopeEvaluator extends Evaluator
+    {
+        private final ScopeNode node;
+
+
+        private ScopeEvaluator( ScopeNode node )
+        {
+            super( PRESENCE_COST );
+            this.node = node;
+        }
+
+
+        Result evaluate( Entry entry )
+        {
+            Dn dn = entry.getDn();
+            Dn baseDn = node.getBaseDn();
+
+            if ( ( dn == null ) || ( baseDn == null ) )
+            {
+                return Result.FALSE;
+            }
+
+            switch ( node.getScope() )
+            {
+                case OBJECT:
+                    return dn.equals( baseDn ) ? Result.TRUE : Result.FALSE;
+
+                case ONELEVEL:
+                    return ( ( dn.size() == baseDn.size() + 1 ) && dn.isDescendantOf( baseDn ) ) ? Result.TRUE
+                        : Result.FALSE;
+
+                default:
+                    return dn.isDescendantOf( baseDn ) ? Result.TRUE : Result.FALSE;
+            }
+        }
+    }
+
+    /**
+     * The assertion evaluator, which delegates to the Assertion
+     */
+    private static final class AssertionEvaluator extends Evaluator
+    {
+        private final Assertion assertion;
+
+
+        private AssertionEvaluator( Assertion assertion )
+        {
+            super( ASSERTION_COST );
+            this.assertion = assertion;
+        }
+
+
+        Result evaluate( Entry entry ) throws LdapException
+        {
+            try
+            {
+                return assertion.assertCandidate( entry ) ? Result.TRUE : Result.FALSE;
+            }
+            catch ( NamingException ne )
+            {
+                throw new LdapException( ne.getMessage(), ne );
+            }
+        }
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.api.ldap.model.ldif;
+
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.util.Strings;
+
+
+/**
+ * A reader giving a random access to the entries of a LDIF file, by ordinal or by Dn,
+ * using a {@link LdifIndex}. The file is memory-mapped, and only the requested entries
+ * are parsed.
+ * <pre>
+ * IndexedLdifReader reader = new IndexedLdifReader( new File( "snapshot.ldif" ), schemaManager );
+ *
+ * try
+ * {
+ *     LdifEntry entry = reader.lookup( "uid=jdoe,ou=people,dc=example,dc=com" );
+ *     LdifEntry last = reader.get( reader.size() - 1 );
+ * }
+ * finally
+ * {
+ *     reader.close();
+ * }
+ * </pre>
+ * This class is not thread safe.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class IndexedLdifReader implements Closeable
+{
+    /** The LDIF file */
+    private final RandomAccessFile file;
+
+    /** The LDIF file channel */
+    private final FileChannel channel;
+
+    /** The mapped LDIF file, or null if it's too big to be mapped at once */
+    private final MappedByteBuffer mapped;
+
+    /** The index */
+    private final LdifIndex index;
+
+    /** The SchemaManager used to parse the entries, if any */
+    private final SchemaManager schemaManager;
+
+    /** A buffer used to copy the entries bytes */
+    private byte[] bytes = new byte[4096];
+
+
+    /**
+     * Creates a new instance of IndexedLdifReader, loading the index from the sidecar
+     * file of the LDIF file, or building it if it does not exist or is out of date.
+     *
+     * @param ldif The LDIF file
+     * @param schemaManager The SchemaManager, or null
+     * @throws IOException If the LDIF file can't be read
+     * @throws LdapException If the index can't be built
+     */
+    public IndexedLdifReader( File ldif, SchemaManager schemaManager ) throws IOException, LdapException
+    {
+        this( ldif, LdifIndex.getIndex( ldif, schemaManager ), schemaManager );
+    }
+
+
+    /**
+     * Creates a new instance of IndexedLdifReader using a given index.
+     *
+     * @param ldif The LDIF file
+     * @param index The LDIF file index
+     * @param schemaManager The SchemaManager, or null
+     * @throws IOException If the LDIF file can't be read
+     * @throws LdapLdifException If the index is not up to date
+     */
+    public IndexedLdifReader( File ldif, LdifIndex index, SchemaManager schemaManager ) throws IOException,
+        LdapLdifException
+    {
+        if ( !index.isUpToDate( ldif ) )
+        {
+            throw new LdapLdifException( "The index is not up to date for the LDIF file " + ldif );
+        }
+
+        this.index = index;
+        this.schemaManager = schemaManager;
+        file = new RandomAccessFile( ldif, "r" );
+        channel = file.getChannel();
+
+        if ( channel.size() <= Integer.MAX_VALUE )
+        {
+            mapped = channel.map( FileChannel.MapMode.READ_ONLY, 0, channel.size() );
+        }
+        else
+        {
+            // The entries will be mapped one by one
+            mapped = null;
+        }
+    }
+
+
+    /**
+     * @return The index
+     */
+    public LdifIndex getIndex()
+    {
+        return index;
+    }
+
+
+    /**
+     * @return The number of entries in the LDIF file
+     */
+    public int size()
+    {
+        return index.size();
+    }
+
+
+    /**
+     * Reads an entry given its ordinal
+     *
+     * @param ordinal The entry ordinal, starting at 0
+     * @return The entry
+     * @throws IOException If the entry can't be read
+     * @throws LdapException If the entry can't be parsed
+     */
+    public LdifEntry get( int ordinal ) throws IOException, LdapException
+    {
+        long offset = index.getOffset( ordinal );
+        int length = index.getLength( ordinal );
+
+        if ( bytes.length < length )
+        {
+            bytes = new byte[Math.max( bytes.length * 2, length )];
+        }
+
+        ByteBuffer buffer;
+
+        if ( mapped != null )
+        {
+            buffer = mapped.duplicate();
+            buffer.position( ( int ) offset );
+        }
+        else
+        {
+            buffer = channel.map( FileChannel.MapMode.READ_ONLY, offset, length );
+        }
+
+        buffer.get( bytes, 0, length );
+
+        LdifReader reader = new LdifReader( schemaManager );
+
+        try
+        {
+            List<LdifEntry> entries = reader.parseLdif( Strings.utf8ToString( bytes, length ) );
+
+            if ( entries.size() != 1 )
+            {
+                throw new LdapLdifException( "Expected one entry at offset " + offset + ", found " + entries.size() );
+            }
+
+            LdifEntry entry = entries.get( 0 );
+            entry.setOffset( offset );
+            entry.setLengthBeforeParsing( length );
+
+            return entry;
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+
+
+    /**
+     * Reads the first entry with a given Dn
+     *
+     * @param dn The entry Dn
+     * @return The entry, or null if there is no such entry
+     * @throws IOException If the entry can't be read
+     * @throws LdapException If the Dn is invalid, or if the entry can't be parsed
+     */
+    public LdifEntry lookup( String dn ) throws IOException, LdapException
+    {
+        int ordinal = index.indexOf( dn );
+
+        return ( ordinal == -1 ) ? null : get( ordinal );
+    }
+
+
+    /**
+     * Reads the first entry with a given Dn
+     *
+     * @param dn The entry Dn
+     * @return The entry, or null if there is no such entry
+     * @throws IOException If the entry can't be read
+     * @throws LdapException If the Dn is invalid, or if the entry can't be parsed
+     */
+    public LdifEntry lookup( Dn dn ) throws IOException, LdapException
+    {
+        int ordinal = index.indexOf( dn );
+
+        return ( ordinal == -1 ) ? null : get( ordinal );
+    }
+
+
+    /**
+     * Closes the LDIF file. The mapped buffer is released when it's garbage collected.
+     */
+    public void close() throws IOException
+    {
+        file.close();
+    }
+}
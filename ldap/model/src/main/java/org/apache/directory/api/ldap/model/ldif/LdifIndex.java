@@ -0,0 +1,629 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.api.ldap.model.ldif;
+
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.directory.api.ldap.model.exception.LdapInvalidDnException;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.util.Base64;
+import org.apache.directory.api.util.Strings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * An index on the entries of a LDIF file, giving the byte offset and the length of
+ * each entry, by ordinal and by normalized Dn. It is built with one scan of the file,
+ * which only decodes the Dn lines, and can be stored in a sidecar file next to the
+ * LDIF file, so that it's not rebuilt each time the LDIF file is opened.
+ * <p>
+ * The indexed region of an entry starts at its dn line, and ends with the newline of
+ * its last line. It can be parsed on its own by a {@link LdifReader}, which is what the
+ * {@link IndexedLdifReader} does. The comments and the version line preceding an entry
+ * are not part of it.
+ * <p>
+ * When the same Dn is present more than once in the file, as it may be in a file
+ * containing changes, a lookup by Dn returns the first entry.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class LdifIndex
+{
+    /** A logger */
+    private static final Logger LOG = LoggerFactory.getLogger( LdifIndex.class );
+
+    /** The extension added to the LDIF file name to get the sidecar index file name */
+    public static final String EXTENSION = ".idx";
+
+    /** The magic number starting an index file ("LDIX") */
+    static final int MAGIC = 0x4C444958;
+
+    /** The index file format version */
+    static final int FORMAT_VERSION = 1;
+
+    /** The size of the buffer used to scan the LDIF file */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** The SchemaManager used to normalize the Dns, if any */
+    private final SchemaManager schemaManager;
+
+    /** The length of the indexed LDIF file */
+    private long ldifLength;
+
+    /** The last modification time of the indexed LDIF file */
+    private long ldifLastModified;
+
+    /** Tells if the Dns have been normalized with a SchemaManager */
+    private boolean schemaAware;
+
+    /** The number of indexed entries */
+    private int size;
+
+    /** The offset of each entry */
+    private long[] offsets = new long[1024];
+
+    /** The length of each entry */
+    private int[] lengths = new int[1024];
+
+    /** The normalized Dn of each entry */
+    private String[] dns = new String[1024];
+
+    /** The ordinal of the first entry for each normalized Dn */
+    private Map<String, Integer> ordinals = new HashMap<String, Integer>();
+
+
+    /**
+     * Creates a new empty index
+     */
+    private LdifIndex( SchemaManager schemaManager )
+    {
+        this.schemaManager = schemaManager;
+        schemaAware = schemaManager != null;
+    }
+
+
+    /**
+     * Builds the index of a LDIF file.
+     *
+     * @param ldif The LDIF file
+     * @param schemaManager The SchemaManager used to normalize the Dns, or null
+     * @return The index
+     * @throws IOException If the file can't be read
+     * @throws LdapInvalidDnException If an entry has an invalid Dn
+     */
+    public static LdifIndex build( File ldif, SchemaManager schemaManager ) throws IOException,
+        LdapInvalidDnException
+    {
+        LdifIndex index = new LdifIndex( schemaManager );
+        index.ldifLength = ldif.length();
+        index.ldifLastModified = ldif.lastModified();
+
+        InputStream in = new FileInputStream( ldif );
+
+        try
+        {
+            index.scan( in );
+        }
+        finally
+        {
+            in.close();
+        }
+
+        return index;
+    }
+
+
+    /**
+     * Loads an index from a file. It's the caller responsibility to check that it's
+     * up to date, using the {@link #isUpToDate(File)} method.
+     *
+     * @param indexFile The index file
+     * @param schemaManager The SchemaManager used to normalize the Dns which are looked up, or null
+     * @return The index
+     * @throws IOException If the file can't be read, or is not an index file
+     */
+    public static LdifIndex load( File indexFile, SchemaManager schemaManager ) throws IOException
+    {
+        DataInputStream in = new DataInputStream( new BufferedInputStream( new FileInputStream( indexFile ),
+            BUFFER_SIZE ) );
+
+        try
+        {
+            if ( in.readInt() != MAGIC )
+            {
+                throw new IOException( "The file " + indexFile + " is not a LDIF index" );
+            }
+
+            int version = in.readInt();
+
+            if ( version != FORMAT_VERSION )
+            {
+                throw new IOException( "Unsupported LDIF index version " + version + " in " + indexFile );
+            }
+
+            LdifIndex index = new LdifIndex( schemaManager );
+            index.ldifLength = in.readLong();
+            index.ldifLastModified = in.readLong();
+            index.schemaAware = in.readBoolean();
+
+            int nbEntries = in.readInt();
+            byte[] dnBytes = new byte[256];
+
+            for ( int i = 0; i < nbEntries; i++ )
+            {
+                long offset = in.readLong();
+                int length = in.readInt();
+                int dnLength = in.readInt();
+
+                if ( dnBytes.length < dnLength )
+                {
+                    dnBytes = new byte[dnLength];
+                }
+
+                in.readFully( dnBytes, 0, dnLength );
+                index.add( offset, length, Strings.utf8ToString( dnBytes, dnLength ) );
+            }
+
+            return index;
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+
+    /**
+     * Gets the index of a LDIF file, loading it from its sidecar file if this one is up
+     * to date, or building it and storing it in the sidecar file otherwise. The index is
+     * still returned if it can't be stored.
+     *
+     * @param ldif The LDIF file
+     * @param schemaManager The SchemaManager used to normalize the Dns, or null
+     * @return The index
+     * @throws IOException If the LDIF file can't be read
+     * @throws LdapInvalidDnException If an entry has an invalid Dn
+     */
+    public static LdifIndex getIndex( File ldif, SchemaManager schemaManager ) throws IOException,
+        LdapInvalidDnException
+    {
+        File indexFile = getIndexFile( ldif );
+
+        if ( indexFile.exists() )
+        {
+            try
+            {
+                LdifIndex index = load( indexFile, schemaManager );
+
+                if ( index.isUpToDate( ldif ) )
+                {
+                    return index;
+                }
+            }
+            catch ( IOException ioe )
+            {
+                LOG.warn( "Cannot load the LDIF index {}, it will be rebuilt : {}", indexFile, ioe.getMessage() );
+            }
+        }
+
+        LdifIndex index = build( ldif, schemaManager );
+
+        try
+        {
+            index.save( indexFile );
+        }
+        catch ( IOException ioe )
+        {
+            LOG.warn( "Cannot store the LDIF index {} : {}", indexFile, ioe.getMessage() );
+        }
+
+        return index;
+    }
+
+
+    /**
+     * @param ldif The LDIF file
+     * @return The sidecar index file of a LDIF file
+     */
+    public static File getIndexFile( File ldif )
+    {
+        return new File( ldif.getPath() + EXTENSION );
+    }
+
+
+    /**
+     * Stores the index in a file
+     *
+     * @param indexFile The index file
+     * @throws IOException If the index can't be written
+     */
+    public void save( File indexFile ) throws IOException
+    {
+        DataOutputStream out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( indexFile ),
+            BUFFER_SIZE ) );
+
+        try
+        {
+            out.writeInt( MAGIC );
+            out.writeInt( FORMAT_VERSION );
+            out.writeLong( ldifLength );
+            out.writeLong( ldifLastModified );
+            out.writeBoolean( schemaAware );
+            out.writeInt( size );
+
+            for ( int i = 0; i < size; i++ )
+            {
+                byte[] dnBytes = Strings.getBytesUtf8( dns[i] );
+
+                out.writeLong( offsets[i] );
+                out.writeInt( lengths[i] );
+                out.writeInt( dnBytes.length );
+                out.write( dnBytes );
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+
+    /**
+     * Tells if the index has been built from the given LDIF file in its current state,
+     * and with Dns normalized the way the lookups will be.
+     *
+     * @param ldif The LDIF file
+     * @return true if the index can be used to read the LDIF file
+     */
+    public boolean isUpToDate( File ldif )
+    {
+        return ( ldif.length() == ldifLength ) && ( ldif.lastModified() == ldifLastModified )
+            && ( schemaAware == ( schemaManager != null ) );
+    }
+
+
+    /**
+     * @return The number of indexed entries
+     */
+    public int size()
+    {
+        return size;
+    }
+
+
+    /**
+     * @param ordinal The entry ordinal, starting at 0
+     * @return The offset of the entry in the LDIF file
+     */
+    public long getOffset( int ordinal )
+    {
+        checkOrdinal( ordinal );
+
+        return offsets[ordinal];
+    }
+
+
+    /**
+     * @param ordinal The entry ordinal, starting at 0
+     * @return The length of the entry in the LDIF file
+     */
+    public int getLength( int ordinal )
+    {
+        checkOrdinal( ordinal );
+
+        return lengths[ordinal];
+    }
+
+
+    /**
+     * @param ordinal The entry ordinal, starting at 0
+     * @return The normalized Dn of the entry
+     */
+    public String getNormName( int ordinal )
+    {
+        checkOrdinal( ordinal );
+
+        return dns[ordinal];
+    }
+
+
+    /**
+     * Gets the ordinal of the first entry with the given Dn
+     *
+     * @param dn The entry Dn
+     * @return The entry ordinal, or -1 if there is no such entry
+     * @throws LdapInvalidDnException If the Dn is invalid
+     */
+    public int indexOf( String dn ) throws LdapInvalidDnException
+    {
+        Integer ordinal = ordinals.get( normalize( dn ) );
+
+        return ( ordinal == null ) ? -1 : ordinal.intValue();
+    }
+
+
+    /**
+     * Gets the ordinal of the first entry with the given Dn
+     *
+     * @param dn The entry Dn
+     * @return The entry ordinal, or -1 if there is no such entry
+     * @throws LdapInvalidDnException If the Dn is invalid
+     */
+    public int indexOf( Dn dn ) throws LdapInvalidDnException
+    {
+        Integer ordinal;
+
+        if ( ( schemaManager == null ) || dn.isSchemaAware() )
+        {
+            ordinal = ordinals.get( dn.getNormName() );
+        }
+        else
+        {
+            ordinal = ordinals.get( normalize( dn.getName() ) );
+        }
+
+        return ( ordinal == null ) ? -1 : ordinal.intValue();
+    }
+
+
+    private void checkOrdinal( int ordinal )
+    {
+        if ( ( ordinal < 0 ) || ( ordinal >= size ) )
+        {
+            throw new IndexOutOfBoundsException( "Invalid entry ordinal " + ordinal + ", the index contains "
+                + size + " entries" );
+        }
+    }
+
+
+    /**
+     * @return The normalized form of a Dn
+     */
+    private String normalize( String dn ) throws LdapInvalidDnException
+    {
+        return new Dn( schemaManager, dn ).getNormName();
+    }
+
+
+    /**
+     * Adds an entry at the end of the index
+     */
+    private void add( long offset, int length, String normName )
+    {
+        if ( size == offsets.length )
+        {
+            int newLength = size * 2;
+            long[] newOffsets = new long[newLength];
+            int[] newLengths = new int[newLength];
+            String[] newDns = new String[newLength];
+
+            System.arraycopy( offsets, 0, newOffsets, 0, size );
+            System.arraycopy( lengths, 0, newLengths, 0, size );
+            System.arraycopy( dns, 0, newDns, 0, size );
+
+            offsets = newOffsets;
+            lengths = newLengths;
+            dns = newDns;
+        }
+
+        offsets[size] = offset;
+        lengths[size] = length;
+        dns[size] = normName;
+
+        if ( !ordinals.containsKey( normName ) )
+        {
+            ordinals.put( normName, size );
+        }
+
+        size++;
+    }
+
+
+    /**
+     * Scans a LDIF file, line by line, to find the entries. An entry starts with a
+     * line starting with "dn:", and ends with the line preceding an empty line, or at
+     * the end of the file. Only the dn line and its continuation lines are decoded.
+     */
+    private void scan( InputStream in ) throws IOException, LdapInvalidDnException
+    {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        byte[] line = new byte[256];
+        byte[] dn = new byte[256];
+
+        // The position in the file of the first byte in the buffer
+        long bufferOffset = 0;
+        long lineStart = 0;
+        int lineLength = 0;
+        long entryStart = -1;
+        long entryEnd = 0;
+        int dnLength = 0;
+        boolean inDn = false;
+        int nbRead;
+
+        while ( ( nbRead = in.read( buffer ) ) != -1 )
+        {
+            for ( int i = 0; i < nbRead; i++ )
+            {
+                byte b = buffer[i];
+
+                if ( b != '\n' )
+                {
+                    if ( lineLength == line.length )
+                    {
+                        byte[] newLine = new byte[lineLength * 2];
+                        System.arraycopy( line, 0, newLine, 0, lineLength );
+                        line = newLine;
+                    }
+
+                    line[lineLength++] = b;
+
+                    continue;
+                }
+
+                // We have a full line, without its end of line
+                long lineEnd = bufferOffset + i + 1;
+
+                if ( ( lineLength > 0 ) && ( line[lineLength - 1] == '\r' ) )
+                {
+                    lineLength--;
+                }
+
+                if ( lineLength == 0 )
+                {
+                    if ( entryStart != -1 )
+                    {
+                        addEntry( entryStart, entryEnd, dn, dnLength );
+                        entryStart = -1;
+                    }
+                }
+                else if ( entryStart == -1 )
+                {
+                    // Skip the comments and the version line until we find a dn line
+                    if ( isDnLine( line, lineLength ) )
+                    {
+                        entryStart = lineStart;
+                        entryEnd = lineEnd;
+                        dn = append( dn, 0, line, 3, lineLength - 3 );
+                        dnLength = lineLength - 3;
+                        inDn = true;
+                    }
+                }
+                else
+                {
+                    entryEnd = lineEnd;
+
+                    if ( inDn && ( line[0] == ' ' ) )
+                    {
+                        dn = append( dn, dnLength, line, 1, lineLength - 1 );
+                        dnLength += lineLength - 1;
+                    }
+                    else
+                    {
+                        inDn = false;
+                    }
+                }
+
+                lineStart = lineEnd;
+                lineLength = 0;
+            }
+
+            bufferOffset += nbRead;
+        }
+
+        // The last line may not end with a newline
+        if ( lineLength > 0 )
+        {
+            if ( entryStart == -1 )
+            {
+                if ( isDnLine( line, lineLength ) )
+                {
+                    entryStart = lineStart;
+                    dn = append( dn, 0, line, 3, lineLength - 3 );
+                    dnLength = lineLength - 3;
+                }
+            }
+            else if ( inDn && ( line[0] == ' ' ) )
+            {
+                dn = append( dn, dnLength, line, 1, lineLength - 1 );
+                dnLength += lineLength - 1;
+            }
+
+            entryEnd = bufferOffset;
+        }
+
+        if ( entryStart != -1 )
+        {
+            addEntry( entryStart, entryEnd, dn, dnLength );
+        }
+    }
+
+
+    /**
+     * Decodes and normalizes the Dn of an entry, and adds the entry to the index
+     */
+    private void addEntry( long start, long end, byte[] dnBytes, int dnLength ) throws LdapInvalidDnException
+    {
+        String dn;
+
+        if ( ( dnLength > 0 ) && ( dnBytes[0] == ':' ) )
+        {
+            // Base64 encoded Dn
+            String encoded = Strings.utf8ToString( dnBytes, 1, dnLength - 1 ).trim();
+            dn = Strings.utf8ToString( Base64.decode( encoded.toCharArray() ) );
+        }
+        else
+        {
+            dn = Strings.utf8ToString( dnBytes, dnLength ).trim();
+        }
+
+        add( start, ( int ) ( end - start ), normalize( dn ) );
+    }
+
+
+    /**
+     * Tells if a line starts with "dn:", whatever the case
+     */
+    private static boolean isDnLine( byte[] line, int length )
+    {
+        return ( length >= 3 ) && ( ( line[0] | 0x20 ) == 'd' ) && ( ( line[1] | 0x20 ) == 'n' )
+            && ( line[2] == ':' );
+    }
+
+
+    /**
+     * Copies some bytes at a given position in an array, growing it if needed
+     */
+    private static byte[] append( byte[] dest, int pos, byte[] src, int start, int length )
+    {
+        byte[] result = dest;
+
+        if ( pos + length > dest.length )
+        {
+            result = new byte[Math.max( dest.length * 2, pos + length )];
+            System.arraycopy( dest, 0, result, 0, pos );
+        }
+
+        System.arraycopy( src, start, result, pos, length );
+
+        return result;
+    }
+
+
+    /**
+     * @see Object#toString()
+     */
+    public String toString()
+    {
+        return "LdifIndex : " + size + " entries";
+    }
+}
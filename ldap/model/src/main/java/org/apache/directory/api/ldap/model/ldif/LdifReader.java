@@ -1653,7 +1653,7 @@ public class LdifReader implements Iterable<LdifEntry>, Closeable
         entryLen = 0;
         entryOffset = offset;
 
-        StringBuffer sb = new StringBuffer();
+        StringBuilder sb = new StringBuilder();
 
         try
         {
@@ -1713,7 +1713,7 @@ public class LdifReader implements Iterable<LdifEntry>, Closeable
                             lines.add( sb.toString() );
                         }
 
-                        sb = new StringBuffer( line );
+                        sb = new StringBuilder( line );
                         insideComment = false;
                         break;
                 }
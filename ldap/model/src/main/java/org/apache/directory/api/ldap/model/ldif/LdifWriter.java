@@ -0,0 +1,607 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.api.ldap.model.ldif;
+
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+import org.apache.directory.api.i18n.I18n;
+import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.Modification;
+import org.apache.directory.api.ldap.model.entry.Value;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.util.Strings;
+
+
+/**
+ * A LDIF writer encoding the entries directly into a buffer, which is written to an
+ * OutputStream or to a WritableByteChannel when it's full. The values are checked,
+ * base64 encoded if they are not LDIF safe, and the lines are folded, in a single
+ * pass, without creating any intermediate String.
+ * <p>
+ * The produced LDIF is the same as the one produced by the {@link LdifUtils}
+ * convertToLdif() methods, except that each line, including the attribute lines,
+ * is folded so that it contains at most the given number of bytes. An entry is
+ * always followed by an empty line.
+ * <p>
+ * The writer must be flushed or closed to write the last buffered entries. This
+ * class is not thread safe.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class LdifWriter implements Closeable, Flushable
+{
+    /** The default maximum length of a line */
+    public static final int DEFAULT_LINE_LENGTH = 76;
+
+    /** The default size of the buffer */
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    /** The base64 alphabet */
+    private static final byte[] BASE64 = Strings
+        .getBytesUtf8( "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/" );
+
+    /** The OutputStream, if we write to a stream */
+    private final OutputStream out;
+
+    /** The channel, if we write to a channel */
+    private final WritableByteChannel channel;
+
+    /** The maximum length of a line */
+    private final int lineLength;
+
+    /** The buffer */
+    private final byte[] buffer;
+
+    /** The buffer wrapped in a ByteBuffer, to be written to the channel */
+    private final ByteBuffer byteBuffer;
+
+    /** The current position in the buffer */
+    private int pos;
+
+    /** The number of bytes in the current line */
+    private int column;
+
+    /** A buffer used to UTF-8 encode the values which are not LDIF safe */
+    private byte[] utf8 = new byte[256];
+
+    /** The number of bytes in the utf8 buffer */
+    private int utf8Length;
+
+
+    /**
+     * Creates a new instance of LdifWriter writing to an OutputStream, folding the lines
+     * at {@link #DEFAULT_LINE_LENGTH} bytes.
+     *
+     * @param out The OutputStream
+     */
+    public LdifWriter( OutputStream out )
+    {
+        this( out, DEFAULT_LINE_LENGTH );
+    }
+
+
+    /**
+     * Creates a new instance of LdifWriter writing to an OutputStream.
+     *
+     * @param out The OutputStream
+     * @param lineLength The maximum length of a line
+     */
+    public LdifWriter( OutputStream out, int lineLength )
+    {
+        this( out, null, lineLength );
+    }
+
+
+    /**
+     * Creates a new instance of LdifWriter writing to a channel, folding the lines at
+     * {@link #DEFAULT_LINE_LENGTH} bytes.
+     *
+     * @param channel The channel
+     */
+    public LdifWriter( WritableByteChannel channel )
+    {
+        this( channel, DEFAULT_LINE_LENGTH );
+    }
+
+
+    /**
+     * Creates a new instance of LdifWriter writing to a channel.
+     *
+     * @param channel The channel
+     * @param lineLength The maximum length of a line
+     */
+    public LdifWriter( WritableByteChannel channel, int lineLength )
+    {
+        this( null, channel, lineLength );
+    }
+
+
+    private LdifWriter( OutputStream out, WritableByteChannel channel, int lineLength )
+    {
+        if ( lineLength < 2 )
+        {
+            throw new IllegalArgumentException( I18n.err( I18n.ERR_12084 ) );
+        }
+
+        this.out = out;
+        this.channel = channel;
+        this.lineLength = lineLength;
+        buffer = new byte[DEFAULT_BUFFER_SIZE];
+        byteBuffer = ( channel != null ) ? ByteBuffer.wrap( buffer ) : null;
+    }
+
+
+    /**
+     * Writes the LDIF version line, which must be the first line of a LDIF file
+     *
+     * @throws IOException If the LDIF can't be written
+     */
+    public void writeVersion() throws IOException
+    {
+        writeAscii( "version: 1" );
+        newLine();
+    }
+
+
+    /**
+     * Writes an entry, followed by an empty line
+     *
+     * @param entry The entry to write
+     * @throws IOException If the LDIF can't be written
+     */
+    public void write( Entry entry ) throws IOException
+    {
+        if ( entry.getDn() != null )
+        {
+            writeDn( entry.getDn().getName() );
+        }
+
+        for ( Attribute attribute : entry )
+        {
+            write( attribute );
+        }
+
+        newLine();
+    }
+
+
+    /**
+     * Writes a LdifEntry, which can be an entry or a change, followed by an empty line
+     *
+     * @param entry The LdifEntry to write
+     * @throws IOException If the LDIF can't be written
+     * @throws LdapException If the LdifEntry is invalid
+     */
+    public void write( LdifEntry entry ) throws IOException, LdapException
+    {
+        writeDn( entry.getDn().getName() );
+
+        ChangeType changeType = entry.getChangeType();
+
+        if ( ( changeType != ChangeType.None ) || entry.hasControls() )
+        {
+            if ( entry.hasControls() )
+            {
+                for ( LdifControl control : entry.getControls().values() )
+                {
+                    writeAscii( "control: " );
+                    writeAscii( control.getOid() );
+                    writeAscii( control.isCritical() ? " true" : " false" );
+
+                    if ( control.hasValue() )
+                    {
+                        writeAscii( "::" );
+                        writeBase64( control.getValue(), control.getValue().length );
+                    }
+
+                    newLine();
+                }
+            }
+
+            writeAscii( "changetype: " );
+            writeAscii( getChangeTypeName( changeType ) );
+            newLine();
+        }
+
+        switch ( changeType )
+        {
+            case None:
+            case Add:
+                if ( entry.getEntry() == null )
+                {
+                    throw new LdapException( I18n.err( I18n.ERR_12082 ) );
+                }
+
+                for ( Attribute attribute : entry.getEntry() )
+                {
+                    write( attribute );
+                }
+
+                break;
+
+            case Delete:
+                if ( entry.getEntry() != null )
+                {
+                    throw new LdapException( I18n.err( I18n.ERR_12081 ) );
+                }
+
+                break;
+
+            case ModDn:
+            case ModRdn:
+                if ( entry.getEntry() != null )
+                {
+                    throw new LdapException( I18n.err( I18n.ERR_12083 ) );
+                }
+
+                writeValue( "newrdn", entry.getNewRdn() );
+                writeAscii( entry.isDeleteOldRdn() ? "deleteoldrdn: 1" : "deleteoldrdn: 0" );
+                newLine();
+
+                if ( !Strings.isEmpty( entry.getNewSuperior() ) )
+                {
+                    writeValue( "newsuperior", entry.getNewSuperior() );
+                }
+
+                break;
+
+            case Modify:
+                for ( Modification modification : entry.getModifications() )
+                {
+                    switch ( modification.getOperation() )
+                    {
+                        case ADD_ATTRIBUTE:
+                            writeAscii( "add: " );
+                            break;
+
+                        case REMOVE_ATTRIBUTE:
+                            writeAscii( "delete: " );
+                            break;
+
+                        case REPLACE_ATTRIBUTE:
+                            writeAscii( "replace: " );
+                            break;
+                    }
+
+                    writeAscii( modification.getAttribute().getUpId() );
+                    newLine();
+
+                    write( modification.getAttribute() );
+                    writeAscii( "-" );
+                    newLine();
+                }
+
+                break;
+        }
+
+        newLine();
+    }
+
+
+    /**
+     * Writes the lines of an attribute, one per value
+     *
+     * @param attribute The attribute to write
+     * @throws IOException If the LDIF can't be written
+     */
+    public void write( Attribute attribute ) throws IOException
+    {
+        String id = attribute.getUpId();
+
+        for ( Value<?> value : attribute )
+        {
+            writeAscii( id );
+
+            if ( value.isNull() )
+            {
+                writeByte( ':' );
+            }
+            else if ( value.isHumanReadable() )
+            {
+                writeString( value.getString() );
+            }
+            else
+            {
+                byte[] bytes = ( byte[] ) value.getReference();
+                writeAscii( ":: " );
+                writeBase64( bytes, bytes.length );
+            }
+
+            newLine();
+        }
+    }
+
+
+    /**
+     * @return The name of a changeType, as written in a LDIF file
+     */
+    private static String getChangeTypeName( ChangeType changeType )
+    {
+        switch ( changeType )
+        {
+            case Modify:
+                return "modify";
+
+            case ModDn:
+                return "moddn";
+
+            case ModRdn:
+                return "modrdn";
+
+            case Delete:
+                return "delete";
+
+            default:
+                return "add";
+        }
+    }
+
+
+    /**
+     * Writes the dn line
+     */
+    private void writeDn( String dn ) throws IOException
+    {
+        writeAscii( "dn" );
+        writeString( dn );
+        newLine();
+    }
+
+
+    /**
+     * Writes a line containing a String value
+     */
+    private void writeValue( String id, String value ) throws IOException
+    {
+        writeAscii( id );
+        writeString( value );
+        newLine();
+    }
+
+
+    /**
+     * Writes the separator and a String value, base64 encoding it if it's not LDIF safe
+     */
+    private void writeString( String value ) throws IOException
+    {
+        if ( LdifUtils.isLDIFSafe( value ) )
+        {
+            writeByte( ':' );
+
+            if ( value != null )
+            {
+                writeByte( ' ' );
+                writeAscii( value );
+            }
+        }
+        else
+        {
+            writeAscii( ":: " );
+            writeBase64( encodeUtf8( value ), utf8Length );
+        }
+    }
+
+
+    /**
+     * UTF-8 encodes a String in the utf8 buffer
+     */
+    private byte[] encodeUtf8( String value )
+    {
+        int length = value.length();
+
+        if ( utf8.length < length * 3 )
+        {
+            utf8 = new byte[length * 3];
+        }
+
+        int utf8Pos = 0;
+
+        for ( int i = 0; i < length; i++ )
+        {
+            char c = value.charAt( i );
+
+            if ( c < 0x80 )
+            {
+                utf8[utf8Pos++] = ( byte ) c;
+            }
+            else if ( c < 0x800 )
+            {
+                utf8[utf8Pos++] = ( byte ) ( 0xC0 | ( c >> 6 ) );
+                utf8[utf8Pos++] = ( byte ) ( 0x80 | ( c & 0x3F ) );
+            }
+            else if ( Character.isHighSurrogate( c ) && ( i + 1 < length )
+                && Character.isLowSurrogate( value.charAt( i + 1 ) ) )
+            {
+                int codePoint = Character.toCodePoint( c, value.charAt( ++i ) );
+                utf8[utf8Pos++] = ( byte ) ( 0xF0 | ( codePoint >> 18 ) );
+                utf8[utf8Pos++] = ( byte ) ( 0x80 | ( ( codePoint >> 12 ) & 0x3F ) );
+                utf8[utf8Pos++] = ( byte ) ( 0x80 | ( ( codePoint >> 6 ) & 0x3F ) );
+                utf8[utf8Pos++] = ( byte ) ( 0x80 | ( codePoint & 0x3F ) );
+            }
+            else if ( ( c >= Character.MIN_SURROGATE ) && ( c <= Character.MAX_SURROGATE ) )
+            {
+                // An unpaired surrogate, replaced by '?' as the JDK encoder does
+                utf8[utf8Pos++] = '?';
+            }
+            else
+            {
+                utf8[utf8Pos++] = ( byte ) ( 0xE0 | ( c >> 12 ) );
+                utf8[utf8Pos++] = ( byte ) ( 0x80 | ( ( c >> 6 ) & 0x3F ) );
+                utf8[utf8Pos++] = ( byte ) ( 0x80 | ( c & 0x3F ) );
+            }
+        }
+
+        utf8Length = utf8Pos;
+
+        return utf8;
+    }
+
+
+    /**
+     * Base64 encodes some bytes
+     */
+    private void writeBase64( byte[] data, int length ) throws IOException
+    {
+        for ( int i = 0; i < length; i += 3 )
+        {
+            int val = ( data[i] & 0xFF ) << 16;
+
+            if ( i + 1 < length )
+            {
+                val |= ( data[i + 1] & 0xFF ) << 8;
+            }
+
+            if ( i + 2 < length )
+            {
+                val |= data[i + 2] & 0xFF;
+            }
+
+            writeByte( BASE64[( val >> 18 ) & 0x3F] );
+            writeByte( BASE64[( val >> 12 ) & 0x3F] );
+            writeByte( ( i + 1 < length ) ? BASE64[( val >> 6 ) & 0x3F] : '=' );
+            writeByte( ( i + 2 < length ) ? BASE64[val & 0x3F] : '=' );
+        }
+    }
+
+
+    /**
+     * Writes a String which only contains ASCII chars
+     */
+    private void writeAscii( String str ) throws IOException
+    {
+        for ( int i = 0; i < str.length(); i++ )
+        {
+            writeByte( str.charAt( i ) );
+        }
+    }
+
+
+    /**
+     * Writes a byte, folding the line if it's full
+     */
+    private void writeByte( int b ) throws IOException
+    {
+        if ( column == lineLength )
+        {
+            put( '\n' );
+            put( ' ' );
+            column = 1;
+        }
+
+        put( b );
+        column++;
+    }
+
+
+    /**
+     * Ends the current line
+     */
+    private void newLine() throws IOException
+    {
+        put( '\n' );
+        column = 0;
+    }
+
+
+    /**
+     * Stores a byte in the buffer, writing the buffer if it's full
+     */
+    private void put( int b ) throws IOException
+    {
+        if ( pos == buffer.length )
+        {
+            writeBuffer();
+        }
+
+        buffer[pos++] = ( byte ) b;
+    }
+
+
+    /**
+     * Writes the buffer content
+     */
+    private void writeBuffer() throws IOException
+    {
+        if ( out != null )
+        {
+            out.write( buffer, 0, pos );
+        }
+        else
+        {
+            byteBuffer.clear();
+            byteBuffer.limit( pos );
+
+            while ( byteBuffer.hasRemaining() )
+            {
+                channel.write( byteBuffer );
+            }
+        }
+
+        pos = 0;
+    }
+
+
+    /**
+     * Writes the buffered LDIF, and flushes the OutputStream
+     *
+     * @throws IOException If the LDIF can't be written
+     */
+    public void flush() throws IOException
+    {
+        writeBuffer();
+
+        if ( out != null )
+        {
+            out.flush();
+        }
+    }
+
+
+    /**
+     * Writes the buffered LDIF, and closes the OutputStream or the channel
+     *
+     * @throws IOException If the LDIF can't be written
+     */
+    public void close() throws IOException
+    {
+        try
+        {
+            writeBuffer();
+        }
+        finally
+        {
+            if ( out != null )
+            {
+                out.close();
+            }
+            else
+            {
+                channel.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,630 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.api.ldap.model.ldif;
+
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.directory.api.i18n.I18n;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * A LDIF reader parsing the entries on a pool of threads, for big LDIF files.
+ * <p>
+ * The input is read by chunks, which are cut at entry boundaries (an empty line
+ * which is not followed by a continuation line), and each chunk is parsed by a
+ * {@link LdifReader} on one of the pool threads. The number of chunks read ahead
+ * is bounded, so that the memory used by the reader does not depend on the
+ * input size. The entries are returned in the input order, unless the order is
+ * not required, in which case the entries of a chunk are returned as soon as it
+ * has been parsed.
+ * <p>
+ * The input must be UTF-8 encoded, as required by RFC 2849. The offsets of the
+ * entries are relative to the beginning of the input. As each chunk is parsed
+ * independently, the check that a LDIF file does not contain both entries and
+ * changes is done per chunk.
+ * <p>
+ * As the {@link LdifReader}, this reader stops at the first error, which can be
+ * retrieved using {@link #getError()}. The reader must be closed to release its
+ * threads.
+ * <pre>
+ * ParallelLdifReader reader = new ParallelLdifReader( file, schemaManager );
+ *
+ * try
+ * {
+ *     for ( LdifEntry entry : reader )
+ *     {
+ *         ...
+ *     }
+ *
+ *     if ( reader.hasError() )
+ *     {
+ *         ...
+ *     }
+ * }
+ * finally
+ * {
+ *     reader.close();
+ * }
+ * </pre>
+ * This class is not thread safe : the entries must be read by a single thread.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class ParallelLdifReader implements Iterable<LdifEntry>, Closeable
+{
+    /** A logger */
+    private static final Logger LOG = LoggerFactory.getLogger( ParallelLdifReader.class );
+
+    /**
+     * The default size of a chunk. Small chunks keep the parsed entries waiting to be
+     * read short lived, bigger chunks cost a lot more garbage collection.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+
+    /** The LDIF charset */
+    private static final Charset UTF8 = Charset.forName( "UTF-8" );
+
+    /** The pool threads counter, used to name the threads */
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+    /** The input */
+    private final InputStream in;
+
+    /** The SchemaManager, if any */
+    private final SchemaManager schemaManager;
+
+    /** The pool parsing the chunks */
+    private final ExecutorService executor;
+
+    /** Tells if the entries are returned in the input order */
+    private final boolean keepOrder;
+
+    /** Used to get the parsed chunks as soon as they are available, when the order is not kept */
+    private final CompletionService<List<LdifEntry>> completionService;
+
+    /** The chunks being parsed, in the input order */
+    private final Queue<Future<List<LdifEntry>>> pendingChunks = new LinkedList<Future<List<LdifEntry>>>();
+
+    /** The number of chunks being parsed */
+    private int nbPendingChunks;
+
+    /** The maximum number of chunks being parsed */
+    private int maxPendingChunks;
+
+    /** The size of a chunk */
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+
+    /** The bytes read from the input and not yet submitted */
+    private byte[] buffer;
+
+    /** The number of bytes in the buffer */
+    private int bufferLength;
+
+    /** The position of the buffer in the input */
+    private long bufferOffset;
+
+    /** Tells if the input has been fully read */
+    private boolean eof;
+
+    /** Tells if the first chunk has been submitted. It's the only one containing the version */
+    private boolean firstChunkSubmitted;
+
+    /** The entries of the current chunk */
+    private Iterator<LdifEntry> entries = Collections.<LdifEntry> emptyList().iterator();
+
+    /** The error which stopped the parsing, if any */
+    private Exception error;
+
+    /** Tells if the reader has been closed */
+    private boolean closed;
+
+    /**
+     * A LdifReader parsing a chunk
+     */
+    private static final class ChunkParser extends LdifReader implements Callable<List<LdifEntry>>
+    {
+        /** The chunk bytes */
+        private final byte[] chunk;
+
+        /** The chunk length */
+        private final int length;
+
+        /** The chunk position in the input */
+        private final long chunkOffset;
+
+        /** Tells if this is the first chunk, which may start with the version */
+        private final boolean first;
+
+
+        private ChunkParser( SchemaManager schemaManager, byte[] chunk, int length, long chunkOffset, boolean first )
+        {
+            super( schemaManager );
+            this.chunk = chunk;
+            this.length = length;
+            this.chunkOffset = chunkOffset;
+            this.first = first;
+        }
+
+
+        /**
+         * Parses all the entries of the chunk
+         */
+        public List<LdifEntry> call() throws LdapException
+        {
+            reader = new BufferedReader( new InputStreamReader( new ByteArrayInputStream( chunk, 0, length ), UTF8 ) );
+            List<LdifEntry> chunkEntries = new ArrayList<LdifEntry>();
+
+            if ( first )
+            {
+                version = parseVersion();
+            }
+            else
+            {
+                // The version can only be found at the beginning of the input
+                readLines();
+            }
+
+            LdifEntry entry = parseEntry();
+
+            while ( entry != null )
+            {
+                entry.setOffset( chunkOffset + entry.getOffset() );
+                chunkEntries.add( entry );
+
+                readLines();
+                entry = parseEntry();
+            }
+
+            return chunkEntries;
+        }
+    }
+
+
+    /**
+     * Creates a new instance of ParallelLdifReader reading a LDIF file, with as many threads
+     * as available processors, and keeping the entries order.
+     *
+     * @param file The LDIF file
+     * @param schemaManager The SchemaManager, or null
+     * @throws LdapLdifException If the file can't be read
+     */
+    public ParallelLdifReader( File file, SchemaManager schemaManager ) throws LdapLdifException
+    {
+        this( openFile( file ), schemaManager, Runtime.getRuntime().availableProcessors(), true );
+    }
+
+
+    /**
+     * Creates a new instance of ParallelLdifReader.
+     *
+     * @param in The UTF-8 encoded LDIF input
+     * @param schemaManager The SchemaManager, or null
+     * @param nbThreads The number of threads parsing the entries
+     * @param keepOrder If the entries must be returned in the input order
+     */
+    public ParallelLdifReader( InputStream in, SchemaManager schemaManager, int nbThreads, boolean keepOrder )
+    {
+        if ( nbThreads < 1 )
+        {
+            throw new IllegalArgumentException( "The number of threads must be positive" );
+        }
+
+        this.in = in;
+        this.schemaManager = schemaManager;
+        this.keepOrder = keepOrder;
+        maxPendingChunks = 2 * nbThreads;
+
+        executor = Executors.newFixedThreadPool( nbThreads, new ThreadFactory()
+        {
+            public Thread newThread( Runnable runnable )
+            {
+                Thread thread = new Thread( runnable, "LdifParser-" + THREAD_COUNTER.incrementAndGet() );
+                thread.setDaemon( true );
+
+                return thread;
+            }
+        } );
+
+        completionService = keepOrder ? null : new ExecutorCompletionService<List<LdifEntry>>( executor );
+    }
+
+
+    /**
+     * Opens a LDIF file
+     */
+    private static InputStream openFile( File file ) throws LdapLdifException
+    {
+        try
+        {
+            return new FileInputStream( file );
+        }
+        catch ( FileNotFoundException fnfe )
+        {
+            String msg = I18n.err( I18n.ERR_12010_CANNOT_FIND_FILE, file.getAbsoluteFile() );
+            LOG.error( msg );
+            throw new LdapLdifException( msg, fnfe );
+        }
+    }
+
+
+    /**
+     * @return The size of the chunks read from the input
+     */
+    public int getChunkSize()
+    {
+        return chunkSize;
+    }
+
+
+    /**
+     * Sets the size of the chunks read from the input. A chunk containing an entry bigger
+     * than this size is enlarged. Must be called before the entries are read.
+     *
+     * @param chunkSize The chunks size
+     */
+    public void setChunkSize( int chunkSize )
+    {
+        if ( chunkSize < 1 )
+        {
+            throw new IllegalArgumentException( "The chunk size must be positive" );
+        }
+
+        this.chunkSize = chunkSize;
+    }
+
+
+    /**
+     * @return The maximum number of chunks read ahead
+     */
+    public int getMaxPendingChunks()
+    {
+        return maxPendingChunks;
+    }
+
+
+    /**
+     * Sets the maximum number of chunks read ahead and being parsed. Defaults to twice the
+     * number of threads.
+     *
+     * @param maxPendingChunks The maximum number of chunks read ahead
+     */
+    public void setMaxPendingChunks( int maxPendingChunks )
+    {
+        if ( maxPendingChunks < 1 )
+        {
+            throw new IllegalArgumentException( "The number of pending chunks must be positive" );
+        }
+
+        this.maxPendingChunks = maxPendingChunks;
+    }
+
+
+    /**
+     * @return true if the entries are returned in the input order
+     */
+    public boolean isKeepOrder()
+    {
+        return keepOrder;
+    }
+
+
+    /**
+     * Tells if there are more entries. This method blocks until the next chunk is parsed.
+     *
+     * @return true if another entry is available
+     */
+    public boolean hasNext()
+    {
+        while ( !entries.hasNext() )
+        {
+            if ( ( error != null ) || closed )
+            {
+                return false;
+            }
+
+            try
+            {
+                submitChunks();
+
+                if ( nbPendingChunks == 0 )
+                {
+                    return false;
+                }
+
+                entries = nextParsedChunk().iterator();
+            }
+            catch ( Exception e )
+            {
+                LOG.error( I18n.err( I18n.ERR_12071 ) );
+                error = e;
+                cancelPendingChunks();
+
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+
+    /**
+     * Gets the next entry. This method blocks until the next chunk is parsed.
+     *
+     * @return The next entry
+     */
+    public LdifEntry next()
+    {
+        if ( !hasNext() )
+        {
+            if ( error != null )
+            {
+                throw new NoSuchElementException( error.getMessage() );
+            }
+
+            throw new NoSuchElementException();
+        }
+
+        return entries.next();
+    }
+
+
+    /**
+     * @return An iterator on the entries
+     */
+    public Iterator<LdifEntry> iterator()
+    {
+        return new Iterator<LdifEntry>()
+        {
+            public boolean hasNext()
+            {
+                return ParallelLdifReader.this.hasNext();
+            }
+
+
+            public LdifEntry next()
+            {
+                return ParallelLdifReader.this.next();
+            }
+
+
+            public void remove()
+            {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+
+    /**
+     * @return True if an error occurred during parsing
+     */
+    public boolean hasError()
+    {
+        return error != null;
+    }
+
+
+    /**
+     * @return The exception that occurs during an entry parsing
+     */
+    public Exception getError()
+    {
+        return error;
+    }
+
+
+    /**
+     * Reads chunks and submits them to the pool, until the maximum number of pending
+     * chunks is reached, or the input has been fully read
+     */
+    private void submitChunks() throws IOException
+    {
+        while ( ( nbPendingChunks < maxPendingChunks ) && !eof )
+        {
+            int chunkLength = readChunk();
+
+            if ( chunkLength == 0 )
+            {
+                continue;
+            }
+
+            ChunkParser parser = new ChunkParser( schemaManager, buffer, chunkLength, bufferOffset,
+                !firstChunkSubmitted );
+            firstChunkSubmitted = true;
+
+            if ( keepOrder )
+            {
+                pendingChunks.add( executor.submit( parser ) );
+            }
+            else
+            {
+                completionService.submit( parser );
+            }
+
+            nbPendingChunks++;
+
+            // Keep the beginning of the next entry, if any, in a new buffer, as the
+            // current one is now owned by the parser
+            int remaining = bufferLength - chunkLength;
+            byte[] newBuffer = new byte[Math.max( chunkSize, remaining )];
+            System.arraycopy( buffer, chunkLength, newBuffer, 0, remaining );
+            buffer = newBuffer;
+            bufferLength = remaining;
+            bufferOffset += chunkLength;
+        }
+    }
+
+
+    /**
+     * Fills the buffer, and returns the length of the chunk to submit, which ends
+     * at the last entry boundary. The buffer is enlarged if it does not contain any
+     * boundary.
+     */
+    private int readChunk() throws IOException
+    {
+        if ( buffer == null )
+        {
+            buffer = new byte[chunkSize];
+        }
+
+        while ( true )
+        {
+            while ( bufferLength < buffer.length )
+            {
+                int nbRead = in.read( buffer, bufferLength, buffer.length - bufferLength );
+
+                if ( nbRead < 0 )
+                {
+                    eof = true;
+
+                    return bufferLength;
+                }
+
+                bufferLength += nbRead;
+            }
+
+            int boundary = findLastBoundary( buffer, bufferLength );
+
+            if ( boundary > 0 )
+            {
+                return boundary;
+            }
+
+            // The buffer does not contain a whole entry
+            buffer = Arrays.copyOf( buffer, buffer.length * 2 );
+        }
+    }
+
+
+    /**
+     * Finds the position following the last empty line which isn't followed by a
+     * continuation line. Returns -1 if there is no such line.
+     */
+    private static int findLastBoundary( byte[] bytes, int length )
+    {
+        // The byte following the empty line must be known
+        for ( int i = length - 2; i > 0; i-- )
+        {
+            if ( ( bytes[i] == '\n' ) && ( bytes[i + 1] != ' ' ) )
+            {
+                if ( bytes[i - 1] == '\n' )
+                {
+                    return i + 1;
+                }
+
+                if ( ( bytes[i - 1] == '\r' ) && ( i > 1 ) && ( bytes[i - 2] == '\n' ) )
+                {
+                    return i + 1;
+                }
+            }
+        }
+
+        return -1;
+    }
+
+
+    /**
+     * Waits for the next parsed chunk
+     */
+    private List<LdifEntry> nextParsedChunk() throws LdapException, InterruptedException
+    {
+        Future<List<LdifEntry>> future = keepOrder ? pendingChunks.poll() : completionService.take();
+        nbPendingChunks--;
+
+        try
+        {
+            return future.get();
+        }
+        catch ( ExecutionException ee )
+        {
+            Throwable cause = ee.getCause();
+
+            if ( cause instanceof LdapLdifException )
+            {
+                throw ( LdapLdifException ) cause;
+            }
+
+            throw new LdapLdifException( cause.getMessage(), cause );
+        }
+    }
+
+
+    /**
+     * Cancels the chunks being parsed
+     */
+    private void cancelPendingChunks()
+    {
+        for ( Future<List<LdifEntry>> future : pendingChunks )
+        {
+            future.cancel( true );
+        }
+
+        pendingChunks.clear();
+        nbPendingChunks = 0;
+        executor.shutdownNow();
+    }
+
+
+    /**
+     * Stops the parsing threads, and closes the input
+     *
+     * @throws IOException If the input can't be closed
+     */
+    public void close() throws IOException
+    {
+        if ( !closed )
+        {
+            closed = true;
+            cancelPendingChunks();
+            in.close();
+        }
+    }
+}
@@ -442,6 +442,12 @@ public class Ava implements Externalizable, Cloneable, Comparable<Ava>
             this.upType = upType;
         }
 
+        // Don't keep two copies of an already normalized type
+        if ( this.normType.equals( this.upType ) )
+        {
+            this.normType = this.upType;
+        }
+
         this.normValue = normValue;
         this.upValue = upValue;
         this.upName = upName;
@@ -32,6 +32,9 @@ import org.apache.directory.api.ldap.model.name.AntlrDnParser;
 /**
  * A Dn parser that is able to parse complex DNs. This is an Antlr based parser.
  * 
+ * The Dn and Rdn classes now use the {@link DnParser}, this parser is kept
+ * for comparison purposes.
+ * 
  * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
  */
 /* No protection*/class ComplexDnParser
@@ -25,6 +25,7 @@ import java.io.Externalizable;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -109,6 +110,9 @@ public class Dn implements Iterable<Rdn>, Externalizable
     /** The bytes representation of the normName */
     private byte[] bytes;
 
+    /** The UTF-8 encoded form of the upName, lazily computed unless the Dn was parsed from bytes */
+    private volatile byte[] upBytes;
+
     /** A null Dn */
     public static final Dn EMPTY_DN = new Dn();
 
@@ -118,6 +122,9 @@ public class Dn implements Iterable<Rdn>, Externalizable
     /** the schema manager */
     private SchemaManager schemaManager;
 
+    /** The parent Dn, only set for the Dns created by a DnInterner */
+    private transient Dn parent;
+
     /**
      * An iterator over RDNs
      */
@@ -308,6 +315,28 @@ public class Dn implements Iterable<Rdn>, Externalizable
     }
 
 
+    /**
+     * Creates a Dn from a Rdn and its parent Dn, keeping a reference on the parent.
+     * <br/>
+     * Note : this constructor is used only by the DnInterner.
+     *
+     * @param schemaManager the schema manager
+     * @param rdn The Rdn to add to the parent Dn
+     * @param parent The parent Dn
+     * @throws LdapInvalidDnException If the resulting Dn is invalid
+     */
+    /* No protection */Dn( SchemaManager schemaManager, Rdn rdn, Dn parent ) throws LdapInvalidDnException
+    {
+        rdns = new ArrayList<Rdn>( parent.size() + 1 );
+        rdns.add( rdn );
+        rdns.addAll( parent.rdns );
+
+        toUpName();
+        apply( schemaManager );
+        this.parent = parent;
+    }
+
+
     /**
      * Creates a Dn from a list of Rdns.
      *
@@ -425,6 +454,8 @@ public class Dn implements Iterable<Rdn>, Externalizable
             upName = sb.toString();
         }
 
+        upBytes = null;
+
         return upName;
     }
 
@@ -470,6 +501,7 @@ public class Dn implements Iterable<Rdn>, Externalizable
     /* No qualifier */void setUpName( String upName )
     {
         this.upName = upName;
+        upBytes = null;
     }
 
 
@@ -505,6 +537,82 @@ public class Dn implements Iterable<Rdn>, Externalizable
     }
 
 
+    /**
+     * Creates a Dn from its UTF-8 encoded form, without decoding it to a String
+     * first. The given range is copied, and kept as the UTF-8 form of the user
+     * provided name.
+     *
+     * @param bytes The array containing the UTF-8 encoded Dn
+     * @param offset The Dn position in the array
+     * @param length The Dn length
+     * @return The parsed Dn
+     * @throws LdapInvalidDnException If the Dn is invalid
+     */
+    public static Dn fromUtf8( byte[] bytes, int offset, int length ) throws LdapInvalidDnException
+    {
+        if ( length == 0 )
+        {
+            return new Dn();
+        }
+
+        byte[] upBytes = new byte[length];
+        System.arraycopy( bytes, offset, upBytes, 0, length );
+
+        return parseUtf8( null, upBytes );
+    }
+
+
+    /**
+     * Creates a Dn from its UTF-8 encoded form, without decoding it to a String
+     * first. The array is copied, and the copy kept as the UTF-8 form of the user
+     * provided name.
+     *
+     * @param bytes The UTF-8 encoded Dn
+     * @return The parsed Dn
+     * @throws LdapInvalidDnException If the Dn is invalid
+     */
+    public static Dn fromUtf8( byte[] bytes ) throws LdapInvalidDnException
+    {
+        return fromUtf8( null, bytes );
+    }
+
+
+    /**
+     * Creates a schema aware Dn from its UTF-8 encoded form, without decoding it
+     * to a String first. The array is copied, and the copy kept as the UTF-8 form
+     * of the user provided name.
+     *
+     * @param schemaManager the schema manager
+     * @param bytes The UTF-8 encoded Dn
+     * @return The parsed Dn
+     * @throws LdapInvalidDnException If the Dn is invalid
+     */
+    public static Dn fromUtf8( SchemaManager schemaManager, byte[] bytes ) throws LdapInvalidDnException
+    {
+        if ( ( bytes == null ) || ( bytes.length == 0 ) )
+        {
+            return new Dn( schemaManager );
+        }
+
+        return parseUtf8( schemaManager, bytes.clone() );
+    }
+
+
+    /**
+     * Parses a Dn from its UTF-8 encoded form. The array is kept as the UTF-8 form of
+     * the user provided name, so it must belong to the Dn.
+     */
+    private static Dn parseUtf8( SchemaManager schemaManager, byte[] bytes ) throws LdapInvalidDnException
+    {
+        Dn dn = new Dn( schemaManager );
+        dn.upName = DnParser.parseDn( bytes, 0, bytes.length, dn.rdns );
+        dn.upBytes = bytes;
+        dn.apply( schemaManager );
+
+        return dn;
+    }
+
+
     /**
      * Get the number of bytes necessary to store this Dn
 
@@ -529,6 +637,82 @@ public class Dn implements Iterable<Rdn>, Externalizable
     }
 
 
+    /**
+     * Get the UTF-8 representation of the user provided form of the Dn. The
+     * returned array is a copy, use {@link #writeUpBytes(Dn, ByteBuffer)} to
+     * encode the Dn without copying it.
+     *
+     * @param dn The Dn.
+     * @return A byte[] representation of the user provided Dn
+     */
+    public static byte[] getUpBytes( Dn dn )
+    {
+        if ( dn == null )
+        {
+            return null;
+        }
+
+        return upBytes( dn ).clone();
+    }
+
+
+    /**
+     * Get the number of bytes of the UTF-8 representation of the user provided
+     * form of the Dn
+     *
+     * @param dn The Dn.
+     * @return The size of the user provided Dn UTF-8 byte array
+     */
+    public static int getNbUpBytes( Dn dn )
+    {
+        return dn == null ? 0 : upBytes( dn ).length;
+    }
+
+
+    /**
+     * Writes the UTF-8 representation of the user provided form of the Dn into
+     * a buffer. When the Dn has been parsed from its UTF-8 form, the original
+     * bytes are written.
+     *
+     * @param dn The Dn.
+     * @param buffer The buffer to write the Dn into
+     */
+    public static void writeUpBytes( Dn dn, ByteBuffer buffer )
+    {
+        if ( dn != null )
+        {
+            buffer.put( upBytes( dn ) );
+        }
+    }
+
+
+    /**
+     * @return The UTF-8 representation of the user provided form of the Dn, which
+     * is computed once
+     */
+    private static byte[] upBytes( Dn dn )
+    {
+        byte[] result = dn.upBytes;
+
+        if ( result == null )
+        {
+            if ( ( dn.upName == dn.normName ) && ( dn.bytes != null ) )
+            {
+                // The normalized name is shared with the user provided name
+                result = dn.bytes;
+            }
+            else
+            {
+                result = Strings.getBytesUtf8( dn.getName() );
+            }
+
+            dn.upBytes = result;
+        }
+
+        return result;
+    }
+
+
     /**
      * Tells if the current Dn is a parent of another Dn.<br>
      * For instance, <b>dc=com</b> is a ancestor
@@ -605,6 +789,15 @@ public class Dn implements Iterable<Rdn>, Externalizable
             return true;
         }
 
+        // Interned Dns share their ancestors, look for them first
+        for ( Dn ancestor = this; ancestor != null; ancestor = ancestor.parent )
+        {
+            if ( ancestor == dn )
+            {
+                return true;
+            }
+        }
+
         if ( dn.size() > size() )
         {
             // The name is longer than the current Dn.
@@ -964,6 +1157,12 @@ public class Dn implements Iterable<Rdn>, Externalizable
             return this;
         }
 
+        if ( parent != null )
+        {
+            // An interned Dn
+            return parent;
+        }
+
         int posn = rdns.size() - 1;
 
         Dn newDn = new Dn( schemaManager );
@@ -1215,8 +1414,7 @@ public class Dn implements Iterable<Rdn>, Externalizable
 
                     if ( ( normName == null ) || !normName.equals( newNormName ) )
                     {
-                        bytes = Strings.getBytesUtf8Ascii( newNormName );
-                        normName = newNormName;
+                        setNormName( newNormName );
                     }
                 }
             }
@@ -1250,8 +1448,7 @@ public class Dn implements Iterable<Rdn>, Externalizable
 
                     if ( ( normName == null ) || !normName.equals( newNormName ) )
                     {
-                        bytes = Strings.getBytesUtf8Ascii( newNormName );
-                        normName = newNormName;
+                        setNormName( newNormName );
                     }
                 }
             }
@@ -1261,6 +1458,28 @@ public class Dn implements Iterable<Rdn>, Externalizable
     }
 
 
+    /**
+     * Stores the normalized name and its bytes. When the Dn is already in its
+     * normalized form, the user provided String and its bytes are shared instead
+     * of keeping a second copy of them.
+     *
+     * @param newNormName The normalized name
+     */
+    private void setNormName( String newNormName )
+    {
+        if ( newNormName.equals( upName ) )
+        {
+            normName = upName;
+            bytes = ( upBytes != null ) ? upBytes : Strings.getBytesUtf8Ascii( upName );
+        }
+        else
+        {
+            bytes = Strings.getBytesUtf8Ascii( newNormName );
+            normName = newNormName;
+        }
+    }
+
+
     /**
      * Normalizes the Dn using the given the schema manager, unless the Dn is already normalized
      *
@@ -1362,15 +1581,7 @@ public class Dn implements Iterable<Rdn>, Externalizable
      */
     private static void parseInternal( String name, List<Rdn> rdns ) throws LdapInvalidDnException
     {
-        try
-        {
-            FastDnParser.parseDn( name, rdns );
-        }
-        catch ( TooComplexDnException e )
-        {
-            rdns.clear();
-            new ComplexDnParser().parseDn( name, rdns );
-        }
+        DnParser.parseDn( name, rdns );
     }
 
 
@@ -0,0 +1,276 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.api.ldap.model.name;
+
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.directory.api.ldap.model.exception.LdapInvalidDnException;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+
+
+/**
+ * A Dn interner, used to reduce the memory used by a large population of Dns. The
+ * interned Dns form a tree : each interned Dn keeps a reference on its interned parent,
+ * and all the children of a Dn share its Rdn instances. As a consequence, the number of
+ * Rdns kept in memory is the number of distinct Rdns, not the total number of Rdns in
+ * all the Dns.
+ * <p>
+ * The interned Dns are only weakly referenced by the interner : a Dn which is not
+ * used anymore, and which has no interned descendant in use, will be garbage collected.
+ * <p>
+ * Interned Dns also have a cheap {@link Dn#getParent()}, which returns the interned
+ * parent, and a cheap {@link Dn#isDescendantOf(Dn)} when the ancestor is interned
+ * by the same interner.
+ * <p>
+ * Two Dns are interned into the same instance if their Rdns have the same user
+ * provided names, including the spaces surrounding them.
+ * <p>
+ * The interned Dns are normalized using the interner's SchemaManager. They must not
+ * be applied another SchemaManager, as their Rdns are shared.
+ * <p>
+ * This class is thread safe.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class DnInterner
+{
+    /** The SchemaManager used to normalize the interned Dns */
+    private final SchemaManager schemaManager;
+
+    /** The root of the interned Dns */
+    private final Dn root;
+
+    /** The interned Dns, per parent and Rdn */
+    private final ConcurrentMap<NodeKey, NodeReference> nodes = new ConcurrentHashMap<NodeKey, NodeReference>();
+
+    /** The queue of the interned Dns which have been garbage collected */
+    private final ReferenceQueue<Dn> queue = new ReferenceQueue<Dn>();
+
+    /**
+     * The key of an interned Dn : the parent instance and the user provided
+     * name of the Rdn.
+     */
+    private static final class NodeKey
+    {
+        /** The interned parent */
+        private final Dn parent;
+
+        /** The user provided name of the Rdn */
+        private final String rdnName;
+
+        /** The precomputed hash code */
+        private final int h;
+
+
+        private NodeKey( Dn parent, String rdnName )
+        {
+            this.parent = parent;
+            this.rdnName = rdnName;
+            h = System.identityHashCode( parent ) * 31 + rdnName.hashCode();
+        }
+
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int hashCode()
+        {
+            return h;
+        }
+
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean equals( Object that )
+        {
+            if ( this == that )
+            {
+                return true;
+            }
+
+            if ( !( that instanceof NodeKey ) )
+            {
+                return false;
+            }
+
+            NodeKey key = ( NodeKey ) that;
+
+            return ( parent == key.parent ) && rdnName.equals( key.rdnName );
+        }
+    }
+
+    /**
+     * A weak reference on an interned Dn, which knows the key it is stored with.
+     */
+    private static final class NodeReference extends WeakReference<Dn>
+    {
+        /** The key this reference is stored with */
+        private final NodeKey key;
+
+
+        private NodeReference( Dn dn, NodeKey key, ReferenceQueue<Dn> queue )
+        {
+            super( dn, queue );
+            this.key = key;
+        }
+    }
+
+
+    /**
+     * Creates a new instance of DnInterner, for schema agnostic Dns.
+     */
+    public DnInterner()
+    {
+        this( null );
+    }
+
+
+    /**
+     * Creates a new instance of DnInterner. The interned Dns will be schema aware.
+     *
+     * @param schemaManager The SchemaManager used to normalize the interned Dns
+     */
+    public DnInterner( SchemaManager schemaManager )
+    {
+        this.schemaManager = schemaManager;
+        root = new Dn( schemaManager );
+    }
+
+
+    /**
+     * Parses a Dn and interns it.
+     *
+     * @param name The Dn to intern
+     * @return The interned Dn
+     * @throws LdapInvalidDnException If the Dn is invalid
+     */
+    public Dn intern( String name ) throws LdapInvalidDnException
+    {
+        return intern( new Dn( schemaManager, name ) );
+    }
+
+
+    /**
+     * Interns a Dn. The returned Dn is the unique interned instance for the Dn's Rdns.
+     *
+     * @param dn The Dn to intern
+     * @return The interned Dn
+     * @throws LdapInvalidDnException If the Dn can't be normalized
+     */
+    public Dn intern( Dn dn ) throws LdapInvalidDnException
+    {
+        expungeStaleEntries();
+
+        Dn current = root;
+
+        // The Rdns are stored from the leaf to the root
+        for ( int i = dn.size() - 1; i >= 0; i-- )
+        {
+            current = getChild( current, dn.rdns.get( i ) );
+        }
+
+        return current;
+    }
+
+
+    /**
+     * @return The number of Dns currently interned
+     */
+    public int size()
+    {
+        expungeStaleEntries();
+
+        return nodes.size();
+    }
+
+
+    /**
+     * Gets the interned child of a Dn, creating it if needed.
+     */
+    private Dn getChild( Dn parent, Rdn rdn ) throws LdapInvalidDnException
+    {
+        NodeKey key = new NodeKey( parent, rdn.getName() );
+        NodeReference reference = nodes.get( key );
+        Dn child = ( reference == null ) ? null : reference.get();
+
+        if ( child != null )
+        {
+            return child;
+        }
+
+        // The Rdn is cloned, so that the interned Dns don't share it with the caller
+        Dn newChild = new Dn( schemaManager, rdn.clone(), parent );
+        NodeReference newReference = new NodeReference( newChild, key, queue );
+
+        while ( true )
+        {
+            if ( reference == null )
+            {
+                reference = nodes.putIfAbsent( key, newReference );
+
+                if ( reference == null )
+                {
+                    return newChild;
+                }
+            }
+            else if ( nodes.replace( key, reference, newReference ) )
+            {
+                // The previous instance has been garbage collected
+                return newChild;
+            }
+            else
+            {
+                reference = nodes.get( key );
+            }
+
+            // Another thread has interned the same Dn
+            child = ( reference == null ) ? null : reference.get();
+
+            if ( child != null )
+            {
+                return child;
+            }
+        }
+    }
+
+
+    /**
+     * Removes the garbage collected Dns from the map.
+     */
+    private void expungeStaleEntries()
+    {
+        Reference<? extends Dn> reference = queue.poll();
+
+        while ( reference != null )
+        {
+            NodeReference nodeReference = ( NodeReference ) reference;
+            nodes.remove( nodeReference.key, nodeReference );
+            reference = queue.poll();
+        }
+    }
+}
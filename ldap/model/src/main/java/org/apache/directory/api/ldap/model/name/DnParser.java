@@ -0,0 +1,746 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.directory.api.ldap.model.name;
+
+
+import java.util.List;
+
+import org.apache.directory.api.i18n.I18n;
+import org.apache.directory.api.ldap.model.entry.BinaryValue;
+import org.apache.directory.api.ldap.model.entry.StringValue;
+import org.apache.directory.api.ldap.model.exception.LdapInvalidDnException;
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
+import org.apache.directory.api.util.Chars;
+import org.apache.directory.api.util.Hex;
+import org.apache.directory.api.util.Strings;
+
+
+/**
+ * A hand written recursive descent parser for the RFC 4514 Dn grammar. It
+ * handles the whole grammar (escaped chars, hex pairs, hexstrings, quoted
+ * values and multi-valued RDNs) in one single pass over the Dn chars, and
+ * produces the same RDNs and AVAs than the {@link FastDnParser} and the
+ * {@link ComplexDnParser} did.
+ * 
+ * <pre>
+ * distinguishedName = [ relativeDistinguishedName *( ( COMMA / SEMI ) relativeDistinguishedName ) ]
+ * relativeDistinguishedName = attributeTypeAndValue *( PLUS attributeTypeAndValue )
+ * attributeTypeAndValue = *SPACE attributeType *SPACE EQUALS *SPACE attributeValue *SPACE
+ * attributeType = descr / ( [ "oid." ] numericoid )
+ * attributeValue = string / hexstring / quotedstring
+ * </pre>
+ * 
+ * A few deviations from RFC 4514 are accepted, as the previous parsers
+ * did : the ';' separator, the '_' char in a descr, the unescaped '=', '&lt;',
+ * '&gt;' and NUL chars in a value, and the RFC 2253 quoted values. As with
+ * the previous parsers, an escaped trailing space is kept in the normalized
+ * value, but not in the user provided value.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+/* No protection*/final class DnParser
+{
+    /** The chars to parse */
+    private final char[] chars;
+
+    /** The current position in the chars */
+    private int pos;
+
+    /** The buffer containing the unescaped value being parsed */
+    private final char[] value;
+
+    /** The current value length */
+    private int valueLength;
+
+    /** Tells if the last char of the current value is an escaped space */
+    private boolean escapedSpaceEnd;
+
+    /** The buffer containing the consecutive hex pairs, which must be UTF-8 decoded together */
+    private byte[] hexBytes;
+
+    /** The number of pending bytes in the hexBytes buffer */
+    private int hexLength;
+
+
+    /**
+     * Creates a new parser for the given chars.
+     *
+     * @param chars The chars to parse
+     */
+    private DnParser( char[] chars )
+    {
+        this.chars = chars;
+        value = new char[chars.length];
+    }
+
+
+    /**
+     * Parses a Dn from a String, and stores its RDNs into the given list
+     *
+     * @param name The Dn to parse
+     * @param rdns The list that will contain the RDNs
+     * @throws LdapInvalidDnException If the Dn is invalid
+     */
+    /* No protection*/static void parseDn( String name, List<Rdn> rdns ) throws LdapInvalidDnException
+    {
+        if ( name == null )
+        {
+            return;
+        }
+
+        char[] chars = name.toCharArray();
+
+        if ( isBlank( chars ) )
+        {
+            // We have an empty Dn, just get out of the function.
+            return;
+        }
+
+        new DnParser( chars ).parseDn( rdns );
+    }
+
+
+    /**
+     * Parses a Dn from its UTF-8 encoded form, and stores its RDNs into the given list.
+     * If the Dn only contains ASCII chars, no UTF-8 decoding is done.
+     *
+     * @param bytes The array containing the UTF-8 encoded Dn
+     * @param offset The Dn position in the array
+     * @param length The Dn length
+     * @param rdns The list that will contain the RDNs
+     * @return The Dn as a String
+     * @throws LdapInvalidDnException If the Dn is invalid
+     */
+    /* No protection*/static String parseDn( byte[] bytes, int offset, int length, List<Rdn> rdns )
+        throws LdapInvalidDnException
+    {
+        if ( ( bytes == null ) || ( length == 0 ) )
+        {
+            return "";
+        }
+
+        char[] chars = toChars( bytes, offset, length );
+
+        if ( !isBlank( chars ) )
+        {
+            new DnParser( chars ).parseDn( rdns );
+        }
+
+        return new String( chars );
+    }
+
+
+    /**
+     * Parses a Rdn from a String, and stores its AVAs into the given Rdn.
+     *
+     * @param name The Rdn to parse
+     * @param rdn The Rdn to fill
+     * @throws LdapInvalidDnException If the Rdn is invalid
+     */
+    /* No protection*/static void parseRdn( String name, Rdn rdn ) throws LdapInvalidDnException
+    {
+        if ( ( name == null ) || ( name.length() == 0 ) )
+        {
+            throw new LdapInvalidDnException( ResultCodeEnum.INVALID_DN_SYNTAX, I18n.err( I18n.ERR_04193 ) );
+        }
+
+        if ( rdn == null )
+        {
+            throw new LdapInvalidDnException( ResultCodeEnum.INVALID_DN_SYNTAX, I18n.err( I18n.ERR_04194 ) );
+        }
+
+        new DnParser( name.toCharArray() ).parseRdn( rdn );
+    }
+
+
+    /**
+     * Converts UTF-8 bytes to chars, simply widening the bytes when they are all ASCII.
+     */
+    private static char[] toChars( byte[] bytes, int offset, int length )
+    {
+        char[] chars = new char[length];
+
+        for ( int i = 0; i < length; i++ )
+        {
+            byte b = bytes[offset + i];
+
+            if ( b < 0 )
+            {
+                return Strings.utf8ToString( bytes, offset, length ).toCharArray();
+            }
+
+            chars[i] = ( char ) b;
+        }
+
+        return chars;
+    }
+
+
+    /**
+     * Tells if the chars only contain spaces or control chars, as String.trim() would do.
+     */
+    private static boolean isBlank( char[] chars )
+    {
+        for ( char c : chars )
+        {
+            if ( c > ' ' )
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+
+    /**
+     * distinguishedName = [ relativeDistinguishedName *( ( COMMA / SEMI ) relativeDistinguishedName ) ]
+     */
+    private void parseDn( List<Rdn> rdns ) throws LdapInvalidDnException
+    {
+        while ( true )
+        {
+            Rdn rdn = new Rdn();
+            parseRdn( rdn );
+            rdns.add( rdn );
+
+            if ( pos == chars.length )
+            {
+                // end of line reached
+                break;
+            }
+
+            char c = chars[pos++];
+
+            switch ( c )
+            {
+                case ',':
+                case ';':
+                    // another Rdn to parse
+                    break;
+
+                default:
+                    throw new LdapInvalidDnException( ResultCodeEnum.INVALID_DN_SYNTAX, I18n.err( I18n.ERR_04192, c,
+                        pos ) );
+            }
+        }
+    }
+
+
+    /**
+     * relativeDistinguishedName = attributeTypeAndValue *( PLUS attributeTypeAndValue )
+     */
+    private void parseRdn( Rdn rdn ) throws LdapInvalidDnException
+    {
+        int rdnStart = pos;
+        Ava ava = null;
+
+        while ( true )
+        {
+            ava = parseAva();
+            rdn.addAVA( null, ava );
+
+            if ( ( pos < chars.length ) && ( chars[pos] == '+' ) )
+            {
+                // Multi-valued Rdn
+                pos++;
+            }
+            else
+            {
+                break;
+            }
+        }
+
+        if ( rdn.size() == 1 )
+        {
+            // The Rdn and its single Ava share the same user provided name
+            rdn.setUpName( ava.getName() );
+        }
+        else
+        {
+            rdn.setUpName( new String( chars, rdnStart, pos - rdnStart ) );
+        }
+
+        rdn.normalize();
+    }
+
+
+    /**
+     * attributeTypeAndValue = *SPACE attributeType *SPACE EQUALS *SPACE attributeValue *SPACE
+     */
+    private Ava parseAva() throws LdapInvalidDnException
+    {
+        int avaStart = pos;
+
+        skipSpaces();
+        String type = matchAttributeType();
+        skipSpaces();
+        matchEquals();
+        skipSpaces();
+
+        valueLength = 0;
+
+        if ( pos < chars.length )
+        {
+            switch ( chars[pos] )
+            {
+                case '#':
+                    byte[] bytes = matchHexString();
+                    BinaryValue binaryValue = new BinaryValue( bytes );
+
+                    return new Ava( type, type, binaryValue, binaryValue, upName( avaStart ) );
+
+                case '"':
+                    String upValue = matchQuotedString();
+
+                    return new Ava( type, type, new StringValue( upValue ), new StringValue( new String( value, 0,
+                        valueLength ) ), upName( avaStart ) );
+
+                default:
+                    matchString();
+
+                    if ( escapedSpaceEnd )
+                    {
+                        // The escaped trailing space is not a part of the user provided value
+                        return new Ava( type, type, new StringValue( new String( value, 0, valueLength - 1 ) ),
+                            new StringValue( new String( value, 0, valueLength ) ), upName( avaStart ) );
+                    }
+
+                    break;
+            }
+        }
+
+        // The user provided and normalized values are identical, share them
+        StringValue stringValue = new StringValue( new String( value, 0, valueLength ) );
+
+        return new Ava( type, type, stringValue, stringValue, upName( avaStart ) );
+    }
+
+
+    /**
+     * @return The user provided name, from the given position to the current one
+     */
+    private String upName( int start )
+    {
+        return new String( chars, start, pos - start );
+    }
+
+
+    /**
+     * Skips the optional spaces.
+     */
+    private void skipSpaces()
+    {
+        while ( ( pos < chars.length ) && ( chars[pos] == ' ' ) )
+        {
+            pos++;
+        }
+    }
+
+
+    /**
+     * attributeType = descr / ( [ "oid." ] numericoid )
+     */
+    private String matchAttributeType() throws LdapInvalidDnException
+    {
+        if ( pos == chars.length )
+        {
+            throw new LdapInvalidDnException( ResultCodeEnum.INVALID_DN_SYNTAX, I18n.err( I18n.ERR_04201, pos ) );
+        }
+
+        char c = chars[pos];
+
+        if ( Chars.isAlpha( c ) )
+        {
+            if ( ( pos + 4 < chars.length ) && ( ( chars[pos] | 0x20 ) == 'o' ) && ( ( chars[pos + 1] | 0x20 ) == 'i' )
+                && ( ( chars[pos + 2] | 0x20 ) == 'd' ) && ( chars[pos + 3] == '.' ) && Chars.isDigit( chars[pos + 4] ) )
+            {
+                // "oid." numericoid, the prefix is kept in the type
+                int start = pos;
+                pos += 4;
+
+                return matchNumericOid( start );
+            }
+
+            return matchDescr();
+        }
+        else if ( Chars.isDigit( c ) )
+        {
+            return matchNumericOid( pos );
+        }
+        else
+        {
+            throw new LdapInvalidDnException( ResultCodeEnum.INVALID_DN_SYNTAX, I18n.err( I18n.ERR_04195, c, pos ) );
+        }
+    }
+
+
+    /**
+     * descr = ALPHA *( ALPHA / DIGIT / HYPHEN / UNDERSCORE )
+     */
+    private String matchDescr() throws LdapInvalidDnException
+    {
+        int start = pos++;
+
+        while ( pos < chars.length )
+        {
+            char c = chars[pos];
+
+            if ( ( c == ' ' ) || ( c == '=' ) )
+            {
+                break;
+            }
+
+            // The '_' is a violation of the RFC, but some servers allow it
+            if ( !Chars.isAlphaDigitMinus( c ) && ( c != '_' ) )
+            {
+                throw new LdapInvalidDnException( ResultCodeEnum.INVALID_DN_SYNTAX,
+                    I18n.err( I18n.ERR_04196, c, pos ) );
+            }
+
+            pos++;
+        }
+
+        return new String( chars, start, pos - start );
+    }
+
+
+    /**
+     * numericoid = number 1*( DOT number )
+     * number = DIGIT / ( LDIGIT 1*DIGIT )
+     */
+    private String matchNumericOid( int start ) throws LdapInvalidDnException
+    {
+        boolean hasDot = false;
+
+        while ( true )
+        {
+            if ( pos == chars.length )
+            {
+                throw new LdapInvalidDnException( ResultCodeEnum.INVALID_DN_SYNTAX, I18n.err( I18n.ERR_04201, pos ) );
+            }
+
+            char c = chars[pos];
+
+            if ( c == '0' )
+            {
+                // leading '0', no other digit may follow!
+                pos++;
+            }
+            else if ( Chars.isDigit( c ) )
+            {
+                pos++;
+
+                while ( ( pos < chars.length ) && Chars.isDigit( chars[pos] ) )
+                {
+                    pos++;
+                }
+            }
+            else
+            {
+                throw new LdapInvalidDnException( ResultCodeEnum.INVALID_DN_SYNTAX, I18n.err( I18n.ERR_04199, c, pos ) );
+            }
+
+            if ( pos == chars.length )
+            {
+                break;
+            }
+
+            c = chars[pos];
+
+            if ( c == '.' )
+            {
+                hasDot = true;
+                pos++;
+            }
+            else if ( ( c == ' ' ) || ( c == '=' ) )
+            {
+                break;
+            }
+            else
+            {
+                throw new LdapInvalidDnException( ResultCodeEnum.INVALID_DN_SYNTAX, I18n.err( I18n.ERR_04197, c, pos ) );
+            }
+        }
+
+        if ( !hasDot )
+        {
+            throw new LdapInvalidDnException( ResultCodeEnum.INVALID_DN_SYNTAX, I18n.err( I18n.ERR_04198 ) );
+        }
+
+        return new String( chars, start, pos - start );
+    }
+
+
+    /**
+     * Matches the EQUALS char.
+     */
+    private void matchEquals() throws LdapInvalidDnException
+    {
+        if ( pos == chars.length )
+        {
+            throw new LdapInvalidDnException( ResultCodeEnum.INVALID_DN_SYNTAX, I18n.err( I18n.ERR_04201, pos ) );
+        }
+
+        char c = chars[pos];
+
+        if ( c != '=' )
+        {
+            throw new LdapInvalidDnException( ResultCodeEnum.INVALID_DN_SYNTAX, I18n.err( I18n.ERR_04200, c, pos ) );
+        }
+
+        pos++;
+    }
+
+
+    /**
+     * hexstring = SHARP 1*hexpair
+     * 
+     * @return The decoded bytes
+     */
+    private byte[] matchHexString() throws LdapInvalidDnException
+    {
+        // Skip the '#'
+        int start = ++pos;
+
+        while ( ( pos + 1 < chars.length ) && Chars.isHex( chars[pos] ) && Chars.isHex( chars[pos + 1] ) )
+        {
+            pos += 2;
+        }
+
+        if ( pos == start )
+        {
+            throw new LdapInvalidDnException( ResultCodeEnum.INVALID_DN_SYNTAX, I18n.err( I18n.ERR_04214 ) );
+        }
+
+        byte[] bytes = new byte[( pos - start ) / 2];
+
+        for ( int i = 0; i < bytes.length; i++ )
+        {
+            bytes[i] = Hex.getHexValue( chars[start + i * 2], chars[start + i * 2 + 1] );
+        }
+
+        skipSpaces();
+        checkEndOfValue();
+
+        return bytes;
+    }
+
+
+    /**
+     * quotedstring = DQUOTE *( quotechar / pair ) DQUOTE
+     * 
+     * The unescaped value is stored into the value buffer.
+     * 
+     * @return The quoted value, as provided by the user
+     */
+    private String matchQuotedString() throws LdapInvalidDnException
+    {
+        int start = pos++;
+
+        while ( true )
+        {
+            if ( pos == chars.length )
+            {
+                throw new LdapInvalidDnException( ResultCodeEnum.INVALID_DN_SYNTAX, I18n.err( I18n.ERR_04201, pos ) );
+            }
+
+            char c = chars[pos];
+
+            if ( c == '"' )
+            {
+                pos++;
+                break;
+            }
+            else if ( c == '\\' )
+            {
+                matchPair();
+            }
+            else
+            {
+                addChar( c );
+                pos++;
+            }
+        }
+
+        flushHexBytes();
+        String upValue = new String( chars, start, pos - start );
+
+        skipSpaces();
+        checkEndOfValue();
+
+        return upValue;
+    }
+
+
+    /**
+     * string = [ ( leadchar / pair ) [ *( stringchar / pair ) ( trailchar / pair ) ] ]
+     * 
+     * The unescaped value, without its trailing spaces, is stored into the value buffer.
+     * The trailing spaces are kept in the user provided name.
+     */
+    private void matchString() throws LdapInvalidDnException
+    {
+        int trailingSpaces = 0;
+        escapedSpaceEnd = false;
+
+        while ( pos < chars.length )
+        {
+            char c = chars[pos];
+
+            switch ( c )
+            {
+                case ',':
+                case ';':
+                case '+':
+                    flushHexBytes();
+                    valueLength -= trailingSpaces;
+
+                    return;
+
+                case '\\':
+                    escapedSpaceEnd = ( pos + 1 < chars.length ) && ( chars[pos + 1] == ' ' );
+                    matchPair();
+                    trailingSpaces = 0;
+                    break;
+
+                case '"':
+                    throw new LdapInvalidDnException( ResultCodeEnum.INVALID_DN_SYNTAX, I18n.err(
+                        I18n.ERR_04489_UNEXPECTED_VALUE_CHAR, c, pos ) );
+
+                case ' ':
+                    addChar( c );
+                    trailingSpaces++;
+                    pos++;
+                    break;
+
+                default:
+                    addChar( c );
+                    trailingSpaces = 0;
+                    escapedSpaceEnd = false;
+                    pos++;
+                    break;
+            }
+        }
+
+        flushHexBytes();
+        valueLength -= trailingSpaces;
+    }
+
+
+    /**
+     * pair = ESC ( ESC / special / hexpair )
+     * special = DQUOTE / PLUS / COMMA / SEMI / LANGLE / RANGLE / SPACE / SHARP / EQUALS
+     */
+    private void matchPair() throws LdapInvalidDnException
+    {
+        // Skip the ESC
+        pos++;
+
+        if ( pos == chars.length )
+        {
+            throw new LdapInvalidDnException( ResultCodeEnum.INVALID_DN_SYNTAX, I18n.err( I18n.ERR_04201, pos ) );
+        }
+
+        char c = chars[pos];
+
+        if ( Chars.isHex( c ) && ( pos + 1 < chars.length ) && Chars.isHex( chars[pos + 1] ) )
+        {
+            // An hexpair : the byte may be a part of an UTF-8 encoded char
+            if ( hexBytes == null )
+            {
+                hexBytes = new byte[chars.length / 3 + 1];
+            }
+
+            hexBytes[hexLength++] = Hex.getHexValue( c, chars[pos + 1] );
+            pos += 2;
+
+            return;
+        }
+
+        switch ( c )
+        {
+            case '\\':
+            case '"':
+            case '+':
+            case ',':
+            case ';':
+            case '<':
+            case '>':
+            case ' ':
+            case '#':
+            case '=':
+                addChar( c );
+                pos++;
+                break;
+
+            default:
+                throw new LdapInvalidDnException( ResultCodeEnum.INVALID_DN_SYNTAX, I18n.err(
+                    I18n.ERR_04488_INVALID_ESCAPED_CHAR, c, pos ) );
+        }
+    }
+
+
+    /**
+     * Checks that the value is followed by a separator, or by the end of the Dn.
+     */
+    private void checkEndOfValue() throws LdapInvalidDnException
+    {
+        if ( pos < chars.length )
+        {
+            char c = chars[pos];
+
+            if ( ( c != ',' ) && ( c != ';' ) && ( c != '+' ) )
+            {
+                throw new LdapInvalidDnException( ResultCodeEnum.INVALID_DN_SYNTAX, I18n.err(
+                    I18n.ERR_04489_UNEXPECTED_VALUE_CHAR, c, pos ) );
+            }
+        }
+    }
+
+
+    /**
+     * Adds a char to the value buffer, after the pending hex pairs.
+     */
+    private void addChar( char c )
+    {
+        if ( hexLength > 0 )
+        {
+            flushHexBytes();
+        }
+
+        value[valueLength++] = c;
+    }
+
+
+    /**
+     * Decodes the pending hex pairs as UTF-8 and adds the resulting chars to the value buffer.
+     */
+    private void flushHexBytes()
+    {
+        if ( hexLength > 0 )
+        {
+            String decoded = Strings.utf8ToString( hexBytes, hexLength );
+            decoded.getChars( 0, decoded.length(), value, valueLength );
+            valueLength += decoded.length();
+            hexLength = 0;
+        }
+    }
+}
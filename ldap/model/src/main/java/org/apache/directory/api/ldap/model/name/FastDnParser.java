@@ -34,6 +34,9 @@ import org.apache.directory.api.util.Strings;
 /**
  * A fast LDAP Dn parser that handles only simple DNs. If the Dn contains
  * any special character an {@link TooComplexException} is thrown.
+ * 
+ * The Dn and Rdn classes now use the {@link DnParser}, this parser is kept
+ * for comparison purposes.
  *
  * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
  */
@@ -25,12 +25,9 @@ import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
 
-import org.apache.commons.collections.MultiMap;
-import org.apache.commons.collections.map.MultiValueMap;
 import org.apache.directory.api.i18n.I18n;
 import org.apache.directory.api.ldap.model.entry.StringValue;
 import org.apache.directory.api.ldap.model.entry.Value;
@@ -144,21 +141,12 @@ public class Rdn implements Cloneable, Externalizable, Iterable<Ava>, Comparable
      * '+' character appears in the Ava. This is a TreeSet,
      * because we want the Avas to be sorted. An Ava may contain more than one
      * value. In this case, the values are String stored in a List.
-     */
-    private List<Ava> avas = null;
-
-    /**
-     * We also keep a set of types, in order to use manipulations. A type is
-     * connected with the Ava it represents.
      *
-     * Note : there is no Generic available classes in commons-collection...
+     * This list is only created for multi-valued Rdns. We don't keep any
+     * index on the Avas types : a multi-valued Rdn contains a handful of Avas,
+     * and scanning them is cheaper than maintaining a Map for each Rdn.
      */
-    private MultiMap avaTypes = new MultiValueMap();
-
-    /**
-     * We keep the type for a single valued Rdn, to avoid the creation of an HashMap
-     */
-    private String avaType = null;
+    private List<Ava> avas = null;
 
     /**
      * A simple Ava is used to store the Rdn for the simple
@@ -383,14 +371,12 @@ public class Rdn implements Cloneable, Externalizable, Iterable<Ava>, Comparable
                 return;
 
             default:
-                // We must duplicate the treeSet and the hashMap
-                avas = new ArrayList<Ava>();
-                avaTypes = new MultiValueMap();
+                // We must duplicate the list
+                avas = new ArrayList<Ava>( nbAvas );
 
                 for ( Ava currentAva : rdn.avas )
                 {
                     avas.add( currentAva.clone() );
-                    avaTypes.put( currentAva.getNormType(), currentAva );
                 }
 
                 hashCode();
@@ -456,6 +442,13 @@ public class Rdn implements Cloneable, Externalizable, Iterable<Ava>, Comparable
                 break;
         }
 
+        // Don't keep two copies of the same String when the user provided
+        // form is already normalized, which is the most frequent case
+        if ( normName.equals( upName ) )
+        {
+            normName = upName;
+        }
+
         hashCode();
     }
 
@@ -527,21 +520,18 @@ public class Rdn implements Cloneable, Externalizable, Iterable<Ava>, Comparable
                 // This is the first Ava. Just stores it.
                 ava = new Ava( schemaManager, upType, normalizedType, upValue, normalizedValue );
                 nbAvas = 1;
-                avaType = normalizedType;
                 hashCode();
 
                 return;
 
             case 1:
-                // We already have an Ava. We have to put it in the HashMap
+                // We already have an Ava. We have to put it in the List
                 // before adding a new one.
-                // First, create the HashMap,
-                avas = new ArrayList<Ava>();
+                // First, create the List,
+                avas = new ArrayList<Ava>( 2 );
 
                 // and store the existing Ava into it.
                 avas.add( ava );
-                avaTypes = new MultiValueMap();
-                avaTypes.put( avaType, ava );
 
                 ava = null;
 
@@ -552,7 +542,6 @@ public class Rdn implements Cloneable, Externalizable, Iterable<Ava>, Comparable
                 // add a new Ava
                 Ava newAva = new Ava( schemaManager, upType, normalizedType, upValue, normalizedValue );
                 avas.add( newAva );
-                avaTypes.put( normalizedType, newAva );
                 nbAvas++;
                 hashCode();
 
@@ -579,22 +568,16 @@ public class Rdn implements Cloneable, Externalizable, Iterable<Ava>, Comparable
             throw new LdapInvalidDnException( "Cannot set the AVA at position " + pos );
         }
 
-        String normalizedType = value.getNormType();
-
         switch ( nbAvas )
         {
             case 1:
                 // This is the first Ava. Just stores it.
                 ava = value;
-                avaType = normalizedType;
 
                 break;
 
             default:
-                Ava oldAva = avas.get( pos );
                 avas.set( pos, value );
-                avaTypes.remove( oldAva.getType() );
-                avaTypes.put( normalizedType, value );
 
                 break;
         }
@@ -623,28 +606,25 @@ public class Rdn implements Cloneable, Externalizable, Iterable<Ava>, Comparable
                 // This is the first Ava. Just stores it.
                 ava = value;
                 nbAvas = 1;
-                avaType = normalizedType;
                 hashCode();
 
                 return;
 
             case 1:
-                // We already have an Ava. We have to put it in the HashMap
+                // We already have an Ava. We have to put it in the List
                 // before adding a new one.
                 // Check that the first AVA is not for the same attribute
-                if ( avaType.equals( normalizedType ) )
+                if ( ava.getNormType().equals( normalizedType ) )
                 {
                     throw new LdapInvalidDnException( "Invalid RDN: the " + normalizedType
                         + " is already present in the RDN" );
                 }
 
-                // First, create the HashMap,
-                avas = new ArrayList<Ava>();
+                // First, create the List,
+                avas = new ArrayList<Ava>( 2 );
 
                 // and store the existing Ava into it.
                 avas.add( ava );
-                avaTypes = new MultiValueMap();
-                avaTypes.put( avaType, ava );
 
                 this.ava = null;
 
@@ -653,7 +633,7 @@ public class Rdn implements Cloneable, Externalizable, Iterable<Ava>, Comparable
 
             default:
                 // Check that the AT is not already present
-                if ( avaTypes.containsKey( normalizedType ) )
+                if ( findAva( normalizedType ) != null )
                 {
                     throw new LdapInvalidDnException( "Invalid RDN: the " + normalizedType
                         + " is already present in the RDN" );
@@ -661,7 +641,6 @@ public class Rdn implements Cloneable, Externalizable, Iterable<Ava>, Comparable
 
                 // add a new Ava
                 avas.add( value );
-                avaTypes.put( normalizedType, value );
                 nbAvas++;
                 hashCode();
 
@@ -680,8 +659,6 @@ public class Rdn implements Cloneable, Externalizable, Iterable<Ava>, Comparable
     {
         ava = null;
         avas = null;
-        avaType = null;
-        avaTypes.clear();
         nbAvas = 0;
         normName = "";
         upName = "";
@@ -727,18 +704,15 @@ public class Rdn implements Cloneable, Externalizable, Iterable<Ava>, Comparable
                 return "";
 
             default:
-                if ( avaTypes.containsKey( normalizedType ) )
-                {
-                    @SuppressWarnings("unchecked")
-                    Collection<Ava> atavList = ( Collection<Ava> ) avaTypes.get( normalizedType );
-                    StringBuffer sb = new StringBuffer();
-                    boolean isFirst = true;
+                StringBuilder sb = null;
 
-                    for ( Ava elem : atavList )
+                for ( Ava elem : avas )
+                {
+                    if ( elem.getNormType().equals( normalizedType ) )
                     {
-                        if ( isFirst )
+                        if ( sb == null )
                         {
-                            isFirst = false;
+                            sb = new StringBuilder();
                         }
                         else
                         {
@@ -747,11 +721,9 @@ public class Rdn implements Cloneable, Externalizable, Iterable<Ava>, Comparable
 
                         sb.append( elem.getNormValue() );
                     }
-
-                    return sb.toString();
                 }
 
-                return "";
+                return sb == null ? "" : sb.toString();
         }
     }
 
@@ -784,15 +756,28 @@ public class Rdn implements Cloneable, Externalizable, Iterable<Ava>, Comparable
                 return null;
 
             default:
-                if ( avaTypes.containsKey( normalizedType ) )
-                {
-                    @SuppressWarnings("unchecked")
-                    Collection<Ava> atavList = ( Collection<Ava> ) avaTypes.get( normalizedType );
-                    return atavList.iterator().next();
-                }
+                return findAva( normalizedType );
+        }
+    }
 
-                return null;
+
+    /**
+     * Get the first Ava of a multi-valued Rdn which normalized type is the given one.
+     *
+     * @param normalizedType The normalized type to look for
+     * @return The Ava, of null if none is found.
+     */
+    private Ava findAva( String normalizedType )
+    {
+        for ( Ava currentAva : avas )
+        {
+            if ( currentAva.getNormType().equals( normalizedType ) )
+            {
+                return currentAva;
+            }
         }
+
+        return null;
     }
 
 
@@ -860,18 +845,15 @@ public class Rdn implements Cloneable, Externalizable, Iterable<Ava>, Comparable
 
                 case 1:
                     rdn.ava = this.ava.clone();
-                    rdn.avaTypes = avaTypes;
                     break;
 
                 default:
-                    // We must duplicate the treeSet and the hashMap
-                    rdn.avaTypes = new MultiValueMap();
-                    rdn.avas = new ArrayList<Ava>();
+                    // We must duplicate the list
+                    rdn.avas = new ArrayList<Ava>( nbAvas );
 
                     for ( Ava currentAva : this.avas )
                     {
                         rdn.avas.add( currentAva.clone() );
-                        rdn.avaTypes.put( currentAva.getNormType(), currentAva );
                     }
 
                     break;
@@ -1486,15 +1468,7 @@ public class Rdn implements Cloneable, Externalizable, Iterable<Ava>, Comparable
      */
     private static void parse( String dn, Rdn rdn ) throws LdapInvalidDnException
     {
-        try
-        {
-            FastDnParser.parseRdn( dn, rdn );
-        }
-        catch ( TooComplexDnException e )
-        {
-            rdn.clear();
-            new ComplexDnParser().parseRdn( dn, rdn );
-        }
+        DnParser.parseRdn( dn, rdn );
     }
 
 
@@ -1648,25 +1622,20 @@ public class Rdn implements Cloneable, Externalizable, Iterable<Ava>, Comparable
             case 1:
                 ava = new Ava( schemaManager );
                 pos = ava.deserialize( buffer, pos );
-                avaType = ava.getNormType();
 
                 break;
 
             default:
-                avas = new ArrayList<Ava>();
-
-                avaTypes = new MultiValueMap();
+                avas = new ArrayList<Ava>( nbAvas );
 
                 for ( int i = 0; i < nbAvas; i++ )
                 {
                     Ava ava = new Ava( schemaManager );
                     pos = ava.deserialize( buffer, pos );
                     avas.add( ava );
-                    avaTypes.put( ava.getNormType(), ava );
                 }
 
                 ava = null;
-                avaType = null;
 
                 break;
         }
@@ -1792,25 +1761,20 @@ public class Rdn implements Cloneable, Externalizable, Iterable<Ava>, Comparable
             case 1:
                 ava = new Ava( schemaManager );
                 ava.readExternal( in );
-                avaType = ava.getNormType();
 
                 break;
 
             default:
-                avas = new ArrayList<Ava>();
-
-                avaTypes = new MultiValueMap();
+                avas = new ArrayList<Ava>( nbAvas );
 
                 for ( int i = 0; i < nbAvas; i++ )
                 {
                     Ava ava = new Ava( schemaManager );
                     ava.readExternal( in );
                     avas.add( ava );
-                    avaTypes.put( ava.getNormType(), ava );
                 }
 
                 ava = null;
-                avaType = null;
 
                 break;
         }
@@ -236,27 +236,23 @@ public final class PrepareString
             case CASE_EXACT:
             case CASE_EXACT_IA5:
             case DIRECTORY_STRING:
-                try
+                if ( Strings.isEmpty( str ) )
                 {
-                    return insignifiantSpacesStringAscii( str, CASE_SENSITIVE );
-                }
-                catch ( Exception e )
-                {
-                    return insignifiantSpacesString( str, CASE_SENSITIVE );
+                    return "";
                 }
 
+                return insignifiantSpaces( str.toCharArray(), CASE_SENSITIVE );
+
             case CASE_IGNORE_IA5:
             case CASE_IGNORE_LIST:
             case CASE_IGNORE:
-                try
-                {
-                    return insignifiantSpacesStringAscii( str, IGNORE_CASE );
-                }
-                catch ( Exception e )
+                if ( Strings.isEmpty( str ) )
                 {
-                    return insignifiantSpacesString( str, IGNORE_CASE );
+                    return "";
                 }
 
+                return insignifiantSpaces( str.toCharArray(), IGNORE_CASE );
+
             case WORD:
                 return str;
 
@@ -267,6 +263,107 @@ public final class PrepareString
     }
 
 
+    /**
+     * Normalize a char array, applying the same steps than {@link #normalize(String, StringType)}
+     * without creating an intermediate String. The given array is used as a work buffer when
+     * it only contains ASCII chars, so its content may be modified.
+     *
+     * @param chars The chars to normalize
+     * @param type The string type
+     * @return A normalized string.
+     * @throws IOException If the chars can't be normalized
+     */
+    public static String normalize( char[] chars, StringType type ) throws IOException
+    {
+        switch ( type )
+        {
+            case CASE_EXACT:
+            case CASE_EXACT_IA5:
+            case DIRECTORY_STRING:
+                if ( ( chars == null ) || ( chars.length == 0 ) )
+                {
+                    return "";
+                }
+
+                return insignifiantSpaces( chars, CASE_SENSITIVE );
+
+            case CASE_IGNORE_IA5:
+            case CASE_IGNORE_LIST:
+            case CASE_IGNORE:
+                if ( ( chars == null ) || ( chars.length == 0 ) )
+                {
+                    return "";
+                }
+
+                return insignifiantSpaces( chars, IGNORE_CASE );
+
+            default:
+                return normalize( chars == null ? null : new String( chars ), type );
+        }
+    }
+
+
+    /**
+     * Normalize an UTF-8 encoded byte array, applying the same steps than
+     * {@link #normalize(String, StringType)}. ASCII bytes are copied directly
+     * in the work buffer, without going through an UTF-8 decoder.
+     *
+     * @param bytes The UTF-8 bytes to normalize
+     * @param type The string type
+     * @return A normalized string.
+     * @throws IOException If the bytes can't be normalized
+     */
+    public static String normalize( byte[] bytes, StringType type ) throws IOException
+    {
+        if ( ( bytes == null ) || ( bytes.length == 0 ) )
+        {
+            return normalize( ( char[] ) null, type );
+        }
+
+        char[] chars = new char[bytes.length];
+
+        for ( int i = 0; i < bytes.length; i++ )
+        {
+            byte b = bytes[i];
+
+            if ( b < 0 )
+            {
+                // Not an ASCII byte : use the full UTF-8 decoder
+                return normalize( Strings.utf8ToString( bytes ).toCharArray(), type );
+            }
+
+            chars[i] = ( char ) b;
+        }
+
+        return normalize( chars, type );
+    }
+
+
+    /**
+     * Remove all insignificant spaces in a char array, selecting the ASCII
+     * fast path when no char is above 0x7F. This check is done before any
+     * transformation, so that we never have to restart the processing.
+     *
+     * @param array The chars to process
+     * @param caseSensitive A flag telling if the chars must be lower cased
+     * @return The normalized String
+     * @throws InvalidCharacterException If an invalid character is found in the chars
+     */
+    private static String insignifiantSpaces( char[] array, boolean caseSensitive )
+        throws InvalidCharacterException
+    {
+        for ( char c : array )
+        {
+            if ( c > 0x007F )
+            {
+                return insignifiantSpacesString( array, caseSensitive );
+            }
+        }
+
+        return insignifiantSpacesStringAscii( array, caseSensitive );
+    }
+
+
     /**
      * Execute the mapping step of the string preparation :
      * - suppress useless chars
@@ -4809,27 +4906,19 @@ public final class PrepareString
      * This method use a finite state machine to parse
      * the text.
      * 
-     * @param str The String to modify
+     * @param array The chars to modify
      * @param caseSensitive A flag telling if the chars must be lower cased
-     * @return The modified StringBuilder
+     * @return The modified String
      * @throws InvalidCharacterException If an invalid character is found in the String
      */
-    private static String insignifiantSpacesString( String str, boolean caseSensitive )
+    private static String insignifiantSpacesString( char[] array, boolean caseSensitive )
         throws InvalidCharacterException
     {
-        if ( Strings.isEmpty( str ) )
-        {
-            // Special case : an empty strings is replaced by 2 spaces
-            return "";
-        }
-
-        char[] array = str.toCharArray();
-
         // Create a target char array which is 3 times bigger than the original size. 
         // We have to do that because the map phase may transform a char to
         // three chars.
         // TODO : we have to find a way to prevent this waste of space.
-        char[] target = new char[str.length() * 3 + 2];
+        char[] target = new char[array.length * 3 + 2];
 
         int pos = 0;
         char lowerCase = ( char ) ( caseSensitive ? 0x00 : 0x20 );
@@ -4957,106 +5046,56 @@ public final class PrepareString
 
 
     /**
-     * Remove all insignificant spaces in a Ascii string.
+     * Remove all insignificant spaces in a Ascii string. The chars are
+     * processed in place, as the mapping never expands an ASCII char.
      * 
-     * This method use a finite state machine to parse
-     * the text.
+     * No ASCII char is prohibited nor a combining mark, so this method
+     * does not need to check for them.
      * 
-     * @param str The String to modify
+     * @param array The chars to modify, all of them being ASCII chars
      * @param caseSensitive A flag telling if the chars must be lower cased
-     * @return The modified StringBuilder
-     * @throws InvalidCharacterException If an invalid character is found in the String
+     * @return The modified String
      */
-    private static String insignifiantSpacesStringAscii( String str, boolean caseSensitive )
-        throws InvalidCharacterException
+    private static String insignifiantSpacesStringAscii( char[] array, boolean caseSensitive )
     {
-        if ( Strings.isEmpty( str ) )
-        {
-            // Special case : an empty strings is replaced by 2 spaces
-            return "";
-        }
-
-        char[] array = str.toCharArray();
-
         int pos = 0;
         char lowerCase = ( char ) ( caseSensitive ? 0x00 : 0x20 );
 
         // First pass to map the chars
         int limit = map( array, array, lowerCase );
-        pos = 0;
 
-        // Second pass to remove spaces. We work on the target
+        // Second pass to remove spaces. We work on the mapped chars
         int i = 0;
-        char c = '\0';
 
         // First remove starting spaces
-        for ( i = 0; i < limit; i++ )
+        while ( ( i < limit ) && ( array[i] == ' ' ) )
         {
-            c = array[i];
-
-            if ( c != ' ' )
-            {
-                checkProhibited( c );
-                break;
-            }
+            i++;
         }
 
-        // Now, 'i' will be the starting point. We will just handle the special
-        // case of a combining character
-        int start = i;
-
-        if ( start == limit )
+        if ( i == limit )
         {
             // we only have spaces, we keep only one
             return " ";
         }
-        else if ( isCombiningMark( c ) )
-        {
-            if ( start == 0 )
-            {
-                // The first char can't be a combining char
-                throw new InvalidCharacterException( c );
-            }
-            else
-            {
-                throw new InvalidCharacterException( c );
-            }
-        }
-        else
-        {
-            array[pos++] = c;
-            start++;
-        }
 
         // Now remove the spaces at the end
-        for ( i = limit - 1; i > start; i-- )
+        while ( array[limit - 1] == ' ' )
         {
-            if ( array[i] != ' ' )
-            {
-                break;
-            }
+            limit--;
         }
 
-        limit = i + 1;
-
         // Let's deal with the following chars. It will be
         // a list of chars and spaces. We will consider that
         // we have couples of chars and spaces :
-        // (char* space*)*. We have a special case :
-        // a space followed by a combining char.
+        // (char* space*)*.
         boolean spaceSeen = false;
 
-        for ( i = start; i < limit; i++ )
+        for ( ; i < limit; i++ )
         {
-            c = array[i];
-
-            checkProhibited( c );
+            char c = array[i];
 
-            if ( isCombiningMark( c ) )
-            {
-                throw new InvalidCharacterException( c );
-            }
-            else if ( c == ' ' )
+            if ( c == ' ' )
             {
                 spaceSeen = true;
             }
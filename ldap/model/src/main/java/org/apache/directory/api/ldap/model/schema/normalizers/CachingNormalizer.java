@@ -20,14 +20,21 @@
 package org.apache.directory.api.ldap.model.schema.normalizers;
 
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+
+import org.apache.directory.api.ldap.model.entry.StringValue;
 import org.apache.directory.api.ldap.model.entry.Value;
 import org.apache.directory.api.ldap.model.exception.LdapException;
 import org.apache.directory.api.ldap.model.schema.Normalizer;
 import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.util.ConcurrentLRUCache;
 
 
 /**
- * Caches previously normalized values.
+ * Caches previously normalized values. Only the String values are cached, the
+ * binary values are always normalized by the decorated Normalizer. The cache is
+ * bounded and can be used concurrently by many threads.
  * 
  * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
  */
@@ -40,6 +47,12 @@ public class CachingNormalizer extends Normalizer
     /** The underlying decorated Normalizer */
     protected final Normalizer normalizer;
 
+    /** The maximum number of cached values */
+    private final int cacheSize;
+
+    /** The cache of normalized values, null if the cache is disabled. It's not serialized */
+    private transient ConcurrentLRUCache<String, String> cache;
+
 
     // ------------------------------------------------------------------------
     // C O N S T R U C T O R S
@@ -62,12 +75,36 @@ public class CachingNormalizer extends Normalizer
      * specified cache size.
      * 
      * @param normalizer the underlying Normalizer being decorated
-     * @param cacheSz the maximum size of the name cache
+     * @param cacheSz the maximum size of the name cache. 0 disables the cache
      */
     public CachingNormalizer( Normalizer normalizer, int cacheSz )
     {
         super( normalizer.getOid() );
         this.normalizer = normalizer;
+        this.cacheSize = cacheSz;
+        createCache();
+    }
+
+
+    /**
+     * Creates the cache, if enabled
+     */
+    private void createCache()
+    {
+        if ( cacheSize > 0 )
+        {
+            cache = new ConcurrentLRUCache<String, String>( cacheSize );
+        }
+    }
+
+
+    /**
+     * Recreates an empty cache after deserialization
+     */
+    private void readObject( ObjectInputStream in ) throws IOException, ClassNotFoundException
+    {
+        in.defaultReadObject();
+        createCache();
     }
 
 
@@ -105,9 +142,27 @@ public class CachingNormalizer extends Normalizer
             return null;
         }
 
-        Value<?> normalized = normalizer.normalize( value );
+        if ( ( cache == null ) || !value.isHumanReadable() )
+        {
+            return normalizer.normalize( value );
+        }
 
-        return normalized;
+        String key = value.getString();
+        String normalized = cache.get( key );
+
+        if ( normalized != null )
+        {
+            return new StringValue( normalized );
+        }
+
+        Value<?> normalizedValue = normalizer.normalize( value );
+
+        if ( ( normalizedValue != null ) && normalizedValue.isHumanReadable() )
+        {
+            cache.put( key, normalizedValue.getString() );
+        }
+
+        return normalizedValue;
     }
 
 
@@ -121,7 +176,22 @@ public class CachingNormalizer extends Normalizer
             return null;
         }
 
-        String normalized = normalizer.normalize( value );
+        if ( cache == null )
+        {
+            return normalizer.normalize( value );
+        }
+
+        String normalized = cache.get( value );
+
+        if ( normalized == null )
+        {
+            normalized = normalizer.normalize( value );
+
+            if ( normalized != null )
+            {
+                cache.put( value, normalized );
+            }
+        }
 
         return normalized;
     }
@@ -135,5 +205,57 @@ public class CachingNormalizer extends Normalizer
     public void setSchemaManager( SchemaManager schemaManager )
     {
         normalizer.setSchemaManager( schemaManager );
+
+        // The normalized values may depend on the schema
+        clearCache();
+    }
+
+
+    /**
+     * Removes all the normalized values from the cache
+     */
+    public void clearCache()
+    {
+        if ( cache != null )
+        {
+            cache.clear();
+        }
+    }
+
+
+    /**
+     * @return The number of normalized values currently cached
+     */
+    public int getCacheSize()
+    {
+        return cache == null ? 0 : cache.size();
+    }
+
+
+    /**
+     * @return The number of normalizations served from the cache
+     */
+    public long getCacheHits()
+    {
+        return cache == null ? 0L : cache.getHitCount();
+    }
+
+
+    /**
+     * @return The number of normalizations delegated to the decorated Normalizer
+     * because the value was not cached
+     */
+    public long getCacheMisses()
+    {
+        return cache == null ? 0L : cache.getMissCount();
+    }
+
+
+    /**
+     * @return The number of normalized values removed from the cache to make room for new ones
+     */
+    public long getCacheEvictions()
+    {
+        return cache == null ? 0L : cache.getEvictionCount();
     }
 }
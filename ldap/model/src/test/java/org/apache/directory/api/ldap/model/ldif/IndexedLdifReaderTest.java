@@ -0,0 +1,225 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.api.ldap.model.ldif;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.util.Base64;
+import org.apache.directory.api.util.Strings;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.mycila.junit.concurrent.Concurrency;
+import com.mycila.junit.concurrent.ConcurrentJunitRunner;
+
+
+/**
+ * Test the LdifIndex and IndexedLdifReader classes
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@RunWith(ConcurrentJunitRunner.class)
+@Concurrency()
+public class IndexedLdifReaderTest
+{
+    /** A LDIF with a version line, comments, CRLF, a base64 Dn and a folded Dn */
+    private static final String LDIF =
+        "version: 1\n" +
+            "# A comment\n" +
+            "dn: ou=people,dc=example,dc=com\n" +
+            "objectClass: top\n" +
+            "objectClass: organizationalUnit\n" +
+            "ou: people\n" +
+            "\n" +
+            "\n" +
+            "# Another comment\n" +
+            "#  on two lines\n" +
+            "dn: cn=John Doe,ou=people,\r\n" +
+            " dc=example,dc=com\r\n" +
+            "objectClass: person\r\n" +
+            "cn: John Doe\r\n" +
+            "sn: Doe\r\n" +
+            "\r\n" +
+            "dn:: " + new String( Base64.encode( Strings.getBytesUtf8( "cn=J\u00e9r\u00f4me,ou=people,dc=example,dc=com" ) ) ) + "\n" +
+            "objectClass: person\n" +
+            "cn:: " + new String( Base64.encode( Strings.getBytesUtf8( "J\u00e9r\u00f4me" ) ) ) + "\n" +
+            "sn: Dupont\n" +
+            "\n" +
+            "dn: CN=Jane Doe, OU=People,dc=example,dc=com\n" +
+            "objectClass: person\n" +
+            "cn: Jane Doe\n" +
+            "sn: Doe";
+
+
+    private static File createLdif( String ldif ) throws Exception
+    {
+        File file = File.createTempFile( "IndexedLdifReaderTest", ".ldif" );
+        file.deleteOnExit();
+        LdifIndex.getIndexFile( file ).deleteOnExit();
+
+        OutputStream out = new FileOutputStream( file );
+
+        try
+        {
+            out.write( Strings.getBytesUtf8( ldif ) );
+        }
+        finally
+        {
+            out.close();
+        }
+
+        return file;
+    }
+
+
+    @Test
+    public void testBuildIndex() throws Exception
+    {
+        File file = createLdif( LDIF );
+        LdifIndex index = LdifIndex.build( file, null );
+        byte[] bytes = Strings.getBytesUtf8( LDIF );
+
+        assertEquals( 4, index.size() );
+
+        assertEquals( LDIF.indexOf( "dn: ou=people" ), index.getOffset( 0 ) );
+        assertEquals( "dn: ou=people,dc=example,dc=com\n" +
+            "objectClass: top\n" +
+            "objectClass: organizationalUnit\n" +
+            "ou: people\n",
+            Strings.utf8ToString( bytes, ( int ) index.getOffset( 0 ), index.getLength( 0 ) ) );
+
+        assertEquals( "dn: cn=John Doe,ou=people,\r\n" +
+            " dc=example,dc=com\r\n" +
+            "objectClass: person\r\n" +
+            "cn: John Doe\r\n" +
+            "sn: Doe\r\n",
+            Strings.utf8ToString( bytes, ( int ) index.getOffset( 1 ), index.getLength( 1 ) ) );
+
+        // The last entry has no newline
+        assertEquals( bytes.length, index.getOffset( 3 ) + index.getLength( 3 ) );
+
+        assertEquals( 0, index.indexOf( "ou=people,dc=example,dc=com" ) );
+        assertEquals( 1, index.indexOf( "cn=John Doe,ou=people,dc=example,dc=com" ) );
+        assertEquals( 2, index.indexOf( new Dn( "cn=J\u00e9r\u00f4me,ou=people,dc=example,dc=com" ) ) );
+        assertEquals( 3, index.indexOf( "cn=Jane Doe,ou=People,dc=example,dc=com" ) );
+        assertEquals( -1, index.indexOf( "cn=nobody,dc=example,dc=com" ) );
+    }
+
+
+    @Test
+    public void testSaveAndLoadIndex() throws Exception
+    {
+        File file = createLdif( LDIF );
+        LdifIndex index = LdifIndex.build( file, null );
+        File indexFile = LdifIndex.getIndexFile( file );
+        index.save( indexFile );
+
+        LdifIndex loaded = LdifIndex.load( indexFile, null );
+
+        assertTrue( loaded.isUpToDate( file ) );
+        assertEquals( index.size(), loaded.size() );
+
+        for ( int i = 0; i < index.size(); i++ )
+        {
+            assertEquals( index.getOffset( i ), loaded.getOffset( i ) );
+            assertEquals( index.getLength( i ), loaded.getLength( i ) );
+            assertEquals( index.getNormName( i ), loaded.getNormName( i ) );
+            assertEquals( i, loaded.indexOf( index.getNormName( i ) ) );
+        }
+    }
+
+
+    @Test
+    public void testIndexOutOfDate() throws Exception
+    {
+        File file = createLdif( LDIF );
+        LdifIndex index = LdifIndex.getIndex( file, null );
+
+        assertTrue( LdifIndex.getIndexFile( file ).exists() );
+        assertTrue( index.isUpToDate( file ) );
+
+        OutputStream out = new FileOutputStream( file, true );
+        out.write( Strings.getBytesUtf8( "\n\ndn: cn=new,dc=example,dc=com\ncn: new\n" ) );
+        out.close();
+
+        assertFalse( index.isUpToDate( file ) );
+
+        // The sidecar file is rebuilt
+        index = LdifIndex.getIndex( file, null );
+
+        assertEquals( 5, index.size() );
+        assertEquals( 4, LdifIndex.load( LdifIndex.getIndexFile( file ), null ).indexOf( "cn=new,dc=example,dc=com" ) );
+    }
+
+
+    @Test
+    public void testReadEntries() throws Exception
+    {
+        File file = createLdif( LDIF );
+        LdifReader ldifReader = new LdifReader();
+        List<LdifEntry> expected = ldifReader.parseLdif( LDIF );
+        ldifReader.close();
+
+        IndexedLdifReader reader = new IndexedLdifReader( file, null );
+
+        try
+        {
+            assertEquals( expected.size(), reader.size() );
+
+            // Read them in reverse order
+            for ( int i = reader.size() - 1; i >= 0; i-- )
+            {
+                assertEquals( expected.get( i ), reader.get( i ) );
+            }
+
+            assertEquals( expected.get( 2 ), reader.lookup( "cn=J\u00e9r\u00f4me,ou=people,dc=example,dc=com" ) );
+            assertEquals( expected.get( 1 ), reader.lookup( new Dn( "CN=John Doe, OU=people,dc=example,dc=com" ) ) );
+            assertNull( reader.lookup( "cn=nobody,dc=example,dc=com" ) );
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+
+
+    @Test(expected = LdapLdifException.class)
+    public void testReaderWithStaleIndex() throws Exception
+    {
+        File file = createLdif( LDIF );
+        LdifIndex index = LdifIndex.build( file, null );
+
+        OutputStream out = new FileOutputStream( file, true );
+        out.write( Strings.getBytesUtf8( "\n" ) );
+        out.close();
+
+        new IndexedLdifReader( file, index, null );
+    }
+}
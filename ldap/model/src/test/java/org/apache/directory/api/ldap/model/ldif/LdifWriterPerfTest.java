@@ -0,0 +1,136 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.api.ldap.model.ldif;
+
+
+import java.io.BufferedWriter;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.junit.BeforeClass;
+import org.junit.Ignore;
+import org.junit.Test;
+
+
+/**
+ * Compares the throughput of the LdifWriter and of the LdifUtils.convertToLdif() method
+ * when dumping entries.
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@Ignore("Ignore performance tests: should not be with integration tests")
+public class LdifWriterPerfTest
+{
+    /** The number of entries to write */
+    private static final int NB_ENTRIES = 100000;
+
+    /** The number of warmup runs */
+    private static final int NB_WARMUP = 2;
+
+    private static List<Entry> entries;
+
+    /** An OutputStream discarding everything */
+    private static final OutputStream NULL_STREAM = new OutputStream()
+    {
+        public void write( int b )
+        {
+        }
+
+
+        public void write( byte[] b, int off, int len )
+        {
+        }
+    };
+
+
+    @BeforeClass
+    public static void createEntries() throws Exception
+    {
+        entries = new ArrayList<Entry>( NB_ENTRIES );
+
+        for ( int i = 0; i < NB_ENTRIES; i++ )
+        {
+            Entry entry = new DefaultEntry( "uid=user" + i + ",ou=people,dc=example,dc=com",
+                "objectClass: top",
+                "objectClass: person",
+                "objectClass: inetOrgPerson",
+                "uid: user" + i,
+                "cn: User " + i,
+                "sn: " + i,
+                "mail: user" + i + "@example.com",
+                "description: A description which is long enough to be folded on two lines, for the user " + i );
+            entry.add( "displayName", "Utilisateur num\u00e9ro " + i );
+            entry.add( "jpegPhoto", new byte[256] );
+            entries.add( entry );
+        }
+    }
+
+
+    private long writeLdifUtils() throws Exception
+    {
+        long t0 = System.nanoTime();
+        Writer writer = new BufferedWriter( new OutputStreamWriter( NULL_STREAM, "UTF-8" ) );
+
+        for ( Entry entry : entries )
+        {
+            writer.write( LdifUtils.convertToLdif( entry ) );
+            writer.write( '\n' );
+        }
+
+        writer.close();
+
+        return NB_ENTRIES * 1000000000L / ( System.nanoTime() - t0 );
+    }
+
+
+    private long writeLdifWriter() throws Exception
+    {
+        long t0 = System.nanoTime();
+        LdifWriter writer = new LdifWriter( NULL_STREAM );
+
+        for ( Entry entry : entries )
+        {
+            writer.write( entry );
+        }
+
+        writer.close();
+
+        return NB_ENTRIES * 1000000000L / ( System.nanoTime() - t0 );
+    }
+
+
+    @Test
+    public void testWriteEntries() throws Exception
+    {
+        for ( int i = 0; i < NB_WARMUP; i++ )
+        {
+            writeLdifUtils();
+            writeLdifWriter();
+        }
+
+        System.out.println( "LdifUtils : " + writeLdifUtils() + " entries/s" );
+        System.out.println( "LdifWriter : " + writeLdifWriter() + " entries/s" );
+    }
+}
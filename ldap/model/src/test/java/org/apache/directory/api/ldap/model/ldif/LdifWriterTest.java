@@ -0,0 +1,254 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.api.ldap.model.ldif;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.directory.api.ldap.model.entry.DefaultAttribute;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.ModificationOperation;
+import org.apache.directory.api.util.Base64;
+import org.apache.directory.api.util.Strings;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.mycila.junit.concurrent.Concurrency;
+import com.mycila.junit.concurrent.ConcurrentJunitRunner;
+
+
+/**
+ * Test the LdifWriter class
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@RunWith(ConcurrentJunitRunner.class)
+@Concurrency()
+public class LdifWriterTest
+{
+    private static String write( LdifEntry... entries ) throws Exception
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        LdifWriter writer = new LdifWriter( out );
+
+        for ( LdifEntry entry : entries )
+        {
+            writer.write( entry );
+        }
+
+        writer.close();
+
+        return Strings.utf8ToString( out.toByteArray() );
+    }
+
+
+    private static String encodeBase64( String str )
+    {
+        return new String( Base64.encode( Strings.getBytesUtf8( str ) ) );
+    }
+
+
+    private static List<LdifEntry> read( String ldif ) throws Exception
+    {
+        LdifReader reader = new LdifReader();
+
+        try
+        {
+            return reader.parseLdif( ldif );
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+
+
+    @Test
+    public void testWriteEntry() throws Exception
+    {
+        Entry entry = new DefaultEntry( "cn=test,ou=system",
+            "objectClass: top",
+            "objectClass: person",
+            "cn: test",
+            "sn: Test" );
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        LdifWriter writer = new LdifWriter( out );
+        writer.writeVersion();
+        writer.write( entry );
+        writer.close();
+
+        assertEquals( "version: 1\n" + LdifUtils.convertToLdif( entry ) + "\n", Strings.utf8ToString( out.toByteArray() ) );
+    }
+
+
+    @Test
+    public void testSameAsLdifUtils() throws Exception
+    {
+        LdifEntry add = new LdifEntry( "cn=test,ou=system",
+            "changetype: add",
+            "objectClass: top",
+            "objectClass: person",
+            "cn: test",
+            "sn: Test",
+            "description:: " + encodeBase64( "Entr\u00e9e" ) );
+
+        LdifEntry modify = new LdifEntry();
+        modify.setDn( "cn=test,ou=system" );
+        modify.setChangeType( ChangeType.Modify );
+        modify.addModification( ModificationOperation.ADD_ATTRIBUTE, new DefaultAttribute( "cn", "test2" ) );
+        modify.addModification( ModificationOperation.REMOVE_ATTRIBUTE, new DefaultAttribute( "sn" ) );
+        modify.addModification( ModificationOperation.REPLACE_ATTRIBUTE, new DefaultAttribute( "description", "new" ) );
+
+        LdifEntry modDn = new LdifEntry( "cn=test,ou=system",
+            "changetype: moddn",
+            "newrdn: cn=test2",
+            "deleteoldrdn: 1",
+            "newsuperior: ou=people,ou=system" );
+
+        LdifEntry delete = new LdifEntry( "cn=\u00e9t\u00e9,ou=system",
+            "changetype: delete" );
+
+        for ( LdifEntry entry : new LdifEntry[]
+            { add, modify, modDn, delete } )
+        {
+            assertEquals( LdifUtils.convertToLdif( entry ), write( entry ) );
+        }
+
+        List<LdifEntry> entries = read( write( add, modify, modDn, delete ) );
+
+        assertEquals( 4, entries.size() );
+        assertEquals( add, entries.get( 0 ) );
+        assertEquals( modify, entries.get( 1 ) );
+        assertEquals( modDn, entries.get( 2 ) );
+        assertEquals( delete, entries.get( 3 ) );
+    }
+
+
+    @Test
+    public void testWriteControl() throws Exception
+    {
+        LdifEntry entry = new LdifEntry( "cn=test,ou=system",
+            "control: 1.2.3.4 true:: AQID",
+            "changetype: delete" );
+
+        String ldif = write( entry );
+
+        assertEquals( "dn: cn=test,ou=system\n" +
+            "control: 1.2.3.4 true::AQID\n" +
+            "changetype: delete\n" +
+            "\n", ldif );
+        assertEquals( entry, read( ldif ).get( 0 ) );
+    }
+
+
+    @Test
+    public void testWriteBase64() throws Exception
+    {
+        Entry entry = new DefaultEntry( "cn=test,ou=system",
+            "cn: test",
+            "jpegPhoto", new byte[]
+                { 0x00, 0x01, ( byte ) 0xFF, 0x10 } );
+        entry.add( "sn", " leading space" );
+        entry.add( "description", "Entr\u00e9e \uD834\uDD1E" );
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        LdifWriter writer = new LdifWriter( out );
+        writer.write( entry );
+        writer.close();
+
+        String ldif = Strings.utf8ToString( out.toByteArray() );
+
+        assertTrue( ldif.startsWith( "dn: cn=test,ou=system\n" ) );
+        assertTrue( ldif.contains( "\ncn: test\n" ) );
+        assertTrue( ldif.contains( "\nsn:: " + encodeBase64( " leading space" ) + "\n" ) );
+        assertTrue( ldif.contains( "\ndescription:: " + encodeBase64( "Entr\u00e9e \uD834\uDD1E" ) + "\n" ) );
+        assertTrue( ldif.contains( "\njpegphoto:: AAH/EA==\n" ) );
+        assertTrue( ldif.endsWith( "\n\n" ) );
+        assertEquals( LdifUtils.convertToLdif( entry ) + "\n", ldif );
+    }
+
+
+    @Test
+    public void testFolding() throws Exception
+    {
+        StringBuilder sb = new StringBuilder();
+
+        for ( int i = 0; i < 500; i++ )
+        {
+            sb.append( ( char ) ( 'a' + ( i % 26 ) ) );
+        }
+
+        String value = sb.toString();
+        Entry entry = new DefaultEntry( "cn=test,ou=system",
+            "cn: test",
+            "description", value,
+            "sn", value + "\u00e9" );
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        LdifWriter writer = new LdifWriter( out, 20 );
+        writer.write( entry );
+        writer.close();
+
+        String ldif = Strings.utf8ToString( out.toByteArray() );
+
+        for ( String line : ldif.split( "\n" ) )
+        {
+            assertTrue( line.length() <= 20 );
+        }
+
+        // The base64 values are read as binary values, compare with what LdifUtils produces
+        assertEquals( read( LdifUtils.convertToLdif( entry ) ), read( ldif ) );
+    }
+
+
+    @Test
+    public void testWriteChannel() throws Exception
+    {
+        // Enough entries to fill the buffer a few times
+        List<LdifEntry> entries = new ArrayList<LdifEntry>();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        LdifWriter writer = new LdifWriter( Channels.newChannel( out ) );
+        writer.writeVersion();
+
+        for ( int i = 0; i < 2000; i++ )
+        {
+            LdifEntry entry = new LdifEntry( "cn=user " + i + ",ou=people,dc=example,dc=com",
+                "objectClass: top",
+                "objectClass: person",
+                "cn: user " + i,
+                "sn: A rather long value, which will be folded by the writer, for user " + i,
+                "description:: " + encodeBase64( "Utilisateur num\u00e9ro " + i ) );
+            entries.add( entry );
+            writer.write( entry );
+        }
+
+        writer.close();
+
+        assertEquals( entries, read( Strings.utf8ToString( out.toByteArray() ) ) );
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.api.ldap.model.ldif;
+
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Ignore;
+import org.junit.Test;
+
+
+/**
+ * Compares the throughput of the LdifReader and of the ParallelLdifReader on a
+ * big LDIF file.
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@Ignore("Ignore performance tests: should not be with integration tests")
+public class ParallelLdifReaderPerfTest
+{
+    /** The number of entries in the file */
+    private static final int NB_ENTRIES = 500000;
+
+    /** The number of warmup runs */
+    private static final int NB_WARMUP = 2;
+
+    private static File file;
+
+
+    @BeforeClass
+    public static void createFile() throws Exception
+    {
+        file = File.createTempFile( "ParallelLdifReaderPerfTest", ".ldif" );
+        Writer writer = new BufferedWriter( new OutputStreamWriter( new FileOutputStream( file ), "UTF-8" ) );
+
+        try
+        {
+            writer.write( "version: 1\n\n" );
+
+            for ( int i = 0; i < NB_ENTRIES; i++ )
+            {
+                writer.write( "dn: uid=user" + i + ",ou=people,dc=example,dc=com\n" );
+                writer.write( "objectClass: top\n" );
+                writer.write( "objectClass: person\n" );
+                writer.write( "objectClass: inetOrgPerson\n" );
+                writer.write( "uid: user" + i + "\n" );
+                writer.write( "cn: User " + i + "\n" );
+                writer.write( "sn: " + i + "\n" );
+                writer.write( "mail: user" + i + "@example.com\n" );
+                writer.write( "description: A description which is long enough to be folded on \n" );
+                writer.write( " two lines\n\n" );
+            }
+        }
+        finally
+        {
+            writer.close();
+        }
+    }
+
+
+    @AfterClass
+    public static void deleteFile()
+    {
+        file.delete();
+    }
+
+
+    private long readSequential() throws Exception
+    {
+        long t0 = System.nanoTime();
+        LdifReader reader = new LdifReader( file );
+        int count = 0;
+
+        for ( LdifEntry entry : reader )
+        {
+            count++;
+        }
+
+        reader.close();
+
+        return count * 1000000000L / ( System.nanoTime() - t0 );
+    }
+
+
+    private long readParallel( int nbThreads, boolean keepOrder ) throws Exception
+    {
+        long t0 = System.nanoTime();
+        ParallelLdifReader reader = new ParallelLdifReader( new FileInputStream( file ), null, nbThreads,
+            keepOrder );
+        int count = 0;
+
+        for ( LdifEntry entry : reader )
+        {
+            count++;
+        }
+
+        reader.close();
+
+        return count * 1000000000L / ( System.nanoTime() - t0 );
+    }
+
+
+    @Test
+    public void testReadEntries() throws Exception
+    {
+        int nbProcessors = Runtime.getRuntime().availableProcessors();
+
+        for ( int i = 0; i < NB_WARMUP; i++ )
+        {
+            readSequential();
+            readParallel( nbProcessors, true );
+        }
+
+        System.out.println( "LdifReader : " + readSequential() + " entries/s" );
+
+        for ( int nbThreads = 1; nbThreads <= nbProcessors; nbThreads *= 2 )
+        {
+            System.out.println( "ParallelLdifReader, " + nbThreads + " threads, ordered : "
+                + readParallel( nbThreads, true ) + " entries/s" );
+            System.out.println( "ParallelLdifReader, " + nbThreads + " threads, unordered : "
+                + readParallel( nbThreads, false ) + " entries/s" );
+        }
+    }
+}
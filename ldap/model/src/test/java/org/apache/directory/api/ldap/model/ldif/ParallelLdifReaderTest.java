@@ -0,0 +1,214 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.api.ldap.model.ldif;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.directory.api.util.Base64;
+import org.apache.directory.api.util.Strings;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.mycila.junit.concurrent.Concurrency;
+import com.mycila.junit.concurrent.ConcurrentJunitRunner;
+
+
+/**
+ * Test the ParallelLdifReader class
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@RunWith(ConcurrentJunitRunner.class)
+@Concurrency()
+public class ParallelLdifReaderTest
+{
+    /**
+     * Creates a LDIF containing entries with comments, continuation lines, base64
+     * values and CRLF line ends
+     */
+    private static String createLdif( int nbEntries )
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append( "version: 1\n" );
+
+        for ( int i = 0; i < nbEntries; i++ )
+        {
+            sb.append( "# Entry " ).append( i ).append( "\n" );
+            sb.append( "dn: cn=User " ).append( i ).append( ",ou=people,dc=example,dc=com\n" );
+            sb.append( "objectClass: top\n" );
+            sb.append( "objectClass: person\n" );
+            sb.append( "cn: User " ).append( i ).append( "\n" );
+            sb.append( "sn: A long value which is folded on \n" );
+            sb.append( " two lines for the user " ).append( i ).append( "\n" );
+
+            if ( i % 3 == 0 )
+            {
+                sb.append( "description:: " ).append( new String( Base64.encode( Strings.getBytesUtf8( "Entr\u00e9e " + i ) ) ) ).append( "\r\n" );
+            }
+
+            sb.append( "\n" );
+
+            if ( i % 5 == 0 )
+            {
+                // More than one empty line
+                sb.append( "\r\n" );
+            }
+        }
+
+        return sb.toString();
+    }
+
+
+    private static List<LdifEntry> read( String ldif, int nbThreads, boolean keepOrder, int chunkSize )
+        throws Exception
+    {
+        ParallelLdifReader reader = new ParallelLdifReader( new ByteArrayInputStream( Strings.getBytesUtf8( ldif ) ),
+            null, nbThreads, keepOrder );
+        reader.setChunkSize( chunkSize );
+        List<LdifEntry> entries = new ArrayList<LdifEntry>();
+
+        try
+        {
+            for ( LdifEntry entry : reader )
+            {
+                entries.add( entry );
+            }
+
+            assertFalse( reader.hasError() );
+        }
+        finally
+        {
+            reader.close();
+        }
+
+        return entries;
+    }
+
+
+    @Test
+    public void testSameEntriesAsLdifReader() throws Exception
+    {
+        String ldif = createLdif( 200 );
+        List<LdifEntry> expected = new LdifReader().parseLdif( ldif );
+        assertEquals( 200, expected.size() );
+
+        // Small chunks, some of them smaller than an entry
+        for ( int chunkSize : new int[]
+            { 64, 1000, 1 << 20 } )
+        {
+            List<LdifEntry> entries = read( ldif, 4, true, chunkSize );
+
+            assertEquals( expected.size(), entries.size() );
+
+            for ( int i = 0; i < expected.size(); i++ )
+            {
+                assertEquals( expected.get( i ).getDn(), entries.get( i ).getDn() );
+                assertEquals( expected.get( i ).getEntry(), entries.get( i ).getEntry() );
+            }
+        }
+    }
+
+
+    @Test
+    public void testUnordered() throws Exception
+    {
+        String ldif = createLdif( 500 );
+        Set<String> expected = new HashSet<String>();
+
+        for ( LdifEntry entry : new LdifReader().parseLdif( ldif ) )
+        {
+            expected.add( entry.getDn().getName() );
+        }
+
+        Set<String> dns = new HashSet<String>();
+
+        for ( LdifEntry entry : read( ldif, 3, false, 256 ) )
+        {
+            assertTrue( dns.add( entry.getDn().getName() ) );
+        }
+
+        assertEquals( expected, dns );
+    }
+
+
+    @Test
+    public void testChanges() throws Exception
+    {
+        String ldif =
+            "dn: cn=test,dc=example,dc=com\n" +
+                "changetype: modify\n" +
+                "add: description\n" +
+                "description: a\n" +
+                "-\n" +
+                "\n" +
+                "dn: cn=test,dc=example,dc=com\n" +
+                "changetype: delete\n";
+
+        List<LdifEntry> entries = read( ldif, 2, true, 16 );
+
+        assertEquals( 2, entries.size() );
+        assertTrue( entries.get( 0 ).isLdifChange() );
+        assertEquals( 1, entries.get( 0 ).getModifications().size() );
+        assertTrue( entries.get( 1 ).isChangeDelete() );
+    }
+
+
+    @Test
+    public void testEmpty() throws Exception
+    {
+        assertEquals( 0, read( "", 2, true, 16 ).size() );
+        assertEquals( 0, read( "version: 1\n\n", 2, false, 16 ).size() );
+    }
+
+
+    @Test
+    public void testError() throws Exception
+    {
+        String ldif = createLdif( 50 ) + "dn: cn=bad,dc=example,dc=com\nnot an attribute\n\n" + createLdif( 50 );
+        ParallelLdifReader reader = new ParallelLdifReader( new ByteArrayInputStream( Strings.getBytesUtf8( ldif ) ),
+            null, 2, true );
+        reader.setChunkSize( 512 );
+        int count = 0;
+
+        try
+        {
+            for ( LdifEntry entry : reader )
+            {
+                count++;
+            }
+        }
+        finally
+        {
+            reader.close();
+        }
+
+        assertTrue( reader.hasError() );
+        assertTrue( count < 100 );
+    }
+}
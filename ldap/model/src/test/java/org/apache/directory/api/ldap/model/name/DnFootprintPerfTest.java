@@ -0,0 +1,125 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ * 
+ */
+package org.apache.directory.api.ldap.model.name;
+
+
+import org.apache.directory.api.ldap.model.exception.LdapInvalidDnException;
+import org.junit.Ignore;
+import org.junit.Test;
+
+
+/**
+ * Measures the heap retained by Dn instances, for single and multi-valued Rdns.
+ * The footprint is computed as the difference of the used heap before and after
+ * the creation of a large number of Dns, once the GC has been run.
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@Ignore("Ignore performance tests: should not be with integration tests")
+public class DnFootprintPerfTest
+{
+    /** The number of created Dns */
+    private static final int NB_DNS = 500000;
+
+
+    /**
+     * @return The used heap, after having run the GC a few times
+     */
+    private static long usedHeap()
+    {
+        Runtime runtime = Runtime.getRuntime();
+
+        for ( int i = 0; i < 5; i++ )
+        {
+            System.gc();
+
+            try
+            {
+                Thread.sleep( 50 );
+            }
+            catch ( InterruptedException ie )
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+
+    /**
+     * Creates NB_DNS Dns using the given pattern, and prints the number of bytes
+     * retained per Dn. The String used to create the Dn is not counted.
+     */
+    private static void measure( String title, String prefix, String suffix ) throws LdapInvalidDnException
+    {
+        measure( title, prefix, suffix, null );
+    }
+
+
+    /**
+     * Creates NB_DNS Dns using the given pattern, and prints the number of bytes
+     * retained per Dn. If an interner is given, the Dns are interned.
+     */
+    private static void measure( String title, String prefix, String suffix, DnInterner interner )
+        throws LdapInvalidDnException
+    {
+        String[] names = new String[NB_DNS];
+
+        for ( int i = 0; i < NB_DNS; i++ )
+        {
+            names[i] = prefix + i + suffix;
+        }
+
+        Dn[] dns = new Dn[NB_DNS];
+        long before = usedHeap();
+
+        for ( int i = 0; i < NB_DNS; i++ )
+        {
+            dns[i] = ( interner == null ) ? new Dn( names[i] ) : interner.intern( names[i] );
+        }
+
+        long after = usedHeap();
+
+        System.out.println( title + " : " + ( ( after - before ) / NB_DNS ) + " bytes per Dn ("
+            + dns.length + " Dns)" );
+    }
+
+
+    @Test
+    public void testSingleValuedRdnFootprint() throws LdapInvalidDnException
+    {
+        measure( "Single valued Rdns", "uid=user", ",ou=users,dc=example,dc=com" );
+    }
+
+
+    @Test
+    public void testMultiValuedRdnFootprint() throws LdapInvalidDnException
+    {
+        measure( "Multi valued Rdn", "cn=Sales+uid=user", ",ou=users,dc=example,dc=com" );
+    }
+
+
+    @Test
+    public void testInternedDnFootprint() throws LdapInvalidDnException
+    {
+        measure( "Interned Dns", "uid=user", ",ou=users,dc=example,dc=com", new DnInterner() );
+    }
+}
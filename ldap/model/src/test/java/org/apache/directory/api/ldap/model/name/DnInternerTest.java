@@ -0,0 +1,178 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ * 
+ */
+package org.apache.directory.api.ldap.model.name;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.mycila.junit.concurrent.Concurrency;
+import com.mycila.junit.concurrent.ConcurrentJunitRunner;
+
+
+/**
+ * Test the DnInterner class
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@RunWith(ConcurrentJunitRunner.class)
+@Concurrency()
+public class DnInternerTest
+{
+    /**
+     * Test that equal Dns are interned into the same instance, sharing their parents
+     */
+    @Test
+    public void testIntern() throws LdapException
+    {
+        DnInterner interner = new DnInterner();
+
+        Dn dn1 = interner.intern( "uid=jdoe,ou=people,dc=example,dc=com" );
+        Dn dn2 = interner.intern( new Dn( "uid=jdoe,ou=people,dc=example,dc=com" ) );
+        Dn dn3 = interner.intern( "uid=asmith,ou=people,dc=example,dc=com" );
+
+        assertSame( dn1, dn2 );
+        assertNotSame( dn1, dn3 );
+        assertEquals( "uid=jdoe,ou=people,dc=example,dc=com", dn1.getName() );
+        assertEquals( "uid=jdoe,ou=people,dc=example,dc=com", dn1.getNormName() );
+        assertEquals( new Dn( "uid=jdoe,ou=people,dc=example,dc=com" ), dn1 );
+        assertEquals( 4, dn1.size() );
+
+        // The parents and the Rdns are shared
+        assertSame( dn1.getParent(), dn3.getParent() );
+        assertSame( dn1.getRdn( 1 ), dn3.getRdn( 1 ) );
+        assertSame( interner.intern( "ou=people,dc=example,dc=com" ), dn1.getParent() );
+        assertEquals( 5, interner.size() );
+    }
+
+
+    /**
+     * Test the getParent() and isDescendantOf() methods of interned Dns
+     */
+    @Test
+    public void testParentAndDescendant() throws LdapException
+    {
+        DnInterner interner = new DnInterner();
+
+        Dn dn = interner.intern( "uid=jdoe,ou=people,dc=example,dc=com" );
+        Dn people = interner.intern( "ou=people,dc=example,dc=com" );
+        Dn groups = interner.intern( "ou=groups,dc=example,dc=com" );
+
+        assertSame( people, dn.getParent() );
+        assertEquals( "dc=example,dc=com", dn.getParent().getParent().getName() );
+        assertTrue( dn.getParent().getParent().getParent().getParent().isEmpty() );
+
+        assertTrue( dn.isDescendantOf( people ) );
+        assertTrue( dn.isDescendantOf( dn ) );
+        assertTrue( dn.isDescendantOf( new Dn( "dc=example,dc=com" ) ) );
+        assertTrue( people.isAncestorOf( dn ) );
+        assertFalse( dn.isDescendantOf( groups ) );
+        assertFalse( people.isDescendantOf( dn ) );
+    }
+
+
+    /**
+     * Test that Dns with different user provided names are not interned together
+     */
+    @Test
+    public void testUpNamesNotMixed() throws LdapException
+    {
+        DnInterner interner = new DnInterner();
+
+        Dn dn1 = interner.intern( "ou=People,dc=example,dc=com" );
+        Dn dn2 = interner.intern( "ou=people,dc=example,dc=com" );
+
+        assertNotSame( dn1, dn2 );
+        assertEquals( "ou=People,dc=example,dc=com", dn1.getName() );
+        assertEquals( "ou=people,dc=example,dc=com", dn2.getName() );
+        assertSame( dn1.getParent(), dn2.getParent() );
+    }
+
+
+    /**
+     * Test that the root Dn is returned for an empty Dn
+     */
+    @Test
+    public void testInternEmptyDn() throws LdapException
+    {
+        DnInterner interner = new DnInterner();
+
+        Dn root = interner.intern( "" );
+
+        assertTrue( root.isEmpty() );
+        assertSame( root, interner.intern( Dn.EMPTY_DN ) );
+        assertSame( root, interner.intern( "dc=com" ).getParent() );
+    }
+
+
+    /**
+     * Test that concurrent threads get the same interned instance
+     */
+    @Test
+    public void testConcurrentIntern() throws Exception
+    {
+        final DnInterner interner = new DnInterner();
+        ExecutorService executor = Executors.newFixedThreadPool( 4 );
+
+        try
+        {
+            Callable<Dn[]> task = new Callable<Dn[]>()
+            {
+                public Dn[] call() throws Exception
+                {
+                    Dn[] dns = new Dn[100];
+
+                    for ( int i = 0; i < dns.length; i++ )
+                    {
+                        dns[i] = interner.intern( "uid=user" + i + ",ou=people,dc=example,dc=com" );
+                    }
+
+                    return dns;
+                }
+            };
+
+            Future<Dn[]> future1 = executor.submit( task );
+            Future<Dn[]> future2 = executor.submit( task );
+            Dn[] dns1 = future1.get();
+            Dn[] dns2 = future2.get();
+
+            for ( int i = 0; i < dns1.length; i++ )
+            {
+                assertSame( dns1[i], dns2[i] );
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ * 
+ */
+package org.apache.directory.api.ldap.model.name;
+
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.directory.api.ldap.model.exception.LdapInvalidDnException;
+import org.apache.directory.api.util.Strings;
+import org.junit.Ignore;
+import org.junit.Test;
+
+
+/**
+ * Compares the throughput of the DnParser with the FastDnParser and the
+ * Antlr based ComplexDnParser, on simple and on complex DNs.
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@Ignore("Ignore performance tests: should not be with integration tests")
+public class DnParserPerfTest
+{
+    /** The number of parsed DNs per run */
+    private static final int NB_ITERATIONS = 1000000;
+
+    /** The number of warmup runs */
+    private static final int NB_WARMUP = 3;
+
+    /** Simple DNs, that the FastDnParser can handle */
+    private static final String[] SIMPLE_DNS = new String[]
+        {
+            "uid=akarasulu,ou=users,dc=example,dc=com",
+            "cn = John Doe, ou = People, o = Acme",
+            "2.5.4.3=test,2.5.4.11=system"
+        };
+
+    /** Complex DNs, which used to be handled by the ComplexDnParser */
+    private static final String[] COMPLEX_DNS = new String[]
+        {
+            "cn=Doe\\, John,ou=users,dc=example,dc=com",
+            "cn=Sales+sn=Smith,o=Widget Inc.,c=US",
+            "sn=Lu\\C4\\8Di\\C4\\87,ou=people,dc=example,dc=com",
+            "1.3.6.1.4.1.1466.0=#04024869,o=Test,c=GB"
+        };
+
+    /**
+     * A parser being measured
+     */
+    private interface Parser
+    {
+        void parse( String name, List<Rdn> rdns ) throws LdapInvalidDnException;
+    }
+
+    private static final Parser FAST_PARSER = new Parser()
+    {
+        public void parse( String name, List<Rdn> rdns ) throws LdapInvalidDnException
+        {
+            FastDnParser.parseDn( name, rdns );
+        }
+    };
+
+    private static final Parser COMPLEX_PARSER = new Parser()
+    {
+        public void parse( String name, List<Rdn> rdns ) throws LdapInvalidDnException
+        {
+            new ComplexDnParser().parseDn( name, rdns );
+        }
+    };
+
+    private static final Parser DN_PARSER = new Parser()
+    {
+        public void parse( String name, List<Rdn> rdns ) throws LdapInvalidDnException
+        {
+            DnParser.parseDn( name, rdns );
+        }
+    };
+
+
+    /**
+     * Parses the DNs NB_ITERATIONS times, and returns the number of DNs parsed per second
+     */
+    private long run( Parser parser, String[] dns ) throws LdapInvalidDnException
+    {
+        List<Rdn> rdns = new ArrayList<Rdn>();
+        long t0 = System.nanoTime();
+
+        for ( int i = 0; i < NB_ITERATIONS; i++ )
+        {
+            rdns.clear();
+            parser.parse( dns[i % dns.length], rdns );
+        }
+
+        long t1 = System.nanoTime();
+
+        return NB_ITERATIONS * 1000000000L / ( t1 - t0 );
+    }
+
+
+    private void measure( String name, Parser parser, String[] dns ) throws LdapInvalidDnException
+    {
+        for ( int i = 0; i < NB_WARMUP; i++ )
+        {
+            run( parser, dns );
+        }
+
+        System.out.println( name + " : " + run( parser, dns ) + " DNs/s" );
+    }
+
+
+    /**
+     * The parsers are measured twice, in turn, as the first measured parser
+     * benefits from a monomorphic call site in the run() method.
+     */
+    @Test
+    public void testSimpleDns() throws LdapInvalidDnException
+    {
+        measure( "DnParser, simple DNs", DN_PARSER, SIMPLE_DNS );
+        measure( "FastDnParser, simple DNs", FAST_PARSER, SIMPLE_DNS );
+        measure( "DnParser, simple DNs", DN_PARSER, SIMPLE_DNS );
+        measure( "FastDnParser, simple DNs", FAST_PARSER, SIMPLE_DNS );
+        measure( "ComplexDnParser, simple DNs", COMPLEX_PARSER, SIMPLE_DNS );
+    }
+
+
+    @Test
+    public void testComplexDns() throws LdapInvalidDnException
+    {
+        measure( "ComplexDnParser, complex DNs", COMPLEX_PARSER, COMPLEX_DNS );
+        measure( "DnParser, complex DNs", DN_PARSER, COMPLEX_DNS );
+    }
+
+
+    @Test
+    public void testUtf8Dns() throws LdapInvalidDnException
+    {
+        final byte[][] bytes = new byte[SIMPLE_DNS.length][];
+
+        for ( int i = 0; i < SIMPLE_DNS.length; i++ )
+        {
+            bytes[i] = Strings.getBytesUtf8( SIMPLE_DNS[i] );
+        }
+
+        Parser utf8ToStringParser = new Parser()
+        {
+            private int i;
+
+
+            public void parse( String name, List<Rdn> rdns ) throws LdapInvalidDnException
+            {
+                DnParser.parseDn( Strings.utf8ToString( bytes[i++ % bytes.length] ), rdns );
+            }
+        };
+
+        Parser bytesParser = new Parser()
+        {
+            private int i;
+
+
+            public void parse( String name, List<Rdn> rdns ) throws LdapInvalidDnException
+            {
+                byte[] dnBytes = bytes[i++ % bytes.length];
+                DnParser.parseDn( dnBytes, 0, dnBytes.length, rdns );
+            }
+        };
+
+        measure( "DnParser, decoded UTF-8 DNs", utf8ToStringParser, SIMPLE_DNS );
+        measure( "DnParser, UTF-8 DNs", bytesParser, SIMPLE_DNS );
+    }
+}
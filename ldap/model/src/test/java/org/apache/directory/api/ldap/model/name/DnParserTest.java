@@ -21,10 +21,16 @@ package org.apache.directory.api.ldap.model.name;
 
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 import org.apache.directory.api.ldap.model.exception.LdapException;
 import org.apache.directory.api.ldap.model.exception.LdapInvalidDnException;
 import org.apache.directory.api.ldap.model.name.Dn;
@@ -687,4 +693,144 @@ public class DnParserTest
         }
     }
 
+
+    /**
+     * test that a trailing escaped space is kept in the normalized value, but not in the
+     * user provided value
+     */
+    @Test
+    public void testEscapedTrailingSpace() throws LdapException
+    {
+        Dn dn = new Dn( "cn=T\\+ST\\ , ou=system" );
+
+        assertEquals( "T+ST", dn.getRdn().getValue().getString() );
+        assertEquals( "T+ST ", dn.getRdn().getNormValue().getString() );
+        assertEquals( "cn=T\\+ST\\ ,ou=system", dn.getNormName() );
+
+        Dn bytesDn = Dn.fromUtf8( Strings.getBytesUtf8( "cn=T\\+ST\\ , ou=system" ) );
+
+        assertEquals( "T+ST", bytesDn.getRdn().getValue().getString() );
+        assertEquals( "T+ST ", bytesDn.getRdn().getNormValue().getString() );
+    }
+
+
+    /**
+     * test that an escaped backslash followed by a space does not keep the space
+     */
+    @Test
+    public void testEscapedBackslashTrailingSpace() throws LdapException
+    {
+        Dn dn = new Dn( "cn=a\\\\ " );
+
+        assertEquals( "a\\", dn.getRdn().getNormValue().getString() );
+    }
+
+
+    /**
+     * test a quoted value containing a sharp followed by hex chars
+     */
+    @Test
+    public void testQuotedValueWithSharp() throws LdapException
+    {
+        Dn dn = new Dn( "cn=\"x#41\"" );
+
+        assertEquals( "x#41", dn.getRdn().getNormValue().getString() );
+        assertEquals( "\"x#41\"", dn.getRdn().getValue().getString() );
+    }
+
+
+    /**
+     * test a multi-valued Rdn with an unescaped '=' in a value, as accepted in a single valued Rdn
+     */
+    @Test
+    public void testMultiValuedRdnWithEquals() throws LdapException
+    {
+        Dn dn = new Dn( "cn=a=b+sn=c" );
+
+        assertEquals( 2, dn.getRdn().size() );
+        assertEquals( "a=b", dn.getRdn().getValue( "cn" ) );
+    }
+
+
+    /**
+     * test invalid escaped chars and unterminated quoted values
+     */
+    @Test
+    public void testInvalidValues()
+    {
+        String[] dns = new String[]
+            { "cn=a\\gb", "cn=\"abc", "cn=\"abc\"d", "cn=a\"b", "cn=#zz", "cn=#414", "cn=a\\" };
+
+        for ( String dn : dns )
+        {
+            assertFalse( dn, Dn.isValid( dn ) );
+        }
+    }
+
+
+    /**
+     * test the parsing of an UTF-8 encoded Dn
+     */
+    @Test
+    public void testParseBytes() throws LdapException
+    {
+        String name = "cn=\u00C9l\u00E9onore + sn=\\C3\\A9 , ou=\"a,b\", ou=#0441";
+        byte[] utf8 = Strings.getBytesUtf8( name );
+        List<Rdn> rdns = new ArrayList<Rdn>();
+
+        assertEquals( name, DnParser.parseDn( utf8, 0, utf8.length, rdns ) );
+
+        Dn dn = new Dn( name );
+        assertEquals( dn.size(), rdns.size() );
+
+        for ( int i = 0; i < rdns.size(); i++ )
+        {
+            assertEquals( dn.getRdn( i ), rdns.get( i ) );
+            assertEquals( dn.getRdn( i ).getName(), rdns.get( i ).getName() );
+        }
+
+        rdns.clear();
+        byte[] bytes = Strings.getBytesUtf8( "xxou=systemyy" );
+        DnParser.parseDn( bytes, 2, bytes.length - 4, rdns );
+        assertEquals( "ou=system", rdns.get( 0 ).getNormName() );
+    }
+
+
+    /**
+     * test the creation of a Dn from its UTF-8 form
+     */
+    @Test
+    public void testDnFromUtf8() throws LdapException
+    {
+        String name = "cn=\u00C9l\u00E9onore\\, Jr + sn=Test, ou=system";
+        byte[] utf8 = Strings.getBytesUtf8( name );
+
+        Dn dn = Dn.fromUtf8( utf8 );
+
+        assertEquals( new Dn( name ), dn );
+        assertEquals( name, dn.getName() );
+        assertEquals( new Dn( name ).getNormName(), dn.getNormName() );
+        assertTrue( Arrays.equals( utf8, Dn.getUpBytes( dn ) ) );
+
+        // Neither the given nor the returned arrays are shared with the Dn
+        Dn.getUpBytes( dn )[0] = 'x';
+        utf8[1] = 'x';
+        assertTrue( Arrays.equals( Strings.getBytesUtf8( name ), Dn.getUpBytes( dn ) ) );
+        utf8 = Strings.getBytesUtf8( name );
+
+        byte[] buffer = new byte[utf8.length + 4];
+        System.arraycopy( utf8, 0, buffer, 2, utf8.length );
+        dn = Dn.fromUtf8( buffer, 2, utf8.length );
+
+        assertEquals( name, dn.getName() );
+        assertTrue( Arrays.equals( utf8, Dn.getUpBytes( dn ) ) );
+        assertTrue( Arrays.equals( utf8, Dn.getUpBytes( new Dn( name ) ) ) );
+        assertEquals( Dn.EMPTY_DN, Dn.fromUtf8( Strings.EMPTY_BYTES ) );
+        assertEquals( Dn.EMPTY_DN, Dn.fromUtf8( null, 0, 0 ) );
+
+        // The bytes are written as they were received
+        ByteBuffer written = ByteBuffer.allocate( Dn.getNbUpBytes( dn ) );
+        Dn.writeUpBytes( dn, written );
+        assertTrue( Arrays.equals( utf8, written.array() ) );
+    }
 }
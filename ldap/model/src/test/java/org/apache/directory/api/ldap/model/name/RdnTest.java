@@ -1268,4 +1268,41 @@ public class RdnTest
     {
         new Rdn( new Ava( "A", "b" ), new Ava( "A", "d" ) );
     }
+
+
+    /**
+     * Test the lookup of an Ava by its type in a multi-valued Rdn
+     */
+    @Test
+    public void testGetAvaMultiValued() throws LdapException
+    {
+        Rdn rdn = new Rdn( "cn=Sales+SN=Smith+uid=jsmith" );
+
+        assertEquals( "cn=Sales", rdn.getAva( "CN" ).getName() );
+        assertEquals( "SN=Smith", rdn.getAva( " sn " ).getName() );
+        assertEquals( "uid=jsmith", rdn.getAva( "uid" ).getName() );
+        assertEquals( null, rdn.getAva( "ou" ) );
+        assertEquals( "", rdn.getValue( "ou" ) );
+
+        Rdn clone = rdn.clone();
+        assertEquals( "Smith", clone.getAva( "sn" ).getValue().getString() );
+    }
+
+
+    /**
+     * Test that an already normalized Rdn does not keep two copies of its name
+     */
+    @Test
+    public void testNormalizedNameShared() throws LdapException
+    {
+        Dn dn = new Dn( "ou=users,dc=example,dc=com" );
+        Rdn rdn = dn.getRdn();
+
+        assertTrue( rdn.getName() == rdn.getNormName() );
+        assertTrue( dn.getName() == dn.getNormName() );
+
+        dn = new Dn( "OU=Users,dc=example,dc=com" );
+        assertEquals( "ou=Users,dc=example,dc=com", dn.getNormName() );
+        assertEquals( "OU=Users,dc=example,dc=com", dn.getName() );
+    }
 }
@@ -0,0 +1,91 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.directory.api.ldap.model.schema;
+
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+
+import com.mycila.junit.concurrent.Concurrency;
+import com.mycila.junit.concurrent.ConcurrentJunitRunner;
+
+import org.apache.directory.api.ldap.model.schema.PrepareString.StringType;
+import org.apache.directory.api.util.Strings;
+import org.apache.directory.api.util.exception.InvalidCharacterException;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+
+/**
+ * Test the PrepareString class
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@RunWith(ConcurrentJunitRunner.class)
+@Concurrency()
+public class PrepareStringTest
+{
+    @Test
+    public void testNormalizeAscii() throws IOException
+    {
+        assertEquals( "", PrepareString.normalize( "", StringType.CASE_IGNORE ) );
+        assertEquals( " ", PrepareString.normalize( "   ", StringType.CASE_IGNORE ) );
+        assertEquals( "a b c", PrepareString.normalize( "  A   B\tC  ", StringType.CASE_IGNORE ) );
+        assertEquals( "A B C", PrepareString.normalize( "  A   B\tC  ", StringType.CASE_EXACT ) );
+        assertEquals( "ab", PrepareString.normalize( "A\u0000B", StringType.CASE_IGNORE ) );
+    }
+
+
+    @Test
+    public void testNormalizeNonAscii() throws IOException
+    {
+        assertEquals( "\u00E9t\u00E9 a", PrepareString.normalize( " \u00C9T\u00C9   a ", StringType.CASE_IGNORE ) );
+        assertEquals( "ss", PrepareString.normalize( "\u00DF", StringType.CASE_IGNORE ) );
+        assertEquals( "a  \u0310", PrepareString.normalize( "a  \u0310", StringType.CASE_EXACT ) );
+    }
+
+
+    @Test(expected = InvalidCharacterException.class)
+    public void testNormalizeProhibited() throws IOException
+    {
+        PrepareString.normalize( "a\uFFFDb", StringType.CASE_IGNORE );
+    }
+
+
+    @Test
+    public void testNormalizeChars() throws IOException
+    {
+        assertEquals( "", PrepareString.normalize( ( char[] ) null, StringType.CASE_IGNORE ) );
+        assertEquals( "a b", PrepareString.normalize( " A  B ".toCharArray(), StringType.CASE_IGNORE ) );
+        assertEquals( "\u00E9 b", PrepareString.normalize( " \u00C9  B ".toCharArray(), StringType.CASE_IGNORE ) );
+        assertEquals( "1234", PrepareString.normalize( " 12 34 ".toCharArray(), StringType.NUMERIC_STRING ) );
+    }
+
+
+    @Test
+    public void testNormalizeBytes() throws IOException
+    {
+        assertEquals( "", PrepareString.normalize( ( byte[] ) null, StringType.CASE_EXACT ) );
+        assertEquals( "A b", PrepareString.normalize( Strings.getBytesUtf8( " A  b " ), StringType.CASE_EXACT ) );
+        assertEquals( "\u00E9 b",
+            PrepareString.normalize( Strings.getBytesUtf8( " \u00C9  B " ), StringType.CASE_IGNORE ) );
+    }
+}
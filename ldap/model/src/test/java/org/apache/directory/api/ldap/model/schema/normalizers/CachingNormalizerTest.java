@@ -0,0 +1,89 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ * 
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ * 
+ */
+package org.apache.directory.api.ldap.model.schema.normalizers;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.mycila.junit.concurrent.Concurrency;
+import com.mycila.junit.concurrent.ConcurrentJunitRunner;
+
+import org.apache.directory.api.ldap.model.entry.StringValue;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+
+/**
+ * Test the CachingNormalizer class
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@RunWith(ConcurrentJunitRunner.class)
+@Concurrency()
+public class CachingNormalizerTest
+{
+    @Test
+    public void testCacheHitsAndMisses() throws LdapException
+    {
+        CachingNormalizer normalizer = new CachingDeepTrimToLowerNormalizer();
+
+        assertEquals( "top", normalizer.normalize( "  TOP " ) );
+        assertEquals( 0L, normalizer.getCacheHits() );
+        assertEquals( 1L, normalizer.getCacheMisses() );
+
+        assertEquals( "top", normalizer.normalize( "  TOP " ) );
+        assertEquals( "top", normalizer.normalize( new StringValue( "  TOP " ) ).getString() );
+        assertEquals( 2L, normalizer.getCacheHits() );
+        assertEquals( 1L, normalizer.getCacheMisses() );
+        assertEquals( 1, normalizer.getCacheSize() );
+
+        normalizer.clearCache();
+        assertEquals( 0, normalizer.getCacheSize() );
+    }
+
+
+    @Test
+    public void testCacheEviction() throws LdapException
+    {
+        CachingNormalizer normalizer = new CachingNormalizer( new DeepTrimToLowerNormalizer(), 16 );
+
+        for ( int i = 0; i < 1000; i++ )
+        {
+            assertEquals( "value" + i, normalizer.normalize( "VALUE" + i ) );
+        }
+
+        assertTrue( normalizer.getCacheSize() <= 16 );
+        assertEquals( 1000L - normalizer.getCacheSize(), normalizer.getCacheEvictions() );
+    }
+
+
+    @Test
+    public void testCacheDisabled() throws LdapException
+    {
+        CachingNormalizer normalizer = new CachingNormalizer( new DeepTrimToLowerNormalizer(), 0 );
+
+        assertEquals( "top", normalizer.normalize( "TOP" ) );
+        assertEquals( "top", normalizer.normalize( "TOP" ) );
+        assertEquals( 0, normalizer.getCacheSize() );
+        assertEquals( 0L, normalizer.getCacheHits() );
+    }
+}
@@ -68,6 +68,9 @@ public class LdapProtocolDecoder implements ProtocolDecoder
     public LdapProtocolDecoder()
     {
         asn1Decoder = new Asn1Decoder();
+
+        // The values are read directly from the incoming buffer when possible
+        asn1Decoder.allowValueSlicing();
     }
 
 
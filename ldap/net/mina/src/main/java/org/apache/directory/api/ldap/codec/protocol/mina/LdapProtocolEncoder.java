@@ -21,6 +21,9 @@ package org.apache.directory.api.ldap.codec.protocol.mina;
 
 
 import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedList;
 
 
 import org.apache.directory.api.ldap.codec.api.LdapApiService;
@@ -30,6 +33,8 @@ import org.apache.directory.api.ldap.model.constants.Loggers;
 import org.apache.directory.api.ldap.model.message.Message;
 import org.apache.directory.api.util.Strings;
 import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.future.WriteFuture;
+import org.apache.mina.core.session.AttributeKey;
 import org.apache.mina.core.session.IoSession;
 import org.apache.mina.filter.codec.ProtocolEncoder;
 import org.apache.mina.filter.codec.ProtocolEncoderOutput;
@@ -39,6 +44,11 @@ import org.slf4j.LoggerFactory;
 
 /**
  * A LDAP message encoder. It is based on api-ldap encoder.
+ * <p>
+ * The PDUs are encoded into buffers which are recycled per session : each encoded
+ * buffer is flushed on its own, and it's reused once the write future of the PDU sent
+ * after it is done. At this point, MINA is done with it, as the PDUs of a session are
+ * written in order.
  *
  * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
  */
@@ -50,9 +60,87 @@ public class LdapProtocolEncoder implements ProtocolEncoder
     /** A speedup for logger */
     private static final boolean IS_DEBUG = CODEC_LOG.isDebugEnabled();
 
+    /** The session attribute storing the session buffers */
+    private static final AttributeKey BUFFERS_KEY = new AttributeKey( LdapProtocolEncoder.class, "buffers" );
+
+    /** The maximum number of free buffers kept per session */
+    private static final int MAX_FREE_BUFFERS = 4;
+
+    /** The maximum capacity of a recycled buffer, bigger buffers are left to the GC */
+    private static final int MAX_RECYCLED_CAPACITY = 64 * 1024;
+
     /** The stateful encoder */
     private LdapEncoder encoder;
 
+    /**
+     * The buffers of a session : the free ones, and the ones being written, with
+     * the future of their write
+     */
+    private static final class SessionBuffers
+    {
+        /** The buffers which can be reused */
+        private final Deque<ByteBuffer> freeBuffers = new ArrayDeque<ByteBuffer>();
+
+        /** The buffers being written, in the order they have been written */
+        private final LinkedList<ByteBuffer> writtenBuffers = new LinkedList<ByteBuffer>();
+
+        /** The futures of the buffers being written */
+        private final LinkedList<WriteFuture> writeFutures = new LinkedList<WriteFuture>();
+
+
+        /**
+         * @return A free buffer, or null if there is none
+         */
+        private synchronized ByteBuffer take()
+        {
+            reclaim();
+
+            return freeBuffers.pollFirst();
+        }
+
+
+        /**
+         * Gives back a buffer which has not been used
+         */
+        private synchronized void release( ByteBuffer buffer )
+        {
+            if ( freeBuffers.size() < MAX_FREE_BUFFERS )
+            {
+                freeBuffers.addFirst( buffer );
+            }
+        }
+
+
+        /**
+         * Stores a buffer which is being written
+         */
+        private synchronized void written( ByteBuffer buffer, WriteFuture future )
+        {
+            writtenBuffers.addLast( buffer );
+            writeFutures.addLast( future );
+        }
+
+
+        /**
+         * Moves the written buffers to the free buffers. A buffer is only reused once
+         * the write of the next buffer is done, as MINA restores the buffer position
+         * after having notified that it has been written.
+         */
+        private void reclaim()
+        {
+            while ( ( writeFutures.size() >= 2 ) && writeFutures.get( 1 ).isDone() )
+            {
+                writeFutures.removeFirst();
+                ByteBuffer buffer = writtenBuffers.removeFirst();
+
+                if ( ( freeBuffers.size() < MAX_FREE_BUFFERS ) && ( buffer.capacity() <= MAX_RECYCLED_CAPACITY ) )
+                {
+                    freeBuffers.addLast( buffer );
+                }
+            }
+        }
+    }
+
 
     /**
      * Creates a new instance of LdapProtocolEncoder.
@@ -66,7 +154,15 @@ public class LdapProtocolEncoder implements ProtocolEncoder
 
     public LdapProtocolEncoder( LdapApiService ldapApiService )
     {
-        this.encoder = new LdapEncoder( ldapApiService );
+        // Get the new PDU buffers from the MINA allocator, so that the heap/direct and the
+        // pooling policies configured on IoBuffer are applied to them
+        this.encoder = new LdapEncoder( ldapApiService )
+        {
+            protected ByteBuffer allocate( int length, boolean direct )
+            {
+                return IoBuffer.allocate( length, direct || IoBuffer.isUseDirectBuffer() ).buf();
+            }
+        };
     }
 
 
@@ -75,7 +171,15 @@ public class LdapProtocolEncoder implements ProtocolEncoder
      */
     public void encode( IoSession session, Object message, ProtocolEncoderOutput out ) throws Exception
     {
-        ByteBuffer buffer = encoder.encodeMessage( ( Message ) message );
+        SessionBuffers buffers = getSessionBuffers( session );
+        ByteBuffer freeBuffer = buffers.take();
+        ByteBuffer buffer = encoder.encodeMessage( freeBuffer, ( Message ) message );
+
+        if ( ( freeBuffer != null ) && ( buffer != freeBuffer ) )
+        {
+            // The free buffer was too small, a new one has been allocated
+            buffers.release( freeBuffer );
+        }
 
         IoBuffer ioBuffer = IoBuffer.wrap( buffer );
 
@@ -88,6 +192,31 @@ public class LdapProtocolEncoder implements ProtocolEncoder
         }
 
         out.write( ioBuffer );
+
+        // Flush the buffer on its own, to get the future telling when it has been written
+        buffers.written( buffer, out.flush() );
+    }
+
+
+    /**
+     * @return The buffers of a session, created on the first use
+     */
+    private static SessionBuffers getSessionBuffers( IoSession session )
+    {
+        SessionBuffers buffers = ( SessionBuffers ) session.getAttribute( BUFFERS_KEY );
+
+        if ( buffers == null )
+        {
+            buffers = new SessionBuffers();
+            SessionBuffers previous = ( SessionBuffers ) session.setAttributeIfAbsent( BUFFERS_KEY, buffers );
+
+            if ( previous != null )
+            {
+                buffers = previous;
+            }
+        }
+
+        return buffers;
     }
 
 
@@ -96,6 +225,6 @@ public class LdapProtocolEncoder implements ProtocolEncoder
      */
     public void dispose( IoSession session ) throws Exception
     {
-        // Nothing to do
+        session.removeAttribute( BUFFERS_KEY );
     }
 }
@@ -284,8 +284,13 @@ public class SchemaEntityFactory implements EntityFactory
         }
         else
         {
-            classLoader.setAttribute( byteCode );
-            clazz = classLoader.loadClass( className );
+            // The class loader holds the byte code to load, the schemas may be loaded concurrently
+            synchronized ( classLoader )
+            {
+                classLoader.setAttribute( byteCode );
+                clazz = classLoader.loadClass( className );
+            }
+
             byteCodeStr = new String( Base64.encode( byteCode.getBytes() ) );
         }
 
@@ -416,8 +421,13 @@ public class SchemaEntityFactory implements EntityFactory
         }
         else
         {
-            classLoader.setAttribute( byteCode );
-            clazz = classLoader.loadClass( className );
+            // The class loader holds the byte code to load, the schemas may be loaded concurrently
+            synchronized ( classLoader )
+            {
+                classLoader.setAttribute( byteCode );
+                clazz = classLoader.loadClass( className );
+            }
+
             byteCodeStr = new String( Base64.encode( byteCode.getBytes() ) );
         }
 
@@ -566,8 +576,13 @@ public class SchemaEntityFactory implements EntityFactory
         }
         else
         {
-            classLoader.setAttribute( byteCode );
-            clazz = classLoader.loadClass( className );
+            // The class loader holds the byte code to load, the schemas may be loaded concurrently
+            synchronized ( classLoader )
+            {
+                classLoader.setAttribute( byteCode );
+                clazz = classLoader.loadClass( className );
+            }
+
             byteCodeStr = new String( Base64.encode( byteCode.getBytes() ) );
         }
 
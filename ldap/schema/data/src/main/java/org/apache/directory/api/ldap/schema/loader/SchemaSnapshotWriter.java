@@ -0,0 +1,273 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.api.ldap.schema.loader;
+
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.schema.registries.Schema;
+import org.apache.directory.api.ldap.model.schema.registries.SchemaLoader;
+import org.apache.directory.api.ldap.schema.extractor.impl.ResourceMap;
+import org.apache.directory.api.util.Strings;
+
+
+/**
+ * Writes the binary schema snapshot read by the {@link SnapshotSchemaLoader}. It's
+ * run when building this jar, to store the content of the LDIF schema files in the
+ * snapshot.
+ * <p>
+ * The snapshot starts with a header :
+ * <ul>
+ *   <li>the magic number and the format version (two ints)</li>
+ *   <li>the fingerprint of the names and content of the LDIF schema files (a long)</li>
+ *   <li>the number of schemas (an int)</li>
+ * </ul>
+ * followed by a record per schema, containing its name, owner, dependencies and
+ * disabled flag, and then for each schema object type the length of the serialized
+ * entries, followed by an ObjectOutputStream holding the number of entries and the
+ * entries themselves. Each String is stored as the length of its UTF-8 bytes
+ * followed by the bytes.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public final class SchemaSnapshotWriter
+{
+    /** The pattern matching the LDIF schema resources, the same as the JarLdifSchemaLoader one */
+    private static final Pattern SCHEMA_RESOURCES_PATTERN = Pattern.compile( "schema[/\\Q\\\\E]ou=schema.*" );
+
+    /**
+     * Private constructor.
+     */
+    private SchemaSnapshotWriter()
+    {
+    }
+
+
+    /**
+     * Writes the snapshot of the LDIF schema files available in the classpath.
+     *
+     * @param args The snapshot file to write
+     * @throws Exception If the schema can't be read or the snapshot can't be written
+     */
+    public static void main( String[] args ) throws Exception
+    {
+        if ( args.length != 1 )
+        {
+            System.err.println( "Usage : SchemaSnapshotWriter <snapshot file>" );
+            System.exit( 1 );
+        }
+
+        File snapshot = new File( args[0] );
+        snapshot.getParentFile().mkdirs();
+
+        OutputStream out = new BufferedOutputStream( new FileOutputStream( snapshot ) );
+
+        try
+        {
+            write( new JarLdifSchemaLoader(), out );
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+
+    /**
+     * Writes a snapshot of all the schemas available from a SchemaLoader.
+     *
+     * @param loader The loader providing the schemas
+     * @param out The stream to write the snapshot to
+     * @throws Exception If the schema can't be read or the snapshot can't be written
+     */
+    public static void write( SchemaLoader loader, OutputStream out ) throws Exception
+    {
+        DataOutputStream data = new DataOutputStream( out );
+        Collection<Schema> schemas = loader.getAllSchemas();
+
+        data.writeInt( SnapshotSchemaLoader.MAGIC );
+        data.writeInt( SnapshotSchemaLoader.FORMAT_VERSION );
+        data.writeLong( computeFingerprint() );
+        data.writeInt( schemas.size() );
+
+        for ( Schema schema : schemas )
+        {
+            writeString( data, schema.getSchemaName() );
+            writeString( data, schema.getOwner() );
+            data.writeInt( schema.getDependencies().length );
+
+            for ( String dependency : schema.getDependencies() )
+            {
+                writeString( data, dependency );
+            }
+
+            data.writeByte( schema.isDisabled() ? 1 : 0 );
+
+            // The order must match the SnapshotSchemaLoader type positions
+            writeEntries( data, loader.loadAttributeTypes( schema ) );
+            writeEntries( data, loader.loadComparators( schema ) );
+            writeEntries( data, loader.loadDitContentRules( schema ) );
+            writeEntries( data, loader.loadDitStructureRules( schema ) );
+            writeEntries( data, loader.loadMatchingRules( schema ) );
+            writeEntries( data, loader.loadMatchingRuleUses( schema ) );
+            writeEntries( data, loader.loadNameForms( schema ) );
+            writeEntries( data, loader.loadNormalizers( schema ) );
+            writeEntries( data, loader.loadObjectClasses( schema ) );
+            writeEntries( data, loader.loadSyntaxes( schema ) );
+            writeEntries( data, loader.loadSyntaxCheckers( schema ) );
+        }
+
+        data.flush();
+    }
+
+
+    /**
+     * Computes the fingerprint of the LDIF schema resources available in the classpath,
+     * from their names and content. It changes when a LDIF schema file is added, removed
+     * or modified.
+     *
+     * @return The fingerprint
+     * @throws IOException If a LDIF schema file can't be read
+     */
+    static long computeFingerprint() throws IOException
+    {
+        // The resources read from a directory are stored with their absolute path : they
+        // are sorted on their path relative to the classpath root, to be independent of
+        // the build location
+        Map<String, Boolean> resources = ResourceMap.getResources( SCHEMA_RESOURCES_PATTERN );
+        Map<String, String> names = new TreeMap<String, String>();
+
+        for ( Map.Entry<String, Boolean> resource : resources.entrySet() )
+        {
+            String name = resource.getKey();
+
+            if ( !resource.getValue() )
+            {
+                Matcher matcher = SCHEMA_RESOURCES_PATTERN.matcher( name );
+
+                if ( matcher.find() )
+                {
+                    name = matcher.group().replace( '\\', '/' );
+                }
+            }
+
+            names.put( name, resource.getKey() );
+        }
+
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[8192];
+
+        for ( Map.Entry<String, String> name : names.entrySet() )
+        {
+            crc.update( Strings.getBytesUtf8( name.getKey() ) );
+            crc.update( '\n' );
+
+            InputStream in;
+
+            if ( resources.get( name.getValue() ) )
+            {
+                in = SchemaSnapshotWriter.class.getClassLoader().getResourceAsStream( name.getValue() );
+            }
+            else
+            {
+                in = new FileInputStream( name.getValue() );
+            }
+
+            if ( in == null )
+            {
+                throw new IOException( "Cannot read the LDIF schema file " + name.getKey() );
+            }
+
+            try
+            {
+                int nbRead = in.read( buffer );
+
+                while ( nbRead != -1 )
+                {
+                    crc.update( buffer, 0, nbRead );
+                    nbRead = in.read( buffer );
+                }
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+
+        return crc.getValue();
+    }
+
+
+    /**
+     * Writes a String as its UTF-8 bytes length followed by the bytes. A -1 length stands for null.
+     */
+    private static void writeString( DataOutputStream data, String string ) throws IOException
+    {
+        if ( string == null )
+        {
+            data.writeInt( -1 );
+
+            return;
+        }
+
+        byte[] bytes = Strings.getBytesUtf8( string );
+        data.writeInt( bytes.length );
+        data.write( bytes );
+    }
+
+
+    /**
+     * Writes the serialized entries, prefixed by their length.
+     */
+    private static void writeEntries( DataOutputStream data, List<Entry> entries ) throws IOException
+    {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream( buffer );
+
+        out.writeInt( entries.size() );
+
+        for ( Entry entry : entries )
+        {
+            entry.writeExternal( out );
+        }
+
+        out.close();
+
+        data.writeInt( buffer.size() );
+        buffer.writeTo( data );
+    }
+}
@@ -0,0 +1,587 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.api.ldap.schema.loader;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.RandomAccessFile;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.schema.registries.AbstractSchemaLoader;
+import org.apache.directory.api.ldap.model.schema.registries.DefaultSchema;
+import org.apache.directory.api.ldap.model.schema.registries.Schema;
+import org.apache.directory.api.util.Strings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Loads the schema from a binary snapshot of the LDIF schema files, generated
+ * when building this jar by the {@link SchemaSnapshotWriter}. The schema objects
+ * entries are stored in their serialized form, grouped per schema and per type,
+ * so no LDIF parsing is needed, and the entries of a schema are only deserialized
+ * when this schema is loaded.
+ * <p>
+ * The snapshot carries a fingerprint of the names and content of the LDIF schema
+ * files it has been built from. Hashing these files again at startup would cost as
+ * much as parsing them, so the snapshot bundled in the classpath is only checked
+ * against cheap markers : the LDIF schema files must be read from the same jar or
+ * directory as the snapshot, and when it's a directory, none of these files may
+ * be more recent than the snapshot. If the snapshot is stale, missing or has been
+ * written in another format, the loader can't be created, and the LDIF files should
+ * be read instead, using a {@link JarLdifSchemaLoader}.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class SnapshotSchemaLoader extends AbstractSchemaLoader
+{
+    /** The snapshot resource name */
+    public static final String SNAPSHOT_RESOURCE = "META-INF/apacheds-schema.snapshot";
+
+    /** The magic number starting a snapshot : 'ADSS' */
+    static final int MAGIC = 0x41445353;
+
+    /** The snapshot format version */
+    static final int FORMAT_VERSION = 2;
+
+    /** The root LDIF schema resource, the same as the JarLdifSchemaLoader one */
+    static final String SCHEMA_ROOT_RESOURCE = "schema/ou=schema.ldif";
+
+    /** The position of each schema object type in a schema record */
+    static final int ATTRIBUTE_TYPES = 0;
+    static final int COMPARATORS = 1;
+    static final int DIT_CONTENT_RULES = 2;
+    static final int DIT_STRUCTURE_RULES = 3;
+    static final int MATCHING_RULES = 4;
+    static final int MATCHING_RULE_USES = 5;
+    static final int NAME_FORMS = 6;
+    static final int NORMALIZERS = 7;
+    static final int OBJECT_CLASSES = 8;
+    static final int SYNTAXES = 9;
+    static final int SYNTAX_CHECKERS = 10;
+
+    /** The number of schema object types */
+    static final int NB_TYPES = 11;
+
+    /** static class logger */
+    private static final Logger LOG = LoggerFactory.getLogger( SnapshotSchemaLoader.class );
+
+    /** The serialized entries of each schema, per type, as views on the snapshot */
+    private final Map<String, ByteBuffer[]> schemaEntries = new HashMap<String, ByteBuffer[]>();
+
+    /** The fingerprint of the LDIF schema files the snapshot has been built from */
+    private long fingerprint;
+
+
+    /**
+     * Creates a new SnapshotSchemaLoader, reading the snapshot bundled in the classpath.
+     *
+     * @throws IOException If the snapshot is missing, stale or can't be read
+     */
+    public SnapshotSchemaLoader() throws IOException
+    {
+        ClassLoader classLoader = SnapshotSchemaLoader.class.getClassLoader();
+        URL resource = classLoader.getResource( SNAPSHOT_RESOURCE );
+
+        if ( resource == null )
+        {
+            throw new IOException( "The schema snapshot " + SNAPSHOT_RESOURCE + " is not in the classpath" );
+        }
+
+        checkUpToDate( resource, classLoader.getResource( SCHEMA_ROOT_RESOURCE ) );
+        initializeSchemas( read( resource ) );
+    }
+
+
+    /**
+     * Creates a new SnapshotSchemaLoader, reading a snapshot file. The snapshot is not
+     * checked against the LDIF schema files in the classpath.
+     *
+     * @param snapshot The snapshot file
+     * @throws IOException If the snapshot can't be read
+     */
+    public SnapshotSchemaLoader( File snapshot ) throws IOException
+    {
+        initializeSchemas( map( snapshot ) );
+    }
+
+
+    /**
+     * Checks that the snapshot has been built from the LDIF schema files in the classpath :
+     * they must come from the same jar or directory, and when it's a directory, no LDIF
+     * schema file may have been modified after the snapshot has been written.
+     */
+    private static void checkUpToDate( URL snapshot, URL schemaRoot ) throws IOException
+    {
+        if ( ( schemaRoot == null )
+            || !getLocation( snapshot, SNAPSHOT_RESOURCE ).equals( getLocation( schemaRoot, SCHEMA_ROOT_RESOURCE ) ) )
+        {
+            throw new IOException( "The LDIF schema files are not read from the schema snapshot location" );
+        }
+
+        if ( "file".equals( snapshot.getProtocol() ) )
+        {
+            try
+            {
+                File snapshotFile = new File( snapshot.toURI() );
+                File schemaRootFile = new File( schemaRoot.toURI() );
+                File schemaDirectory = new File( schemaRootFile.getParentFile(), "ou=schema" );
+                long snapshotModified = snapshotFile.lastModified();
+
+                if ( ( schemaRootFile.lastModified() > snapshotModified )
+                    || isModifiedAfter( schemaDirectory, snapshotModified ) )
+                {
+                    throw new IOException( "The LDIF schema files have been modified after the schema snapshot" );
+                }
+            }
+            catch ( URISyntaxException use )
+            {
+                throw new IOException( use.getMessage(), use );
+            }
+        }
+    }
+
+
+    /**
+     * Gets the location of the jar or directory a resource has been read from.
+     */
+    private static String getLocation( URL url, String resource ) throws IOException
+    {
+        String location;
+
+        try
+        {
+            // Decode the URL, as the resources names may contain escaped characters
+            location = url.toURI().getSchemeSpecificPart();
+        }
+        catch ( URISyntaxException use )
+        {
+            throw new IOException( use.getMessage(), use );
+        }
+
+        if ( location.endsWith( resource ) )
+        {
+            return location.substring( 0, location.length() - resource.length() );
+        }
+
+        return location;
+    }
+
+
+    /**
+     * Tells if a file, or any file under a directory, has been modified after a given time.
+     */
+    private static boolean isModifiedAfter( File file, long time )
+    {
+        if ( file.lastModified() > time )
+        {
+            return true;
+        }
+
+        File[] children = file.listFiles();
+
+        if ( children != null )
+        {
+            for ( File child : children )
+            {
+                if ( isModifiedAfter( child, time ) )
+                {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+
+    /**
+     * @return The fingerprint of the names and content of the LDIF schema files the
+     * snapshot has been built from
+     */
+    public long getFingerprint()
+    {
+        return fingerprint;
+    }
+
+
+    /**
+     * Reads the snapshot. It's memory mapped when it's a plain file.
+     */
+    private static ByteBuffer read( URL resource ) throws IOException
+    {
+        if ( "file".equals( resource.getProtocol() ) )
+        {
+            try
+            {
+                return map( new File( resource.toURI() ) );
+            }
+            catch ( URISyntaxException use )
+            {
+                // Read it as a stream
+            }
+        }
+
+        InputStream in = resource.openStream();
+
+        try
+        {
+            byte[] buffer = new byte[65536];
+            int length = 0;
+            int nbRead = in.read( buffer );
+
+            while ( nbRead != -1 )
+            {
+                length += nbRead;
+
+                if ( length == buffer.length )
+                {
+                    byte[] newBuffer = new byte[buffer.length * 2];
+                    System.arraycopy( buffer, 0, newBuffer, 0, length );
+                    buffer = newBuffer;
+                }
+
+                nbRead = in.read( buffer, length, buffer.length - length );
+            }
+
+            return ByteBuffer.wrap( buffer, 0, length );
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+
+    /**
+     * Memory maps a snapshot file.
+     */
+    private static ByteBuffer map( File snapshot ) throws IOException
+    {
+        RandomAccessFile file = new RandomAccessFile( snapshot, "r" );
+
+        try
+        {
+            FileChannel channel = file.getChannel();
+
+            return channel.map( FileChannel.MapMode.READ_ONLY, 0, channel.size() );
+        }
+        finally
+        {
+            // The mapping stays valid once the file is closed
+            file.close();
+        }
+    }
+
+
+    /**
+     * Reads the schemas descriptions, and keeps a view on their serialized entries.
+     */
+    private void initializeSchemas( ByteBuffer snapshot ) throws IOException
+    {
+        try
+        {
+            if ( snapshot.getInt() != MAGIC )
+            {
+                throw new IOException( "Not a schema snapshot" );
+            }
+
+            int version = snapshot.getInt();
+
+            if ( version != FORMAT_VERSION )
+            {
+                throw new IOException( "Unsupported schema snapshot format : " + version );
+            }
+
+            fingerprint = snapshot.getLong();
+            int nbSchemas = snapshot.getInt();
+
+            for ( int i = 0; i < nbSchemas; i++ )
+            {
+                String name = readString( snapshot );
+                String owner = readString( snapshot );
+                String[] dependencies = new String[snapshot.getInt()];
+
+                for ( int j = 0; j < dependencies.length; j++ )
+                {
+                    dependencies[j] = readString( snapshot );
+                }
+
+                boolean disabled = snapshot.get() != 0;
+
+                ByteBuffer[] entries = new ByteBuffer[NB_TYPES];
+
+                for ( int type = 0; type < NB_TYPES; type++ )
+                {
+                    int length = snapshot.getInt();
+                    ByteBuffer view = snapshot.slice();
+                    view.limit( length );
+                    entries[type] = view;
+                    snapshot.position( snapshot.position() + length );
+                }
+
+                Schema schema = new DefaultSchema( name, owner, dependencies, disabled );
+                schemaMap.put( schema.getSchemaName(), schema );
+                schemaEntries.put( Strings.toLowerCase( schema.getSchemaName() ), entries );
+            }
+        }
+        catch ( RuntimeException re )
+        {
+            // A truncated or corrupted snapshot
+            throw new IOException( "Cannot read the schema snapshot : " + re.getMessage(), re );
+        }
+
+        LOG.debug( "Loaded the schema snapshot, {} schemas", schemaMap.size() );
+    }
+
+
+    /**
+     * Reads a String stored as its UTF-8 bytes length followed by the bytes. A -1 length stands for null.
+     */
+    private static String readString( ByteBuffer buffer )
+    {
+        int length = buffer.getInt();
+
+        if ( length < 0 )
+        {
+            return null;
+        }
+
+        byte[] bytes = new byte[length];
+        buffer.get( bytes );
+
+        return Strings.utf8ToString( bytes );
+    }
+
+
+    /**
+     * Deserializes the entries of a given type for some schemas.
+     */
+    private List<Entry> loadSchemaObjects( int type, Schema... schemas ) throws LdapException, IOException
+    {
+        List<Entry> entryList = new ArrayList<Entry>();
+
+        if ( schemas == null )
+        {
+            return entryList;
+        }
+
+        for ( Schema schema : schemas )
+        {
+            ByteBuffer[] entries = schemaEntries.get( Strings.toLowerCase( schema.getSchemaName() ) );
+
+            if ( entries == null )
+            {
+                continue;
+            }
+
+            ObjectInputStream in = new ObjectInputStream( new ByteBufferInputStream( entries[type].duplicate() ) );
+
+            try
+            {
+                int nbEntries = in.readInt();
+
+                for ( int i = 0; i < nbEntries; i++ )
+                {
+                    Entry entry = new DefaultEntry();
+                    entry.readExternal( in );
+                    entryList.add( entry );
+                }
+            }
+            catch ( ClassNotFoundException cnfe )
+            {
+                throw new IOException( cnfe.getMessage(), cnfe );
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+
+        return entryList;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public List<Entry> loadAttributeTypes( Schema... schemas ) throws LdapException, IOException
+    {
+        return loadSchemaObjects( ATTRIBUTE_TYPES, schemas );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public List<Entry> loadComparators( Schema... schemas ) throws LdapException, IOException
+    {
+        return loadSchemaObjects( COMPARATORS, schemas );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public List<Entry> loadDitContentRules( Schema... schemas ) throws LdapException, IOException
+    {
+        return loadSchemaObjects( DIT_CONTENT_RULES, schemas );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public List<Entry> loadDitStructureRules( Schema... schemas ) throws LdapException, IOException
+    {
+        return loadSchemaObjects( DIT_STRUCTURE_RULES, schemas );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public List<Entry> loadMatchingRules( Schema... schemas ) throws LdapException, IOException
+    {
+        return loadSchemaObjects( MATCHING_RULES, schemas );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public List<Entry> loadMatchingRuleUses( Schema... schemas ) throws LdapException, IOException
+    {
+        return loadSchemaObjects( MATCHING_RULE_USES, schemas );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public List<Entry> loadNameForms( Schema... schemas ) throws LdapException, IOException
+    {
+        return loadSchemaObjects( NAME_FORMS, schemas );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public List<Entry> loadNormalizers( Schema... schemas ) throws LdapException, IOException
+    {
+        return loadSchemaObjects( NORMALIZERS, schemas );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public List<Entry> loadObjectClasses( Schema... schemas ) throws LdapException, IOException
+    {
+        return loadSchemaObjects( OBJECT_CLASSES, schemas );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public List<Entry> loadSyntaxes( Schema... schemas ) throws LdapException, IOException
+    {
+        return loadSchemaObjects( SYNTAXES, schemas );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public List<Entry> loadSyntaxCheckers( Schema... schemas ) throws LdapException, IOException
+    {
+        return loadSchemaObjects( SYNTAX_CHECKERS, schemas );
+    }
+
+    /**
+     * An InputStream reading a ByteBuffer
+     */
+    private static class ByteBufferInputStream extends InputStream
+    {
+        /** The buffer to read */
+        private final ByteBuffer buffer;
+
+
+        private ByteBufferInputStream( ByteBuffer buffer )
+        {
+            this.buffer = buffer;
+        }
+
+
+        /**
+         * {@inheritDoc}
+         */
+        public int read()
+        {
+            if ( !buffer.hasRemaining() )
+            {
+                return -1;
+            }
+
+            return buffer.get() & 0xFF;
+        }
+
+
+        /**
+         * {@inheritDoc}
+         */
+        public int read( byte[] bytes, int offset, int length )
+        {
+            if ( !buffer.hasRemaining() )
+            {
+                return -1;
+            }
+
+            int nbRead = Math.min( length, buffer.remaining() );
+            buffer.get( bytes, offset, nbRead );
+
+            return nbRead;
+        }
+
+
+        /**
+         * {@inheritDoc}
+         */
+        public int available()
+        {
+            return buffer.remaining();
+        }
+    }
+}
@@ -27,6 +27,15 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.directory.api.i18n.I18n;
 import org.apache.directory.api.ldap.model.constants.MetaSchemaConstants;
@@ -80,6 +89,7 @@ import org.apache.directory.api.ldap.model.schema.registries.SyntaxCheckerRegist
 import org.apache.directory.api.ldap.schema.loader.EntityFactory;
 import org.apache.directory.api.ldap.schema.loader.JarLdifSchemaLoader;
 import org.apache.directory.api.ldap.schema.loader.SchemaEntityFactory;
+import org.apache.directory.api.ldap.schema.loader.SnapshotSchemaLoader;
 import org.apache.directory.api.util.Strings;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -117,6 +127,12 @@ public class DefaultSchemaManager implements SchemaManager
     /** A flag indicating that the SchemaManager is relaxed or not */
     private boolean isRelaxed = STRICT;
 
+    /** Tells if the SchemaObjects of several schemas can be created concurrently */
+    private boolean parallelLoading = false;
+
+    /** The executor creating the SchemaObjects concurrently, null to use the shared one */
+    private ExecutorService executor;
+
     /** Two flags for RELAXED and STRICT, this is STRICT */
     public static final boolean STRICT = false;
 
@@ -125,23 +141,45 @@ public class DefaultSchemaManager implements SchemaManager
 
 
     /**
-     * Creates a new instance of DefaultSchemaManager with the default schema schemaLoader
-     *
-     * @param loader The schema loader to use
+     * Creates a new instance of DefaultSchemaManager with the default schema schemaLoader.
+     * The schema is read from the binary snapshot bundled with the schema LDIF files,
+     * unless it's missing or stale, in which case the LDIF files are read.
      */
     public DefaultSchemaManager() throws Exception
     {
         // Default to the the root (one schemaManager for all the entries
         namingContext = Dn.ROOT_DSE;
-        this.schemaLoader = new JarLdifSchemaLoader();
+        this.schemaLoader = createDefaultSchemaLoader();
         errors = new ArrayList<Throwable>();
         registries = new Registries();
         factory = new SchemaEntityFactory();
         isRelaxed = STRICT;
+
+        // The default schema loaders support concurrent calls
+        parallelLoading = true;
         loadAllEnabled();
     }
 
 
+    /**
+     * Creates the default schema loader : the snapshot one if the snapshot is usable,
+     * otherwise the LDIF one.
+     */
+    private static SchemaLoader createDefaultSchemaLoader() throws Exception
+    {
+        try
+        {
+            return new SnapshotSchemaLoader();
+        }
+        catch ( IOException ioe )
+        {
+            LOG.info( "Cannot use the schema snapshot, reading the LDIF schema files : {}", ioe.getMessage() );
+
+            return new JarLdifSchemaLoader();
+        }
+    }
+
+
     /**
      * Creates a new instance of DefaultSchemaManager with the default schema schemaLoader
      *
@@ -239,19 +277,145 @@ public class DefaultSchemaManager implements SchemaManager
 
     private void addSchemaObjects( Schema schema, Registries registries ) throws LdapException
     {
-        // Create a content container for this schema
-        registries.addSchema( schema.getSchemaName() );
+        registerSchemaObjects( schema, registries, createSchemaObjects( schema, registries ) );
+    }
+
+
+    /**
+     * Add all the schemaObjects of some schemas into the registries. The schemaObjects
+     * are created concurrently, but they are registered one schema after the other,
+     * in the given order.
+     */
+    private void addSchemaObjects( final List<Schema> schemas, final Registries registries ) throws LdapException
+    {
+        ExecutorService executor = this.executor;
+
+        if ( ( executor == null ) && ( Runtime.getRuntime().availableProcessors() > 1 ) )
+        {
+            executor = SharedExecutorHolder.EXECUTOR;
+        }
+
+        if ( !parallelLoading || ( executor == null ) || ( schemas.size() < 2 ) )
+        {
+            for ( Schema schema : schemas )
+            {
+                addSchemaObjects( schema, registries );
+            }
+
+            return;
+        }
+
+        List<Future<List<SchemaObject>>> futures = null;
 
-        // And inject any existing SchemaObject into the registries
         try
         {
-            addComparators( schema, registries );
-            addNormalizers( schema, registries );
-            addSyntaxCheckers( schema, registries );
-            addSyntaxes( schema, registries );
-            addMatchingRules( schema, registries );
-            addAttributeTypes( schema, registries );
-            addObjectClasses( schema, registries );
+            futures = new ArrayList<Future<List<SchemaObject>>>( schemas.size() );
+
+            for ( final Schema schema : schemas )
+            {
+                futures.add( executor.submit( new Callable<List<SchemaObject>>()
+                {
+                    public List<SchemaObject> call() throws Exception
+                    {
+                        return createSchemaObjects( schema, registries );
+                    }
+                } ) );
+            }
+
+            // Register the schemaObjects as soon as they are created, in the schemas order
+            for ( int i = 0; i < schemas.size(); i++ )
+            {
+                registerSchemaObjects( schemas.get( i ), registries, futures.get( i ).get() );
+            }
+
+            futures = null;
+        }
+        catch ( InterruptedException ie )
+        {
+            Thread.currentThread().interrupt();
+
+            throw new LdapOtherException( ie.getMessage(), ie );
+        }
+        catch ( ExecutionException ee )
+        {
+            Throwable cause = ee.getCause();
+
+            if ( cause instanceof LdapException )
+            {
+                throw ( LdapException ) cause;
+            }
+            else if ( cause instanceof RuntimeException )
+            {
+                throw ( RuntimeException ) cause;
+            }
+            else
+            {
+                throw new LdapOtherException( cause.getMessage(), cause );
+            }
+        }
+        finally
+        {
+            // The executor may be shared : only cancel the creations which are not needed anymore
+            if ( futures != null )
+            {
+                for ( Future<List<SchemaObject>> future : futures )
+                {
+                    future.cancel( true );
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Holds the executor shared by the SchemaManagers which have not been given one. It's
+     * created on first use, and its daemon threads stop when they are idle.
+     */
+    private static final class SharedExecutorHolder
+    {
+        /** The shared executor */
+        private static final ExecutorService EXECUTOR;
+
+        static
+        {
+            int nbThreads = Runtime.getRuntime().availableProcessors();
+            ThreadPoolExecutor executor = new ThreadPoolExecutor( nbThreads, nbThreads, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory()
+                {
+                    private final AtomicInteger threadNumber = new AtomicInteger();
+
+
+                    public Thread newThread( Runnable runnable )
+                    {
+                        Thread thread = new Thread( runnable, "schema-loader-" + threadNumber.incrementAndGet() );
+                        thread.setDaemon( true );
+
+                        return thread;
+                    }
+                } );
+            executor.allowCoreThreadTimeOut( true );
+            EXECUTOR = executor;
+        }
+    }
+
+
+    /**
+     * Create all the schemaObjects of a schema. The registries are only read, so
+     * this can be done for several schemas at the same time.
+     */
+    private List<SchemaObject> createSchemaObjects( Schema schema, Registries registries ) throws LdapException
+    {
+        List<SchemaObject> schemaObjects = new ArrayList<SchemaObject>();
+
+        try
+        {
+            addComparators( schema, registries, schemaObjects );
+            addNormalizers( schema, registries, schemaObjects );
+            addSyntaxCheckers( schema, registries, schemaObjects );
+            addSyntaxes( schema, registries, schemaObjects );
+            addMatchingRules( schema, registries, schemaObjects );
+            addAttributeTypes( schema, registries, schemaObjects );
+            addObjectClasses( schema, registries, schemaObjects );
             //addMatchingRuleUses( schema, registries );
             //addDitContentRules( schema, registries );
             //addNameForms( schema, registries );
@@ -261,6 +425,25 @@ public class DefaultSchemaManager implements SchemaManager
         {
             throw new LdapOtherException( ioe.getMessage() );
         }
+
+        return schemaObjects;
+    }
+
+
+    /**
+     * Inject the created schemaObjects of a schema into the registries
+     */
+    private void registerSchemaObjects( Schema schema, Registries registries, List<SchemaObject> schemaObjects )
+        throws LdapException
+    {
+        // Create a content container for this schema
+        registries.addSchema( schema.getSchemaName() );
+
+        // And inject any existing SchemaObject into the registries
+        for ( SchemaObject schemaObject : schemaObjects )
+        {
+            addSchemaObject( registries, schemaObject, schema );
+        }
     }
 
 
@@ -671,6 +854,29 @@ public class DefaultSchemaManager implements SchemaManager
      * - disabledAccepted
      */
     private boolean load( Registries registries, Schema schema ) throws LdapException
+    {
+        List<Schema> loadedSchemas = new ArrayList<Schema>();
+        boolean loaded = markLoaded( registries, schema, loadedSchemas );
+
+        for ( Schema loadedSchema : loadedSchemas )
+        {
+            addSchemaObjects( loadedSchema, registries );
+        }
+
+        return loaded;
+    }
+
+
+    /**
+     * Mark a schema as loaded in the registries, accordingly to the two flags :
+     * - isRelaxed
+     * - disabledAccepted
+     * The disabled schemas it depends on are enabled and marked as loaded first. The
+     * schemas marked as loaded are added to the given list, their schemaObjects
+     * have to be added to the registries.
+     */
+    private boolean markLoaded( Registries registries, Schema schema, List<Schema> loadedSchemas )
+        throws LdapException
     {
         if ( schema == null )
         {
@@ -691,7 +897,7 @@ public class DefaultSchemaManager implements SchemaManager
                 LOG.info( "Loading {} disabled schema: \n{}", schema.getSchemaName(), schema );
 
                 registries.schemaLoaded( schema );
-                addSchemaObjects( schema, registries );
+                loadedSchemas.add( schema );
             }
             else
             {
@@ -725,7 +931,7 @@ public class DefaultSchemaManager implements SchemaManager
                     {
                         dependencySchema.enable();
 
-                        if ( !load( registries, dependencySchema ) )
+                        if ( !markLoaded( registries, dependencySchema, loadedSchemas ) )
                         {
                             dependencySchema.disable();
 
@@ -736,7 +942,7 @@ public class DefaultSchemaManager implements SchemaManager
             }
 
             registries.schemaLoaded( schema );
-            addSchemaObjects( schema, registries );
+            loadedSchemas.add( schema );
         }
 
         return true;
@@ -777,13 +983,14 @@ public class DefaultSchemaManager implements SchemaManager
     /**
      * Add all the Schema's AttributeTypes
      */
-    private void addAttributeTypes( Schema schema, Registries registries ) throws LdapException, IOException
+    private void addAttributeTypes( Schema schema, Registries registries, List<SchemaObject> schemaObjects )
+        throws LdapException, IOException
     {
         for ( Entry entry : schemaLoader.loadAttributeTypes( schema ) )
         {
             AttributeType attributeType = factory.getAttributeType( this, entry, registries, schema.getSchemaName() );
 
-            addSchemaObject( registries, attributeType, schema );
+            schemaObjects.add( attributeType );
         }
     }
 
@@ -791,13 +998,14 @@ public class DefaultSchemaManager implements SchemaManager
     /**
      * Add all the Schema's comparators
      */
-    private void addComparators( Schema schema, Registries registries ) throws LdapException, IOException
+    private void addComparators( Schema schema, Registries registries, List<SchemaObject> schemaObjects )
+        throws LdapException, IOException
     {
         for ( Entry entry : schemaLoader.loadComparators( schema ) )
         {
             LdapComparator<?> comparator = factory.getLdapComparator( this, entry, registries, schema.getSchemaName() );
 
-            addSchemaObject( registries, comparator, schema );
+            schemaObjects.add( comparator );
         }
     }
 
@@ -831,13 +1039,14 @@ public class DefaultSchemaManager implements SchemaManager
     /**
      * Add all the Schema's MatchingRules
      */
-    private void addMatchingRules( Schema schema, Registries registries ) throws LdapException, IOException
+    private void addMatchingRules( Schema schema, Registries registries, List<SchemaObject> schemaObjects )
+        throws LdapException, IOException
     {
         for ( Entry entry : schemaLoader.loadMatchingRules( schema ) )
         {
             MatchingRule matchingRule = factory.getMatchingRule( this, entry, registries, schema.getSchemaName() );
 
-            addSchemaObject( registries, matchingRule, schema );
+            schemaObjects.add( matchingRule );
         }
     }
 
@@ -875,13 +1084,14 @@ public class DefaultSchemaManager implements SchemaManager
     /**
      * Add all the Schema's Normalizers
      */
-    private void addNormalizers( Schema schema, Registries registries ) throws LdapException, IOException
+    private void addNormalizers( Schema schema, Registries registries, List<SchemaObject> schemaObjects )
+        throws LdapException, IOException
     {
         for ( Entry entry : schemaLoader.loadNormalizers( schema ) )
         {
             Normalizer normalizer = factory.getNormalizer( this, entry, registries, schema.getSchemaName() );
 
-            addSchemaObject( registries, normalizer, schema );
+            schemaObjects.add( normalizer );
         }
     }
 
@@ -889,13 +1099,14 @@ public class DefaultSchemaManager implements SchemaManager
     /**
      * Add all the Schema's ObjectClasses
      */
-    private void addObjectClasses( Schema schema, Registries registries ) throws LdapException, IOException
+    private void addObjectClasses( Schema schema, Registries registries, List<SchemaObject> schemaObjects )
+        throws LdapException, IOException
     {
         for ( Entry entry : schemaLoader.loadObjectClasses( schema ) )
         {
             ObjectClass objectClass = factory.getObjectClass( this, entry, registries, schema.getSchemaName() );
 
-            addSchemaObject( registries, objectClass, schema );
+            schemaObjects.add( objectClass );
         }
     }
 
@@ -903,13 +1114,14 @@ public class DefaultSchemaManager implements SchemaManager
     /**
      * Add all the Schema's Syntaxes
      */
-    private void addSyntaxes( Schema schema, Registries registries ) throws LdapException, IOException
+    private void addSyntaxes( Schema schema, Registries registries, List<SchemaObject> schemaObjects )
+        throws LdapException, IOException
     {
         for ( Entry entry : schemaLoader.loadSyntaxes( schema ) )
         {
             LdapSyntax syntax = factory.getSyntax( this, entry, registries, schema.getSchemaName() );
 
-            addSchemaObject( registries, syntax, schema );
+            schemaObjects.add( syntax );
         }
     }
 
@@ -917,13 +1129,14 @@ public class DefaultSchemaManager implements SchemaManager
     /**Add
      * Register all the Schema's SyntaxCheckers
      */
-    private void addSyntaxCheckers( Schema schema, Registries registries ) throws LdapException, IOException
+    private void addSyntaxCheckers( Schema schema, Registries registries, List<SchemaObject> schemaObjects )
+        throws LdapException, IOException
     {
         for ( Entry entry : schemaLoader.loadSyntaxCheckers( schema ) )
         {
             SyntaxChecker syntaxChecker = factory.getSyntaxChecker( this, entry, registries, schema.getSchemaName() );
 
-            addSchemaObject( registries, syntaxChecker, schema );
+            schemaObjects.add( syntaxChecker );
         }
     }
 
@@ -1081,12 +1294,16 @@ public class DefaultSchemaManager implements SchemaManager
         Registries clonedRegistries = cloneRegistries();
         clonedRegistries.setRelaxed();
 
-        // Load the schemas
+        // Mark the schemas as loaded, dependencies first, then create and add their schemaObjects
+        List<Schema> loadedSchemas = new ArrayList<Schema>();
+
         for ( Schema schema : schemas )
         {
-            loadDepsFirst( clonedRegistries, schema );
+            loadDepsFirst( clonedRegistries, schema, loadedSchemas );
         }
 
+        addSchemaObjects( loadedSchemas, clonedRegistries );
+
         // Build the cross references
         errors = clonedRegistries.buildReferences();
 
@@ -1129,10 +1346,11 @@ public class DefaultSchemaManager implements SchemaManager
      *
      * @param registries The Registries in which the schemas will be loaded
      * @param schema the current schema we are attempting to load
+     * @param loadedSchemas The schemas marked as loaded, in the order they must be added
      * @throws Exception if there is a cycle detected and/or another
      * failure results while loading, producing and or registering schema objects
      */
-    private void loadDepsFirst( Registries registries, Schema schema ) throws Exception
+    private void loadDepsFirst( Registries registries, Schema schema, List<Schema> loadedSchemas ) throws Exception
     {
         if ( schema == null )
         {
@@ -1159,7 +1377,7 @@ public class DefaultSchemaManager implements SchemaManager
         // if no deps then load this guy and return
         if ( ( deps == null ) || ( deps.length == 0 ) )
         {
-            load( registries, schema );
+            markLoaded( registries, schema, loadedSchemas );
 
             return;
         }
@@ -1180,12 +1398,12 @@ public class DefaultSchemaManager implements SchemaManager
             {
                 // Call recursively this method
                 Schema schemaDep = schemaLoader.getSchema( depName );
-                loadDepsFirst( registries, schemaDep );
+                loadDepsFirst( registries, schemaDep, loadedSchemas );
             }
         }
 
         // Now load the current schema
-        load( registries, schema );
+        markLoaded( registries, schema, loadedSchemas );
     }
 
 
@@ -2219,6 +2437,43 @@ public class DefaultSchemaManager implements SchemaManager
     }
 
 
+    /**
+     * @return true if the SchemaObjects of several schemas are created concurrently
+     * when loading them with their dependencies
+     */
+    public boolean isParallelLoading()
+    {
+        return parallelLoading;
+    }
+
+
+    /**
+     * Tells if the SchemaObjects of several schemas can be created concurrently when
+     * loading them with their dependencies. The schema loader must then support concurrent
+     * calls. They are always registered one schema at a time. The default is false, except
+     * for the SchemaManager created with the default schema loader.
+     *
+     * @param parallelLoading true to create the SchemaObjects concurrently
+     */
+    public void setParallelLoading( boolean parallelLoading )
+    {
+        this.parallelLoading = parallelLoading;
+    }
+
+
+    /**
+     * Sets the executor creating the SchemaObjects when they are loaded concurrently. It's
+     * not shut down by the SchemaManager. If none is set, an executor shared by all the
+     * SchemaManagers is used.
+     *
+     * @param executor The executor to use, or null to use the shared one
+     */
+    public void setExecutor( ExecutorService executor )
+    {
+        this.executor = executor;
+    }
+
+
     /**
      * {@inheritDoc}
      */
@@ -21,6 +21,7 @@ package org.apache.directory.api.ldap.schema.loader;
 
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
@@ -28,6 +29,8 @@ import static org.junit.Assert.fail;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.directory.api.ldap.model.exception.LdapUnwillingToPerformException;
@@ -607,4 +610,43 @@ public class SchemaManagerLoadWithDepsTest
         assertNotNull( schemaManager.getRegistries().getLoadedSchema( "cosine" ) );
         assertNotNull( schemaManager.getRegistries().getLoadedSchema( "InetOrgPerson" ) );
     }
+
+
+    /**
+     * test that loading all the enabled schemas concurrently gives the same
+     * registries as loading them one after the other
+     */
+    @Test
+    public void testLoadAllEnabledParallel() throws Exception
+    {
+        DefaultSchemaManager sequential = new DefaultSchemaManager( new LdifSchemaLoader( schemaRepository ) );
+        assertFalse( sequential.isParallelLoading() );
+        assertTrue( sequential.loadAllEnabled() );
+
+        DefaultSchemaManager parallel = new DefaultSchemaManager( new LdifSchemaLoader( schemaRepository ) );
+        ExecutorService executor = Executors.newFixedThreadPool( 4 );
+
+        try
+        {
+            parallel.setParallelLoading( true );
+            parallel.setExecutor( executor );
+            assertTrue( parallel.loadAllEnabled() );
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+
+        assertTrue( parallel.getErrors().isEmpty() );
+        assertEquals( sequential.getAttributeTypeRegistry().size(), parallel.getAttributeTypeRegistry().size() );
+        assertEquals( sequential.getComparatorRegistry().size(), parallel.getComparatorRegistry().size() );
+        assertEquals( sequential.getMatchingRuleRegistry().size(), parallel.getMatchingRuleRegistry().size() );
+        assertEquals( sequential.getNormalizerRegistry().size(), parallel.getNormalizerRegistry().size() );
+        assertEquals( sequential.getObjectClassRegistry().size(), parallel.getObjectClassRegistry().size() );
+        assertEquals( sequential.getSyntaxCheckerRegistry().size(), parallel.getSyntaxCheckerRegistry().size() );
+        assertEquals( sequential.getLdapSyntaxRegistry().size(), parallel.getLdapSyntaxRegistry().size() );
+        assertEquals( sequential.getGlobalOidRegistry().size(), parallel.getGlobalOidRegistry().size() );
+        assertEquals( sequential.getRegistries().getLoadedSchemas().keySet(), parallel.getRegistries()
+            .getLoadedSchemas().keySet() );
+    }
 }
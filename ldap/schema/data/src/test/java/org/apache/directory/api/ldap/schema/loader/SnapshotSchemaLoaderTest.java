@@ -0,0 +1,173 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.api.ldap.schema.loader;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.HashSet;
+import java.util.List;
+
+import com.mycila.junit.concurrent.Concurrency;
+import com.mycila.junit.concurrent.ConcurrentJunitRunner;
+
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.ldap.model.schema.registries.Schema;
+import org.apache.directory.api.ldap.schema.manager.impl.DefaultSchemaManager;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+
+/**
+ * Tests the SnapshotSchemaLoader.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@RunWith(ConcurrentJunitRunner.class)
+@Concurrency()
+public class SnapshotSchemaLoaderTest
+{
+    @Test
+    public void testSnapshotSchemaLoader() throws Exception
+    {
+        SnapshotSchemaLoader loader = new SnapshotSchemaLoader();
+        SchemaManager sm = new DefaultSchemaManager( loader );
+
+        sm.loadWithDeps( "system" );
+
+        assertTrue( sm.getRegistries().getAttributeTypeRegistry().contains( "cn" ) );
+        assertFalse( sm.getRegistries().getAttributeTypeRegistry().contains( "m-aux" ) );
+
+        sm.loadWithDeps( "apachemeta" );
+
+        assertTrue( sm.getRegistries().getAttributeTypeRegistry().contains( "m-aux" ) );
+    }
+
+
+    @Test
+    public void testSnapshotMatchesLdif() throws Exception
+    {
+        SnapshotSchemaLoader snapshotLoader = new SnapshotSchemaLoader();
+        JarLdifSchemaLoader ldifLoader = new JarLdifSchemaLoader();
+
+        assertEquals( ldifLoader.getAllSchemas().size(), snapshotLoader.getAllSchemas().size() );
+
+        for ( Schema schema : ldifLoader.getAllSchemas() )
+        {
+            Schema snapshotSchema = snapshotLoader.getSchema( schema.getSchemaName() );
+
+            assertEquals( schema.isDisabled(), snapshotSchema.isDisabled() );
+            assertEquals( schema.getOwner(), snapshotSchema.getOwner() );
+            assertEquals( schema.getDependencies().length, snapshotSchema.getDependencies().length );
+
+            assertSameEntries( ldifLoader.loadAttributeTypes( schema ), snapshotLoader.loadAttributeTypes( schema ) );
+            assertSameEntries( ldifLoader.loadComparators( schema ), snapshotLoader.loadComparators( schema ) );
+            assertSameEntries( ldifLoader.loadMatchingRules( schema ), snapshotLoader.loadMatchingRules( schema ) );
+            assertSameEntries( ldifLoader.loadNormalizers( schema ), snapshotLoader.loadNormalizers( schema ) );
+            assertSameEntries( ldifLoader.loadObjectClasses( schema ), snapshotLoader.loadObjectClasses( schema ) );
+            assertSameEntries( ldifLoader.loadSyntaxes( schema ), snapshotLoader.loadSyntaxes( schema ) );
+            assertSameEntries( ldifLoader.loadSyntaxCheckers( schema ),
+                snapshotLoader.loadSyntaxCheckers( schema ) );
+        }
+    }
+
+
+    private void assertSameEntries( List<Entry> expected, List<Entry> entries )
+    {
+        assertEquals( expected.size(), entries.size() );
+        assertEquals( new HashSet<Entry>( expected ), new HashSet<Entry>( entries ) );
+    }
+
+
+    @Test
+    public void testDefaultSchemaManager() throws Exception
+    {
+        SchemaManager sm = new DefaultSchemaManager();
+
+        // The snapshot is up to date, it's used
+        assertTrue( sm.getLoader() instanceof SnapshotSchemaLoader );
+        assertTrue( sm.getErrors().isEmpty() );
+        assertTrue( sm.getRegistries().getAttributeTypeRegistry().contains( "cn" ) );
+        assertTrue( sm.getRegistries().getObjectClassRegistry().contains( "inetOrgPerson" ) );
+    }
+
+
+    @Test
+    public void testSnapshotFingerprint() throws Exception
+    {
+        // The bundled snapshot has been built from the LDIF schema files in the classpath
+        assertEquals( SchemaSnapshotWriter.computeFingerprint(), new SnapshotSchemaLoader().getFingerprint() );
+    }
+
+
+    @Test
+    public void testUnsupportedSnapshot() throws Exception
+    {
+        File snapshot = File.createTempFile( "schema", ".snapshot" );
+        snapshot.deleteOnExit();
+        FileOutputStream out = new FileOutputStream( snapshot );
+
+        try
+        {
+            SchemaSnapshotWriter.write( new JarLdifSchemaLoader(), out );
+        }
+        finally
+        {
+            out.close();
+        }
+
+        // The fresh snapshot can be read
+        assertEquals( new SnapshotSchemaLoader().getAllSchemas().size(),
+            new SnapshotSchemaLoader( snapshot ).getAllSchemas().size() );
+
+        // Change the format version, stored after the magic number
+        RandomAccessFile file = new RandomAccessFile( snapshot, "rw" );
+
+        try
+        {
+            file.seek( 4 );
+            int version = file.readInt();
+            file.seek( 4 );
+            file.writeInt( version + 1 );
+        }
+        finally
+        {
+            file.close();
+        }
+
+        try
+        {
+            new SnapshotSchemaLoader( snapshot );
+            fail();
+        }
+        catch ( IOException ioe )
+        {
+            // Expected
+        }
+    }
+}
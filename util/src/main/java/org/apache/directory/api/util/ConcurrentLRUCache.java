@@ -0,0 +1,550 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.api.util;
+
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+
+/**
+ * <p>
+ * A bounded cache which can be read concurrently without locking, evicting its
+ * least recently used entries when it's full.
+ * </p>
+ * <p>
+ * The entries are stored in a {@link ConcurrentHashMap}, and linked in a list
+ * ordered by access. Unlike the {@link SynchronizedLRUMap}, a read does not
+ * reorder this list : it is recorded in a small buffer, picked according to the
+ * reading thread, and the recorded reads are replayed on the list in batches, by
+ * the thread which gets the lock first. When a buffer is full, the reads are
+ * dropped : the recency order is then approximate, which is fine for a cache.
+ * The writes are serialized.
+ * </p>
+ * <p>
+ * The cache size is either a number of entries, or the sum of the entries weights,
+ * as computed by a {@link Weigher}.
+ * </p>
+ * <p>
+ * The null keys and values are not allowed.
+ * </p>
+ *
+ * @param <K> The key type
+ * @param <V> The value type
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class ConcurrentLRUCache<K, V>
+{
+    /** The number of reads a buffer can record */
+    private static final int READ_BUFFER_SIZE = 32;
+
+    /** The number of recorded reads above which a buffer is drained */
+    private static final int READ_BUFFER_DRAIN_THRESHOLD = 16;
+
+    /** The maximum number of read buffers */
+    private static final int MAX_STRIPES = 64;
+
+    /** The distance between two counters in the stats array, to avoid false sharing */
+    private static final int COUNTER_PADDING = 16;
+
+    /** The hit counter index in a stripe */
+    private static final int HITS = 0;
+
+    /** The miss counter index in a stripe */
+    private static final int MISSES = 1;
+
+    /**
+     * Computes the weight of an entry.
+     *
+     * @param <K> The key type
+     * @param <V> The value type
+     */
+    public interface Weigher<K, V>
+    {
+        /**
+         * Computes the weight of an entry. It must not change while the entry is cached.
+         *
+         * @param key The entry key
+         * @param value The entry value
+         * @return A positive weight
+         */
+        int weigh( K key, V value );
+    }
+
+    /**
+     * An entry, linked in the access ordered list.
+     */
+    private static final class Node<K, V>
+    {
+        private final K key;
+        private final V value;
+        private final int weight;
+
+        /** The previous and next nodes in the access order. Guarded by the lock */
+        private Node<K, V> previous;
+        private Node<K, V> next;
+
+        /** Tells if the node is in the list. Guarded by the lock */
+        private boolean linked;
+
+
+        private Node( K key, V value, int weight )
+        {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    /** The entries */
+    private final ConcurrentMap<K, Node<K, V>> map;
+
+    /** The weigher, null if each entry weights 1 */
+    private final Weigher<K, V> weigher;
+
+    /** The maximum total weight */
+    private final long maximumWeight;
+
+    /** The lock protecting the access ordered list and the weights */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /** The sentinel of the access ordered list : its next node is the least recently used */
+    private final Node<K, V> head = new Node<K, V>( null, null, 0 );
+
+    /** The total weight of the cached entries. Guarded by the lock */
+    private long weightedSize;
+
+    /** The number of evicted entries. Guarded by the lock */
+    private long evictions;
+
+    /** The mask used to select a stripe */
+    private final int stripeMask;
+
+    /** The read buffers, READ_BUFFER_SIZE slots per stripe */
+    private final AtomicReferenceArray<Node<K, V>> readBuffers;
+
+    /** The number of reads recorded in each read buffer */
+    private final AtomicIntegerArray readCounts;
+
+    /** The hits and misses counters, per stripe */
+    private final AtomicLongArray counters;
+
+
+    /**
+     * Creates a new ConcurrentLRUCache instance, holding at most <code>maximumSize</code> entries.
+     *
+     * @param maximumSize The maximum number of entries
+     */
+    public ConcurrentLRUCache( int maximumSize )
+    {
+        this( maximumSize, null );
+    }
+
+
+    /**
+     * Creates a new ConcurrentLRUCache instance, which entries total weight is at most
+     * <code>maximumWeight</code>.
+     *
+     * @param maximumWeight The maximum total weight of the entries
+     * @param weigher The weigher computing the entries weight. If null, each entry weights 1
+     */
+    public ConcurrentLRUCache( long maximumWeight, Weigher<K, V> weigher )
+    {
+        if ( maximumWeight <= 0L )
+        {
+            throw new IllegalArgumentException( "The cache maximum weight must be positive : " + maximumWeight );
+        }
+
+        this.maximumWeight = maximumWeight;
+        this.weigher = weigher;
+
+        int initialCapacity = ( int ) Math.min( maximumWeight, 1024L );
+        map = new ConcurrentHashMap<K, Node<K, V>>( initialCapacity );
+
+        head.previous = head;
+        head.next = head;
+
+        int nbStripes = 1;
+
+        while ( ( nbStripes < MAX_STRIPES ) && ( nbStripes < Runtime.getRuntime().availableProcessors() ) )
+        {
+            nbStripes <<= 1;
+        }
+
+        stripeMask = nbStripes - 1;
+        readBuffers = new AtomicReferenceArray<Node<K, V>>( nbStripes * READ_BUFFER_SIZE );
+        readCounts = new AtomicIntegerArray( nbStripes * COUNTER_PADDING );
+        counters = new AtomicLongArray( nbStripes * COUNTER_PADDING );
+    }
+
+
+    /**
+     * Selects the stripe used by the current thread.
+     */
+    private int stripe()
+    {
+        long id = Thread.currentThread().getId();
+
+        return ( int ) ( id ^ ( id >>> 32 ) ) & stripeMask;
+    }
+
+
+    /**
+     * Gets the value associated with a key. The entry is promoted to the most
+     * recently used position, but this may be delayed, or even skipped under
+     * high contention.
+     *
+     * @param key The key
+     * @return The cached value, or null if the key is not cached
+     */
+    public V get( Object key )
+    {
+        Node<K, V> node = map.get( key );
+        int stripe = stripe();
+
+        if ( node == null )
+        {
+            counters.incrementAndGet( stripe * COUNTER_PADDING + MISSES );
+
+            return null;
+        }
+
+        counters.incrementAndGet( stripe * COUNTER_PADDING + HITS );
+        recordRead( stripe, node );
+
+        return node.value;
+    }
+
+
+    /**
+     * Records a read in the current thread buffer, and drain the buffers if
+     * this one is getting full and nobody else is draining them.
+     */
+    private void recordRead( int stripe, Node<K, V> node )
+    {
+        int index = readCounts.getAndIncrement( stripe * COUNTER_PADDING );
+
+        if ( ( index >= 0 ) && ( index < READ_BUFFER_SIZE ) )
+        {
+            readBuffers.lazySet( stripe * READ_BUFFER_SIZE + index, node );
+        }
+
+        if ( ( index >= READ_BUFFER_DRAIN_THRESHOLD ) && lock.tryLock() )
+        {
+            try
+            {
+                drainReadBuffers();
+            }
+            finally
+            {
+                lock.unlock();
+            }
+        }
+    }
+
+
+    /**
+     * Replays the recorded reads on the access ordered list. Must be called with the lock held.
+     * The count is reset before the slots are read, so a read recorded meanwhile goes to the
+     * start of the buffer, and is either replayed now or by the next drain. The whole buffer
+     * is consumed, including the slots written late by a reader which got its index before
+     * the previous drain, so that the buffers don't keep evicted nodes alive.
+     */
+    private void drainReadBuffers()
+    {
+        for ( int stripe = 0; stripe <= stripeMask; stripe++ )
+        {
+            if ( readCounts.getAndSet( stripe * COUNTER_PADDING, 0 ) == 0 )
+            {
+                continue;
+            }
+
+            int start = stripe * READ_BUFFER_SIZE;
+
+            for ( int i = 0; i < READ_BUFFER_SIZE; i++ )
+            {
+                Node<K, V> node = readBuffers.getAndSet( start + i, null );
+
+                // The node may have been removed since it was read
+                if ( ( node != null ) && node.linked )
+                {
+                    unlink( node );
+                    linkLast( node );
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Associates a value with a key, evicting the least recently used entries if
+     * the cache gets too big.
+     *
+     * @param key The key
+     * @param value The value
+     * @return The value previously associated with the key, or null
+     */
+    public V put( K key, V value )
+    {
+        if ( ( key == null ) || ( value == null ) )
+        {
+            throw new NullPointerException();
+        }
+
+        int weight = ( weigher == null ) ? 1 : weigher.weigh( key, value );
+
+        if ( weight <= 0 )
+        {
+            throw new IllegalArgumentException( "The weight of an entry must be positive : " + weight );
+        }
+        Node<K, V> node = new Node<K, V>( key, value, weight );
+
+        lock.lock();
+
+        try
+        {
+            drainReadBuffers();
+
+            Node<K, V> previous = map.put( key, node );
+
+            if ( previous != null )
+            {
+                unlink( previous );
+                weightedSize -= previous.weight;
+            }
+
+            linkLast( node );
+            weightedSize += weight;
+            evict();
+
+            return previous == null ? null : previous.value;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * Removes a key from the cache.
+     *
+     * @param key The key to remove
+     * @return The value which was associated with the key, or null
+     */
+    public V remove( Object key )
+    {
+        lock.lock();
+
+        try
+        {
+            Node<K, V> node = map.remove( key );
+
+            if ( node == null )
+            {
+                return null;
+            }
+
+            unlink( node );
+            weightedSize -= node.weight;
+
+            return node.value;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * Removes all the entries from the cache. The statistics are kept.
+     */
+    public void clear()
+    {
+        lock.lock();
+
+        try
+        {
+            drainReadBuffers();
+
+            for ( Node<K, V> node = head.next; node != head; node = head.next )
+            {
+                map.remove( node.key );
+                unlink( node );
+            }
+
+            weightedSize = 0L;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * Removes the least recently used entries until the cache weight fits. Must be
+     * called with the lock held. An entry heavier than the cache itself is evicted too.
+     */
+    private void evict()
+    {
+        while ( ( weightedSize > maximumWeight ) && ( head.next != head ) )
+        {
+            Node<K, V> eldest = head.next;
+
+            map.remove( eldest.key );
+            unlink( eldest );
+            weightedSize -= eldest.weight;
+            evictions++;
+        }
+    }
+
+
+    /**
+     * Adds a node at the most recently used end of the list.
+     */
+    private void linkLast( Node<K, V> node )
+    {
+        Node<K, V> last = head.previous;
+
+        node.previous = last;
+        node.next = head;
+        last.next = node;
+        head.previous = node;
+        node.linked = true;
+    }
+
+
+    /**
+     * Removes a node from the list.
+     */
+    private void unlink( Node<K, V> node )
+    {
+        node.previous.next = node.next;
+        node.next.previous = node.previous;
+        node.previous = null;
+        node.next = null;
+        node.linked = false;
+    }
+
+
+    /**
+     * @return The number of cached entries
+     */
+    public int size()
+    {
+        return map.size();
+    }
+
+
+    /**
+     * @return The total weight of the cached entries. This is the number of entries
+     * if the cache has no weigher
+     */
+    public long getWeightedSize()
+    {
+        lock.lock();
+
+        try
+        {
+            return weightedSize;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * @return The maximum total weight of the cached entries
+     */
+    public long getMaximumWeight()
+    {
+        return maximumWeight;
+    }
+
+
+    /**
+     * @return The number of lookups which found a cached value
+     */
+    public long getHitCount()
+    {
+        return sumCounters( HITS );
+    }
+
+
+    /**
+     * @return The number of lookups which did not find a cached value
+     */
+    public long getMissCount()
+    {
+        return sumCounters( MISSES );
+    }
+
+
+    /**
+     * @return The number of entries removed to make room for new ones
+     */
+    public long getEvictionCount()
+    {
+        lock.lock();
+
+        try
+        {
+            return evictions;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * Sums a counter over all the stripes.
+     */
+    private long sumCounters( int counter )
+    {
+        long sum = 0L;
+
+        for ( int stripe = 0; stripe <= stripeMask; stripe++ )
+        {
+            sum += counters.get( stripe * COUNTER_PADDING + counter );
+        }
+
+        return sum;
+    }
+
+
+    /**
+     * @see Object#toString()
+     */
+    public String toString()
+    {
+        return "ConcurrentLRUCache[size=" + size() + ", maximumWeight=" + maximumWeight + ", hits=" + getHitCount()
+            + ", misses=" + getMissCount() + ", evictions=" + getEvictionCount() + "]";
+    }
+}
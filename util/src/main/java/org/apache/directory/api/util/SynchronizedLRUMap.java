@@ -44,7 +44,9 @@ import java.io.Externalizable;
  * 
  * @since Commons Collections 1.0
  * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ * @deprecated Every access is serialized on the map monitor. Use the {@link ConcurrentLRUCache} instead
  */
+@Deprecated
 public final class SynchronizedLRUMap extends SequencedHashMap implements Externalizable
 {
     // add a serial version uid, so that if we change things in the future
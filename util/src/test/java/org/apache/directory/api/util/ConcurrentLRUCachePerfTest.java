@@ -0,0 +1,167 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.api.util;
+
+
+import java.util.Random;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+
+/**
+ * Compares the throughput of the ConcurrentLRUCache and the SynchronizedLRUMap
+ * with 1, 4, 16 and 64 threads, on a read mostly workload.
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@Ignore("Ignore performance tests: should not be with integration tests")
+@SuppressWarnings("deprecation")
+public class ConcurrentLRUCachePerfTest
+{
+    /** The number of distinct keys */
+    private static final int NB_KEYS = 2000;
+
+    /** The cache size */
+    private static final int CACHE_SIZE = 1000;
+
+    /** The number of operations per thread */
+    private static final int NB_OPERATIONS = 2000000;
+
+    /** The thread counts to test */
+    private static final int[] THREADS = new int[]
+        { 1, 4, 16, 64 };
+
+    /**
+     * The cache operations being measured
+     */
+    private interface Cache
+    {
+        Object get( Integer key );
+
+
+        void put( Integer key, Integer value );
+    }
+
+
+    private static Cache newConcurrentLRUCache()
+    {
+        final ConcurrentLRUCache<Integer, Integer> cache = new ConcurrentLRUCache<Integer, Integer>( CACHE_SIZE );
+
+        return new Cache()
+        {
+            public Object get( Integer key )
+            {
+                return cache.get( key );
+            }
+
+
+            public void put( Integer key, Integer value )
+            {
+                cache.put( key, value );
+            }
+        };
+    }
+
+
+    private static Cache newSynchronizedLRUMap()
+    {
+        final SynchronizedLRUMap cache = new SynchronizedLRUMap( CACHE_SIZE );
+
+        return new Cache()
+        {
+            public Object get( Integer key )
+            {
+                return cache.get( key );
+            }
+
+
+            public void put( Integer key, Integer value )
+            {
+                cache.put( key, value );
+            }
+        };
+    }
+
+
+    /**
+     * Runs the read mostly workload on a cache, and returns the number of operations per second
+     */
+    private long run( final Cache cache, int nbThreads ) throws InterruptedException
+    {
+        Thread[] threads = new Thread[nbThreads];
+
+        for ( int t = 0; t < nbThreads; t++ )
+        {
+            final Random random = new Random( t );
+
+            threads[t] = new Thread()
+            {
+                public void run()
+                {
+                    for ( int i = 0; i < NB_OPERATIONS / 4; i++ )
+                    {
+                        // Skewed keys, so that most of the reads hit the cache
+                        Integer key = ( int ) ( Math.abs( random.nextGaussian() ) * NB_KEYS / 3 ) % NB_KEYS;
+
+                        if ( cache.get( key ) == null )
+                        {
+                            cache.put( key, key );
+                        }
+                    }
+                }
+            };
+        }
+
+        long t0 = System.nanoTime();
+
+        for ( Thread thread : threads )
+        {
+            thread.start();
+        }
+
+        for ( Thread thread : threads )
+        {
+            thread.join();
+        }
+
+        long elapsed = System.nanoTime() - t0;
+
+        return ( long ) nbThreads * ( NB_OPERATIONS / 4 ) * 1000000000L / elapsed;
+    }
+
+
+    @Test
+    public void testThroughput() throws InterruptedException
+    {
+        // Warm up
+        run( newConcurrentLRUCache(), 4 );
+        run( newSynchronizedLRUMap(), 4 );
+
+        for ( int nbThreads : THREADS )
+        {
+            long concurrent = run( newConcurrentLRUCache(), nbThreads );
+            long synchronizedMap = run( newSynchronizedLRUMap(), nbThreads );
+
+            System.out.println( nbThreads + " threads : ConcurrentLRUCache " + concurrent
+                + " ops/s, SynchronizedLRUMap " + synchronizedMap + " ops/s" );
+        }
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.api.util;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.mycila.junit.concurrent.Concurrency;
+import com.mycila.junit.concurrent.ConcurrentJunitRunner;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+
+/**
+ * Tests the ConcurrentLRUCache class.
+ * 
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@RunWith(ConcurrentJunitRunner.class)
+@Concurrency()
+public class ConcurrentLRUCacheTest
+{
+    @Test
+    public void testPutGetRemove()
+    {
+        ConcurrentLRUCache<String, String> cache = new ConcurrentLRUCache<String, String>( 10 );
+
+        assertNull( cache.put( "a", "1" ) );
+        assertEquals( "1", cache.put( "a", "2" ) );
+        assertEquals( "2", cache.get( "a" ) );
+        assertNull( cache.get( "b" ) );
+        assertEquals( 1, cache.size() );
+        assertEquals( 1L, cache.getWeightedSize() );
+        assertEquals( 1L, cache.getHitCount() );
+        assertEquals( 1L, cache.getMissCount() );
+
+        assertEquals( "2", cache.remove( "a" ) );
+        assertNull( cache.remove( "a" ) );
+        assertEquals( 0, cache.size() );
+        assertEquals( 0L, cache.getWeightedSize() );
+    }
+
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted()
+    {
+        ConcurrentLRUCache<Integer, String> cache = new ConcurrentLRUCache<Integer, String>( 3 );
+
+        cache.put( 1, "1" );
+        cache.put( 2, "2" );
+        cache.put( 3, "3" );
+
+        // 1 becomes the most recently used entry
+        cache.get( 1 );
+
+        cache.put( 4, "4" );
+
+        assertEquals( 3, cache.size() );
+        assertNull( cache.get( 2 ) );
+        assertEquals( "1", cache.get( 1 ) );
+        assertEquals( "3", cache.get( 3 ) );
+        assertEquals( "4", cache.get( 4 ) );
+        assertEquals( 1L, cache.getEvictionCount() );
+    }
+
+
+    @Test
+    public void testWeigher()
+    {
+        ConcurrentLRUCache<String, String> cache = new ConcurrentLRUCache<String, String>( 10,
+            new ConcurrentLRUCache.Weigher<String, String>()
+            {
+                public int weigh( String key, String value )
+                {
+                    return value.length();
+                }
+            } );
+
+        cache.put( "a", "aaaa" );
+        cache.put( "b", "bbbb" );
+        assertEquals( 8L, cache.getWeightedSize() );
+
+        cache.put( "c", "cccc" );
+        assertEquals( 2, cache.size() );
+        assertEquals( 8L, cache.getWeightedSize() );
+        assertNull( cache.get( "a" ) );
+
+        // An entry heavier than the cache is not kept
+        cache.put( "d", "ddddddddddd" );
+        assertEquals( 0, cache.size() );
+        assertEquals( 0L, cache.getWeightedSize() );
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNonPositiveWeight()
+    {
+        ConcurrentLRUCache<String, String> cache = new ConcurrentLRUCache<String, String>( 10,
+            new ConcurrentLRUCache.Weigher<String, String>()
+            {
+                public int weigh( String key, String value )
+                {
+                    return value.length();
+                }
+            } );
+
+        cache.put( "a", "" );
+    }
+
+
+    @Test
+    public void testClear()
+    {
+        ConcurrentLRUCache<Integer, Integer> cache = new ConcurrentLRUCache<Integer, Integer>( 100 );
+
+        for ( int i = 0; i < 100; i++ )
+        {
+            cache.put( i, i );
+            cache.get( i );
+        }
+
+        cache.clear();
+
+        assertEquals( 0, cache.size() );
+        assertEquals( 0L, cache.getWeightedSize() );
+        assertNull( cache.get( 1 ) );
+    }
+
+
+    @Test
+    public void testConcurrentAccesses() throws Exception
+    {
+        final ConcurrentLRUCache<Integer, Integer> cache = new ConcurrentLRUCache<Integer, Integer>( 100 );
+        final AtomicInteger errors = new AtomicInteger();
+        Thread[] threads = new Thread[8];
+
+        for ( int t = 0; t < threads.length; t++ )
+        {
+            final int seed = t;
+
+            threads[t] = new Thread()
+            {
+                public void run()
+                {
+                    for ( int i = 0; i < 20000; i++ )
+                    {
+                        Integer key = ( i * 31 + seed ) % 500;
+                        Integer value = cache.get( key );
+
+                        if ( value == null )
+                        {
+                            cache.put( key, key );
+                        }
+                        else if ( !value.equals( key ) )
+                        {
+                            errors.incrementAndGet();
+                        }
+                    }
+                }
+            };
+
+            threads[t].start();
+        }
+
+        for ( Thread thread : threads )
+        {
+            thread.join();
+        }
+
+        assertEquals( 0, errors.get() );
+        assertEquals( 100L, cache.getWeightedSize() );
+        assertEquals( 100, cache.size() );
+        assertEquals( 8L * 20000L, cache.getHitCount() + cache.getMissCount() );
+    }
+}